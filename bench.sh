@@ -0,0 +1,18 @@
+#!/bin/bash
+# Builds and runs the JMH benchmarks in bench/. Expects the JMH core and 
+# annotation processor jars (and their dependencies) in lib/jmh/. Arguments 
+# are passed to JMH, e.g., ./bench.sh PartitionedMemory -p cells=256
+# Results are written to jmh-result.json.
+./compile.sh || exit 1
+JSCLASSPATH=bin:lib/antlr.jar:lib/google-collect-1.0.jar:lib/javabdd-1.0b2.jar:scala-library.jar:lib/bdd.jar
+JMHCLASSPATH=`echo lib/jmh/*.jar | tr ' ' ':'`
+case `uname` in
+    CYGWIN*)
+        JSCLASSPATH=`cygpath -p -d "$JSCLASSPATH"`
+        JMHCLASSPATH=`cygpath -p -d "$JMHCLASSPATH"`
+        ;;
+    *)
+esac
+if [ ! -d bench-bin ]; then mkdir bench-bin; fi
+javac -d bench-bin/ `find -L bench/ -name '*.java'` -cp ${JSCLASSPATH}:${JMHCLASSPATH} || exit 1
+java -Xms1g -Xmx3g -cp bench-bin:${JSCLASSPATH}:${JMHCLASSPATH} org.openjdk.jmh.Main -rf json -rff jmh-result.json "$@"
@@ -0,0 +1,93 @@
+/*
+ * Fixtures.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.asm.Instruction;
+import org.jakstab.disasm.Disassembler;
+import org.jakstab.loader.DefaultHarness;
+import org.jakstab.loader.ExecutableImage;
+import org.jakstab.ssl.Architecture;
+
+/**
+ * Loads the programs in input/bin for use in benchmarks.
+ */
+public final class Fixtures {
+
+	private static Architecture architecture;
+
+	static {
+		// Keep log output out of the measurements
+		Options.verbosity.setValue(0);
+	}
+
+	private Fixtures() {}
+
+	/**
+	 * Returns the given file if it exists, or the file of that name in 
+	 * input/bin otherwise. This allows benchmarking arbitrary binaries 
+	 * by passing their path as parameter.
+	 */
+	public static File getBinary(String name) {
+		File file = new File(name);
+		if (file.exists())
+			return file;
+		return new File(Options.jakstabHome + "/input/bin/" + name);
+	}
+
+	public static synchronized Architecture getArchitecture() throws Exception {
+		if (architecture == null)
+			architecture = new Architecture(Options.sslFilename.getValue());
+		return architecture;
+	}
+
+	/**
+	 * Creates a program for the given binary with the default harness.
+	 */
+	public static Program loadProgram(String name) throws Exception {
+		Program program = Program.createProgram(getArchitecture());
+		program.loadMainModule(getBinary(name));
+		program.installHarness(new DefaultHarness());
+		return program;
+	}
+
+	/**
+	 * Disassembles the code sections of a module linearly and returns the 
+	 * addresses of all decoded instructions.
+	 */
+	public static List<AbsoluteAddress> sweep(ExecutableImage module) {
+		List<AbsoluteAddress> result = new ArrayList<AbsoluteAddress>();
+		Disassembler disassembler = module.getDisassembler();
+		long next = 0;
+		for (Iterator<AbsoluteAddress> it = module.codeBytesIterator(); it.hasNext();) {
+			AbsoluteAddress a = it.next();
+			if (a.getValue() < next)
+				continue;
+			Instruction instr = disassembler.decodeInstruction(module.getFilePointer(a));
+			if (instr != null) {
+				result.add(a);
+				next = a.getValue() + instr.getSize();
+			}
+		}
+		return result;
+	}
+}
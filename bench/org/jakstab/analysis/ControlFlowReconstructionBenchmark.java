@@ -0,0 +1,57 @@
+/*
+ * ControlFlowReconstructionBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.Fixtures;
+import org.jakstab.Options;
+import org.jakstab.Program;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Loads a binary and reconstructs its control flow with the given analyses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class ControlFlowReconstructionBenchmark {
+
+	@Param({"helloworld.exe", "memory.exe", "pointer_arithmetic.exe"})
+	public String binary;
+
+	@Param({"x", "k"})
+	public String cpa;
+
+	@Setup
+	public void setUp() throws Exception {
+		Options.cpas.setValue(cpa);
+		// Parse the SSL specification outside of the measurement
+		Fixtures.getArchitecture();
+	}
+
+	@Benchmark
+	public long run() throws Exception {
+		Program program = Fixtures.loadProgram(binary);
+		ControlFlowReconstruction cfr = new ControlFlowReconstruction(program);
+		cfr.run();
+		return cfr.getNumberOfStatesVisited();
+	}
+}
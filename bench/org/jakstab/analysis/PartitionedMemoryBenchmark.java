@@ -0,0 +1,92 @@
+/*
+ * PartitionedMemoryBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.Options;
+import org.jakstab.analysis.explicit.NumberElement;
+import org.jakstab.analysis.explicit.NumberElementFactory;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Operations on a stack region with a given number of dword cells, as
+ * performed by the post operator and merge of the explicit analyses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class PartitionedMemoryBenchmark {
+
+	@Param({"16", "256", "4096"})
+	public int cells;
+
+	private NumberElementFactory valueFactory;
+	private NumberElement[] values;
+	private PartitionedMemory<NumberElement> store;
+	private PartitionedMemory<NumberElement> other;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		Options.debug.setValue(false);
+		valueFactory = new NumberElementFactory();
+		values = new NumberElement[64];
+		for (int i = 0; i < values.length; i++)
+			values[i] = new NumberElement(ExpressionFactory.createNumber(i * 7, 32));
+		store = new PartitionedMemory<NumberElement>(valueFactory);
+		for (int i = 0; i < cells; i++)
+			store.set(MemoryRegion.STACK, offset(i), 32, values[i % values.length]);
+		// Differs in one cell, like the states merged at a join point
+		other = new PartitionedMemory<NumberElement>(store);
+		other.set(MemoryRegion.STACK, offset(cells / 2), 32, values[values.length - 1]);
+	}
+
+	private static long offset(int cell) {
+		return -4L * (cell + 1);
+	}
+
+	/**
+	 * Copies the store and updates one cell, as the post operator does.
+	 */
+	@Benchmark
+	public PartitionedMemory<NumberElement> copyAndSet() {
+		PartitionedMemory<NumberElement> copy = new PartitionedMemory<NumberElement>(store);
+		int i = next++ % cells;
+		copy.set(MemoryRegion.STACK, offset(i), 32, values[next % values.length]);
+		return copy;
+	}
+
+	@Benchmark
+	public NumberElement get() {
+		return store.get(MemoryRegion.STACK, offset(next++ % cells), 32);
+	}
+
+	@Benchmark
+	public PartitionedMemory<NumberElement> join() {
+		return store.join(other);
+	}
+
+	@Benchmark
+	public boolean lessOrEqual() {
+		return store.lessOrEqual(other);
+	}
+}
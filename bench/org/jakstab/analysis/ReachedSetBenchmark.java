@@ -0,0 +1,109 @@
+/*
+ * ReachedSetBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.analysis.composite.CompositeState;
+import org.jakstab.analysis.location.LocationState;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.RTLLabel;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Lookups and updates of a reached set with a given number of locations and
+ * four states per location, as performed by merge and stop in the CPA algorithm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class ReachedSetBenchmark {
+
+	private static final int statesPerLocation = 4;
+
+	@Param({"1000", "20000"})
+	public int locations;
+
+	private LocationState[] locationStates;
+	private CompositeState[] states;
+	private ReachedSet reached;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		locationStates = new LocationState[locations];
+		states = new CompositeState[locations * statesPerLocation];
+		reached = new ReachedSet();
+		for (int i = 0; i < locations; i++) {
+			locationStates[i] = new LocationState(new RTLLabel(new AbsoluteAddress(0x401000 + 4 * i)));
+			for (int j = 0; j < statesPerLocation; j++) {
+				// Any state that is not a location state works as second component
+				AbstractState value = new LocationState(new RTLLabel(new AbsoluteAddress(j)));
+				states[i * statesPerLocation + j] = new CompositeState(
+						new AbstractState[] {locationStates[i], value});
+				reached.add(states[i * statesPerLocation + j]);
+			}
+		}
+	}
+
+	/**
+	 * Iterates over the states at a location, as the merge loop does.
+	 */
+	@Benchmark
+	public int getStatesAt() {
+		int count = 0;
+		for (CompositeState s : reached.getStatesAt(locationStates[next++ % locations]))
+			if (s != null) count++;
+		return count;
+	}
+
+	/**
+	 * Counts the states at a location through a view, as precision adjustment does.
+	 */
+	@Benchmark
+	public int whereSize() {
+		return reached.select(1).where(0, locationStates[next++ % locations]).size();
+	}
+
+	/**
+	 * Iterates over the second components of the states at a location, as
+	 * the stop operator does.
+	 */
+	@Benchmark
+	public int stopView() {
+		int count = 0;
+		ReachedSet atLocation = reached.where(0, locationStates[next++ % locations]);
+		for (AbstractState a : atLocation.select(0))
+			if (a != null) count++;
+		for (AbstractState a : atLocation.select(1))
+			if (a != null) count++;
+		return count;
+	}
+
+	/**
+	 * Replaces a state by itself, as a merge that produces a new state does.
+	 */
+	@Benchmark
+	public boolean removeAdd() {
+		CompositeState s = states[next++ % states.length];
+		reached.remove(s);
+		return reached.add(s);
+	}
+}
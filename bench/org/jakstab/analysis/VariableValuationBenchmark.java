@@ -0,0 +1,84 @@
+/*
+ * VariableValuationBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.analysis.explicit.NumberElement;
+import org.jakstab.analysis.explicit.NumberElementFactory;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Operations on valuations of a given number of variables, as performed by 
+ * the post operator and merge of the explicit analyses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class VariableValuationBenchmark {
+
+	@Param({"8", "40", "200"})
+	public int variables;
+
+	private RTLVariable[] vars;
+	private NumberElement[] values;
+	private VariableValuation<NumberElement> valuation;
+	private VariableValuation<NumberElement> other;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		vars = new RTLVariable[variables];
+		for (int i = 0; i < vars.length; i++)
+			vars[i] = ExpressionFactory.createVariable("bench" + i, 32);
+		values = new NumberElement[64];
+		for (int i = 0; i < values.length; i++)
+			values[i] = new NumberElement(ExpressionFactory.createNumber(i * 7, 32));
+		valuation = new VariableValuation<NumberElement>(new NumberElementFactory());
+		for (int i = 0; i < vars.length; i++)
+			valuation.set(vars[i], values[i % values.length]);
+		// Differs in one variable, like the states merged at a join point
+		other = new VariableValuation<NumberElement>(valuation);
+		other.set(vars[variables / 2], values[values.length - 1]);
+	}
+
+	/**
+	 * Copies the valuation and updates one variable, as the post operator does.
+	 */
+	@Benchmark
+	public VariableValuation<NumberElement> copyAndSet() {
+		VariableValuation<NumberElement> copy = new VariableValuation<NumberElement>(valuation);
+		int i = next++ % variables;
+		copy.set(vars[i], values[next % values.length]);
+		return copy;
+	}
+
+	@Benchmark
+	public VariableValuation<NumberElement> join() {
+		return valuation.join(other);
+	}
+
+	@Benchmark
+	public boolean lessOrEqual() {
+		return other.lessOrEqual(valuation);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * BDDSetBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis.explicit;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Arithmetic and lattice operations on pairs of BDD backed sets, each the 
+ * union of a few ranges and single values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class BDDSetBenchmark {
+
+	private static final int PAIRS = 256;
+
+	private BDDSet[] left;
+	private BDDSet[] right;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		left = new BDDSet[PAIRS];
+		right = new BDDSet[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			left[i] = randomSet(random);
+			right[i] = randomSet(random);
+		}
+	}
+
+	private static BDDSet randomSet(Random random) {
+		long start = random.nextInt(1 << 16);
+		BDDSet set = BDDSet.range(ExpressionFactory.createNumber(start, 32), 
+				ExpressionFactory.createNumber(start + random.nextInt(256), 32));
+		for (int i = 0; i < 4; i++)
+			set = set.join(BDDSet.singleton(ExpressionFactory.createNumber(random.nextInt(), 32)));
+		return set;
+	}
+
+	@Benchmark
+	public void plus(Blackhole bh) {
+		for (int i = 0; i < PAIRS; i++)
+			bh.consume(left[i].plus(right[i]));
+	}
+
+	@Benchmark
+	public void join(Blackhole bh) {
+		for (int i = 0; i < PAIRS; i++)
+			bh.consume(left[i].join(right[i]));
+	}
+
+	@Benchmark
+	public void meet(Blackhole bh) {
+		for (int i = 0; i < PAIRS; i++)
+			bh.consume(left[i].meet(right[i]));
+	}
+
+	@Benchmark
+	public void lessOrEqual(Blackhole bh) {
+		for (int i = 0; i < PAIRS; i++)
+			bh.consume(left[i].lessOrEqual(right[i]));
+	}
+}
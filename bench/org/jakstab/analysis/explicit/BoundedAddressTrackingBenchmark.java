@@ -0,0 +1,78 @@
+/*
+ * BoundedAddressTrackingBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis.explicit;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.analysis.MemoryRegion;
+import org.jakstab.analysis.ReachedSet;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Applies the precision operator to a sequence of states with a given number
+ * of global cells, where each state changes a single cell of its predecessor.
+ * Guards against prec scaling with the size of the state instead of with 
+ * the size of the change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class BoundedAddressTrackingBenchmark {
+
+	// Bounds the number of values collected per cell
+	private static final int VALUES = 4;
+
+	@Param({"100", "1000", "10000"})
+	public int cells;
+
+	private BoundedAddressTracking analysis;
+	private ExplicitPrecision precision;
+	private ReachedSet reached;
+	private BasedNumberValuation state;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		analysis = new BoundedAddressTracking();
+		precision = new ExplicitPrecision(BoundedAddressTracking.varThreshold.getValue());
+		reached = new ReachedSet();
+		state = new BasedNumberValuation(BasedNumberValuation.createInitialState());
+		for (int i = 0; i < cells; i++)
+			state.getStore().set(MemoryRegion.GLOBAL, address(i), 32, value(i));
+	}
+
+	private static long address(int cell) {
+		return 0x1000 + 4L * cell;
+	}
+
+	private static BasedNumberElement value(int v) {
+		return new BasedNumberElement(ExpressionFactory.createNumber(v % VALUES, 32));
+	}
+
+	@Benchmark
+	public BasedNumberValuation prec() {
+		BasedNumberValuation succ = new BasedNumberValuation(state);
+		int k = next++;
+		succ.getStore().set(MemoryRegion.GLOBAL, address(k % cells), 32, value(k));
+		state = (BasedNumberValuation)analysis.prec(succ, precision, reached).getLeft();
+		return state;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * IntervalElementBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis.intervals;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.analysis.MemoryRegion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Arithmetic and lattice operations on pairs of strided intervals.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class IntervalElementBenchmark {
+
+	private static final int PAIRS = 1024;
+
+	private IntervalElement[] left;
+	private IntervalElement[] right;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		left = new IntervalElement[PAIRS];
+		right = new IntervalElement[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			left[i] = randomInterval(random);
+			right[i] = randomInterval(random);
+		}
+	}
+
+	private static IntervalElement randomInterval(Random random) {
+		long stride = 1L << random.nextInt(4);
+		long start = stride * (random.nextInt(2000) - 1000);
+		long end = start + stride * random.nextInt(100);
+		return new IntervalElement(MemoryRegion.GLOBAL, start, end, start == end ? 0 : stride, 32);
+	}
+
+	@Benchmark
+	public void plus(Blackhole bh) {
+		for (int i = 0; i < PAIRS; i++)
+			bh.consume(left[i].plus(right[i]));
+	}
+
+	@Benchmark
+	public void multiply(Blackhole bh) {
+		for (int i = 0; i < PAIRS; i++)
+			bh.consume(left[i].multiply(right[i]));
+	}
+
+	@Benchmark
+	public void join(Blackhole bh) {
+		for (int i = 0; i < PAIRS; i++)
+			bh.consume(left[i].join(right[i]));
+	}
+
+	@Benchmark
+	public void widen(Blackhole bh) {
+		for (int i = 0; i < PAIRS; i++)
+			bh.consume(left[i].widen(right[i]));
+	}
+
+	@Benchmark
+	public void lessOrEqual(Blackhole bh) {
+		for (int i = 0; i < PAIRS; i++)
+			bh.consume(left[i].lessOrEqual(right[i]));
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * X86DisassemblerBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.disasm.x86;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.Fixtures;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.disasm.Disassembler;
+import org.jakstab.loader.ExecutableImage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decodes all instructions found by a linear sweep of a binary.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class X86DisassemblerBenchmark {
+
+	@Param({"helloworld.exe", "jumptable.exe", "pointer_arithmetic.exe"})
+	public String binary;
+
+	private Disassembler disassembler;
+	private long[] filePointers;
+
+	@Setup
+	public void setUp() throws Exception {
+		ExecutableImage module = Fixtures.loadProgram(binary).getMainModule();
+		disassembler = module.getDisassembler();
+		List<AbsoluteAddress> addresses = Fixtures.sweep(module);
+		filePointers = new long[addresses.size()];
+		for (int i = 0; i < filePointers.length; i++)
+			filePointers[i] = module.getFilePointer(addresses.get(i));
+	}
+
+	@Benchmark
+	public void decodeInstruction(Blackhole bh) {
+		for (long fp : filePointers)
+			bh.consume(disassembler.decodeInstruction(fp));
+	}
+}
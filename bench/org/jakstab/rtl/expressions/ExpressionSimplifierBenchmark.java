@@ -0,0 +1,78 @@
+/*
+ * ExpressionSimplifierBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.rtl.expressions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.Fixtures;
+import org.jakstab.Program;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.rtl.statements.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Simplifies the expressions of the RTL translation of a binary. The 
+ * simplifier's result cache is part of the measurement, as it is during 
+ * analysis.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class ExpressionSimplifierBenchmark {
+
+	@Param({"helloworld.exe", "pointer_arithmetic.exe"})
+	public String binary;
+
+	private ExpressionSimplifier simplifier;
+	private RTLExpression[] expressions;
+
+	@Setup
+	public void setUp() throws Exception {
+		Program program = Fixtures.loadProgram(binary);
+		List<RTLExpression> list = new ArrayList<RTLExpression>();
+		for (AbsoluteAddress a : Fixtures.sweep(program.getMainModule())) {
+			StatementSequence seq = program.getArchitecture().getRTLEquivalent(a, program.getInstruction(a));
+			for (RTLStatement s : seq) {
+				RTLExpression e = null;
+				if (s instanceof RTLVariableAssignment)
+					e = ((RTLVariableAssignment)s).getRightHandSide();
+				else if (s instanceof RTLMemoryAssignment)
+					e = ((RTLMemoryAssignment)s).getRightHandSide();
+				else if (s instanceof RTLAssume)
+					e = ((RTLAssume)s).getAssumption();
+				else if (s instanceof RTLGoto)
+					e = ((RTLGoto)s).getCondition();
+				if (e != null)
+					list.add(e);
+			}
+		}
+		expressions = list.toArray(new RTLExpression[list.size()]);
+		simplifier = ExpressionSimplifier.getInstance();
+	}
+
+	@Benchmark
+	public void simplify(Blackhole bh) {
+		for (RTLExpression e : expressions)
+			bh.consume(simplifier.simplify(e));
+	}
+}
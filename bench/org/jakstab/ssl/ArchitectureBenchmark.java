@@ -0,0 +1,70 @@
+/*
+ * ArchitectureBenchmark.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.ssl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jakstab.Fixtures;
+import org.jakstab.Options;
+import org.jakstab.Program;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.asm.Instruction;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Translates all instructions found by a linear sweep of a binary to RTL, 
+ * with and without the translation cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class ArchitectureBenchmark {
+
+	@Param({"helloworld.exe", "pointer_arithmetic.exe"})
+	public String binary;
+
+	@Param({"true", "false"})
+	public boolean rtlCache;
+
+	private Architecture arch;
+	private AbsoluteAddress[] addresses;
+	private Instruction[] instructions;
+
+	@Setup
+	public void setUp() throws Exception {
+		Options.noRtlCache.setValue(!rtlCache);
+		Program program = Fixtures.loadProgram(binary);
+		// A fresh architecture, so the cache only holds translations from this benchmark
+		arch = new Architecture(Options.sslFilename.getValue());
+		List<AbsoluteAddress> sweep = Fixtures.sweep(program.getMainModule());
+		addresses = sweep.toArray(new AbsoluteAddress[sweep.size()]);
+		instructions = new Instruction[addresses.length];
+		for (int i = 0; i < addresses.length; i++)
+			instructions[i] = program.getInstruction(addresses[i]);
+	}
+
+	@Benchmark
+	public void getRTLEquivalent(Blackhole bh) {
+		for (int i = 0; i < addresses.length; i++)
+			bh.consume(arch.getRTLEquivalent(addresses[i], instructions[i]));
+	}
+}
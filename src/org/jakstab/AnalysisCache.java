@@ -0,0 +1,473 @@
+/*
+ * AnalysisCache.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.RTLLabel;
+import org.jakstab.loader.Win32StubLibrary;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
+import org.jakstab.rtl.expressions.ExpressionSimplifier;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.util.FastSet;
+import org.jakstab.util.Logger;
+
+/**
+ * An on-disk cache for the results of control flow reconstruction. Entries
+ * are keyed by a hash of the contents of all input files, the SSL file, the
+ * simplification rules, the stub definition files, and all options that can
+ * influence the reconstruction. Only completed and sound reconstructions are
+ * stored. An entry stores the addresses of the disassembled instructions,
+ * the statement map, the unresolved branches, and the edges of the
+ * reconstructed CFA. Instructions are disassembled again when loading, as
+ * that is fast and deterministic.
+ * 
+ * The total size of the cache directory is kept below a maximum by evicting
+ * the least recently used entries.
+ * 
+ * The cache directory also records how many states each worklist strategy
+ * visited in the last completed reconstruction of an input, so the 
+ * statistics can compare a strategy against a previous FIFO run.
+ */
+public class AnalysisCache {
+
+	private static final Logger logger = Logger.getLogger(AnalysisCache.class);
+
+	private static final int MAGIC = 0x4a4b4346; // "JKCF"
+	private static final int FORMAT_VERSION = 1;
+	private static final String SUFFIX = ".jkc";
+	private static final String STATS_FILE = "cache.stats";
+	private static final String VISITS_FILE = "visits.stats";
+
+	private static final FilenameFilter entryFilter = new FilenameFilter() {
+		@Override
+		public boolean accept(File dir, String name) {
+			return name.endsWith(SUFFIX);
+		}
+	};
+
+	private final File directory;
+	private final long maxSize;
+
+	private int hits;
+	private int misses;
+	private int stores;
+	private int evictions;
+	private long bytesRead;
+	private long bytesWritten;
+
+	public AnalysisCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			logger.error("Cannot create cache directory " + directory);
+	}
+
+	/**
+	 * Computes the cache key for the current command line, i.e., the given
+	 * input files and the SSL file and options set in {@link Options}.
+	 * 
+	 * @param files the input files in the order in which they are loaded
+	 * @return a hexadecimal hash string
+	 */
+	public static String computeKey(List<File> files) throws IOException {
+		return computeKey(files, false);
+	}
+
+	/**
+	 * Computes a key like {@link #computeKey(List)}, but ignoring the worklist
+	 * strategy. It identifies the reconstructions whose visited states are 
+	 * compared in {@link #getRecordedVisits(String, String)}.
+	 * 
+	 * @param files the input files in the order in which they are loaded
+	 * @return a hexadecimal hash string
+	 */
+	public static String computeStrategyIndependentKey(List<File> files) throws IOException {
+		return computeKey(files, true);
+	}
+
+	private static String computeKey(List<File> files, boolean ignoreWorklist) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage());
+		}
+		update(digest, Main.version + "/" + FORMAT_VERSION + "/" + RTLOutputStream.FORMAT_VERSION);
+		for (File file : files)
+			update(digest, file);
+		update(digest, new File(Options.sslFilename.getValue()));
+		update(digest, ExpressionSimplifier.getSpecificationFile());
+		for (File file : Win32StubLibrary.getDefinitionFiles())
+			update(digest, file);
+
+		// Options that only affect output, secondary analyses, or performance
+		Set<JOption<?>> excluded = new HashSet<JOption<?>>(Arrays.<JOption<?>>asList(
+				Options.sslFilename, Options.secondaryCPAs, Options.backward,
+				Options.threads, Options.graphThreads, Options.background, Options.verbosity,
+				Options.timeout, Options.dumpStates, Options.outputLocationsWithMostStates,
+				Options.graphML, Options.noGraphs, Options.binaryGraphs, Options.compressGraphs,
+				Options.procedureGraph, Options.profile, Options.slowPost, Options.checkpoint, Options.resume,
+				Options.spillThreshold, Options.hashCons, Options.noRtlCache, Options.predisassemble, Options.noSSLSnapshots,
+				Options.cacheDir, Options.cacheSize, Options.batch, Options.batchThreads));
+		if (ignoreWorklist)
+			excluded.add(Options.worklist);
+		update(digest, Options.getOptionValues(excluded));
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest())
+			key.append(String.format("%02x", b & 0xFF));
+		return key.toString();
+	}
+
+	private static void update(MessageDigest digest, String s) {
+		try {
+			digest.update(s.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+		digest.update((byte)0);
+	}
+
+	private static void update(MessageDigest digest, File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[65536];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				digest.update(buffer, 0, n);
+		} finally {
+			in.close();
+		}
+		update(digest, Long.toString(file.length()));
+	}
+
+	private File getFile(String key) {
+		return new File(directory, key + SUFFIX);
+	}
+
+	/**
+	 * Loads the cache entry for the given key into the program, i.e., adds
+	 * instructions, statements, and unresolved branches, and sets the CFA.
+	 * 
+	 * @return true if an entry was found and loaded, false otherwise.
+	 */
+	public boolean load(String key, Program program) {
+		File file = getFile(key);
+		if (!file.isFile()) {
+			misses++;
+			updatePersistentStatistics("misses", 1);
+			return false;
+		}
+
+		List<AbsoluteAddress> addresses;
+		List<RTLStatement> statements;
+		Set<RTLLabel> unresolvedBranches;
+		Set<CFAEdge> edges;
+		RTLInputStream in = null;
+		try {
+			in = new RTLInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(key))
+				throw new IOException("Invalid header");
+
+			int count = in.readInt();
+			addresses = new ArrayList<AbsoluteAddress>(count);
+			long address = 0;
+			for (int i = 0; i < count; i++) {
+				address += in.readLong();
+				addresses.add(new AbsoluteAddress(address));
+			}
+
+			count = in.readInt();
+			statements = new ArrayList<RTLStatement>(count);
+			for (int i = 0; i < count; i++)
+				statements.add(in.readStatement());
+
+			count = in.readInt();
+			unresolvedBranches = new FastSet<RTLLabel>();
+			for (int i = 0; i < count; i++)
+				unresolvedBranches.add(in.readLabel());
+
+			count = in.readInt();
+			edges = new HashSet<CFAEdge>(count);
+			for (int i = 0; i < count; i++)
+				edges.add(in.readEdge());
+		} catch (Exception e) {
+			// Also catches runtime exceptions from corrupted input
+			logger.warn("Discarding unreadable cache entry " + file.getName() + ": " + e);
+			close(in);
+			file.delete();
+			misses++;
+			updatePersistentStatistics("misses", 1);
+			return false;
+		}
+		close(in);
+
+		for (AbsoluteAddress a : addresses) {
+			if (program.getInstruction(a) == null)
+				logger.warn("Cached instruction at " + a + " could not be disassembled!");
+		}
+		for (RTLStatement s : statements)
+			program.putStatement(s);
+		program.setUnresolvedBranches(unresolvedBranches);
+		program.setCFA(edges);
+		program.releasePredisassembled();
+
+		// Mark as recently used for eviction
+		file.setLastModified(System.currentTimeMillis());
+		hits++;
+		bytesRead += file.length();
+		updatePersistentStatistics("hits", 1);
+		logger.info("Loaded reconstructed CFA from cache entry " + file.getName());
+		return true;
+	}
+
+	/**
+	 * Stores the instructions, statements, unresolved branches and the CFA of
+	 * the program in the cache under the given key, and evicts old entries if
+	 * the cache exceeds its maximum size.
+	 */
+	public void store(String key, Program program) {
+		for (CFAEdge e : program.getCFG().getEdges()) {
+			if (!(e.getSource() instanceof RTLLabel && e.getTarget() instanceof RTLLabel)) {
+				logger.info("CFA contains locations other than RTL labels, not caching it.");
+				return;
+			}
+		}
+
+		File file = getFile(key);
+		File tmpFile = null;
+		RTLOutputStream out = null;
+		try {
+			tmpFile = File.createTempFile(key, ".tmp", directory);
+			out = new RTLOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(key);
+
+			Set<AbsoluteAddress> addresses = program.getAssemblyMap().keySet();
+			out.writeInt(addresses.size());
+			long lastAddress = 0;
+			for (AbsoluteAddress a : addresses) {
+				out.writeLong(a.getValue() - lastAddress);
+				lastAddress = a.getValue();
+			}
+
+			Collection<RTLStatement> statements = program.getStatements();
+			out.writeInt(statements.size());
+			for (RTLStatement s : statements)
+				out.writeStatement(s);
+
+			Set<RTLLabel> unresolvedBranches = program.getUnresolvedBranches();
+			out.writeInt(unresolvedBranches.size());
+			for (RTLLabel l : unresolvedBranches)
+				out.writeLabel(l);
+
+			Set<CFAEdge> edges = program.getCFG().getEdges();
+			out.writeInt(edges.size());
+			for (CFAEdge e : edges)
+				out.writeEdge(e);
+			out.close();
+			out = null;
+
+			// Replace atomically, so concurrent runs never see partial entries
+			if (!tmpFile.renameTo(file)) {
+				file.delete();
+				if (!tmpFile.renameTo(file))
+					throw new IOException("Cannot rename " + tmpFile + " to " + file);
+			}
+		} catch (IOException e) {
+			logger.error("Failed to write cache entry " + file.getName() + ": " + e.getMessage());
+			close(out);
+			if (tmpFile != null)
+				tmpFile.delete();
+			return;
+		}
+		stores++;
+		bytesWritten += file.length();
+		logger.info("Stored reconstructed CFA in cache entry " + file.getName());
+		updatePersistentStatistics("stores", 1);
+		int evicted = evict();
+		if (evicted > 0)
+			updatePersistentStatistics("evictions", evicted);
+	}
+
+	/**
+	 * Deletes least recently used entries until the cache fits its maximum size.
+	 * 
+	 * @return the number of deleted entries
+	 */
+	private int evict() {
+		// Several caches on the same directory may be used concurrently in batch mode
+		synchronized (AnalysisCache.class) {
+			File[] entries = directory.listFiles(entryFilter);
+			if (entries == null)
+				return 0;
+			long totalSize = 0;
+			for (File f : entries)
+				totalSize += f.length();
+			if (totalSize <= maxSize)
+				return 0;
+
+			Arrays.sort(entries, new Comparator<File>() {
+				@Override
+				public int compare(File f1, File f2) {
+					long m1 = f1.lastModified();
+					long m2 = f2.lastModified();
+					return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+				}
+			});
+			int count = 0;
+			for (File f : entries) {
+				if (totalSize <= maxSize)
+					break;
+				long size = f.length();
+				if (f.delete()) {
+					logger.verbose("Evicted cache entry " + f.getName());
+					totalSize -= size;
+					count++;
+				}
+			}
+			evictions += count;
+			return count;
+		}
+	}
+
+	/**
+	 * Records the number of states visited by a completed reconstruction.
+	 * 
+	 * @param key the strategy independent key of the input
+	 * @param strategy the worklist strategy used
+	 * @param statesVisited the number of states visited
+	 */
+	public void recordVisits(String key, String strategy, long statesVisited) {
+		synchronized (AnalysisCache.class) {
+			Properties visits = readProperties(VISITS_FILE);
+			visits.setProperty(key + "." + strategy, Long.toString(statesVisited));
+			writeProperties(VISITS_FILE, visits, "Jakstab states visited per input and worklist strategy");
+		}
+	}
+
+	/**
+	 * Returns the number of states visited by the last completed 
+	 * reconstruction of an input with the given strategy.
+	 * 
+	 * @param key the strategy independent key of the input
+	 * @param strategy the worklist strategy
+	 * @return the number of states visited, or 0 if no run was recorded
+	 */
+	public long getRecordedVisits(String key, String strategy) {
+		return getCount(readProperties(VISITS_FILE), key + "." + strategy);
+	}
+
+	private Properties readPersistentStatistics() {
+		return readProperties(STATS_FILE);
+	}
+
+	private Properties readProperties(String fileName) {
+		Properties stats = new Properties();
+		File statsFile = new File(directory, fileName);
+		if (statsFile.isFile()) {
+			try {
+				InputStream in = new FileInputStream(statsFile);
+				try {
+					stats.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// Start over with fresh statistics
+				stats.clear();
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Adds to a counter in the statistics kept in the cache directory over all runs.
+	 */
+	private void updatePersistentStatistics(String counter, int delta) {
+		synchronized (AnalysisCache.class) {
+			Properties stats = readPersistentStatistics();
+			stats.setProperty(counter, Long.toString(getCount(stats, counter) + delta));
+			writeProperties(STATS_FILE, stats, "Jakstab analysis cache statistics");
+		}
+	}
+
+	private void writeProperties(String fileName, Properties properties, String comment) {
+		try {
+			OutputStream out = new FileOutputStream(new File(directory, fileName));
+			try {
+				properties.store(out, comment);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot write " + fileName + ": " + e.getMessage());
+		}
+	}
+
+	private static long getCount(Properties stats, String counter) {
+		try {
+			return Long.parseLong(stats.getProperty(counter, "0"));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Logs the statistics of this run and of all runs using the cache directory.
+	 */
+	public void logStatistics() {
+		File[] entries = directory.listFiles(entryFilter);
+		long totalSize = 0;
+		int entryCount = 0;
+		if (entries != null) {
+			entryCount = entries.length;
+			for (File f : entries)
+				totalSize += f.length();
+		}
+		Properties stats = readPersistentStatistics();
+		long totalHits = getCount(stats, "hits");
+		long totalMisses = getCount(stats, "misses");
+
+		logger.error( "   Cache hits/misses:                   " + String.format("%8s", hits + "/" + misses));
+		logger.error( "   Cache bytes read/written:            " + String.format("%8s", bytesRead + "/" + bytesWritten));
+		logger.error( "   Cache stores/evictions:              " + String.format("%8s", stores + "/" + evictions));
+		logger.error( "   Cache entries:                       " + String.format("%8d", entryCount));
+		logger.error( "   Cache size:                          " + String.format("%8dKB", totalSize / 1024));
+		logger.error( "   Cache hit rate (all runs):           " + String.format("%7.1f%%", 
+				100.0 * totalHits / Math.max(1, totalHits + totalMisses)));
+	}
+
+	private static void close(Closeable c) {
+		if (c == null) return;
+		try {
+			c.close();
+		} catch (IOException e) {
+			// Ignore
+		}
+	}
+}
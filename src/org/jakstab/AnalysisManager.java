@@ -42,13 +42,11 @@ public class AnalysisManager {
 	
 	private Map<Character, Class<? extends ConfigurableProgramAnalysis>> shortHandMap;
 	private Map<Class<? extends ConfigurableProgramAnalysis>, AnalysisProperties> analysisProperties;
-	private Map<Class<? extends ConfigurableProgramAnalysis>, ConfigurableProgramAnalysis> analysisInstances;
 	
 	private AnalysisManager() {
 		
 		shortHandMap = new HashMap<Character, Class<? extends ConfigurableProgramAnalysis>>();
 		analysisProperties = new HashMap<Class<? extends ConfigurableProgramAnalysis>, AnalysisProperties>();
-		analysisInstances = new HashMap<Class<? extends ConfigurableProgramAnalysis>, ConfigurableProgramAnalysis>();
 		
 		// Enumerate all analyses and register them
 		String pkg = "org.jakstab.analysis";
@@ -85,7 +83,10 @@ public class AnalysisManager {
 		
 		try {
 			ConfigurableProgramAnalysis cpaInstance = cpaClass.newInstance();
-			analysisInstances.put(cpaClass, cpaInstance);
+			// Instances are kept per program, so concurrent analyses do not see each other's
+			Program program = Program.getProgram();
+			if (program != null)
+				program.putAnalysis(cpaInstance);
 			return cpaInstance;
 		} catch (InstantiationException e) {
 			e.printStackTrace();
@@ -107,9 +108,11 @@ public class AnalysisManager {
 	 * 
 	 * @param clazz the class of the analysis to get
 	 * @return the instance of clazz most recently instantiated by this analysis manager
+	 * for the current program
 	 */
 	public ConfigurableProgramAnalysis getAnalysis(Class<? extends ConfigurableProgramAnalysis> clazz) {
-		return analysisInstances.get(clazz);
+		Program program = Program.getProgram();
+		return program == null ? null : program.getAnalysis(clazz);
 	}
 	
 	public String getName(char shortHand) {
@@ -0,0 +1,333 @@
+/*
+ * BatchAnalysis.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jakstab.analysis.ControlFlowReconstruction;
+import org.jakstab.analysis.explicit.BoundedAddressTracking;
+import org.jakstab.loader.BinaryParseException;
+import org.jakstab.loader.DefaultHarness;
+import org.jakstab.loader.HeuristicHarness;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.ssl.Architecture;
+import org.jakstab.util.Characters;
+import org.jakstab.util.Logger;
+
+/**
+ * Analyzes a set of binaries in a single JVM, so the machine specification is
+ * parsed only once and the JIT compiled code is reused. Binaries are analyzed
+ * concurrently on a bounded pool of threads. Each analysis has its own
+ * {@link Program}, which is bound to the thread running it, and the options
+ * from the command line apply to all binaries.
+ * 
+ * Some state remains shared between the analyses and is synchronized instead:
+ * the variable tables of ExpressionFactory, the RTL translation cache of the
+ * architecture, the simplifier cache, the persistent analysis cache, the 
+ * collection usage thresholds managed by {@link org.jakstab.util.MemoryGovernor},
+ * and the debug counter of FastSet conversions. Reached sets index their
+ * states by location within each reached set, so they share no state. 
+ * 
+ * Memory regions are registered globally by name, so analyses of different 
+ * binaries share the region objects for equal names (e.g., allocation sites at
+ * the same address). Regions are immutable, and summary regions are registered
+ * separately from regions of the same name, so one analysis cannot turn the 
+ * regions of another into summaries. The counters for the identifiers of 
+ * abstract states are atomic and shared, so identifiers are unique across all
+ * analyses of a batch but not consecutive within one.
+ * 
+ * For each binary, a line of statistics is printed in the format of the single
+ * file mode, followed by the aggregate throughput at the end.
+ */
+public class BatchAnalysis {
+
+	private static final Logger logger = Logger.getLogger(BatchAnalysis.class);
+
+	private final Architecture arch;
+	private final List<File> files;
+	private final int threads;
+
+	// Reconstructions currently running, so they can be stopped on shutdown
+	private final Set<ControlFlowReconstruction> running;
+	private volatile boolean stopped;
+
+	/**
+	 * Result of analyzing a single binary.
+	 */
+	private static final class Result {
+		final File file;
+		boolean completed;
+		int instructions;
+		long statesVisited;
+		long time;
+		String status;
+
+		Result(File file) {
+			this.file = file;
+		}
+	}
+
+	public BatchAnalysis(Architecture arch, List<File> files, int threads) {
+		this.arch = arch;
+		this.files = files;
+		this.threads = Math.max(1, Math.min(threads, files.size()));
+		running = Collections.synchronizedSet(new HashSet<ControlFlowReconstruction>());
+	}
+
+	/**
+	 * Returns the binaries to analyze, i.e., the files in the given directory
+	 * or the files listed in the given text file. In a list, empty lines and
+	 * lines starting with # are ignored, and relative paths are resolved 
+	 * against the directory of the list.
+	 */
+	public static List<File> readFileList(File listOrDir) throws IOException {
+		List<File> files = new ArrayList<File>();
+		if (listOrDir.isDirectory()) {
+			File[] entries = listOrDir.listFiles();
+			if (entries == null)
+				throw new IOException("Cannot list directory " + listOrDir);
+			Arrays.sort(entries);
+			for (File f : entries)
+				if (f.isFile())
+					files.add(f.getAbsoluteFile());
+		} else {
+			BufferedReader in = new BufferedReader(new FileReader(listOrDir));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					line = line.trim();
+					if (line.isEmpty() || line.startsWith("#"))
+						continue;
+					File f = new File(line);
+					if (!f.isAbsolute())
+						f = new File(listOrDir.getAbsoluteFile().getParentFile(), line);
+					files.add(f.getAbsoluteFile());
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Analyzes all binaries and logs the aggregate statistics.
+	 * 
+	 * @return the number of binaries whose analysis did not complete
+	 */
+	public int run() {
+		logger.error("Analyzing " + files.size() + " binaries with " + threads + " threads.");
+		long startTime = System.currentTimeMillis();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Result>> futures = new ArrayList<Future<Result>>(files.size());
+		for (final File file : files) {
+			futures.add(pool.submit(new Callable<Result>() {
+				@Override
+				public Result call() {
+					try {
+						return analyze(file);
+					} finally {
+						Program.releaseProgram();
+					}
+				}
+			}));
+		}
+		pool.shutdown();
+
+		List<Result> results = new ArrayList<Result>(files.size());
+		for (int i = 0; i < futures.size(); i++) {
+			Result r;
+			try {
+				r = futures.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stop();
+				break;
+			} catch (ExecutionException e) {
+				logger.error("Analysis of " + files.get(i) + " failed!", e.getCause());
+				r = new Result(files.get(i));
+				r.status = e.getCause().getClass().getSimpleName();
+			}
+			results.add(r);
+		}
+		long duration = Math.max(1, System.currentTimeMillis() - startTime);
+
+		int completed = 0;
+		long instructions = 0;
+		long statesVisited = 0;
+		long analysisTime = 0;
+		for (Result r : results) {
+			if (r.completed) completed++;
+			instructions += r.instructions;
+			statesVisited += r.statesVisited;
+			analysisTime += r.time;
+		}
+
+		logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+		logger.error( "   Statistics for batch of " + files.size() + " binaries");
+		logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+		logger.error( "   Runtime:                     " + String.format("%8dms", duration));
+		logger.error( "   Sum of analysis times:       " + String.format("%8dms", analysisTime));
+		logger.error( "   Threads:                             " + String.format("%8d", threads));
+		logger.error( "   Completed:                           " + String.format("%8d", completed));
+		logger.error( "   Failed or interrupted:               " + String.format("%8d", files.size() - completed));
+		logger.error( "   Instructions:                        " + String.format("%8d", instructions));
+		logger.error( "   States visited:                      " + String.format("%8d", statesVisited));
+		logger.error( "   Binaries/second:                     " + String.format("%8.2f", 1000.0 * results.size() / duration));
+		logger.error( "   Instructions/second:                 " + String.format("%8d", 1000L * instructions / duration));
+		logger.error( "   States/second:                       " + String.format("%8d", 1000L * statesVisited / duration));
+		logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+		return files.size() - completed;
+	}
+
+	/**
+	 * Stops all running analyses and skips the binaries not started yet.
+	 */
+	public void stop() {
+		stopped = true;
+		synchronized (running) {
+			for (ControlFlowReconstruction cfr : running)
+				cfr.stop();
+		}
+	}
+
+	private Result analyze(File mainFile) {
+		Result result = new Result(mainFile);
+		if (stopped) {
+			result.status = "skipped";
+			return result;
+		}
+		long startTime = System.currentTimeMillis();
+		StatsTracker stats = new StatsTracker();
+		String name = mainFile.getName();
+
+		/////////////////////////
+		// Parse executable
+
+		Program program = Program.createProgram(arch);
+		String baseFileName = Main.getBaseFileName(mainFile);
+		try {
+			for (String moduleName : Options.moduleFilenames)
+				program.loadModule(new File(moduleName).getAbsoluteFile());
+			program.loadMainModule(mainFile);
+		} catch (IOException e) {
+			logger.error(name + ": Cannot read file: " + e.getMessage());
+			result.status = e.getClass().getSimpleName();
+			return result;
+		} catch (BinaryParseException e) {
+			logger.error(name + ": Error during parsing: " + e.getMessage());
+			result.status = e.getClass().getSimpleName();
+			return result;
+		}
+
+		if (Options.startAddress.getValue() > 0) {
+			program.setEntryAddress(new AbsoluteAddress(Options.startAddress.getValue()));
+		} else if(!Options.startSymbol.getValue().isEmpty()) {
+			program.setEntrySymbol(Options.startSymbol.getValue());
+		}
+		program.installHarness(Options.heuristicEntryPoints.getValue() ? new HeuristicHarness() : new DefaultHarness());
+
+		/////////////////////////
+		// Reconstruct Control Flow
+
+		AnalysisCache cache = null;
+		String cacheKey = null;
+		String visitsKey = null;
+		if (!Options.cacheDir.getValue().isEmpty()) {
+			List<File> inputFiles = new LinkedList<File>();
+			for (String moduleName : Options.moduleFilenames)
+				inputFiles.add(new File(moduleName));
+			inputFiles.add(mainFile);
+			try {
+				cacheKey = AnalysisCache.computeKey(inputFiles);
+				visitsKey = AnalysisCache.computeStrategyIndependentKey(inputFiles);
+				cache = new AnalysisCache(new File(Options.cacheDir.getValue()), 
+						Options.cacheSize.getValue() * 1024L * 1024L);
+			} catch (IOException e) {
+				logger.error(name + ": Cannot compute cache key, not using the analysis cache: " + e.getMessage());
+			}
+		}
+
+		stats.record(name);
+		stats.record(Main.version);
+		long statesVisited;
+		int stateCount;
+		if (cache != null && cache.load(cacheKey, program)) {
+			// The cache only contains completed and sound reconstructions
+			result.completed = true;
+			result.status = "cached";
+			statesVisited = 0;
+			stateCount = 0;
+		} else {
+			ControlFlowReconstruction cfr = new ControlFlowReconstruction(program);
+			running.add(cfr);
+			try {
+				// Check again, stop() may have missed the new reconstruction
+				if (!stopped)
+					cfr.run();
+			} catch (RuntimeException e) {
+				logger.error(name + ": Runtime exception during Control Flow Reconstruction!", e);
+			} finally {
+				running.remove(cfr);
+			}
+			result.completed = cfr.isCompleted();
+			result.status = cfr.getStatus();
+			statesVisited = cfr.getNumberOfStatesVisited();
+			stateCount = cfr.getReachedStates().size();
+			cfr.getReachedStates().release();
+			if (cache != null && result.completed) {
+				if (cfr.isSound())
+					cache.store(cacheKey, program);
+				// Lets a later run with another worklist strategy report its reduction
+				cache.recordVisits(visitsKey, cfr.getWorklistStrategy(), statesVisited);
+			}
+		}
+		result.time = System.currentTimeMillis() - startTime;
+		result.instructions = program.getInstructionCount();
+		result.statesVisited = statesVisited;
+
+		new ProgramGraphWriter(program).writeDisassembly(baseFileName + "_jak.asm");
+		if (program.getProfile() != null) {
+			try {
+				program.getProfile().writeReport(baseFileName + "_profile.json");
+			} catch (IOException e) {
+				logger.error(name + ": Cannot write CPA profile: " + e.getMessage());
+			}
+		}
+
+		stats.record(program.getInstructionCount());
+		stats.record(program.getStatementCount());
+		stats.record(program.getCFG().numEdges());
+		stats.record(program.countIndirectBranches());
+		stats.record(program.getUnresolvedBranches().size());
+		stats.record(statesVisited);
+		stats.record(stateCount);
+		stats.record(Math.round(result.time / 1000.0));
+		stats.record(result.status);
+		stats.record(Options.cpas.getValue());
+		stats.record(BoundedAddressTracking.varThreshold.getValue());
+		stats.record(BoundedAddressTracking.heapThreshold.getValue());
+		stats.record(Options.basicBlocks.getValue() ? "y" : "n");
+		stats.record(Options.summarizeRep.getValue() ? "y" : "n" );
+		stats.print();
+
+		return result;
+	}
+}
@@ -87,6 +87,11 @@ public class Main {
 			return;
 		}
 
+		if (!Options.batch.getValue().isEmpty()) {
+			runBatch(arch);
+			return;
+		}
+
 		long overallStartTime = System.currentTimeMillis();
 
 		/////////////////////////
@@ -195,101 +200,54 @@ public class Main {
 
 			/////////////////////////
 			// Reconstruct Control Flow
-			ControlFlowReconstruction cfr = new ControlFlowReconstruction(program);
-			// Execute the algorithm
-			try {
-				runAlgorithm(cfr);
-			} catch (RuntimeException r) {
-				logger.error("!! Runtime exception during Control Flow Reconstruction! Trying to shut down gracefully.");
-				r.printStackTrace();
-			}
-			long overallEndTime = System.currentTimeMillis();
-
-			ReachedSet reached = cfr.getReachedStates();
-			if (Options.dumpStates.getValue()) {
-				// output
-				logger.fatal("=================");
-				logger.fatal(" Reached states:");
-				logger.fatal("=================");
-				AbstractState[] stateArray = reached.toArray(new AbstractState[reached.size()]);
-				Arrays.sort(stateArray, new Comparator<AbstractState>() {
-					@Override
-					public int compare(AbstractState o1, AbstractState o2) {
-						return ((CompositeState)o1).getLocation().compareTo(((CompositeState)o2).getLocation());
+			AnalysisCache cache = null;
+			String cacheKey = null;
+			String visitsKey = null;
+			boolean useCheckpoints = Options.checkpoint.getValue() > 0 || Options.resume.getValue();
+			if (!Options.cacheDir.getValue().isEmpty() || useCheckpoints) {
+				List<File> inputFiles = new LinkedList<File>();
+				for (String moduleName : Options.moduleFilenames)
+					inputFiles.add(new File(moduleName));
+				inputFiles.add(mainFile);
+				try {
+					// Checkpoints use the same key to make sure they match files and options
+					cacheKey = AnalysisCache.computeKey(inputFiles);
+					if (!Options.cacheDir.getValue().isEmpty()) {
+						cache = new AnalysisCache(new File(Options.cacheDir.getValue()), 
+								Options.cacheSize.getValue() * 1024L * 1024L);
+						visitsKey = AnalysisCache.computeStrategyIndependentKey(inputFiles);
 					}
-				});
-				Location lastLoc = null;
-				for (AbstractState s : stateArray) {
-					if (!s.getLocation().equals(lastLoc)) {
-						lastLoc = s.getLocation();
-						logger.fatal("");
-					}
-					logger.fatal(s);
+				} catch (IOException e) {
+					logger.error("Cannot compute cache key, not using the analysis cache or checkpoints: " + e.getMessage());
 				}
 			}
 
-			int stateCount = reached.size();
-
-			if (Options.outputLocationsWithMostStates.getValue()) reached.logHighestStateCounts(10);
-
-			if (!cfr.isCompleted()) {
-				logger.error(Characters.starredBox("WARNING: Analysis interrupted, CFG might be incomplete!"));
-			}
-
-			if (!cfr.isSound()) {
-				logger.error(Characters.starredBox("WARNING: Analysis was unsound!"));
+			boolean cfrCompleted;
+			if (cache != null && cache.load(cacheKey, program)) {
+				// The cache only contains completed reconstructions
+				cfrCompleted = true;
+				long overallEndTime = System.currentTimeMillis();
+				logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+				logger.error( "   Statistics for cached Control Flow Reconstruction");
+				logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+				logger.error( "   Runtime:                     " + String.format("%8dms", (overallEndTime - overallStartTime)));
+				logger.error( "   Instructions:                        " + String.format("%8d", program.getInstructionCount()));
+				logger.error( "   RTL Statements:                      " + String.format("%8d", program.getStatementCount()));
+				logger.error( "   CFA Edges:                           " + String.format("%8d", program.getCFG().numEdges()));
+				logger.error( "   Unresolved Branches:                 " + String.format("%8d", program.getUnresolvedBranches().size()));
+				cache.logStatistics();
+				logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+				recordStatistics(stats, program, program.countIndirectBranches(), 0, 0, 
+						overallEndTime - overallStartTime, "cached");
+			} else {
+				Checkpoint checkpoint = null;
+				if (useCheckpoints && cacheKey != null)
+					checkpoint = new Checkpoint(new File(baseFileName + ".jcp"), cacheKey, 
+							Options.checkpoint.getValue() * 1000L);
+				cfrCompleted = reconstructControlFlow(program, arch, stats, checkpoint, cache, cacheKey, visitsKey, 
+						overallStartTime);
 			}
 
-			/*logger.verbose("Unresolved locations: " + program.getUnresolvedBranches());
-			for (Location l : program.getUnresolvedBranches()) {
-				AbsoluteAddress a = ((Location)l).getAddress();
-				if (program.getInstruction(a) == null) {
-					logger.verbose(l + ": " + program.getStatement((Location)l));
-				} else {
-					logger.verbose(a + "\t" + program.getInstructionString(a));
-				}
-			}*/
-
-			int indirectBranches = program.countIndirectBranches();
-
-			logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
-			logger.error( "   Statistics for Control Flow Reconstruction");
-			logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
-			logger.error( "   Runtime:                     " + String.format("%8dms", (overallEndTime - overallStartTime)));
-			logger.error( "   Instructions:                        " + String.format("%8d", program.getInstructionCount()));
-			logger.error( "   RTL Statements:                      " + String.format("%8d", program.getStatementCount()));
-			logger.error( "   CFA Edges:                           " + String.format("%8d", program.getCFG().numEdges()));
-			logger.error( "   States visited:                      " + String.format("%8d", cfr.getNumberOfStatesVisited()));
-			logger.error( "   Final state space:                   " + String.format("%8d", stateCount));
-			logger.error( "   Finished normally:                   " + String.format("%8b", cfr.isCompleted()));
-			logger.error( "   Analysis result:                     " + cfr.getStatus());
-			//				logger.error( "   Sound:                               " + String.format("%8b", cfr.isSound()));
-			logger.error( "   Indirect Branches (no import calls): " + String.format("%8d", indirectBranches));
-			logger.error( "   Unresolved Branches:                 " + String.format("%8d", program.getUnresolvedBranches().size()));
-			logger.debug("   FastSet conversions:                 " + String.format("%8d", FastSet.getConversionCount()));
-			logger.debug("   Variable count:                      " + String.format("%8d", ExpressionFactory.getVariableCount()));
-			logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
-
-			
-			stats.record(program.getInstructionCount());
-			stats.record(program.getStatementCount());
-			stats.record(program.getCFG().numEdges());
-			stats.record(indirectBranches);
-			stats.record(program.getUnresolvedBranches().size());
-			stats.record(cfr.getNumberOfStatesVisited());
-			stats.record(stateCount);
-			stats.record(Math.round((overallEndTime - overallStartTime)/1000.0));
-			stats.record(cfr.getStatus());
-			stats.record(Options.cpas.getValue());
-			stats.record(BoundedAddressTracking.varThreshold.getValue());
-			stats.record(BoundedAddressTracking.heapThreshold.getValue());
-			stats.record(Options.basicBlocks.getValue() ? "y" : "n");
-			stats.record(Options.summarizeRep.getValue() ? "y" : "n" );
-			stats.record(BasedNumberValuation.ExplicitPrintfArgs);
-			stats.record(BasedNumberValuation.OverAppPrintfArgs);
-			
-			stats.print();
-
 			ProgramGraphWriter graphWriter = new ProgramGraphWriter(program);
 			
 			graphWriter.writeDisassembly(baseFileName + "_jak.asm");
@@ -300,7 +258,7 @@ public class Main {
 				graphWriter.writeVpcAssemblyBasicBlockGraph(baseFileName + "_asmvcfg", cfr.getART());
 			}*/
 
-			if (!(cfr.isCompleted() && Options.secondaryCPAs.getValue().length() > 0)) {
+			if (!(cfrCompleted && Options.secondaryCPAs.getValue().length() > 0)) {
 				if (!Options.noGraphs.getValue()) {
 					graphWriter.writeControlFlowAutomaton(program.getCFG(), baseFileName + "_cfa");
 					graphWriter.writeAssemblyBasicBlockGraph(program.getCFG(), baseFileName + "_asmcfg");
@@ -361,20 +319,23 @@ public class Main {
 				logger.error( "   Statistics for " + Options.secondaryCPAs.getValue());
 				logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
 				logger.error( "   Runtime:                " + String.format("%8dms", (customAnalysisEndTime - customAnalysisStartTime)));
+				logger.error( "   Time in GC:             " + String.format("%8dms", cpaAlg.getGCTime()));
 				logger.error( "   States:                   " + String.format("%8d", cpaAlg.getReachedStates().size()));
+				logger.error( "   States visited:           " + String.format("%8d", cpaAlg.getNumberOfStatesVisited()));
+				logger.error( "   Visits per state:         " + String.format("%8.2f", 
+						(double)cpaAlg.getNumberOfStatesVisited() / Math.max(1, cpaAlg.getReachedStates().size())));
 				logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+				cpaAlg.getReachedStates().release();
 
 
 			}
 
 			// If procedure abstraction is active, detect procedures now
-			if (cfr.isCompleted() && Options.procedureAbstraction.getValue() == 2) {
-				cfr = null;
-				reached = null;
+			if (cfrCompleted && Options.procedureAbstraction.getValue() == 2) {
 				ProcedureAnalysis procedureAnalysis = new ProcedureAnalysis();		
 				CPAAlgorithm cpaAlg = CPAAlgorithm.createForwardAlgorithm(program.getCFG(), procedureAnalysis);
 				runAlgorithm(cpaAlg);
-				reached = cpaAlg.getReachedStates().select(1);
+				ReachedSet reached = cpaAlg.getReachedStates().select(1);
 				Set<Location> procedures = procedureAnalysis.getCallees();
 
 				SetMultimap<Location, Location> callGraph = HashMultimap.create();
@@ -388,13 +349,20 @@ public class Main {
 						callGraph.put(procedure, callSite.getRight()); 
 					}
 				}
+				cpaAlg.getReachedStates().release();
 				logger.info("Found " + procedures.size() + " function entry points from procedure analysis.");
 
 				if (!Options.noGraphs.getValue())
 					graphWriter.writeCallGraph(baseFileName + "_callgraph", callGraph);
 			}
 
-			 
+			if (program.getProfile() != null) {
+				try {
+					program.getProfile().writeReport(baseFileName + "_profile.json");
+				} catch (IOException e) {
+					logger.error("Cannot write CPA profile: " + e.getMessage());
+				}
+			}
 
 			// Kills the keypress-monitor-thread.
 			try {
@@ -415,6 +383,190 @@ public class Main {
 	}
 
 
+	/**
+	 * Runs the control flow reconstruction on the program and prints its 
+	 * statistics. A completed reconstruction is stored in the cache if one 
+	 * is given, and its visited states are compared to those of the last 
+	 * completed FIFO run recorded in the cache.
+	 * 
+	 * @return true if the reconstruction completed.
+	 */
+	private static boolean reconstructControlFlow(Program program, Architecture arch, StatsTracker stats, 
+			Checkpoint checkpoint, AnalysisCache cache, String cacheKey, String visitsKey, long overallStartTime) {
+		ControlFlowReconstruction cfr = new ControlFlowReconstruction(program);
+		if (checkpoint != null)
+			cfr.setCheckpoint(checkpoint);
+		// Execute the algorithm
+		try {
+			runAlgorithm(cfr);
+		} catch (RuntimeException r) {
+			logger.error("!! Runtime exception during Control Flow Reconstruction! Trying to shut down gracefully.");
+			r.printStackTrace();
+		}
+		long overallEndTime = System.currentTimeMillis();
+
+		ReachedSet reached = cfr.getReachedStates();
+		if (Options.dumpStates.getValue()) {
+			// output
+			logger.fatal("=================");
+			logger.fatal(" Reached states:");
+			logger.fatal("=================");
+			AbstractState[] stateArray = reached.toArray(new AbstractState[reached.size()]);
+			Arrays.sort(stateArray, new Comparator<AbstractState>() {
+				@Override
+				public int compare(AbstractState o1, AbstractState o2) {
+					return ((CompositeState)o1).getLocation().compareTo(((CompositeState)o2).getLocation());
+				}
+			});
+			Location lastLoc = null;
+			for (AbstractState s : stateArray) {
+				if (!s.getLocation().equals(lastLoc)) {
+					lastLoc = s.getLocation();
+					logger.fatal("");
+				}
+				logger.fatal(s);
+			}
+		}
+
+		int stateCount = reached.size();
+
+		if (Options.outputLocationsWithMostStates.getValue()) reached.logHighestStateCounts(10);
+		// Closes the spill store without moving spilled states back to the heap
+		reached.release();
+
+		if (!cfr.isCompleted()) {
+			logger.error(Characters.starredBox("WARNING: Analysis interrupted, CFG might be incomplete!"));
+		}
+
+		if (!cfr.isSound()) {
+			logger.error(Characters.starredBox("WARNING: Analysis was unsound!"));
+		}
+
+		/*logger.verbose("Unresolved locations: " + program.getUnresolvedBranches());
+		for (Location l : program.getUnresolvedBranches()) {
+			AbsoluteAddress a = ((Location)l).getAddress();
+			if (program.getInstruction(a) == null) {
+				logger.verbose(l + ": " + program.getStatement((Location)l));
+			} else {
+				logger.verbose(a + "\t" + program.getInstructionString(a));
+			}
+		}*/
+
+		String strategy = cfr.getWorklistStrategy();
+		long fifoVisits = 0;
+		if (cache != null) {
+			fifoVisits = cache.getRecordedVisits(visitsKey, "fifo");
+			if (cfr.isCompleted()) {
+				// A cache hit could not repeat the warning about unsoundness
+				if (cfr.isSound())
+					cache.store(cacheKey, program);
+				cache.recordVisits(visitsKey, strategy, cfr.getNumberOfStatesVisited());
+			}
+		}
+
+		int indirectBranches = program.countIndirectBranches();
+
+		logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+		logger.error( "   Statistics for Control Flow Reconstruction");
+		logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+		logger.error( "   Runtime:                     " + String.format("%8dms", (overallEndTime - overallStartTime)));
+		logger.error( "   Time in GC:                  " + String.format("%8dms", cfr.getGCTime()));
+		logger.error( "   Instructions:                        " + String.format("%8d", program.getInstructionCount()));
+		logger.error( "   RTL Statements:                      " + String.format("%8d", program.getStatementCount()));
+		logger.error( "   RTL cache hit rate:                  " + String.format("%7.1f%%", 
+				100.0 * arch.getTranslationCacheHits() / Math.max(1, arch.getTranslationCacheHits() + arch.getTranslationCacheMisses())));
+		logger.error( "   CFA Edges:                           " + String.format("%8d", program.getCFG().numEdges()));
+		logger.error( "   Worklist strategy:                   " + String.format("%8s", strategy));
+		logger.error( "   States visited:                      " + String.format("%8d", cfr.getNumberOfStatesVisited()));
+		if (!strategy.equals("fifo")) {
+			// Only completed runs are recorded, so the comparison is against a full FIFO run
+			if (fifoVisits > 0) {
+				logger.error( "   States visited by last fifo run:     " + String.format("%8d", fifoVisits));
+				logger.error( "   Reduction in states visited:         " + String.format("%7.1f%%", 
+						100.0 * (fifoVisits - cfr.getNumberOfStatesVisited()) / fifoVisits));
+			} else {
+				logger.error( "   Reduction in states visited:         " + String.format("%8s", 
+						cache != null ? "no fifo" : "no cache"));
+			}
+		}
+		logger.error( "   Final state space:                   " + String.format("%8d", stateCount));
+		logger.error( "   Visits per final state:              " + String.format("%8.2f", 
+				(double)cfr.getNumberOfStatesVisited() / Math.max(1, stateCount)));
+		logger.error( "   Finished normally:                   " + String.format("%8b", cfr.isCompleted()));
+		logger.error( "   Analysis result:                     " + cfr.getStatus());
+		//				logger.error( "   Sound:                               " + String.format("%8b", cfr.isSound()));
+		logger.error( "   Indirect Branches (no import calls): " + String.format("%8d", indirectBranches));
+		logger.error( "   Unresolved Branches:                 " + String.format("%8d", program.getUnresolvedBranches().size()));
+		logger.debug("   FastSet conversions:                 " + String.format("%8d", FastSet.getConversionCount()));
+		logger.debug("   Variable count:                      " + String.format("%8d", ExpressionFactory.getVariableCount()));
+		if (cache != null)
+			cache.logStatistics();
+		logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
+
+		recordStatistics(stats, program, indirectBranches, cfr.getNumberOfStatesVisited(), stateCount, 
+				overallEndTime - overallStartTime, cfr.getStatus());
+		return cfr.isCompleted();
+	}
+
+	private static void recordStatistics(StatsTracker stats, Program program, int indirectBranches, 
+			long statesVisited, int stateCount, long runtime, String status) {
+		stats.record(program.getInstructionCount());
+		stats.record(program.getStatementCount());
+		stats.record(program.getCFG().numEdges());
+		stats.record(indirectBranches);
+		stats.record(program.getUnresolvedBranches().size());
+		stats.record(statesVisited);
+		stats.record(stateCount);
+		stats.record(Math.round(runtime/1000.0));
+		stats.record(status);
+		stats.record(Options.cpas.getValue());
+		stats.record(BoundedAddressTracking.varThreshold.getValue());
+		stats.record(BoundedAddressTracking.heapThreshold.getValue());
+		stats.record(Options.basicBlocks.getValue() ? "y" : "n");
+		stats.record(Options.summarizeRep.getValue() ? "y" : "n" );
+		stats.record(BasedNumberValuation.ExplicitPrintfArgs);
+		stats.record(BasedNumberValuation.OverAppPrintfArgs);
+	
+		stats.print();
+	}
+
+	private static void runBatch(Architecture arch) {
+		List<File> files;
+		try {
+			files = BatchAnalysis.readFileList(new File(Options.batch.getValue()));
+		} catch (IOException e) {
+			logger.fatal("Cannot read list of binaries: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		int threads = Options.batchThreads.getValue() > 0 ? Options.batchThreads.getValue() : 
+			Runtime.getRuntime().availableProcessors();
+		final BatchAnalysis batch = new BatchAnalysis(arch, files, threads);
+
+		// Stop running analyses on control-c, their results are still reported
+		Thread shutdownThread = new Thread() {
+			@Override
+			public void run() {
+				if (mainThread.isAlive()) {
+					batch.stop();
+					try {
+						mainThread.join();
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(shutdownThread);
+		int failed = batch.run();
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownThread);
+			System.exit(failed > 0 ? 1 : 0);
+		} catch (IllegalStateException e) {
+			// Happens when shutdown has already been initiated by Ctrl-C
+		}
+	}
+
 	private static void runAlgorithm(Algorithm a) {
 		activeAlgorithm = a;
 		a.run();
@@ -432,7 +584,7 @@ public class Main {
 		}
 	}
 	
-	private static String getBaseFileName(File file) {
+	static String getBaseFileName(File file) {
 		String baseFileName = file.getAbsolutePath();
 		// Get name of the analyzed file without file extension if it has one
 		if (file.getName().contains(".")) { 
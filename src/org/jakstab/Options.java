@@ -22,6 +22,7 @@ import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
 
@@ -81,7 +82,8 @@ public class Options {
 	public static JOption<Boolean> wdm = JOption.create("wdm", "WDM mode, export main function as DriverMain.");
 	public static JOption<Boolean> allEdges = JOption.create("all-edges", "Generate a true over-approximation and add edges to all possible addresses when over-approximating a jump (very slow!).");
 	public static JOption<Boolean> dumpStates = JOption.create("s", "Output all reached states after analysis.");	
-	public static JOption<Boolean> outputLocationsWithMostStates = JOption.create("toplocs", "Output the 10 locations with the highest state count.");
+	public static JOption<Boolean> outputLocationsWithMostStates = JOption.create("toplocs", "Output the 10 locations with the highest state count, also periodically while the analysis runs.");
+	public static JOption<Boolean> profile = JOption.create("profile", "Measure the time spent in the operators of each analysis and write it to <file>_profile.json.");
 	public static JOption<Boolean> failFast = JOption.create("fail-fast", "Stop when unsound assumptions are necessary to continue.");
 	public static JOption<Boolean> debug = JOption.create("debug", "Stop on failed assertions or weak updates to the complete stack or all store regions.");
 	public static JOption<Boolean> asmTrace = JOption.create("asm-trace", "Output any error trace as a list of assembly instructions instead of IL statements.");
@@ -90,14 +92,28 @@ public class Options {
 	public static JOption<Boolean> background = JOption.create("b", "Background mode, i.e., disable shutdown hook on enter.");
 	public static JOption<Boolean> graphML = JOption.create("graphML", "Produce graphML output instead of GraphViz .dot files.");
 	public static JOption<Boolean> noGraphs = JOption.create("no-graphs", "Do not generate output graphs");
+	public static JOption<Boolean> binaryGraphs = JOption.create("binary-graphs", "Produce graphs in a compact binary format (.jgr) instead of GraphViz .dot files.");
+	public static JOption<Boolean> compressGraphs = JOption.create("compress-graphs", "Write output graphs gzip compressed.");
 	public static JOption<Boolean> heuristicEntryPoints = JOption.create("h", "Use heuristics to determine additional procedures and add pseudo-calls to include them in disassembly.");
 	public static JOption<Boolean> ignoreWeakUpdates = JOption.create("ignore-weak-updates", "Do not perform weak store updates (unsound).");
 	public static JOption<Boolean> initHeapToBot = JOption.create("bot-heap", "Initialize heap cells to BOT to force strong updates.");
 	public static JOption<Boolean> summarizeRep = JOption.create("summarize-rep", "Use summarizing transformer for string instructions.");
+	public static JOption<Boolean> hashCons = JOption.create("hash-cons", "Share structurally equal RTL expressions (hash-consing) to save memory and speed up comparisons.");
+	public static JOption<Boolean> noRtlCache = JOption.create("no-rtl-cache", "Translate every instruction from its SSL template instead of reusing translations of instructions with the same shape.");
+	public static JOption<Boolean> predisassemble = JOption.create("predisasm", "Disassemble all code sections in parallel before starting the analysis.");
+	public static JOption<Boolean> noSSLSnapshots = JOption.create("no-ssl-snapshots", "Always parse SSL files instead of loading or writing precompiled snapshots next to them.");
+	public static JOption<Boolean> resume = JOption.create("resume", "Continue an interrupted control flow reconstruction from its checkpoint <file>.jcp.");
 	public static JOption<Boolean> basicBlocks = JOption.create("basicblocks", "Build CFA from basic-blocks instead of single statements.");
 	public static JOption<Integer> simplifyVCFG = JOption.create("simplifyVCFG", "l", 1, "In VPC-CFG reconstruction, simplify the reconstructed graph using (0) nothing (1) DCE (2) DCE + Expression Substitution");
 	public static JOption<Integer> verbosity = JOption.create("v", "level", 3, "Set verbosity to value. Default is 3.");
 	public static JOption<Integer> timeout = JOption.create("timeout", "t", -1, "Set timeout in seconds for the analysis.");
+	public static JOption<Integer> checkpoint = JOption.create("checkpoint", "s", 0, "Write a checkpoint of the control flow reconstruction to <file>.jcp every <s> seconds and when it is interrupted. Default is 0, i.e., no checkpoints.");
+	public static JOption<Integer> slowPost = JOption.create("slow-post", "ms", 10, "With --profile, emit a JFR event for every post taking at least <ms> milliseconds. Default is 10.");
+	public static JOption<Integer> stateBudget = JOption.create("state-budget", "n", 0, "Maximum number of states per location. Locations exceeding it are switched to joining states and to coarser precision. Not enforced when error traces, assembly traces, or VPC tracking are enabled. Default is 0, i.e., unlimited.");
+	public static JOption<Integer> memoryThreshold = JOption.create("mem-threshold", "percent", 90, "Heap occupancy after GC (in percent of maximum heap) above which the analysis tries to release memory, e.g., by dropping caches or coarsening its precision.");
+	public static JOption<Integer> spillThreshold = JOption.create("spill", "n", 0, "Keep at most <n> reached states on the heap and move the states at the least recently used locations to a memory-mapped temporary file, also under memory pressure. Default is 0, i.e., no spilling.");
+	public static JOption<Integer> threads = JOption.create("threads", "workers", 1, "Number of worker threads for control flow reconstruction and analyses on the reconstructed CFA. Only analyses whose result does not depend on the order of states, such as constant propagation, run in parallel; analyses that widen, e.g., bounded address tracking or intervals, and runs with a state budget stay sequential. Default is 1, i.e., sequential.");
+	public static JOption<Integer> graphThreads = JOption.create("graph-threads", "n", 0, "Number of threads for rendering the labels of output graphs. Default is 0, i.e., one per processor.");
 	public static JOption<Integer> procedureAbstraction = JOption.create("procedures", "n", 0, "Level of procedure assumptions: " +
 			"0: Pessimistic: No assumptions, treat calls and returns as jumps (default). " + 
 			"1: Semi-optimistic: Abstract unknown calls according to ABI contract. " + 
@@ -107,7 +123,12 @@ public class Options {
 	private static AnalysisManager mgr = AnalysisManager.getInstance();
 	public static JOption<String> cpas = JOption.create("cpa", "{" + mgr.getShorthandsString() + "}", "x", "Configure which analyses to use for control flow reconstruction.");
 	public static JOption<String> secondaryCPAs = JOption.create("cpa2", "{" + mgr.getShorthandsString() + "}", "", "Secondary analyses to be performed after the initial CFG reconstruction and dead code elimination are completed.");
+	public static JOption<String> worklist = JOption.create("worklist", "strategy", "fifo", "Order in which the CPA algorithm processes states: fifo (default), rpo (reverse postorder), wto (weak topological order), or loopdepth (innermost loops first). With --cache, the states visited by other strategies are compared to the last completed fifo run on the same input.");
 	public static JOption<String> procedureGraph = JOption.create("procedure-graph", "p", "", "Generate intraprocedural CFG for procedure with give name (requires symbols)");
+	public static JOption<String> cacheDir = JOption.create("cache", "dir", "", "Store the reconstructed CFA in directory <dir> and reuse it in later runs on the same files with the same options. The directory also records the states visited per worklist strategy, which is needed to report the reduction against fifo.");
+	public static JOption<Integer> cacheSize = JOption.create("cache-size", "mb", 1024, "Maximum total size of the analysis cache in megabytes. Default is 1024.");
+	public static JOption<String> batch = JOption.create("batch", "file", "", "Analyze all binaries in directory <file> or listed in <file> (one per line) in a single JVM, instead of a main file.");
+	public static JOption<Integer> batchThreads = JOption.create("batch-threads", "n", 0, "Number of binaries to analyze concurrently in batch mode. Default is 0, i.e., one per processor.");
 	
 	/**
 	 * Handle command line options.
@@ -165,7 +186,7 @@ public class Options {
 			}
 		}
 		
-		if (mainFilename == null) {
+		if (mainFilename == null && batch.getValue().isEmpty()) {
 			logger.fatal("No main file specified!");
 			logger.fatal("");
 			Options.printOptions();
@@ -174,8 +195,23 @@ public class Options {
 		
 	}
 	
+	/**
+	 * Returns the names and current values of all options except the given
+	 * ones, in a fixed order.
+	 */
+	public static String getOptionValues(Set<JOption<?>> excluded) {
+		StringBuilder sb = new StringBuilder();
+		for (JOption<?> o : options.values()) {
+			if (excluded.contains(o))
+				continue;
+			sb.append(o.getName()).append('=').append(o.getValue()).append('\n');
+		}
+		return sb.toString();
+	}
+
 	public static void printOptions() {
 		logger.fatal("Usage: jakstab [options] -m mainfile [ modules... ]");
+		logger.fatal("       jakstab [options] --batch listfile|dir [ modules... ]");
 		logger.fatal("");
 		logger.fatal("Options:");
 		
@@ -21,14 +21,19 @@ package org.jakstab;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.jakstab.util.Logger;
+import org.jakstab.analysis.CPAProfile;
+import org.jakstab.analysis.ConfigurableProgramAnalysis;
 import org.jakstab.asm.*;
 import org.jakstab.cfa.CFAEdge;
 import org.jakstab.cfa.ControlFlowGraph;
 import org.jakstab.cfa.FineGrainedCFG;
 import org.jakstab.cfa.RTLLabel;
 import org.jakstab.disasm.DisassemblyException;
+import org.jakstab.disasm.ParallelDisassembler;
 import org.jakstab.loader.*;
 import org.jakstab.loader.elf.ELFModule;
 import org.jakstab.loader.pe.*;
@@ -46,12 +51,21 @@ import org.jakstab.util.FastSet;
  * It stores all non-analysis information about the analyzed programs, including 
  * statements, the current control flow graph, and symbols.
  * 
+ * The singleton is bound to the thread that created it and to all threads 
+ * started from there, so several programs can be analyzed side by side in
+ * one JVM (see {@link BatchAnalysis}).
+ * 
+ * Statements and instructions can be requested from several threads at once,
+ * as done by the parallel CPA engine. Instructions are decoded and looked up
+ * without locking, lifting and replacing statements synchronize on the program.
+ * 
  * @author Johannes Kinder
  */
 public final class Program {
 	
 	private final static Logger logger = Logger.getLogger(Program.class);
-	private static Program programInstance;
+	private static final InheritableThreadLocal<Program> programInstance = 
+			new InheritableThreadLocal<Program>();
 
 	/**
 	 * Get the singleton Program object.
@@ -59,7 +73,7 @@ public final class Program {
 	 * @return the singleton instance of the Program class
 	 */
 	public static Program getProgram() {
-		return programInstance;
+		return programInstance.get();
 	}
 	
 	/**
@@ -69,23 +83,40 @@ public final class Program {
 	 * @return the new singleton instance of the Program class
 	 */
 	public static Program createProgram(Architecture arch) {
-		//assert programInstance == null;
-		programInstance = new Program(arch);
-		return programInstance;
+		Program program = new Program(arch);
+		programInstance.set(program);
+		return program;
+	}
+	
+	/**
+	 * Unbinds the Program object from the current thread, so it can be 
+	 * garbage collected once the analysis is finished.
+	 */
+	static void releaseProgram() {
+		programInstance.remove();
 	}
 
 	private final Architecture arch;
 	private RTLLabel start;
 	private Map<RTLLabel, RTLStatement> statementMap;
-	private Map<AbsoluteAddress, Instruction> assemblyMap;
+	// Labels of statements that were replaced, in order of replacement
+	private List<RTLLabel> replacedLabels;
+	private final ConcurrentSkipListMap<AbsoluteAddress, Instruction> assemblyMap;
+	// Instructions decoded ahead of the analysis, moved to assemblyMap on first use
+	private volatile Map<AbsoluteAddress, Instruction> predisassembled;
 	private ExecutableImage mainModule;
 	private List<ExecutableImage> modules;
+	private AddressIndex addressIndex;
 	private ControlFlowGraph cfg;
 	private final Map<String, ExportedSymbol> exportedSymbols;
 	private final Set<UnresolvedSymbol> unresolvedSymbols;
 	private Set<RTLLabel> unresolvedBranches;
 	private StubProvider stubLibrary;
 	private Harness harness;
+	// Analysis instances created for this program, by class
+	private final Map<Class<? extends ConfigurableProgramAnalysis>, ConfigurableProgramAnalysis> analyses;
+	// Null unless profiling is enabled
+	private final CPAProfile profile;
 	
 	public enum TargetOS {WINDOWS, LINUX, UNKNOWN};
 	private TargetOS targetOS;
@@ -95,12 +126,17 @@ public final class Program {
 		this.targetOS = TargetOS.UNKNOWN;
 
 		modules = new LinkedList<ExecutableImage>();
-		assemblyMap = new TreeMap<AbsoluteAddress, Instruction>();
-		statementMap = new HashMap<RTLLabel, RTLStatement>(2000);
+		addressIndex = new AddressIndex(modules);
+		assemblyMap = new ConcurrentSkipListMap<AbsoluteAddress, Instruction>();
+		predisassembled = new ConcurrentHashMap<AbsoluteAddress, Instruction>();
+		statementMap = new ConcurrentHashMap<RTLLabel, RTLStatement>(2000);
+		replacedLabels = new ArrayList<RTLLabel>();
 		exportedSymbols = new HashMap<String, ExportedSymbol>();
 		unresolvedSymbols = new FastSet<UnresolvedSymbol>();
 		
 		unresolvedBranches = new FastSet<RTLLabel>();
+		analyses = new HashMap<Class<? extends ConfigurableProgramAnalysis>, ConfigurableProgramAnalysis>();
+		profile = Options.profile.getValue() ? new CPAProfile(Options.slowPost.getValue()) : null;
 	}
 	
 	/**
@@ -159,6 +195,10 @@ public final class Program {
 		
 		
 		modules.add(module);
+		addressIndex = new AddressIndex(modules);
+		if (Options.predisassemble.getValue())
+			predisassembled.putAll(new ParallelDisassembler(module).run(
+					Runtime.getRuntime().availableProcessors()));
 		unresolvedSymbols.addAll(module.getUnresolvedSymbols());
 		for (ExportedSymbol symbol : module.getExportedSymbols()) {
 			exportedSymbols.put(removeDecoration(symbol.getName()), symbol);
@@ -289,11 +329,16 @@ public final class Program {
 	 * @return the module to which the given virtual address belongs. 
 	 */
 	public ExecutableImage getModule(AbsoluteAddress a) {
-		for (ExecutableImage module : modules) {
-			if (module.getFilePointer(a) >= 0)
-				return module;
-		}
-		return null;
+		return addressIndex.getModule(a.getValue());
+	}
+	
+	/**
+	 * Get the index mapping virtual addresses to modules, sections, and file 
+	 * pointers. The index is replaced whenever a module is loaded.
+	 * @return the address index of all loaded modules
+	 */
+	public AddressIndex getAddressIndex() {
+		return addressIndex;
 	}
 	
 	public Iterator<AbsoluteAddress> codeAddressIterator() {
@@ -309,7 +354,19 @@ public final class Program {
 	 * @return The statement object at label.
 	 */
 	public final RTLStatement getStatement(RTLLabel label) {
+		RTLStatement stmt = statementMap.get(label);
+		if (stmt != null)
+			return stmt;
+		return liftStatement(label);
+	}
+	
+	/**
+	 * Translates the instruction at the address of the label and stores its 
+	 * statements, unless another thread did so already.
+	 */
+	private synchronized RTLStatement liftStatement(RTLLabel label) {
 		if (!statementMap.containsKey(label)) {
+			long startNanos = profile != null ? System.nanoTime() : 0;
 			AbsoluteAddress address = label.getAddress();
 			Instruction instr = getInstruction(address);
 			// If we did not get an instruction, add an artificial Halt for recovery
@@ -336,6 +393,7 @@ public final class Program {
 				}
 				assert statementMap.containsKey(label) : "Disassembly did not produce label: " + label;
 			}
+			if (profile != null) profile.record(CPAProfile.Phase.LIFT, startNanos);
 		}
 		return statementMap.get(label);
 	}
@@ -346,15 +404,39 @@ public final class Program {
 	 * 
 	 * @param stmt The statement to be stored. Has to contain a proper label.
 	 */
-	public final void putStatement(RTLStatement stmt) {
+	public final synchronized void putStatement(RTLStatement stmt) {
 		RTLStatement existing = statementMap.get(stmt.getLabel());
 		if (existing != null) {
 			if (existing.equals(stmt)) return;
 			logger.debug("Replacing statement at " + stmt.getLabel());
+			replacedLabels.add(stmt.getLabel());
 		}
 		statementMap.put(stmt.getLabel(), stmt);
 	}
 	
+	/**
+	 * Returns the number of times a statement was replaced by putStatement.
+	 */
+	public final synchronized int getReplacementCount() {
+		return replacedLabels.size();
+	}
+	
+	/**
+	 * Returns the labels of replaced statements, starting from the given 
+	 * replacement count. Allows caches of statements to invalidate entries
+	 * that were replaced since they last checked.
+	 */
+	public final synchronized List<RTLLabel> getReplacedLabels(int fromCount) {
+		return new ArrayList<RTLLabel>(replacedLabels.subList(fromCount, replacedLabels.size()));
+	}
+	
+	/**
+	 * Returns all statements stored in the program.
+	 */
+	public final Collection<RTLStatement> getStatements() {
+		return Collections.unmodifiableCollection(statementMap.values());
+	}
+	
 	public boolean containsLabel(RTLLabel label) {
 		return statementMap.containsKey(label);
 	}
@@ -372,7 +454,9 @@ public final class Program {
 	}
 	
 	/**
-	 * Gets the assembly instruction at the specified virtual address.
+	 * Gets the assembly instruction at the specified virtual address. If 
+	 * several threads decode the same instruction, all of them get the one
+	 * that was stored first.
 	 * @param address a virtual address
 	 * @return the assembly instruction at the specified address
 	 */
@@ -386,19 +470,24 @@ public final class Program {
 			if (harness.contains(address) || isStub(address))
 				return null;
 			
-			ExecutableImage module = getModule(address);
+			instr = predisassembled.remove(address);
+			if (instr != null)
+				return storeInstruction(address, instr);
+
+			ImageSection section = addressIndex.getSection(address.getValue());
 
 			long fp = -1;
-			if (module == null) {
+			if (section == null) {
 				logger.error("No module for address " + address + ". Cannot disassemble instruction!");
 			} else {
-				fp = module.getFilePointer(address);
+				ExecutableImage module = section.getModule();
+				fp = addressIndex.getFilePointer(address.getValue());
 				// Also check whether fp is out of the int range, since the X86Disassembler actually
 				// performs this cast in its implementation.
 				if (fp < 0 || (int)fp < 0) {
 					logger.error("Requested instruction outside of file area: " + address);
 				} else {
-					if (!module.isCodeArea(address)) {
+					if (!section.isCode()) {
 						logger.error("Requested instruction outside code section: " + address);
 						return null;
 					}
@@ -410,11 +499,16 @@ public final class Program {
 			}
 
 			if (instr != null)
-				putInstruction(address, instr);
+				instr = storeInstruction(address, instr);
 			return instr;
 		}
 	}
 
+	private Instruction storeInstruction(AbsoluteAddress address, Instruction instr) {
+		Instruction existing = assemblyMap.putIfAbsent(address, instr);
+		return existing != null ? existing : instr;
+	}
+
 	/**
 	 * Stores an assembly instruction at the given address, overwriting
 	 * any existing instruction.
@@ -517,6 +611,22 @@ public final class Program {
 	public Architecture getArchitecture() {
 		return arch;
 	}
+
+	/**
+	 * Returns the profile of the analyses run on this program, or null if 
+	 * profiling is disabled.
+	 */
+	public CPAProfile getProfile() {
+		return profile;
+	}
+	
+	synchronized void putAnalysis(ConfigurableProgramAnalysis cpa) {
+		analyses.put(cpa.getClass(), cpa);
+	}
+	
+	synchronized ConfigurableProgramAnalysis getAnalysis(Class<? extends ConfigurableProgramAnalysis> clazz) {
+		return analyses.get(clazz);
+	}
 	
 	public Collection<ExportedSymbol> getSymbols() {
 		return exportedSymbols.values();
@@ -530,6 +640,17 @@ public final class Program {
 		cfg = new FineGrainedCFG(cfa);
 	}
 
+	/**
+	 * Drops the instructions decoded ahead of the analysis that were never 
+	 * requested. Called once control flow reconstruction is done, later 
+	 * requests decode on demand.
+	 */
+	public void releasePredisassembled() {
+		if (!predisassembled.isEmpty())
+			logger.debug("Releasing " + predisassembled.size() + " unused pre-disassembled instructions.");
+		predisassembled = new ConcurrentHashMap<AbsoluteAddress, Instruction>();
+	}
+
 	public RTLLabel getStart() {
 		return start;
 	}
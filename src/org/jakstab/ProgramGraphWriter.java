@@ -21,6 +21,8 @@ import java.awt.Color;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.jakstab.analysis.*;
 import org.jakstab.analysis.explicit.VpcTrackingAnalysis;
@@ -55,6 +57,10 @@ import com.google.common.collect.SetMultimap;
 public class ProgramGraphWriter {
 
 	private static final Logger logger = Logger.getLogger(ProgramGraphWriter.class);
+
+	/** Number of node labels to be rendered by a single task. */
+	private static final int LABEL_CHUNK_SIZE = 256;
+
 	private Program program;
 	
 	private Set<Location> mustLeaves;
@@ -67,22 +73,22 @@ public class ProgramGraphWriter {
 		mustLeaves = new HashSet<Location>();
 		
 		// Find locations which have an incoming MUST edge, but no outgoing one
-		for (Location l : cfg.getNodes()) {
+		for (int id = 0; id < cfg.getLocationCount(); id++) {
 			boolean foundMust = false;
-			for (CFAEdge e : cfg.getInEdges(l)) {
-				foundMust |= e.getKind() == Kind.MUST;
+			for (int i = 0; i < cfg.getInDegree(id); i++) {
+				foundMust |= cfg.getInEdge(id, i).getKind() == Kind.MUST;
 			}
 			
 			if (!foundMust) 
 				continue;
 			
 			foundMust = false;
-			for (CFAEdge e : cfg.getOutEdges(l)) {
-				foundMust |= e.getKind() == Kind.MUST;
+			for (int i = 0; i < cfg.getOutDegree(id); i++) {
+				foundMust |= cfg.getOutEdge(id, i).getKind() == Kind.MUST;
 			}
 			
 			if (!foundMust) {
-				mustLeaves.add(l);
+				mustLeaves.add(cfg.getLocation(id));
 			}
 			
 		}
@@ -432,7 +438,9 @@ public class ProgramGraphWriter {
 
 	private GraphWriter createGraphWriter(String filename) {
 		try {
-			if (Options.graphML.getValue()) {
+			if (Options.binaryGraphs.getValue()) {
+				return new BinaryGraphWriter(filename);
+			} else if (Options.graphML.getValue()) {
 				return new GraphMLWriter(filename);
 			} else {
 				return new GraphvizWriter(filename);
@@ -482,7 +490,8 @@ public class ProgramGraphWriter {
 		if (gwriter == null) return;
 	
 		try {
-			for (Location node : cfg.getNodes()) {
+			for (int id = 0; id < cfg.getLocationCount(); id++) {
+				Location node = cfg.getLocation(id);
 				String nodeName = node.toString();
 				StringBuilder labelBuilder = new StringBuilder();
 				labelBuilder.append(nodeName);
@@ -499,7 +508,8 @@ public class ProgramGraphWriter {
 				gwriter.writeNode(nodeName, labelBuilder.toString(), getNodeProperties(cfg, node));
 			}
 	
-			for (CFAEdge e : cfg.getEdges()) {
+			for (int i = 0; i < cfg.numEdges(); i++) {
+				CFAEdge e = cfg.getEdge(i);
 				if (e.getKind() == null) logger.error("Null kind? " + e);
 				gwriter.writeEdge(e.getSource().toString(), 
 						e.getTarget().toString(), 
@@ -518,36 +528,21 @@ public class ProgramGraphWriter {
 		// Create dot file
 		GraphWriter gwriter = createGraphWriter(filename);
 		if (gwriter == null) return;
-		
-		TreeMap<Location, BasicBlock> blockMap = new TreeMap<Location, BasicBlock>();
-		blockMap.putAll(cfg.getBasicBlocks());
 	
 		try {
-			//for (Map.Entry<Location, BasicBlock> entry : cfg.getBasicBlocks().entrySet()) {
-			for (Map.Entry<Location, BasicBlock> entry : blockMap.entrySet()) {
-				
-				Location nodeLoc = entry.getKey();
-				BasicBlock bb = entry.getValue();
-				
-				String nodeName = nodeLoc.toString();
-				StringBuilder labelBuilder = new StringBuilder();
-				String locLabel = program.getSymbolFor(nodeLoc.getAddress());
-				if (locLabel.length() > 20) locLabel = locLabel.substring(0, 20) + "...";
-				labelBuilder.append(locLabel).append("\\n");
-	
-				for (Iterator<AbsoluteAddress> addrIt = bb.addressIterator(); addrIt.hasNext();) {
-					AbsoluteAddress curAddr = addrIt.next();
-					Instruction instr = program.getInstruction(curAddr);
-					if (instr != null) {
-						String instrString = program.getInstructionString(curAddr);
-						instrString = instrString.replace("\t", " ");
-						labelBuilder.append(instrString).append("\\l");
-					} else {
-						//labelBuilder.append(curAddr.toString() + "\\l");
-					}
+			// Basic blocks are ordered by their head locations
+			final List<Map.Entry<Location, BasicBlock>> blocks = 
+					new ArrayList<Map.Entry<Location, BasicBlock>>(cfg.getBasicBlocks().entrySet());
+			String[] labels = renderLabels(blocks.size(), new LabelRenderer() {
+				@Override
+				public String render(int i) {
+					return getBasicBlockLabel(blocks.get(i).getKey(), blocks.get(i).getValue());
 				}
-				
-				gwriter.writeNode(nodeName, labelBuilder.toString(), getNodeProperties(cfg, nodeLoc));
+			});
+			
+			for (int i = 0; i < labels.length; i++) {
+				Location nodeLoc = blocks.get(i).getKey();
+				gwriter.writeNode(nodeLoc.toString(), labels[i], getNodeProperties(cfg, nodeLoc));
 			}
 			
 			for (CFAEdge e : cfg.getBasicBlockEdges()) {
@@ -606,6 +601,85 @@ public class ProgramGraphWriter {
 		}
 	}
 
+	/**
+	 * Builds the label of a basic block from its assembly instructions. Only reads
+	 * the program, so labels can be rendered concurrently.
+	 */
+	private String getBasicBlockLabel(Location head, BasicBlock bb) {
+		Map<AbsoluteAddress, Instruction> assemblyMap = program.getAssemblyMap();
+		StringBuilder labelBuilder = new StringBuilder();
+		String locLabel = program.getSymbolFor(head.getAddress());
+		if (locLabel.length() > 20) locLabel = locLabel.substring(0, 20) + "...";
+		labelBuilder.append(locLabel).append("\\n");
+
+		for (Iterator<AbsoluteAddress> addrIt = bb.addressIterator(); addrIt.hasNext();) {
+			AbsoluteAddress curAddr = addrIt.next();
+			Instruction instr = assemblyMap.get(curAddr);
+			if (instr != null) {
+				String instrString = program.getInstructionString(curAddr, instr);
+				labelBuilder.append(instrString.replace('\t', ' ')).append("\\l");
+			}
+		}
+		return labelBuilder.toString();
+	}
+
+	private static interface LabelRenderer {
+		public String render(int i);
+	}
+
+	/**
+	 * Renders the labels of a graph's nodes, using the number of threads 
+	 * configured by --graph-threads. 
+	 */
+	private static String[] renderLabels(int count, LabelRenderer renderer) {
+		String[] labels = new String[count];
+		int threads = Options.graphThreads.getValue();
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		if (threads <= 1 || count <= LABEL_CHUNK_SIZE) {
+			for (int i = 0; i < count; i++)
+				labels[i] = renderer.render(i);
+			return labels;
+		}
+
+		List<LabelTask> tasks = new ArrayList<LabelTask>();
+		for (int start = 0; start < count; start += LABEL_CHUNK_SIZE)
+			tasks.add(new LabelTask(renderer, labels, start, Math.min(start + LABEL_CHUNK_SIZE, count)));
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (LabelTask task : tasks)
+				pool.execute(task);
+			for (LabelTask task : tasks)
+				task.join();
+		} finally {
+			pool.shutdown();
+		}
+		return labels;
+	}
+
+	private static class LabelTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 5301934287360427465L;
+
+		private final LabelRenderer renderer;
+		private final String[] labels;
+		private final int start;
+		private final int end;
+
+		LabelTask(LabelRenderer renderer, String[] labels, int start, int end) {
+			this.renderer = renderer;
+			this.labels = labels;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			for (int i = start; i < end; i++)
+				labels[i] = renderer.render(i);
+		}
+	}
+
 	private void writeTopologicalBBCFG(ControlFlowGraph cfg, String filename) {
 		// Create dot file
 		GraphWriter gwriter = createGraphWriter(filename);
@@ -39,7 +39,11 @@ public class StatsTracker {
 	private Map<String, String> namedVals;
 	private final Logger logger;
 	
-	private StatsTracker() {
+	/**
+	 * Creates a tracker separate from the singleton, e.g., for one of several
+	 * programs analyzed in the same JVM.
+	 */
+	public StatsTracker() {
 		super();
 		logger = Logger.getLogger(StatsTracker.class);
 		statsBuilder = new StringBuffer();
@@ -77,6 +77,44 @@ public class AbstractReachabilityTree {
 		//assert (isTree()) : "ART lost tree property!";
 	}
 	
+	/**
+	 * Removes all leaves that are no longer in the reached set, e.g., because
+	 * they have been merged into other states. Parents that become leaves
+	 * by this are removed as well, so traces of reached states are kept intact.
+	 * 
+	 * @param reached the current set of reached states.
+	 * @return the number of removed nodes.
+	 */
+	public int prune(Collection<AbstractState> reached) {
+		Deque<AbstractState> candidates = new LinkedList<AbstractState>();
+		for (AbstractState child : childParentMap.keySet()) {
+			if (!parentChildrenMap.containsKey(child))
+				candidates.add(child);
+		}
+		
+		int removed = 0;
+		while (!candidates.isEmpty()) {
+			AbstractState leaf = candidates.removeFirst();
+			if (leaf == root || reached.contains(leaf) || parentChildrenMap.containsKey(leaf)) 
+				continue;
+			AbstractState parent = childParentMap.remove(leaf);
+			if (parent == null) 
+				continue;
+			for (Iterator<Pair<CFAEdge, AbstractState>> it = parentChildrenMap.get(parent).iterator(); it.hasNext();) {
+				if (it.next().getRight().equals(leaf)) 
+					it.remove();
+			}
+			removed++;
+			if (!parentChildrenMap.containsKey(parent))
+				candidates.add(parent);
+		}
+		return removed;
+	}
+	
+	public int size() {
+		return childParentMap.size();
+	}
+	
 	public boolean isInChildParentMap(AbstractState a) {
 		return childParentMap.containsKey(a);
 	}
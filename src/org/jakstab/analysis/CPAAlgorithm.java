@@ -17,17 +17,20 @@
  */
 package org.jakstab.analysis;
 
+import java.io.IOException;
 import java.util.*;
 
 import org.jakstab.AnalysisManager;
 import org.jakstab.Options;
 import org.jakstab.Program;
 import org.jakstab.Algorithm;
+import org.jakstab.analysis.composite.CompositePrecision;
 import org.jakstab.analysis.composite.CompositeProgramAnalysis;
 import org.jakstab.analysis.composite.CompositeState;
 import org.jakstab.analysis.location.BackwardLocationAnalysis;
 import org.jakstab.analysis.location.LocationAnalysis;
 import org.jakstab.cfa.*;
+import org.jakstab.rtl.expressions.ExpressionSimplifier;
 import org.jakstab.util.*;
 
 /**
@@ -44,12 +47,17 @@ public class CPAAlgorithm implements Algorithm {
 	private final ReachedSet reached;
 	private final AbstractReachabilityTree art;
 	private final Worklist<AbstractState> worklist;	
+	private final StateBudget budget;
+	private Checkpoint checkpoint;
+	private StateCodec stateCodec;
 	
 	private final boolean failFast;
 
 	private long statesVisited;
+	private long gcTime;
 	private boolean completed = false;
 	private volatile boolean stop = false;
+	private volatile ParallelCPAEngine parallelEngine;
 	
 	/**
 	 * Instantiates a new CPA algorithm with a forward location analysis, a default
@@ -60,7 +68,8 @@ public class CPAAlgorithm implements Algorithm {
 	 */
 	public static CPAAlgorithm createForwardAlgorithm(ControlFlowGraph cfg, ConfigurableProgramAnalysis... cpas) {
 		ConfigurableProgramAnalysis cpa = new CompositeProgramAnalysis(new LocationAnalysis(), cpas);
-		return new CPAAlgorithm(cpa, new CFATransformerFactory(cfg), new FastSet<AbstractState>());
+		return new CPAAlgorithm(cpa, new CFATransformerFactory(cfg), 
+				OrderedWorklist.create(OrderedWorklist.edgesOf(cfg), false));
 	}
 
 	/**
@@ -72,7 +81,25 @@ public class CPAAlgorithm implements Algorithm {
 	 */
 	public static CPAAlgorithm createBackwardAlgorithm(ControlFlowGraph cfg, ConfigurableProgramAnalysis... cpas) {
 		ConfigurableProgramAnalysis cpa = new CompositeProgramAnalysis(new BackwardLocationAnalysis(), cpas);
-		return new CPAAlgorithm(cpa, new ReverseCFATransformerFactory(cfg), new FastSet<AbstractState>());
+		final ReverseCFATransformerFactory transformerFactory = new ReverseCFATransformerFactory(cfg);
+		// Order the reversed graph starting from the (possibly artificial) sink
+		OrderedWorklist.EdgeSource reverseEdges = new OrderedWorklist.EdgeSource() {
+			@Override
+			public int numEdges() {
+				return transformerFactory.numEdges();
+			}
+
+			@Override
+			public Collection<CFAEdge> getEdges() {
+				return transformerFactory.getEdges();
+			}
+
+			@Override
+			public Location getEntryPoint() {
+				return transformerFactory.getInitialLocation();
+			}
+		};
+		return new CPAAlgorithm(cpa, transformerFactory, OrderedWorklist.create(reverseEdges, true));
 	}
 
 	public CPAAlgorithm(ConfigurableProgramAnalysis cpa,
@@ -95,10 +122,40 @@ public class CPAAlgorithm implements Algorithm {
 		else
 			art = null;
 		reached = new ReachedSet();
+		
+		// Joining states would break the ART, so only count states if there is one
+		if (Options.stateBudget.getValue() > 0 && art == null) {
+			budget = new StateBudget(Options.stateBudget.getValue());
+		} else if (Options.stateBudget.getValue() > 0 || Options.outputLocationsWithMostStates.getValue()) {
+			if (Options.stateBudget.getValue() > 0)
+				logger.warn("Ignoring the state budget, as it cannot be enforced while building an abstract reachability tree for traces or VPC tracking.");
+			budget = new StateBudget(0);
+		} else {
+			budget = null;
+		}
+	}
+
+	/**
+	 * Sets the checkpoint to write periodically and when the algorithm is 
+	 * stopped, and to resume from if requested. Checkpoints are only supported
+	 * for control flow reconstruction with analyses that can encode their states.
+	 */
+	public void setCheckpoint(Checkpoint checkpoint) {
+		StateCodec codec = cpa instanceof CompositeProgramAnalysis ? 
+				((CompositeProgramAnalysis)cpa).getStateCodec() : null;
+		if (codec == null || art != null || !(transformerFactory instanceof ResolvingTransformerFactory)) {
+			logger.warn("Checkpoints are not supported for the selected analyses and options, not using " + 
+				checkpoint.getFile());
+			return;
+		}
+		this.checkpoint = checkpoint;
+		this.stateCodec = codec;
 	}
 
 	/**
-	 * After a run of the algorithm, returns the set of reached states.
+	 * After a run of the algorithm, returns the set of reached states. If
+	 * states were spilled, the set keeps its spill store open until it is 
+	 * released by {@link ReachedSet#release()}.
 	 * 
 	 * @return the set of reached (and kept) states.
 	 */
@@ -114,6 +171,23 @@ public class CPAAlgorithm implements Algorithm {
 		return statesVisited;
 	}
 
+	/**
+	 * Returns the time spent in garbage collection while the algorithm was running.
+	 * 
+	 * @return GC time in milliseconds
+	 */
+	public long getGCTime() {
+		return gcTime;
+	}
+
+	/**
+	 * @return true if the states were processed by the parallel engine, 
+	 * i.e., not in the order of the worklist.
+	 */
+	public boolean isParallel() {
+		return parallelEngine != null;
+	}
+
 	/**
 	 * Returns whether the algorithm terminated normally.
 	 */
@@ -135,41 +209,136 @@ public class CPAAlgorithm implements Algorithm {
 		}
 	}
 
+	/**
+	 * Returns whether this algorithm can be run by the parallel engine, i.e., if
+	 * parallel mode was requested, no ART needs to be built, no checkpoints
+	 * are written, and the reached states do not depend on the order in which
+	 * states are processed.
+	 */
+	private boolean useParallelEngine() {
+		if (Options.threads.getValue() <= 1 || art != null || checkpoint != null)
+			return false;
+		if (!isOrderIndependent()) {
+			logger.warn("The analyses widen or join states depending on the order in which states are processed, " + 
+					"running sequentially instead of in parallel to get the same result.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Joining states at locations over the state budget depends on the order
+	 * of states, just like widening.
+	 */
+	private boolean isOrderIndependent() {
+		if (Options.stateBudget.getValue() > 0)
+			return false;
+		if (cpa instanceof CompositeProgramAnalysis)
+			return ((CompositeProgramAnalysis)cpa).isOrderIndependent();
+		return cpa instanceof OrderIndependent;
+	}
+
 	@Override
 	public void run() {
+		if (useParallelEngine()) {
+			runParallel();
+			return;
+		}
+
+		// React to memory pressure by shrinking analysis data structures instead of forcing GCs
+		MemoryGovernor memoryGovernor = new MemoryGovernor(Options.memoryThreshold.getValue() / 100.0);
+		try {
+			runSequential(memoryGovernor);
+		} finally {
+			memoryGovernor.shutdown();
+			gcTime = memoryGovernor.getGCTime();
+		}
+	}
+
+	private void runSequential(MemoryGovernor memoryGovernor) {
 		logger.debug("Starting CPA algorithm.");
 		
 		Runtime runtime = Runtime.getRuntime();
 		Program program = Program.getProgram();
+		CPAProfile profile = program != null ? program.getProfile() : null;
+		long startNanos = 0;
+
+		Precision precision;
+		final Map<Location, Precision> precisionMap = new HashMap<Location, Precision>();
+		long restoredStatesVisited = -1;
+		if (checkpoint != null && Options.resume.getValue())
+			restoredStatesVisited = checkpoint.restore((ResolvingTransformerFactory)transformerFactory, 
+					stateCodec, reached, worklist, precisionMap);
+
+		if (restoredStatesVisited >= 0) {
+			if (budget != null) {
+				for (AbstractState s : reached)
+					budget.countAdded(s.getLocation());
+			}
+		} else {
+			AbstractState start = cpa.initStartState(transformerFactory.getInitialLocation()); 
+			worklist.add(start);
+			reached.add(start);
+			if (art != null) art.setRoot(start);
+
+			// Set up precisions
+			precision = cpa.initPrecision(transformerFactory.getInitialLocation(), null);
+			precisionMap.put(start.getLocation(), precision);
+		}
 
-		AbstractState start = cpa.initStartState(transformerFactory.getInitialLocation()); 
-		worklist.add(start);
-		reached.add(start);
-		if (art != null) art.setRoot(start);
-
-		// Set up precisions
-		Precision precision = cpa.initPrecision(transformerFactory.getInitialLocation(), null);
-		Map<Location, Precision> precisionMap = new HashMap<Location, Precision>();
-		precisionMap.put(start.getLocation(), precision);
+		if (art != null) {
+			memoryGovernor.addAction(new MemoryGovernor.PressureAction() {
+				@Override
+				public String relieve() {
+					int removed = art.prune(reached);
+					return "Pruned " + removed + " nodes of states no longer reached from ART, " + art.size() + " remaining.";
+				}
+			});
+		}
+		final int spillThreshold = Options.spillThreshold.getValue();
+		SpillStore spillStore = spillThreshold > 0 ? createSpillStore() : null;
+		if (spillStore != null) {
+			memoryGovernor.addAction(new MemoryGovernor.PressureAction() {
+				@Override
+				public String relieve() {
+					int spilled = reached.spillColdLocations(reached.getResidentSize() / 2, worklist);
+					return "Spilled " + spilled + " reached states at cold locations, " + 
+							reached.getResidentSize() + " remaining on the heap.";
+				}
+			});
+		}
+		memoryGovernor.addAction(createCacheDropAction());
+		if (spillStore == null) {
+			// Without spilling, only giving up precision can reduce the number of states
+			memoryGovernor.addAction(new MemoryGovernor.PressureAction() {
+				@Override
+				public String relieve() {
+					int coarsened = coarsenPrecisions(precisionMap);
+					return "Coarsened " + coarsened + " precisions to widen earlier.";
+				}
+			});
+		}
 
 		int steps = 0;
-		statesVisited = 0;
+		statesVisited = Math.max(0, restoredStatesVisited);
 		final int stepThreshold = 1000;
 		long startTime = System.currentTimeMillis();
 		long lastSteps = 0;
 		long lastTime = 0;
+		long lastGCTime = 0;
 		while (!worklist.isEmpty() && !stop && (!failFast || isSound())) {
 
 			statesVisited++;
 			if (++steps == stepThreshold) {
 								
-				// Helps limit memory usage
-				long now = System.currentTimeMillis();
-				System.gc();
-				long gcTime = System.currentTimeMillis() - now;
-				logger.debug("Time for GC: " + gcTime + "ms");
+				memoryGovernor.checkPressure();
+				if (spillStore != null && reached.getResidentSize() > spillThreshold)
+					reached.spillColdLocations(spillThreshold / 2, worklist);
+				long currentGCTime = memoryGovernor.getGCTime();
+				logger.debug("Time for GC: " + (currentGCTime - lastGCTime) + "ms");
+				lastGCTime = currentGCTime;
 
-				now = System.currentTimeMillis();
+				long now = System.currentTimeMillis();
 				long duration = Math.max(1, now - lastTime);
 				long speed = (1000L*(statesVisited - lastSteps) / duration);
 				//speed = Math.min(speed, 1000);
@@ -182,6 +351,12 @@ public class CPAAlgorithm implements Algorithm {
 								: "."));
 				
 				logger.info(String.format("    Allocated heap memory: %.2f MByte", (runtime.totalMemory() - runtime.freeMemory())/(1024.0*1024.0)));
+				if (spillStore != null)
+					logger.info(String.format("    Reached states on the heap: %d, spilled: %d (%.2f MByte)", 
+							reached.getResidentSize(), reached.size() - reached.getResidentSize(), 
+							spillStore.getLiveBytes()/(1024.0*1024.0)));
+				if (budget != null && Options.outputLocationsWithMostStates.getValue())
+					budget.logHottestLocations(10);
 				
 				steps = 0;
 
@@ -194,6 +369,9 @@ public class CPAAlgorithm implements Algorithm {
 					logger.error("Timeout after " + Options.timeout.getValue() + "s!");
 					stop = true;
 				}
+				
+				if (checkpoint != null && checkpoint.isDue())
+					writeCheckpoint(precisionMap, false);
 			}
 
 			// We need the state before precision refinement for building the ART  
@@ -204,7 +382,9 @@ public class CPAAlgorithm implements Algorithm {
 
 			precision = precisionMap.get(unadjustedState.getLocation());
 			
+			if (profile != null) startNanos = System.nanoTime();
 			Pair<AbstractState, Precision> pair = cpa.prec(unadjustedState, precision, reached);
+			if (profile != null) profile.record(CPAProfile.Phase.PREC, startNanos);
 			
 			// Warning: The refined a is not stored in "reached", only used for successor calculation
 			AbstractState a = pair.getLeft();
@@ -215,8 +395,12 @@ public class CPAAlgorithm implements Algorithm {
 			
 			// getTransformers() might throw exceptions
 			try {
+				if (profile != null) startNanos = System.nanoTime();
+				Set<CFAEdge> transformers = transformerFactory.getTransformers(a);
+				if (profile != null) profile.record(CPAProfile.Phase.TRANSFORMERS, startNanos);
+
 				// For each outgoing edge
-				for (CFAEdge cfaEdge : transformerFactory.getTransformers(a)) {
+				for (CFAEdge cfaEdge : transformers) {
 
 					Precision targetPrecision = precisionMap.get(cfaEdge.getTarget());
 					if (targetPrecision == null) {
@@ -228,7 +412,9 @@ public class CPAAlgorithm implements Algorithm {
 					// post() might throw exceptions 
 					Set<AbstractState> successors;
 					try {
+						if (profile != null) startNanos = System.nanoTime();
 						successors = cpa.post(a, cfaEdge, targetPrecision);
+						if (profile != null) profile.recordPost(cfaEdge, startNanos);
 					} catch (StateException e) {
 						if (e.getState() == null) {
 							e.setState(a);
@@ -253,8 +439,10 @@ public class CPAAlgorithm implements Algorithm {
 						Set<AbstractState> statesToRemove = new FastSet<AbstractState>();
 						Set<AbstractState> statesToAdd = new FastSet<AbstractState>();
 
-						for (AbstractState r : reached.where(0, ((CompositeState)succ).getComponent(0))) {
+						for (AbstractState r : reached.getStatesAt(((CompositeState)succ).getComponent(0))) {
+							if (profile != null) startNanos = System.nanoTime();
 							AbstractState merged = cpa.merge(succ, r, targetPrecision);
+							if (profile != null) profile.record(CPAProfile.Phase.MERGE, startNanos);
 							if (!merged.equals(r)) {
 								//logger.debug("Merge of new successor:\n" + succ + "\n and reached state:\n" + r + "\n produced new state \n" + merged);
 								statesToRemove.add(r);
@@ -264,7 +452,7 @@ public class CPAAlgorithm implements Algorithm {
 
 						// replace the old state in worklist and reached with the merged version
 						for (AbstractState r : statesToRemove) {
-							reached.remove(r);
+							if (reached.remove(r) && budget != null) budget.countRemoved(r.getLocation());
 							worklist.remove(r);
 							//art.remove(r);
 						}
@@ -273,12 +461,16 @@ public class CPAAlgorithm implements Algorithm {
 							// Only add r to the worklist if it hasn't been reached yet
 							if (reached.add(r)) {
 								worklist.add(r);
+								if (budget != null) budget.countAdded(r.getLocation());
 								if (art != null) art.addChild(unadjustedState, cfaEdge, r);
 							}
 						}
 
 						// if not stopped add to worklist
-						if (!cpa.stop(succ, reached, targetPrecision)) {
+						if (profile != null) startNanos = System.nanoTime();
+						boolean stopped = cpa.stop(succ, reached, targetPrecision);
+						if (profile != null) profile.record(CPAProfile.Phase.STOP, startNanos);
+						if (!stopped) {
 
 							/*if (!statesToAdd.isEmpty()) {
 								logger.verbose("Merged successor with " + statesToAdd.size() + " states, but still adding it to reached and worklist:");
@@ -286,11 +478,22 @@ public class CPAAlgorithm implements Algorithm {
 							}*/
 							
 							worklist.add(succ);
-							reached.add(succ);
+							if (reached.add(succ) && budget != null) budget.countAdded(succ.getLocation());
 							if (art != null) art.addChild(unadjustedState, cfaEdge, succ);
 						}
 					}
 
+					if (budget != null) {
+						List<AbstractState> removed = new LinkedList<AbstractState>();
+						for (AbstractState r : budget.enforce(cfaEdge.getTarget(), 
+								((CompositeState)successors.iterator().next()).getComponent(0), 
+								cpa, precisionMap, reached, removed)) {
+							worklist.add(r);
+						}
+						for (AbstractState r : removed)
+							worklist.remove(r);
+					}
+
 					// end for each outgoing edge
 				} 
 			} catch (StateException e) {
@@ -301,18 +504,125 @@ public class CPAAlgorithm implements Algorithm {
 				throw e;
 			}
 		}
+		
+		if (checkpoint != null) {
+			if (worklist.isEmpty())
+				checkpoint.delete();
+			else if (stop)
+				writeCheckpoint(precisionMap, true);
+		}
 		long endTime = System.currentTimeMillis();
 		if (endTime - startTime > 0) {
 			logger.info("Processed " + statesVisited + " states at " + (1000L*statesVisited / (endTime - startTime)) + " states/second");
 			logger.info(String.format("Allocated heap memory: %.2f MByte", (runtime.totalMemory() - runtime.freeMemory())/(1024.0*1024.0)));
+			logger.info("Time in GC: " + memoryGovernor.getGCTime() + "ms in " + memoryGovernor.getGCCount() + " collections, " + 
+					memoryGovernor.getPressureEventCount() + " memory pressure events.");
 		}
+		if (budget != null && budget.getInterventionCount() > 0)
+			logger.warn("Joined states at locations over the state budget " + budget.getInterventionCount() + " times.");
+		if (spillStore != null)
+			logger.info(String.format("Spilled reached states at locations %d times, read back %d times, %d states " + 
+					"spilled at the end. Mapped %.2f MByte of spill file.", reached.getSpillCount(), 
+					reached.getFaultCount(), reached.size() - reached.getResidentSize(), 
+					spillStore.getMappedSize()/(1024.0*1024.0)));
 
 		completed = worklist.isEmpty(); 
 	}
 
+	/**
+	 * Creates a store for spilling reached states if the analyses can encode 
+	 * their states, and sets it in the reached set.
+	 * 
+	 * @return the store, or null if spilling is not possible.
+	 */
+	private SpillStore createSpillStore() {
+		StateCodec codec = cpa instanceof CompositeProgramAnalysis ? 
+				((CompositeProgramAnalysis)cpa).getStateCodec() : null;
+		if (codec == null || art != null) {
+			logger.warn("Spilling reached states is not supported for the selected analyses and options.");
+			return null;
+		}
+		try {
+			SpillStore spillStore = SpillStore.createTemporary();
+			reached.setSpillStore(spillStore, codec);
+			return spillStore;
+		} catch (IOException e) {
+			logger.error("Cannot create spill file, keeping all reached states on the heap: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a pressure action that drops the caches of expression simplification
+	 * and instruction translation, which only affects performance.
+	 */
+	private static MemoryGovernor.PressureAction createCacheDropAction() {
+		final Program program = Program.getProgram();
+		return new MemoryGovernor.PressureAction() {
+			@Override
+			public String relieve() {
+				int simplifications = ExpressionSimplifier.getInstance().clearCache();
+				int translations = program != null ? program.getArchitecture().clearTranslationCache() : 0;
+				return "Dropped " + simplifications + " cached simplifications and " + 
+						translations + " cached instruction translations.";
+			}
+		};
+	}
+
+	/**
+	 * Coarsens all components of the given precisions that support it.
+	 * 
+	 * @return the number of precision components that were lowered
+	 */
+	private static int coarsenPrecisions(Map<Location, Precision> precisionMap) {
+		int coarsened = 0;
+		// Precisions might be shared between locations, coarsen each only once
+		Set<Precision> seen = Collections.newSetFromMap(new IdentityHashMap<Precision, Boolean>());
+		for (Precision p : precisionMap.values()) {
+			if (!(p instanceof CompositePrecision)) continue;
+			CompositePrecision cprec = (CompositePrecision)p;
+			for (int i = 0; i < cprec.getComponentCount(); i++) {
+				Precision component = cprec.getComponent(i);
+				if (component instanceof CoarsenablePrecision && seen.add(component) && 
+						((CoarsenablePrecision)component).coarsen())
+					coarsened++;
+			}
+		}
+		return coarsened;
+	}
+
+	private void writeCheckpoint(Map<Location, Precision> precisionMap, boolean wait) {
+		checkpoint.write((ResolvingTransformerFactory)transformerFactory, stateCodec, 
+				reached, worklist, precisionMap, statesVisited, wait);
+	}
+
+	private void runParallel() {
+		logger.debug("Starting parallel CPA algorithm.");
+		if (worklist instanceof OrderedWorklist)
+			logger.warn("The parallel engine schedules states by work stealing, ignoring worklist strategy " + 
+					Options.worklist.getValue() + ".");
+		parallelEngine = new ParallelCPAEngine(cpa, transformerFactory, Options.threads.getValue(), failFast);
+		// Check for a stop request that came in before the engine was created
+		if (stop) parallelEngine.stop();
+		MemoryGovernor memoryGovernor = new MemoryGovernor(Options.memoryThreshold.getValue() / 100.0);
+		// Precisions are used concurrently by the workers, so only drop caches
+		memoryGovernor.addAction(createCacheDropAction());
+		try {
+			completed = parallelEngine.run(reached, memoryGovernor);
+		} finally {
+			memoryGovernor.shutdown();
+			gcTime = memoryGovernor.getGCTime();
+			statesVisited = parallelEngine.getNumberOfStatesVisited();
+		}
+		logger.info("Time in GC: " + gcTime + "ms in " + memoryGovernor.getGCCount() + " collections, " + 
+				memoryGovernor.getPressureEventCount() + " memory pressure events.");
+	}
+
 	public void stop() {
 		logger.fatal(Characters.starredBox("Interrupt! Stopping CPA Algorithm!"));
 		stop = true;
+		ParallelCPAEngine engine = parallelEngine;
+		if (engine != null) engine.stop();
 	}
 
 }
@@ -0,0 +1,199 @@
+/*
+ * CPAProfile.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.util.Logger;
+
+/**
+ * Counts calls and accumulates the time spent in the operators of the CPA
+ * algorithm, in total, per component analysis of a composite analysis, and per
+ * class of statement for post. Phases nest: the time for lifting instructions 
+ * is part of the time for obtaining transformers, and the time of a component
+ * analysis is part of the time of the composite operator. All methods are
+ * thread safe.
+ * 
+ * Posts that take at least a given time are additionally emitted as JFR events
+ * if the JVM supports them.
+ */
+public class CPAProfile {
+
+	private static final Logger logger = Logger.getLogger(CPAProfile.class);
+
+	public static enum Phase {
+		PREC, TRANSFORMERS, POST, MERGE, STOP, LIFT;
+		
+		private final String key = name().toLowerCase();
+	}
+
+	private static final boolean jfrAvailable;
+	static {
+		boolean available;
+		try {
+			Class.forName("jdk.jfr.Event");
+			available = true;
+		} catch (ClassNotFoundException e) {
+			available = false;
+		}
+		jfrAvailable = available;
+	}
+
+	private static final class Counters {
+		private final AtomicLongArray calls = new AtomicLongArray(Phase.values().length);
+		private final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+
+		private void add(Phase phase, long duration) {
+			calls.incrementAndGet(phase.ordinal());
+			nanos.addAndGet(phase.ordinal(), duration);
+		}
+	}
+
+	private final Counters total;
+	private final ConcurrentMap<Class<?>, Counters> byAnalysis;
+	private final ConcurrentMap<Class<?>, Counters> byStatement;
+	private final long slowPostNanos;
+
+	/**
+	 * @param slowPostMillis the minimum duration of a post to be emitted as a 
+	 *        JFR event, or a negative number to never emit events. 
+	 */
+	public CPAProfile(int slowPostMillis) {
+		total = new Counters();
+		byAnalysis = new ConcurrentHashMap<Class<?>, Counters>();
+		byStatement = new ConcurrentHashMap<Class<?>, Counters>();
+		slowPostNanos = slowPostMillis < 0 ? Long.MAX_VALUE : slowPostMillis * 1000000L;
+	}
+
+	private static Counters countersFor(ConcurrentMap<Class<?>, Counters> map, Class<?> c) {
+		Counters counters = map.get(c);
+		if (counters == null) {
+			counters = new Counters();
+			Counters existing = map.putIfAbsent(c, counters);
+			if (existing != null) counters = existing;
+		}
+		return counters;
+	}
+
+	/**
+	 * Records a call to an operator of the CPA algorithm that started at the 
+	 * given time.
+	 * 
+	 * @param startNanos the value of System.nanoTime() before the call
+	 */
+	public void record(Phase phase, long startNanos) {
+		total.add(phase, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records a call to an operator of a component of a composite analysis.
+	 * 
+	 * @param startNanos the value of System.nanoTime() before the call
+	 */
+	public void record(ConfigurableProgramAnalysis cpa, Phase phase, long startNanos) {
+		countersFor(byAnalysis, cpa.getClass()).add(phase, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records a post along the given edge of the CPA algorithm.
+	 * 
+	 * @param startNanos the value of System.nanoTime() before the call
+	 */
+	public void recordPost(CFAEdge edge, long startNanos) {
+		long duration = System.nanoTime() - startNanos;
+		total.add(Phase.POST, duration);
+		countersFor(byStatement, edge.getTransformer().getClass()).add(Phase.POST, duration);
+		if (duration >= slowPostNanos && jfrAvailable)
+			SlowPostEvent.emit(edge, duration);
+	}
+
+	public long getCalls(Phase phase) {
+		return total.calls.get(phase.ordinal());
+	}
+
+	public long getNanos(Phase phase) {
+		return total.nanos.get(phase.ordinal());
+	}
+
+	/**
+	 * Writes the profile as a JSON object with the totals per phase, the 
+	 * totals per phase of each component analysis, and the post totals for
+	 * each class of statement. 
+	 */
+	public void writeReport(String filename) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(filename));
+		try {
+			out.write("{\n  \"phases\": ");
+			writeCounters(out, total, "  ");
+			out.write(",\n  \"analyses\": ");
+			writeCounterMap(out, byAnalysis, null);
+			out.write(",\n  \"statements\": ");
+			writeCounterMap(out, byStatement, Phase.POST);
+			out.write("\n}\n");
+		} finally {
+			out.close();
+		}
+		logger.info("Wrote CPA profile to " + filename);
+	}
+
+	private static void writeCounterMap(Writer out, Map<Class<?>, Counters> map, Phase phase) throws IOException {
+		// Sort by name for stable output
+		Map<String, Counters> sorted = new TreeMap<String, Counters>();
+		for (Map.Entry<Class<?>, Counters> entry : map.entrySet())
+			sorted.put(entry.getKey().getSimpleName(), entry.getValue());
+		out.write("{");
+		boolean first = true;
+		for (Map.Entry<String, Counters> entry : sorted.entrySet()) {
+			out.write(first ? "\n" : ",\n");
+			first = false;
+			out.write("    \"" + entry.getKey() + "\": ");
+			if (phase == null)
+				writeCounters(out, entry.getValue(), "    ");
+			else
+				writeCounter(out, entry.getValue(), phase);
+		}
+		out.write(first ? "}" : "\n  }");
+	}
+
+	private static void writeCounters(Writer out, Counters counters, String indent) throws IOException {
+		out.write("{");
+		boolean first = true;
+		for (Phase phase : Phase.values()) {
+			if (counters.calls.get(phase.ordinal()) == 0)
+				continue;
+			out.write(first ? "\n" : ",\n");
+			first = false;
+			out.write(indent + "  \"" + phase.key + "\": ");
+			writeCounter(out, counters, phase);
+		}
+		out.write(first ? "}" : "\n" + indent + "}");
+	}
+
+	private static void writeCounter(Writer out, Counters counters, Phase phase) throws IOException {
+		out.write("{\"calls\": " + counters.calls.get(phase.ordinal()) + 
+				", \"nanos\": " + counters.nanos.get(phase.ordinal()) + "}");
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * Checkpoint.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jakstab.Program;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.Location;
+import org.jakstab.cfa.RTLLabel;
+import org.jakstab.cfa.ResolvingTransformerFactory;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.util.Logger;
+import org.jakstab.util.Worklist;
+
+/**
+ * A checkpoint of a running control flow reconstruction, from which it can be 
+ * continued after being interrupted. A checkpoint stores the disassembled 
+ * instructions and lifted statements of the program, the edges resolved by the
+ * transformer factory, the reached states with their worklist membership, and
+ * the precisions of all locations. Instructions are disassembled again when 
+ * resuming, as in the {@link org.jakstab.AnalysisCache}.
+ * 
+ * To keep the pause of the analysis short, the analysis thread only encodes 
+ * its state into memory, while compressing and writing the file happens in the
+ * background. The file is replaced atomically, so it always contains a complete
+ * checkpoint.
+ */
+public class Checkpoint {
+
+	private static final Logger logger = Logger.getLogger(Checkpoint.class);
+
+	private static final int MAGIC = 0x4a4b4350; // "JKCP"
+	private static final int FORMAT_VERSION = 1;
+
+	private final File file;
+	private final String key;
+	private final long interval;
+
+	private long lastWriteTime;
+	private Thread writer;
+	private int writes;
+
+	/**
+	 * @param file the checkpoint file
+	 * @param key identifies the input files and options, checkpoints with a
+	 * different key are not resumed
+	 * @param interval milliseconds between periodic checkpoints, or 0 to only
+	 * write a checkpoint when the analysis is interrupted
+	 */
+	public Checkpoint(File file, String key, long interval) {
+		this.file = file;
+		this.key = key;
+		this.interval = interval;
+		lastWriteTime = System.currentTimeMillis();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of checkpoints written so far.
+	 */
+	public int getWriteCount() {
+		return writes;
+	}
+
+	/**
+	 * Checks whether the interval since the last periodic checkpoint has elapsed.
+	 */
+	boolean isDue() {
+		return interval > 0 && System.currentTimeMillis() - lastWriteTime >= interval;
+	}
+
+	/**
+	 * Encodes the state of the analysis and writes it to the checkpoint file in
+	 * the background. If the previous checkpoint is still being written, the new 
+	 * one is skipped unless wait is set.
+	 * 
+	 * @param wait if true, returns only after the checkpoint has been written
+	 */
+	void write(ResolvingTransformerFactory factory, StateCodec codec, ReachedSet reached, 
+			Worklist<AbstractState> worklist, Map<Location, Precision> precisionMap, 
+			long statesVisited, boolean wait) {
+		if (writer != null && writer.isAlive()) {
+			if (!wait) {
+				logger.verbose("Previous checkpoint is still being written, skipping checkpoint.");
+				return;
+			}
+			join();
+		}
+
+		long startTime = System.currentTimeMillis();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+		try {
+			RTLOutputStream out = new RTLOutputStream(new BufferedOutputStream(buffer, 65536));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(key);
+
+			Program program = Program.getProgram();
+			Set<AbsoluteAddress> addresses = program.getAssemblyMap().keySet();
+			out.writeInt(addresses.size());
+			long lastAddress = 0;
+			for (AbsoluteAddress a : addresses) {
+				out.writeLong(a.getValue() - lastAddress);
+				lastAddress = a.getValue();
+			}
+
+			Collection<RTLStatement> statements = program.getStatements();
+			out.writeInt(statements.size());
+			for (RTLStatement s : statements)
+				out.writeStatement(s);
+
+			out.writeInt(precisionMap.size());
+			for (Map.Entry<Location, Precision> entry : precisionMap.entrySet()) {
+				out.writeLabel((RTLLabel)entry.getKey());
+				codec.writePrecision(entry.getValue(), out);
+			}
+
+			out.writeInt(reached.size());
+			for (AbstractState s : reached) {
+				codec.writeState(s, out);
+				out.writeBoolean(worklist.contains(s));
+			}
+			out.writeLong(statesVisited);
+
+			factory.writeState(out);
+			out.close();
+		} catch (IOException e) {
+			logger.error("Failed to encode checkpoint: " + e.getMessage());
+			return;
+		}
+
+		final byte[] data = buffer.toByteArray();
+		lastWriteTime = System.currentTimeMillis();
+		logger.info("Encoded checkpoint of " + reached.size() + " states in " + 
+				(lastWriteTime - startTime) + "ms.");
+		writer = new Thread("Checkpoint writer") {
+			@Override
+			public void run() {
+				writeFile(data);
+			}
+		};
+		writer.start();
+		writes++;
+		if (wait)
+			join();
+	}
+
+	private void writeFile(byte[] data) {
+		File tmpFile = null;
+		OutputStream out = null;
+		try {
+			tmpFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+			out = new GZIPOutputStream(new FileOutputStream(tmpFile), 65536);
+			out.write(data);
+			out.close();
+			out = null;
+
+			if (!tmpFile.renameTo(file)) {
+				file.delete();
+				if (!tmpFile.renameTo(file))
+					throw new IOException("Cannot rename " + tmpFile + " to " + file);
+			}
+			logger.verbose("Wrote checkpoint " + file + " with " + file.length() + " bytes.");
+		} catch (IOException e) {
+			logger.error("Failed to write checkpoint " + file + ": " + e.getMessage());
+			close(out);
+			if (tmpFile != null)
+				tmpFile.delete();
+		}
+	}
+
+	private void join() {
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Restores the state of an interrupted analysis from the checkpoint file. 
+	 * Nothing is changed if there is no checkpoint for the current input files
+	 * and options, or if it cannot be read. The whole checkpoint is decoded and
+	 * checked for trailing data (which also verifies the checksum of the 
+	 * compressed file) before any of it is applied.
+	 * 
+	 * @return the number of states visited before the checkpoint was written, 
+	 * or -1 if nothing was restored
+	 */
+	long restore(ResolvingTransformerFactory factory, StateCodec codec, ReachedSet reached, 
+			Worklist<AbstractState> worklist, Map<Location, Precision> precisionMap) {
+		if (!file.isFile()) {
+			logger.warn("No checkpoint " + file + " to resume from, starting from scratch.");
+			return -1;
+		}
+
+		List<AbsoluteAddress> addresses;
+		List<RTLStatement> statements;
+		Map<Location, Precision> precisions;
+		List<AbstractState> states;
+		BitSet inWorklist;
+		long statesVisited;
+		ResolvingTransformerFactory.SavedState factoryState;
+		RTLInputStream in = null;
+		try {
+			in = new RTLInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+				throw new IOException("Invalid header");
+			if (!in.readUTF().equals(key)) {
+				logger.warn("Checkpoint " + file + " was written for different files or options, starting from scratch.");
+				close(in);
+				return -1;
+			}
+
+			int count = in.readInt();
+			addresses = new ArrayList<AbsoluteAddress>(count);
+			long address = 0;
+			for (int i = 0; i < count; i++) {
+				address += in.readLong();
+				addresses.add(new AbsoluteAddress(address));
+			}
+
+			count = in.readInt();
+			statements = new ArrayList<RTLStatement>(count);
+			for (int i = 0; i < count; i++)
+				statements.add(in.readStatement());
+
+			count = in.readInt();
+			precisions = new HashMap<Location, Precision>(count * 2);
+			for (int i = 0; i < count; i++) {
+				RTLLabel l = in.readLabel();
+				precisions.put(l, codec.readPrecision(in));
+			}
+
+			count = in.readInt();
+			states = new ArrayList<AbstractState>(count);
+			inWorklist = new BitSet(count);
+			for (int i = 0; i < count; i++) {
+				states.add(codec.readState(in));
+				if (in.readBoolean())
+					inWorklist.set(i);
+			}
+			statesVisited = in.readLong();
+
+			factoryState = factory.readState(in);
+			if (in.read() != -1)
+				throw new IOException("Unexpected data after end of checkpoint");
+		} catch (Exception e) {
+			// Also catches runtime exceptions from corrupted input
+			logger.error("Cannot resume from unreadable checkpoint " + file + ": " + e);
+			close(in);
+			return -1;
+		}
+		close(in);
+
+		Program program = Program.getProgram();
+		for (AbsoluteAddress a : addresses) {
+			if (program.getInstruction(a) == null)
+				logger.warn("Instruction at " + a + " from checkpoint could not be disassembled!");
+		}
+		for (RTLStatement s : statements)
+			program.putStatement(s);
+		factory.restoreState(factoryState);
+		precisionMap.putAll(precisions);
+		for (int i = 0; i < states.size(); i++) {
+			reached.add(states.get(i));
+			if (inWorklist.get(i))
+				worklist.add(states.get(i));
+		}
+
+		logger.warn("Resuming from checkpoint " + file + " with " + reached.size() + " reached states, " + 
+				worklist.size() + " of them in the worklist, after processing " + statesVisited + " states.");
+		return statesVisited;
+	}
+
+	/**
+	 * Deletes the checkpoint file, e.g., once the analysis has completed.
+	 */
+	void delete() {
+		if (writer != null)
+			join();
+		if (file.isFile() && !file.delete())
+			logger.warn("Cannot delete checkpoint " + file);
+	}
+
+	private static void close(Closeable c) {
+		if (c == null) return;
+		try {
+			c.close();
+		} catch (IOException e) {
+			// Ignore
+		}
+	}
+
+}
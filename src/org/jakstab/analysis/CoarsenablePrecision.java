@@ -0,0 +1,39 @@
+/*
+ * CoarsenablePrecision.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+/**
+ * A precision that can be lowered on request, e.g., when the analysis produces
+ * too many states at the location of the precision. The next call to the 
+ * analysis' prec operator at that location then abstracts states accordingly.
+ */
+public interface CoarsenablePrecision extends Precision {
+
+	/**
+	 * Lowers this precision in place.
+	 * 
+	 * @return false if the precision cannot be lowered any further
+	 */
+	public boolean coarsen();
+
+	/**
+	 * Returns a copy of this precision that can be coarsened without affecting 
+	 * this precision or the locations sharing it.
+	 */
+	public CoarsenablePrecision copy();
+
+}
@@ -42,9 +42,16 @@ import org.jakstab.util.*;
 public class ControlFlowReconstruction implements Algorithm {
 
 	private class PriorityWorklist implements Worklist<AbstractState> {
-		private FastSet<AbstractState> worklist = new FastSet<AbstractState>();
+		private Worklist<AbstractState> worklist;
 		private FastSet<AbstractState> priorityList = new FastSet<AbstractState>();
 		
+		/**
+		 * @param worklist The worklist for states at already disassembled locations. 
+		 */
+		public PriorityWorklist(Worklist<AbstractState> worklist) {
+			this.worklist = worklist;
+		}
+		
 		@Override
 		public AbstractState pick() {
 			if (!priorityList.isEmpty()) {
@@ -76,6 +83,11 @@ public class ControlFlowReconstruction implements Algorithm {
 			return priorityList.remove(a) | worklist.remove(a);
 		}
 
+		@Override
+		public boolean contains(AbstractState a) {
+			return priorityList.contains(a) || worklist.contains(a);
+		}
+
 		@Override
 		public int size() {
 			return priorityList.size() + worklist.size();
@@ -114,6 +126,11 @@ public class ControlFlowReconstruction implements Algorithm {
 			return list.remove(element);
 		}
 
+		@Override
+		public boolean contains(AbstractState element) {
+			return list.contains(element);
+		}
+
 		@Override
 		public int size() {
 			return list.size();
@@ -209,13 +226,39 @@ public class ControlFlowReconstruction implements Algorithm {
 			}
 		}
 		
+		// The order of known locations follows the edges resolved so far
+		OrderedWorklist.EdgeSource resolvedEdges = new OrderedWorklist.EdgeSource() {
+			@Override
+			public int numEdges() {
+				return transformerFactory.numEdges();
+			}
+			
+			@Override
+			public Collection<CFAEdge> getEdges() {
+				return transformerFactory.getEdges();
+			}
+			
+			@Override
+			public Location getEntryPoint() {
+				return transformerFactory.getInitialLocation();
+			}
+		};
+
 		//Worklist<AbstractState> worklist = new RandomizedWorklist();
-		Worklist<AbstractState> worklist = new PriorityWorklist();
+		Worklist<AbstractState> worklist = new PriorityWorklist(OrderedWorklist.create(resolvedEdges, false));
 		//Worklist<AbstractState> worklist = new FastSet<AbstractState>();
 
 		cpaAlgorithm = new CPAAlgorithm(cpa, transformerFactory, worklist, Options.failFast.getValue());
 	}
 
+	/**
+	 * Writes checkpoints of the reconstruction and resumes from an existing
+	 * one if requested, see {@link CPAAlgorithm#setCheckpoint(Checkpoint)}.
+	 */
+	public void setCheckpoint(Checkpoint checkpoint) {
+		cpaAlgorithm.setCheckpoint(checkpoint);
+	}
+
 	public ReachedSet getReachedStates() {
 		return cpaAlgorithm.getReachedStates();
 	}
@@ -224,6 +267,18 @@ public class ControlFlowReconstruction implements Algorithm {
 		return cpaAlgorithm.getNumberOfStatesVisited();
 	}
 	
+	public long getGCTime() {
+		return cpaAlgorithm.getGCTime();
+	}
+	
+	/**
+	 * @return the name of the worklist strategy used, or "parallel" if the 
+	 * states were scheduled by the parallel engine.
+	 */
+	public String getWorklistStrategy() {
+		return cpaAlgorithm.isParallel() ? "parallel" : Options.worklist.getValue();
+	}
+	
 	public AbstractReachabilityTree getART() {
 		return cpaAlgorithm.getART();
 	}
@@ -363,6 +418,7 @@ public class ControlFlowReconstruction implements Algorithm {
 		} finally {
 			program.setCFA(transformerFactory.getCFA());
 			program.setUnresolvedBranches(transformerFactory.getUnresolvedBranches());
+			program.releasePredisassembled();
 		}
 	}
 	
@@ -17,6 +17,9 @@
  */
 package org.jakstab.analysis;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -33,43 +36,70 @@ public class MemoryRegion implements LatticeElement, Comparable<MemoryRegion> {
 
 	private final String name;
 	private final int id;
-	private boolean summary;
+	private final boolean summary;
 	
+	// Regions are immutable and shared by all programs analyzed in the JVM. Summary 
+	// regions are kept apart, so creating a summary region does not change a region
+	// created by another analysis (or for another program in batch mode).
 	private static Map<String, MemoryRegion> regionMap;
+	private static Map<String, MemoryRegion> summaryRegionMap;
 	static {
 		regionMap = new HashMap<String, MemoryRegion>();
 		regionMap.put(TOP.name, TOP);
 		regionMap.put(GLOBAL.name, GLOBAL);
 		regionMap.put(STACK.name, STACK);
+		summaryRegionMap = new HashMap<String, MemoryRegion>();
 	}
 	
-	public static MemoryRegion createAsSummary(String name) {
-		MemoryRegion region = create(name);
-		region.summary = true;
+	public static synchronized MemoryRegion createAsSummary(String name) {
+		MemoryRegion region = summaryRegionMap.get(name);
+		if (region == null) {
+			region = new MemoryRegion(name, true);
+			summaryRegionMap.put(name, region);
+			logger.debug("Created new summary memory region: " + name);
+		}
 		return region;
 	}
 
-	public static MemoryRegion create(String name) {
+	public static synchronized MemoryRegion create(String name) {
 		MemoryRegion region = regionMap.get(name);
 		if (region == null) {
-			region = new MemoryRegion(name);
+			region = new MemoryRegion(name, false);
 			regionMap.put(name, region);
 			logger.debug("Created new memory region: " + name);
 		}
 		return region;
 	}
 
+	/**
+	 * Reads a region written by {@link #write(DataOutput)}, creating it if it 
+	 * does not exist yet.
+	 */
+	public static MemoryRegion read(DataInput in) throws IOException {
+		String name = in.readUTF();
+		return in.readBoolean() ? createAsSummary(name) : create(name);
+	}
+
 	private MemoryRegion(String name) {
+		this(name, false);
+	}
+
+	private MemoryRegion(String name, boolean summary) {
 		super();
 		this.id = ++maxId;
 		this.name = name;
-		this.summary = false;
+		this.summary = summary;
 	}
 	
 	public boolean isSummary() {
 		return summary;
 	}
 	
+	public void write(DataOutput out) throws IOException {
+		out.writeUTF(name);
+		out.writeBoolean(summary);
+	}
+	
 	@Override
 	public String toString() {
 		return name;
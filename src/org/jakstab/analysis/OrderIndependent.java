@@ -0,0 +1,30 @@
+/*
+ * OrderIndependent.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+/**
+ * Marks an analysis whose reached states do not depend on the order in which
+ * the CPA algorithm processes states, as its merge operator only joins or 
+ * keeps states separate and its prec operator never widens. Analyses that 
+ * count values or widen at loop heads must not implement this interface.
+ * 
+ * Only analyses with this property are run by the parallel engine, which 
+ * processes states in an unpredictable order.
+ */
+public interface OrderIndependent {
+
+}
@@ -0,0 +1,243 @@
+/*
+ * OrderedWorklist.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.*;
+
+import org.jakstab.Options;
+import org.jakstab.cfa.*;
+import org.jakstab.util.FastSet;
+import org.jakstab.util.Logger;
+import org.jakstab.util.Worklist;
+
+/**
+ * A worklist that picks states by the position of their location in an
+ * ordering of the control flow graph. The ordering is computed from a set of
+ * edges that may grow while the analysis runs, as in control flow reconstruction;
+ * it is recomputed whenever the number of edges has grown noticeably since the
+ * last computation. States at locations not yet covered by the ordering are
+ * picked last. States at the same position are picked in insertion order.
+ */
+public class OrderedWorklist implements Worklist<AbstractState> {
+
+	private static final Logger logger = Logger.getLogger(OrderedWorklist.class);
+
+	public static enum Strategy {
+		/** Insertion order, i.e., no ordering */
+		FIFO,
+		/** Reverse postorder of a depth first search from the entry point */
+		RPO,
+		/** Weak topological order */
+		WTO,
+		/** Innermost loops first, then reverse postorder */
+		LOOPDEPTH;
+
+		public static Strategy fromString(String s) {
+			try {
+				return valueOf(s.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown worklist strategy: " + s);
+			}
+		}
+	}
+
+	/**
+	 * The (possibly growing) graph from which to compute the ordering.
+	 */
+	public static interface EdgeSource {
+		public int numEdges();
+		public Collection<CFAEdge> getEdges();
+		public Location getEntryPoint();
+	}
+
+	/**
+	 * Creates the worklist configured on the command line.
+	 *
+	 * @param edges the graph the analysis runs on
+	 * @param reverse true for backward analyses, which order the reversed graph
+	 * @return a worklist ordering states according to the configured strategy
+	 */
+	public static Worklist<AbstractState> create(EdgeSource edges, boolean reverse) {
+		Strategy strategy = Strategy.fromString(Options.worklist.getValue());
+		if (strategy == Strategy.FIFO)
+			return new FastSet<AbstractState>();
+		return new OrderedWorklist(strategy, edges, reverse);
+	}
+
+	public static EdgeSource edgesOf(final ControlFlowGraph cfg) {
+		return new EdgeSource() {
+			@Override
+			public int numEdges() {
+				return cfg.numEdges();
+			}
+
+			@Override
+			public Collection<CFAEdge> getEdges() {
+				return cfg.getEdges();
+			}
+
+			@Override
+			public Location getEntryPoint() {
+				return cfg.getEntryPoint();
+			}
+		};
+	}
+
+	private static final class Entry {
+		private final AbstractState state;
+		private final long seq;
+		private long priority;
+
+		private Entry(AbstractState state, long seq, long priority) {
+			this.state = state;
+			this.seq = seq;
+			this.priority = priority;
+		}
+	}
+
+	private static final Comparator<Entry> entryComparator = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			if (e1.priority != e2.priority)
+				return e1.priority < e2.priority ? -1 : 1;
+			if (e1.seq != e2.seq)
+				return e1.seq < e2.seq ? -1 : 1;
+			return 0;
+		}
+	};
+
+	private final Strategy strategy;
+	private final EdgeSource edgeSource;
+	private final boolean reverse;
+
+	private TreeSet<Entry> queue;
+	private final Map<AbstractState, Entry> entries;
+	private long nextSeq;
+
+	private WeakTopologicalOrder order;
+	private int orderedEdgeCount;
+	private int recomputations;
+
+	public OrderedWorklist(Strategy strategy, EdgeSource edgeSource, boolean reverse) {
+		this.strategy = strategy;
+		this.edgeSource = edgeSource;
+		this.reverse = reverse;
+		queue = new TreeSet<Entry>(entryComparator);
+		entries = new HashMap<AbstractState, Entry>();
+		nextSeq = 0;
+		orderedEdgeCount = -1;
+		recomputations = 0;
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @return how often the ordering had to be computed.
+	 */
+	public int getRecomputationCount() {
+		return recomputations;
+	}
+
+	private boolean isOrderOutdated() {
+		int numEdges = edgeSource.numEdges();
+		if (orderedEdgeCount < 0) return true;
+		// Grow geometrically to keep the total cost of recomputation linear
+		return numEdges > orderedEdgeCount + (orderedEdgeCount >> 3) + 16;
+	}
+
+	private void recomputeOrder() {
+		order = new WeakTopologicalOrder(edgeSource.getEntryPoint(), edgeSource.getEdges(), reverse);
+		orderedEdgeCount = edgeSource.numEdges();
+		recomputations++;
+		logger.debug("Computed " + strategy + " worklist order for " + order.size() +
+				" locations, maximum loop depth " + order.getMaxLoopDepth());
+
+		TreeSet<Entry> newQueue = new TreeSet<Entry>(entryComparator);
+		for (Entry e : queue) {
+			e.priority = getPriority(e.state.getLocation());
+			newQueue.add(e);
+		}
+		queue = newQueue;
+	}
+
+	private long getPriority(Location l) {
+		if (order == null || !order.contains(l))
+			return Long.MAX_VALUE;
+		switch (strategy) {
+		case RPO:
+			return order.getReversePostorderNumber(l);
+		case WTO:
+			return order.getWTOPosition(l);
+		case LOOPDEPTH:
+			return ((long)(order.getMaxLoopDepth() - order.getLoopDepth(l)) << 32) |
+				order.getReversePostorderNumber(l);
+		default:
+			return 0;
+		}
+	}
+
+	@Override
+	public boolean add(AbstractState a) {
+		if (entries.containsKey(a)) return false;
+		Entry e = new Entry(a, nextSeq++, getPriority(a.getLocation()));
+		entries.put(a, e);
+		queue.add(e);
+		return true;
+	}
+
+	@Override
+	public AbstractState pick() {
+		if (isOrderOutdated())
+			recomputeOrder();
+		Entry e = queue.pollFirst();
+		if (e == null)
+			throw new NoSuchElementException("Worklist is empty!");
+		entries.remove(e.state);
+		return e.state;
+	}
+
+	@Override
+	public boolean remove(AbstractState a) {
+		Entry e = entries.remove(a);
+		if (e == null) return false;
+		queue.remove(e);
+		return true;
+	}
+
+	@Override
+	public boolean contains(AbstractState a) {
+		return entries.containsKey(a);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public String toString() {
+		return strategy + " worklist with " + size() + " elements";
+	}
+
+}
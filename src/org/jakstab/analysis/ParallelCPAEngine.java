@@ -0,0 +1,366 @@
+/*
+ * ParallelCPAEngine.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jakstab.Options;
+import org.jakstab.Program;
+import org.jakstab.analysis.composite.CompositeState;
+import org.jakstab.cfa.*;
+import org.jakstab.util.*;
+
+/**
+ * Parallel version of the CPA worklist loop. Worker threads of a work-stealing
+ * fork/join pool each process one abstract state at a time. The reached set is
+ * striped into partitions by location, and all operations that touch the states
+ * or the precision of a location (prec, post into that location, merge and stop)
+ * run while holding the lock of the location's partition. Different locations
+ * are processed concurrently.
+ *
+ * Transformers are requested by several workers at once, so transformer factories
+ * must support concurrent use. The resolving factories of control flow 
+ * reconstruction do, they lift statements through the synchronized program and
+ * record resolved edges under their own lock.
+ *
+ * States are processed in no particular order, so the engine is only used for
+ * analyses that are {@link OrderIndependent}. Their reached states are then the
+ * same as those of the sequential algorithm.
+ */
+class ParallelCPAEngine {
+
+	private static final Logger logger = Logger.getLogger(ParallelCPAEngine.class);
+
+	private static final long reportInterval = 5000;
+	private static final long pressureCheckInterval = 1000;
+
+	private final ConfigurableProgramAnalysis cpa;
+	private final StateTransformerFactory transformerFactory;
+	private final int threads;
+	private final boolean failFast;
+
+	private final ReachedSet[] partitions;
+	private final Map<Location, Precision> precisionMap;
+
+	private final AtomicLong statesVisited;
+	// States processed by each worker, and by the calling thread in the last slot
+	private final AtomicLongArray workerStates;
+	private final CPAProfile profile;
+	private final StateBudget budget;
+
+	private volatile boolean stop = false;
+	private volatile Throwable failure;
+	private ForkJoinPool pool;
+
+	/**
+	 * @param failFast whether to stop as soon as the transformer factory had to 
+	 * make unsound assumptions
+	 */
+	ParallelCPAEngine(ConfigurableProgramAnalysis cpa, StateTransformerFactory transformerFactory, 
+			int threads, boolean failFast) {
+		this.cpa = cpa;
+		this.transformerFactory = transformerFactory;
+		this.threads = threads;
+		this.failFast = failFast;
+
+		// Use more partitions than threads to keep lock contention low
+		partitions = new ReachedSet[threads * 16];
+		for (int i = 0; i < partitions.length; i++)
+			partitions[i] = new ReachedSet();
+		precisionMap = new ConcurrentHashMap<Location, Precision>();
+		statesVisited = new AtomicLong();
+		workerStates = new AtomicLongArray(threads + 1);
+		Program program = Program.getProgram();
+		profile = program != null ? program.getProfile() : null;
+		if (Options.stateBudget.getValue() > 0 || Options.outputLocationsWithMostStates.getValue())
+			budget = new StateBudget(Options.stateBudget.getValue());
+		else
+			budget = null;
+	}
+
+	/**
+	 * Runs the analysis to a fixpoint (or until stopped) and adds all reached
+	 * states to the given reached set. The calling thread checks the memory 
+	 * governor for pressure while the workers run.
+	 *
+	 * @return true if the fixpoint was reached, false if the analysis was stopped.
+	 */
+	boolean run(ReachedSet reached, MemoryGovernor memoryGovernor) {
+		logger.info("Running CPA algorithm with " + threads + " worker threads.");
+
+		Location initialLocation = transformerFactory.getInitialLocation();
+		AbstractState start = cpa.initStartState(initialLocation);
+		precisionMap.put(start.getLocation(), cpa.initPrecision(initialLocation, null));
+		partitionOf(start.getLocation()).add(start);
+
+		long startTime = System.currentTimeMillis();
+		long lastTime = startTime;
+		long[] lastWorkerStates = new long[threads + 1];
+
+		pool = new ForkJoinPool(threads);
+		schedule(start);
+
+		while (!pool.awaitQuiescence(pressureCheckInterval, TimeUnit.MILLISECONDS)) {
+			memoryGovernor.checkPressure();
+			long now = System.currentTimeMillis();
+			if (now - lastTime < reportInterval)
+				continue;
+			long duration = Math.max(1, now - lastTime);
+
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i <= threads; i++) {
+				long workerCount = workerStates.get(i);
+				if (i == threads)
+					sb.append(", calling thread:");
+				sb.append(' ').append(1000L * (workerCount - lastWorkerStates[i]) / duration);
+				lastWorkerStates[i] = workerCount;
+			}
+			logger.warn("*** Reached " + reachedSize() + " states, processed " + statesVisited.get() +
+					" states after " + (now - startTime) + "ms, states/second per worker:" + sb);
+			if (budget != null && Options.outputLocationsWithMostStates.getValue())
+				budget.logHottestLocations(10);
+			lastTime = now;
+
+			if (Options.timeout.getValue() > 0 && (now - startTime > Options.timeout.getValue() * 1000)) {
+				logger.error("Timeout after " + Options.timeout.getValue() + "s!");
+				stop = true;
+			}
+		}
+		pool.shutdown();
+		if (budget != null && budget.getInterventionCount() > 0)
+			logger.warn("Joined states at locations over the state budget " + budget.getInterventionCount() + " times.");
+
+		long endTime = System.currentTimeMillis();
+		if (endTime - startTime > 0) {
+			long duration = endTime - startTime;
+			logger.info("Processed " + statesVisited.get() + " states at " +
+					(1000L * statesVisited.get() / duration) + " states/second");
+			for (int i = 0; i <= threads; i++) {
+				logger.info("    " + (i < threads ? "Worker " + i : "Calling thread") + ": " + 
+					workerStates.get(i) + " states, " + (1000L * workerStates.get(i) / duration) + " states/second");
+			}
+		}
+
+		for (ReachedSet partition : partitions)
+			reached.addAll(partition);
+
+		// Rethrow the first failure of a worker in the calling thread
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException)failure;
+		if (failure instanceof Error)
+			throw (Error)failure;
+		if (failure != null)
+			throw new RuntimeException(failure);
+
+		return !stop;
+	}
+
+	void stop() {
+		stop = true;
+	}
+
+	long getNumberOfStatesVisited() {
+		return statesVisited.get();
+	}
+
+	private boolean isSound() {
+		return !(transformerFactory instanceof ResolvingTransformerFactory) || 
+				((ResolvingTransformerFactory)transformerFactory).isSound();
+	}
+
+	private ReachedSet partitionOf(Location l) {
+		int h = l.hashCode();
+		h ^= (h >>> 16);
+		return partitions[(h & 0x7fffffff) % partitions.length];
+	}
+
+	private int reachedSize() {
+		int size = 0;
+		for (ReachedSet partition : partitions) {
+			synchronized (partition) {
+				size += partition.size();
+			}
+		}
+		return size;
+	}
+
+	private void process(AbstractState unadjustedState) {
+		Location location = unadjustedState.getLocation();
+		ReachedSet partition = partitionOf(location);
+
+		AbstractState a;
+		long startNanos = 0;
+		synchronized (partition) {
+			// The state may have been replaced by a merged state since it was scheduled
+			if (!partition.contains(unadjustedState))
+				return;
+
+			Precision precision = precisionMap.get(location);
+			if (profile != null) startNanos = System.nanoTime();
+			Pair<AbstractState, Precision> pair = cpa.prec(unadjustedState, precision, partition);
+			if (profile != null) profile.record(CPAProfile.Phase.PREC, startNanos);
+			a = pair.getLeft();
+			precisionMap.put(location, pair.getRight());
+		}
+
+		statesVisited.incrementAndGet();
+		// The calling thread runs tasks while it waits for the pool in run()
+		Thread t = Thread.currentThread();
+		if (t instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread)t).getPool() == pool)
+			workerStates.incrementAndGet(((ForkJoinWorkerThread)t).getPoolIndex() % threads);
+		else
+			workerStates.incrementAndGet(threads);
+
+		List<AbstractState> newStates = new LinkedList<AbstractState>();
+
+		Set<CFAEdge> transformers;
+		try {
+			if (profile != null) startNanos = System.nanoTime();
+			transformers = transformerFactory.getTransformers(a);
+			if (profile != null) profile.record(CPAProfile.Phase.TRANSFORMERS, startNanos);
+		} catch (StateException e) {
+			// Fill in state for disassembly and unknownpointer exceptions
+			if (e.getState() == null) {
+				e.setState(a);
+			}
+			throw e;
+		}
+
+		for (CFAEdge cfaEdge : transformers) {
+			Location target = cfaEdge.getTarget();
+			ReachedSet targetPartition = partitionOf(target);
+
+			// Post reads the target precision, which is modified by prec under the same lock
+			synchronized (targetPartition) {
+				Precision targetPrecision = precisionMap.get(target);
+				if (targetPrecision == null) {
+					targetPrecision = cpa.initPrecision(target, cfaEdge.getTransformer());
+					precisionMap.put(target, targetPrecision);
+				}
+
+				Set<AbstractState> successors;
+				try {
+					if (profile != null) startNanos = System.nanoTime();
+					successors = cpa.post(a, cfaEdge, targetPrecision);
+					if (profile != null) profile.recordPost(cfaEdge, startNanos);
+				} catch (StateException e) {
+					if (e.getState() == null) {
+						e.setState(a);
+					}
+					throw e;
+				}
+
+				for (AbstractState succ : successors) {
+					Set<AbstractState> statesToRemove = new FastSet<AbstractState>();
+					Set<AbstractState> statesToAdd = new FastSet<AbstractState>();
+
+					for (AbstractState r : targetPartition.getStatesAt(((CompositeState)succ).getComponent(0))) {
+						if (profile != null) startNanos = System.nanoTime();
+						AbstractState merged = cpa.merge(succ, r, targetPrecision);
+						if (profile != null) profile.record(CPAProfile.Phase.MERGE, startNanos);
+						if (!merged.equals(r)) {
+							statesToRemove.add(r);
+							statesToAdd.add(merged);
+						}
+					}
+
+					// Removed states still have a task scheduled, which will skip them
+					for (AbstractState r : statesToRemove) {
+						if (targetPartition.remove(r) && budget != null) budget.countRemoved(target);
+					}
+
+					for (AbstractState r : statesToAdd) {
+						if (targetPartition.add(r)) {
+							newStates.add(r);
+							if (budget != null) budget.countAdded(target);
+						}
+					}
+
+					if (profile != null) startNanos = System.nanoTime();
+					boolean stopped = cpa.stop(succ, targetPartition, targetPrecision);
+					if (profile != null) profile.record(CPAProfile.Phase.STOP, startNanos);
+					if (!stopped) {
+						targetPartition.add(succ);
+						newStates.add(succ);
+						if (budget != null) budget.countAdded(target);
+					}
+				}
+
+				// Removed states still have a task scheduled, which will skip them
+				if (budget != null && !successors.isEmpty()) {
+					newStates.addAll(budget.enforce(target, 
+							((CompositeState)successors.iterator().next()).getComponent(0), 
+							cpa, precisionMap, targetPartition, new LinkedList<AbstractState>()));
+				}
+			}
+		}
+
+		for (AbstractState s : newStates) {
+			schedule(s);
+		}
+	}
+
+	private void schedule(AbstractState s) {
+		StateTask task = new StateTask(s);
+		// Push to the local deque of a worker; the calling thread can also be the
+		// main thread helping out in awaitQuiescence, which must not use fork().
+		if (ForkJoinTask.getPool() == pool)
+			task.fork();
+		else
+			pool.execute(task);
+	}
+
+	private class StateTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 6113596453637329817L;
+
+		private final AbstractState state;
+
+		StateTask(AbstractState state) {
+			this.state = state;
+		}
+
+		@Override
+		protected void compute() {
+			if (stop) return;
+			if (failFast && !isSound()) {
+				stop = true;
+				return;
+			}
+			try {
+				process(state);
+			} catch (Throwable e) {
+				synchronized (ParallelCPAEngine.this) {
+					if (failure == null)
+						failure = e;
+				}
+				stop = true;
+				// Discard the remaining tasks, run() rethrows the failure
+				pool.shutdownNow();
+			}
+		}
+	}
+
+}
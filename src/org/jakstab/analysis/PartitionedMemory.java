@@ -25,11 +25,18 @@ import org.jakstab.Program;
 import org.jakstab.asm.AbsoluteAddress;
 import org.jakstab.loader.ExecutableImage;
 import org.jakstab.rtl.BitVectorType;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
 import org.jakstab.rtl.expressions.*;
 import org.jakstab.util.*;
 import org.jakstab.util.MapMap.EntryIterator;
 
 /**
+ * A store of abstract values, partitioned into memory regions. Each region maps
+ * byte offsets to memory cells, where a cell covers all bytes written by a single
+ * store operation. Cells are kept in an {@link IntervalMap} per region, so a cell
+ * is stored once instead of once for every byte it covers.
+ * 
  * @author Johannes Kinder
  */
 public final class PartitionedMemory<A extends AbstractValue> implements LatticeElement {
@@ -86,20 +93,70 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 
 	private static final Logger logger = Logger.getLogger(PartitionedMemory.class);
 	
-	private final LazyHashMapMap<MemoryRegion, Long, MemoryCell> store;
+	/** 
+	 * Map of non-empty regions. If it is shared with other stores, it has to
+	 * be copied before modification, together with the region maps in it. 
+	 */
+	private Map<MemoryRegion, IntervalMap<MemoryCell>> store;
+	private boolean storeShared;
 	private boolean dataIsTop;
 	private final AbstractValueFactory<A> valueFactory;
 	
 	public PartitionedMemory(AbstractValueFactory<A> valueFactory) {
 		this.valueFactory = valueFactory;
-		store = new LazyHashMapMap<MemoryRegion, Long, MemoryCell>();
+		store = new HashMap<MemoryRegion, IntervalMap<MemoryCell>>();
+		storeShared = false;
 		dataIsTop = false;
 	}
 	
 	public PartitionedMemory(PartitionedMemory<A> proto) {
 		valueFactory = proto.valueFactory;
 		dataIsTop = proto.dataIsTop;
-		store = new LazyHashMapMap<MemoryRegion, Long, MemoryCell>(proto.store);
+		store = proto.store;
+		storeShared = true;
+		proto.storeShared = true;
+	}
+	
+	private void makeExclusive() {
+		if (storeShared) {
+			Map<MemoryRegion, IntervalMap<MemoryCell>> copy = 
+				new HashMap<MemoryRegion, IntervalMap<MemoryCell>>(store.size() * 2);
+			for (Map.Entry<MemoryRegion, IntervalMap<MemoryCell>> entry : store.entrySet())
+				copy.put(entry.getKey(), new IntervalMap<MemoryCell>(entry.getValue()));
+			store = copy;
+			storeShared = false;
+		}
+	}
+	
+	/**
+	 * Returns the modifiable cell map of a region, creating it if necessary.
+	 */
+	private IntervalMap<MemoryCell> getRegionForWrite(MemoryRegion region) {
+		makeExclusive();
+		IntervalMap<MemoryCell> cells = store.get(region);
+		if (cells == null) {
+			cells = new IntervalMap<MemoryCell>();
+			store.put(region, cells);
+		}
+		return cells;
+	}
+	
+	private MemoryCell getCell(MemoryRegion region, long offset) {
+		IntervalMap<MemoryCell> cells = store.get(region);
+		return cells == null ? null : cells.get(offset);
+	}
+	
+	/**
+	 * Removes all bytes in a range of a region, keeping the parts of cells outside of the range. 
+	 */
+	private void removeBytes(MemoryRegion region, long start, long end) {
+		IntervalMap<MemoryCell> cells = store.get(region);
+		if (cells == null) return;
+		cells = getRegionForWrite(region);
+		cells.remove(start, end);
+		// Do not keep empty regions, so they do not affect equality
+		if (cells.isEmpty())
+			store.remove(region);
 	}
 	
 	public void setTop() {
@@ -107,7 +164,8 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 			logger.info("Ignoring weak universal update!");
 			return;
 		}
-		store.clear();
+		store = new HashMap<MemoryRegion, IntervalMap<MemoryCell>>();
+		storeShared = false;
 		dataIsTop = true;
 		logger.verbose("Overapproximated all memory regions to TOP!");
 		if (Options.debug.getValue())
@@ -125,8 +183,10 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 			return;
 		}
 
-		if (store.containsLeftKey(region))
+		if (store.containsKey(region)) {
+			makeExclusive();
 			store.remove(region);
+		}
 		if (region == MemoryRegion.GLOBAL)
 			dataIsTop = true;
 
@@ -136,17 +196,18 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 	}
 	
 	private void setBytesTop(MemoryRegion region, long offset, int size) {
-		for (int i=0; i<size; i++) {
-			// We need to explicitly remember TOP memory cells in the global region,
-			// as it is initialized to the static data of the executable.
-			// If heap cells are assumed to be initially BOT, we also need to do this.
-			if ((Options.initHeapToBot.getValue() && region != MemoryRegion.STACK) || region == MemoryRegion.GLOBAL) {
+		// We need to explicitly remember TOP memory cells in the global region,
+		// as it is initialized to the static data of the executable.
+		// If heap cells are assumed to be initially BOT, we also need to do this.
+		if ((Options.initHeapToBot.getValue() && region != MemoryRegion.STACK) || region == MemoryRegion.GLOBAL) {
+			IntervalMap<MemoryCell> cells = getRegionForWrite(region);
+			for (int i=0; i<size; i++) {
 				MemoryCell topCell = new MemoryCell(offset + i, 1, 
 						valueFactory.createTop(8));
-				store.put(region, offset + i, topCell);
-			} else {
-				store.remove(region, offset + i);
+				cells.put(offset + i, offset + i + 1, topCell);
 			}
+		} else {
+			removeBytes(region, offset, offset + size);
 		}
 	}
 	
@@ -178,7 +239,7 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		
 		// Set all old memory cells in the written area to top
 		for (int i=0; i<size; i++) {
-			MemoryCell oldCell = store.get(region, offset + i);
+			MemoryCell oldCell = getCell(region, offset + i);
 
 			if (oldCell != null) {
 				setBytesTop(region, oldCell.offset, oldCell.size);
@@ -191,9 +252,9 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 
 			// Separate update from deletion, so while overwriting an old cell, 
 			// we don't have to be careful not to overwrite our new cell
-			MemoryCell cell = new MemoryCell(offset, size, value);
-			for (int i=0; i<size; i++) {
-				store.put(region, offset + i, cell);
+			if (size > 0) {
+				MemoryCell cell = new MemoryCell(offset, size, value);
+				getRegionForWrite(region).put(offset, offset + size, cell);
 			}
 		}
 	}
@@ -204,7 +265,7 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		A oldValue = get(region, offset, bitWidth);
 		
 		// If we treat heap cells as initialized to BOT, just set uninitialized cells to the new value
-		if (Options.initHeapToBot.getValue() && oldValue.isTop() && !store.containsKey(region, offset))
+		if (Options.initHeapToBot.getValue() && oldValue.isTop() && getCell(region, offset) == null)
 			set(region, offset, bitWidth, value);
 		else
 			set(region, offset, bitWidth, (A)value.join(oldValue));
@@ -213,7 +274,7 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 	public A get(MemoryRegion region, long offset, int bitWidth) {
 		assert region != MemoryRegion.TOP;
 		int size = bitWidth / 8;
-		MemoryCell cell = store.get(region, offset);
+		MemoryCell cell = getCell(region, offset);
 		if (cell != null) {
 			if (cell.offset != offset || cell.size != size) {
 				
@@ -316,7 +377,7 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		
 		for (long i=0; i<size;) {
 			long dstPtr = dstOffset + i;
-			MemoryCell v = store.get(srcRegion, dstPtr);
+			MemoryCell v = getCell(srcRegion, dstPtr);
 			if (v != null && v.offset == dstPtr) {
 				set(dstRegion, dstPtr, v.size * 8, v.contents);
 				i += v.size;
@@ -335,16 +396,8 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 	 * @param offset the stack offset below which all entries should be cleared 
 	 */
 	public void forgetStackBelow(long offset) {
-		Map<Long, MemoryCell> stack = store.getSubMap(MemoryRegion.STACK);
-		if (stack == null)
-			return;
-		
-		//stack.headMap(offset).clear();
-//		for (Iterator<Long> it = stack.keySet().iterator(); it.hasNext();)
-		for (Iterator<Map.Entry<Long, MemoryCell>> it = store.subMapIterator(MemoryRegion.STACK); it.hasNext();)
-			if (it.next().getKey() < offset) {
-				it.remove();
-			}
+		// Cells crossing the offset keep their bytes above it
+		removeBytes(MemoryRegion.STACK, Long.MIN_VALUE, offset);
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -356,26 +409,31 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		// Join memory valuations. For the global region, we need to do both directions, 
 		// because constant image data is not present in store, but only visible
 		// through calls to get().
-		if (store.containsLeftKey(MemoryRegion.GLOBAL)) {
-			for (Map.Entry<Long, MemoryCell> entry : store.getSubMap(MemoryRegion.GLOBAL).entrySet()) {
-				long offset = entry.getKey();
-				if (offset != entry.getValue().offset) continue;
-				int bitWidth = entry.getValue().size * 8;
-				A value = entry.getValue().contents;
+		IntervalMap<MemoryCell> global = store.get(MemoryRegion.GLOBAL);
+		if (global != null) {
+			for (int i = 0; i < global.size(); i++) {
+				long offset = global.getStart(i);
+				MemoryCell cell = global.getValue(i);
+				if (offset != cell.offset) continue;
+				int bitWidth = cell.size * 8;
+				A value = cell.contents;
 				result.set(MemoryRegion.GLOBAL, offset, bitWidth, 
 						(A)value.join(other.get(MemoryRegion.GLOBAL, offset, bitWidth)));
 			}
 		}
 
-		for (EntryIterator<MemoryRegion, Long, MemoryCell> entryIt = other.store.entryIterator(); entryIt.hasEntry(); entryIt.next()) {
-			long offset = entryIt.getRightKey();
-			if (offset != entryIt.getValue().offset) continue;
-			MemoryRegion region = entryIt.getLeftKey();
-			int bitWidth = entryIt.getValue().size * 8;
-			A value = entryIt.getValue().contents;
-			result.set(region, offset, bitWidth, 
-					(A)value.join(this.get(region, offset, bitWidth)));
-			
+		for (Map.Entry<MemoryRegion, IntervalMap<MemoryCell>> entry : other.store.entrySet()) {
+			MemoryRegion region = entry.getKey();
+			IntervalMap<MemoryCell> cells = entry.getValue();
+			for (int i = 0; i < cells.size(); i++) {
+				long offset = cells.getStart(i);
+				MemoryCell cell = cells.getValue(i);
+				if (offset != cell.offset) continue;
+				int bitWidth = cell.size * 8;
+				A value = cell.contents;
+				result.set(region, offset, bitWidth, 
+						(A)value.join(this.get(region, offset, bitWidth)));
+			}
 		}
 		
 		// If image data is TOP in at least one state, it will be in the joined state
@@ -402,14 +460,18 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		// of "other" (except for static data) are implicitly TOP and thus every value is less or equal to them.
 		PartitionedMemory<A> other = (PartitionedMemory<A>)l;
 
-		for (EntryIterator<MemoryRegion, Long, MemoryCell> entryIt = other.store.entryIterator(); entryIt.hasEntry(); entryIt.next()) {
-			long offset = entryIt.getRightKey();
-			if (offset != entryIt.getValue().offset) continue;
-			MemoryRegion region = entryIt.getLeftKey();
-			int bitWidth = entryIt.getValue().size * 8;
-			AbstractValue value = entryIt.getValue().contents;
-			if (!get(region, offset, bitWidth).lessOrEqual(value))
-				return false;
+		for (Map.Entry<MemoryRegion, IntervalMap<MemoryCell>> entry : other.store.entrySet()) {
+			MemoryRegion region = entry.getKey();
+			IntervalMap<MemoryCell> cells = entry.getValue();
+			for (int i = 0; i < cells.size(); i++) {
+				long offset = cells.getStart(i);
+				MemoryCell cell = cells.getValue(i);
+				if (offset != cell.offset) continue;
+				int bitWidth = cell.size * 8;
+				AbstractValue value = cell.contents;
+				if (!get(region, offset, bitWidth).lessOrEqual(value))
+					return false;
+			}
 		}
 		
 		// Once static data is modified, the new value is present in the store maps. Thus
@@ -424,12 +486,14 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		// "other". If one isn't less or equal, this means that element is still not in 
 		// other's store map and has a non-initial value in this's store map (TOP or just 
 		// another value).		
-		if (store.containsLeftKey(MemoryRegion.GLOBAL)) {
-			for (Map.Entry<Long, MemoryCell> entry : store.getSubMap(MemoryRegion.GLOBAL).entrySet()) {
-				long offset = entry.getKey();
-				if (offset != entry.getValue().offset) continue;
-				int bitWidth = entry.getValue().size * 8;
-				A value = entry.getValue().contents;
+		IntervalMap<MemoryCell> global = store.get(MemoryRegion.GLOBAL);
+		if (global != null) {
+			for (int i = 0; i < global.size(); i++) {
+				long offset = global.getStart(i);
+				MemoryCell cell = global.getValue(i);
+				if (offset != cell.offset) continue;
+				int bitWidth = cell.size * 8;
+				A value = cell.contents;
 				if (!value.lessOrEqual(other.get(MemoryRegion.GLOBAL, offset, bitWidth)))
 					return false;
 			}
@@ -441,16 +505,18 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 	@Override
 	public String toString() {
 		StringBuilder res = new StringBuilder();
-		for (MemoryRegion region : store.leftKeySet()) {
+		for (Map.Entry<MemoryRegion, IntervalMap<MemoryCell>> entry : store.entrySet()) {
+			MemoryRegion region = entry.getKey();
+			IntervalMap<MemoryCell> cells = entry.getValue();
 			res.append(" ").append(region).append(": [");
-			for (Map.Entry<Long, MemoryCell> entry : store.getSubMap(region).entrySet()) {
-				if (entry.getValue().offset == entry.getKey()) {
+			for (int i = 0; i < cells.size(); i++) {
+				long offset = cells.getStart(i);
+				if (cells.getValue(i).offset == offset) {
 					if (region.equals(MemoryRegion.GLOBAL))
-						res.append("0x").append(Integer.toHexString(
-								entry.getKey().intValue()));
+						res.append("0x").append(Integer.toHexString((int)offset));
 					else
-						res.append(entry.getKey());
-					res.append("=").append(entry.getValue()).append(",");
+						res.append(offset);
+					res.append("=").append(cells.getValue(i)).append(",");
 				}
 			}
 			res.append("]");
@@ -475,40 +541,167 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		return dataIsTop == other.dataIsTop && store.equals(other.store); 
 	}
 	
+	/**
+	 * Returns the value of the memory cell starting at the given offset.
+	 * 
+	 * @return the value or null if no cell starts at the offset.
+	 */
+	public A getCellValue(MemoryRegion region, long offset) {
+		MemoryCell cell = getCell(region, offset);
+		if (cell == null || cell.offset != offset) return null;
+		return cell.contents;
+	}
+	
+	/**
+	 * Writes all regions of this store with their cell intervals. Cells that
+	 * cover several intervals after being partially overwritten are written
+	 * only once and referenced by their number afterwards.
+	 */
+	public void write(RTLOutputStream out, ValueCodec<A> codec) throws IOException {
+		out.writeBoolean(dataIsTop);
+		out.writeInt(store.size());
+		for (Map.Entry<MemoryRegion, IntervalMap<MemoryCell>> entry : store.entrySet()) {
+			entry.getKey().write(out);
+			IntervalMap<MemoryCell> cells = entry.getValue();
+			Map<MemoryCell, Integer> cellIds = new IdentityHashMap<MemoryCell, Integer>();
+			out.writeInt(cells.size());
+			for (int i = 0; i < cells.size(); i++) {
+				out.writeLong(cells.getStart(i));
+				out.writeLong(cells.getEnd(i));
+				MemoryCell cell = cells.getValue(i);
+				Integer id = cellIds.get(cell);
+				if (id != null) {
+					out.writeInt(id);
+				} else {
+					out.writeInt(-1);
+					out.writeLong(cell.offset);
+					out.writeInt(cell.size);
+					codec.writeValue(cell.contents, out);
+					cellIds.put(cell, cellIds.size());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads a store written by {@link #write(RTLOutputStream, ValueCodec)}.
+	 */
+	public static <A extends AbstractValue> PartitionedMemory<A> read(RTLInputStream in, 
+			AbstractValueFactory<A> valueFactory, ValueCodec<A> codec) throws IOException {
+		PartitionedMemory<A> memory = new PartitionedMemory<A>(valueFactory);
+		memory.dataIsTop = in.readBoolean();
+		int regionCount = in.readInt();
+		for (int r = 0; r < regionCount; r++) {
+			IntervalMap<PartitionedMemory<A>.MemoryCell> cells = 
+				new IntervalMap<PartitionedMemory<A>.MemoryCell>();
+			memory.store.put(MemoryRegion.read(in), cells);
+			List<PartitionedMemory<A>.MemoryCell> cellList = new ArrayList<PartitionedMemory<A>.MemoryCell>();
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				long start = in.readLong();
+				long end = in.readLong();
+				int id = in.readInt();
+				PartitionedMemory<A>.MemoryCell cell;
+				if (id < 0) {
+					long offset = in.readLong();
+					int cellSize = in.readInt();
+					cell = memory.new MemoryCell(offset, cellSize, codec.readValue(in));
+					cellList.add(cell);
+				} else if (id < cellList.size()) {
+					cell = cellList.get(id);
+				} else {
+					throw new IOException("Invalid memory cell reference " + id);
+				}
+				if (start >= end)
+					throw new IOException("Invalid cell interval [" + start + "," + end + ")");
+				cells.put(start, end, cell);
+			}
+		}
+		return memory;
+	}
+	
 	public EntryIterator<MemoryRegion, Long, A> entryIterator() {
-		return new MemoryIterator();
+		return new MemoryIterator(null);
+	}
+	
+	/**
+	 * Returns an iterator over the cells of this store, skipping all cells that
+	 * are known to be present in the other store as well because they are shared
+	 * with it. 
+	 */
+	public EntryIterator<MemoryRegion, Long, A> unsharedEntryIterator(PartitionedMemory<A> other) {
+		return new MemoryIterator(other);
 	}
 	
+	/**
+	 * Iterates over all cells that still contain their first byte, optionally 
+	 * skipping those that are shared with another store.
+	 */
 	private class MemoryIterator implements EntryIterator<MemoryRegion, Long, A> {
 
-		private EntryIterator<MemoryRegion, Long, MemoryCell> storeIt = 
-			store.entryIterator();
+		private final Iterator<Map.Entry<MemoryRegion, IntervalMap<MemoryCell>>> regionIt = 
+			store.entrySet().iterator();
+		private final PartitionedMemory<A> other;
+		private MemoryRegion region;
+		private IntervalMap<MemoryCell> cells;
+		private IntervalMap<MemoryCell> otherCells;
+		private int index;
+		
+		private MemoryIterator(PartitionedMemory<A> other) {
+			this.other = other;
+			index = -1;
+			next();
+		}
 		
 		@Override
 		public MemoryRegion getLeftKey() {
-			return storeIt.getLeftKey();
+			return region;
 		}
 
 		@Override
 		public Long getRightKey() {
-			return storeIt.getRightKey();
+			return cells.getStart(index);
 		}
 
 		@Override
 		public A getValue() {
-			return storeIt.getValue().contents;
+			return cells.getValue(index).contents;
 		}
 
 		@Override
 		public boolean hasEntry() {
-			return storeIt.hasEntry();
+			return cells != null;
 		}
 
 		@Override
 		public void next() {
-			storeIt.next();
-			while (storeIt.hasEntry() && storeIt.getRightKey() != storeIt.getValue().offset)
-				storeIt.next();
+			while (true) {
+				index++;
+				if (otherCells != null)
+					index = cells.nextUnshared(index, otherCells);
+				while (cells == null || index >= cells.size()) {
+					if (!regionIt.hasNext()) {
+						cells = null;
+						return;
+					}
+					Map.Entry<MemoryRegion, IntervalMap<MemoryCell>> entry = regionIt.next();
+					region = entry.getKey();
+					cells = entry.getValue();
+					index = 0;
+					if (other != null) {
+						otherCells = other.store.get(region);
+						if (otherCells != null)
+							index = cells.nextUnshared(0, otherCells);
+					}
+				}
+				long start = cells.getStart(index);
+				MemoryCell cell = cells.getValue(index);
+				if (start != cell.offset)
+					continue;
+				if (otherCells != null && otherCells.get(start) == cell)
+					continue;
+				return;
+			}
 		}
 	}
 }
@@ -17,59 +17,318 @@
  */
 package org.jakstab.analysis;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.*;
 
 import org.jakstab.analysis.composite.CompositeState;
 import org.jakstab.analysis.location.LocationState;
 import org.jakstab.cfa.Location;
 import org.jakstab.cfa.RTLLabel;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
+import org.jakstab.util.FastSet;
 import org.jakstab.util.Logger;
-
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
+import org.jakstab.util.SpillStore;
+import org.jakstab.util.Worklist;
 
 /**
  * A set of reached states for use in the CPA algorithm. It can generate lightweight views on 
  * parts of its contents much like an SQL database using select(row) and where(row, hasValue).
  * 
+ * States are indexed by their location component, which is mapped to a bucket holding
+ * the states at that location. Each bucket also keeps its states in a compact array,
+ * which is marked dirty when states are added or removed and rebuilt when it is used
+ * next. Merge and stop iterate these arrays, see {@link #getStatesAt(AbstractState)}.
+ * A view restricted to a location looks up its bucket once and keeps it.
+ * 
+ * If a spill store is set, the states at locations that have not been accessed 
+ * recently can be moved off the heap by {@link #spillColdLocations(int, Worklist)}.
+ * They are encoded into the store and decoded again when their location is
+ * accessed. Iterating over the whole set decodes spilled states into temporary
+ * copies without moving them back to the heap.
+ * 
  * @author Johannes Kinder
  */
 public class ReachedSet extends AbstractSet<AbstractState> implements Collection<AbstractState> {
 
 	private static final Logger logger = Logger.getLogger(ReachedSet.class);
 	
-	private final SetMultimap<AbstractState, CompositeState> compositeMap;
-	private static final int indexComponent = 0; 
+	private static final int indexComponent = 0;
+	
+	private static final CompositeState[] noStates = new CompositeState[0];
+	
+	/**
+	 * The states at one location. Buckets are never discarded, so views can keep
+	 * the bucket of their location.
+	 */
+	private static final class Bucket {
+		/** The states at the location, or null while they are spilled */
+		private FastSet<CompositeState> states;
+		/** The states as an array, or null if it is dirty */
+		private CompositeState[] array;
+		/** Store handle of the spilled states, or -1 for states on the heap */
+		private long spillHandle;
+		/** Access time, counted in bucket accesses */
+		private long lastAccess;
+		
+		private Bucket() {
+			states = new FastSet<CompositeState>();
+			spillHandle = -1;
+		}
+		
+		private CompositeState[] toArray() {
+			if (array == null)
+				array = states.toArray(new CompositeState[states.size()]);
+			return array;
+		}
+	}
+	
+	/**
+	 * The actual contents of a reached set, shared between the set and all its views. 
+	 */
+	private static final class Storage {
+		private final Map<AbstractState, Bucket> buckets;
+		private int size;
+		
+		private SpillStore spillStore;
+		private StateCodec codec;
+		private long clock;
+		private int spilledSize;
+		private int spillCount;
+		private int faultCount;
+
+		private Storage() {
+			buckets = new HashMap<AbstractState, Bucket>();
+			size = 0;
+		}
+		
+		private Bucket getBucket(AbstractState indexState, boolean create) {
+			Bucket bucket = buckets.get(indexState);
+			if (bucket == null) {
+				if (!create) return null;
+				bucket = new Bucket();
+				buckets.put(indexState, bucket);
+			}
+			access(bucket);
+			return bucket;
+		}
+			
+		/**
+		 * Records an access to the bucket and moves it back to the heap if it was spilled.
+		 */
+		private void access(Bucket bucket) {
+			if (spillStore != null) {
+				bucket.lastAccess = ++clock;
+				if (bucket.states == null)
+					faultIn(bucket);
+			}
+		}
+		
+		private boolean add(CompositeState s) {
+			Bucket bucket = getBucket(s.getComponent(indexComponent), true);
+			if (bucket.states.add(s)) {
+				bucket.array = null;
+				size++;
+				return true;
+			}
+			return false;
+		}
+		
+		private boolean remove(CompositeState s) {
+			Bucket bucket = getBucket(s.getComponent(indexComponent), false);
+			if (bucket != null && bucket.states.remove(s)) {
+				bucket.array = null;
+				size--;
+				return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * Returns the states of all non-empty buckets. The arrays are only created
+		 * when they are retrieved from the list. Spilled buckets are returned as
+		 * temporary copies.
+		 */
+		private List<CompositeState[]> nonEmptyBuckets() {
+			final List<Bucket> nonEmpty = new ArrayList<Bucket>();
+			for (Bucket bucket : buckets.values())
+				if (bucket.states == null || !bucket.states.isEmpty()) nonEmpty.add(bucket);
+			return new AbstractList<CompositeState[]>() {
+				@Override
+				public CompositeState[] get(int index) {
+					Bucket bucket = nonEmpty.get(index);
+					if (bucket.states == null)
+						return readBucket(bucket.spillHandle);
+					// Do not keep arrays of all buckets when iterating over the whole set
+					if (bucket.array != null)
+						return bucket.array;
+					return bucket.states.toArray(new CompositeState[bucket.states.size()]);
+				}
+
+				@Override
+				public int size() {
+					return nonEmpty.size();
+				}
+			};
+		}
+		
+		private void setSpillStore(SpillStore spillStore, StateCodec codec) {
+			this.spillStore = spillStore;
+			this.codec = codec;
+		}
+		
+		/**
+		 * Spills the least recently accessed buckets until at most target states
+		 * are left on the heap. Buckets with states in the worklist are kept.
+		 * 
+		 * @return the number of states spilled
+		 */
+		private int spill(int target, Worklist<AbstractState> worklist) {
+			List<Bucket> candidates = new ArrayList<Bucket>();
+			for (Bucket bucket : buckets.values())
+				if (bucket.states != null && !bucket.states.isEmpty()) candidates.add(bucket);
+			Collections.sort(candidates, new Comparator<Bucket>() {
+				@Override
+				public int compare(Bucket o1, Bucket o2) {
+					return Long.signum(o1.lastAccess - o2.lastAccess);
+				}
+			});
+			
+			int spilled = 0;
+			nextCandidate: for (Bucket bucket : candidates) {
+				if (size - spilledSize <= target) break;
+				FastSet<CompositeState> states = bucket.states;
+				for (CompositeState s : states)
+					if (worklist.contains(s)) continue nextCandidate;
+				try {
+					ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+					RTLOutputStream out = new RTLOutputStream(buffer);
+					out.writeInt(states.size());
+					for (CompositeState s : states)
+						codec.writeState(s, out);
+					out.close();
+					bucket.spillHandle = spillStore.put(buffer.toByteArray());
+				} catch (IOException e) {
+					logger.error("Cannot spill reached states: " + e.getMessage());
+					break;
+				}
+				bucket.states = null;
+				bucket.array = null;
+				spilledSize += states.size();
+				spilled += states.size();
+				spillCount++;
+			}
+			return spilled;
+		}
+		
+		/**
+		 * Drops all states and closes the spill store, if any, without moving
+		 * spilled buckets back to the heap.
+		 */
+		private void release() {
+			if (spillStore != null) {
+				spillStore.close();
+				spillStore = null;
+				codec = null;
+			}
+			buckets.clear();
+			size = 0;
+			spilledSize = 0;
+		}
+		
+		/**
+		 * Moves a spilled bucket back to the heap.
+		 */
+		private void faultIn(Bucket bucket) {
+			CompositeState[] states = readBucket(bucket.spillHandle);
+			spillStore.free(bucket.spillHandle);
+			bucket.spillHandle = -1;
+			bucket.states = new FastSet<CompositeState>(states.length);
+			Collections.addAll(bucket.states, states);
+			bucket.array = states;
+			spilledSize -= states.length;
+			faultCount++;
+		}
+		
+		private CompositeState[] readBucket(long handle) {
+			try {
+				RTLInputStream in = new RTLInputStream(new ByteArrayInputStream(spillStore.get(handle)));
+				CompositeState[] states = new CompositeState[in.readInt()];
+				for (int i = 0; i < states.length; i++)
+					states[i] = (CompositeState)codec.readState(in);
+				return states;
+			} catch (IOException e) {
+				// Spilled states are only read back by this process
+				throw new RuntimeException("Cannot read spilled reached states!", e);
+			}
+		}
+	}
+	
+	private final Storage storage;
 	private final int selectedRow;
 	private final int whereRow;
 	private final AbstractState whereState;
+	/** For views restricted on the index component, the bucket of the location once it exists */
+	private Bucket whereBucket;
 	
 	public ReachedSet() {
-		this(-1, -1, null, HashMultimap.<AbstractState, CompositeState>create(1000, 5));
+		this(-1, -1, null, new Storage());
 	}
 	
-	private ReachedSet(int selectedRow, int whereRow, AbstractState whereState, 
-			SetMultimap<AbstractState, CompositeState> compositeMap) {
-		this.compositeMap = compositeMap;
+	private ReachedSet(int selectedRow, int whereRow, AbstractState whereState, Storage storage) {
+		this.storage = storage;
 		this.selectedRow = selectedRow;
 		this.whereRow = whereRow;
 		this.whereState = whereState;
 	}
 	
+	/**
+	 * For views restricted on the index component, returns the bucket of states 
+	 * at the location or null if there have never been states at that location.
+	 */
+	private Bucket getWhereBucket() {
+		if (whereBucket == null)
+			whereBucket = storage.getBucket(whereState, false);
+		else
+			storage.access(whereBucket);
+		return whereBucket;
+	}
+	
 	public ReachedSet select(int component) {
 		assert this.selectedRow == -1;
-		return new ReachedSet(component, this.whereRow, this.whereState, this.compositeMap);
+		ReachedSet view = new ReachedSet(component, this.whereRow, this.whereState, this.storage);
+		view.whereBucket = this.whereBucket;
+		return view;
 	}
 	
 	public ReachedSet where(int row, AbstractState state) {
 		assert this.whereRow == -1 && this.whereState == null;
-		return new ReachedSet(this.selectedRow, row, state, this.compositeMap);
+		return new ReachedSet(this.selectedRow, row, state, this.storage);
 	}
 	
 	public ReachedSet where(Location l) {
 		assert this.whereRow == -1 && this.whereState == null;
 		return where(0, new LocationState(l));
 	}
+	
+	/**
+	 * Returns the states at the location given by the index state without creating a 
+	 * view. The returned array must not be modified. It is not affected by later
+	 * modifications of the reached set, so states at the location can be added and
+	 * removed while iterating over it. Until the states at the location change, the
+	 * same array is returned again.
+	 * 
+	 * @param indexState the location component of the states to return
+	 * @return the reached states with the given location component 
+	 */
+	public CompositeState[] getStatesAt(AbstractState indexState) {
+		assert selectedRow == -1 && whereRow == -1;
+		Bucket bucket = storage.getBucket(indexState, false);
+		if (bucket == null) return noStates;
+		return bucket.toArray();
+	}
 
 	public boolean add(AbstractState s) {
 		if (s instanceof CompositeState) return add((CompositeState)s);
@@ -83,27 +342,103 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 
 	public boolean add(CompositeState s) {
 		assert selectedRow == -1;
-		return compositeMap.put(s.getComponent(indexComponent), s);
+		return storage.add(s);
 	}
 	
 	public boolean remove(CompositeState s) {
 		assert selectedRow == -1;
-		return compositeMap.remove(s.getComponent(indexComponent), s);
+		return storage.remove(s);
+	}
+	
+	/**
+	 * Allows states to be spilled to the given store. The states at a location
+	 * are encoded into a single record using the given codec.
+	 */
+	public void setSpillStore(SpillStore spillStore, StateCodec codec) {
+		assert storage.spillStore == null;
+		storage.setSpillStore(spillStore, codec);
+	}
+	
+	/**
+	 * Removes all states from the set and closes the spill store, if any,
+	 * which deletes its file. Spilled states are not moved back to the heap
+	 * for this, so a set that needed spilling should be released this way
+	 * once it is no longer used.
+	 */
+	public void release() {
+		assert selectedRow == -1 && whereRow == -1;
+		storage.release();
+	}
+	
+	/**
+	 * Moves the states at the least recently accessed locations into the spill 
+	 * store, until at most the given number of states are left on the heap.
+	 * Locations with states in the worklist are not spilled. Does nothing if
+	 * there is no spill store.
+	 * 
+	 * @param target the number of states to keep on the heap
+	 * @param worklist the worklist of the analysis
+	 * @return the number of states spilled
+	 */
+	public int spillColdLocations(int target, Worklist<AbstractState> worklist) {
+		assert selectedRow == -1 && whereRow == -1;
+		if (storage.spillStore == null || getResidentSize() <= target)
+			return 0;
+		return storage.spill(target, worklist);
+	}
+	
+	/**
+	 * @return the number of states that are not spilled.
+	 */
+	public int getResidentSize() {
+		return storage.size - storage.spilledSize;
+	}
+	
+	/**
+	 * @return the number of times the states at a location were spilled.
+	 */
+	public int getSpillCount() {
+		return storage.spillCount;
+	}
+	
+	/**
+	 * @return the number of times spilled states were moved back to the heap.
+	 */
+	public int getFaultCount() {
+		return storage.faultCount;
 	}
 	
 	public int size() {
 		if (whereRow < 0)
-			return compositeMap.size();
-		if (whereRow == indexComponent)
-			return compositeMap.get(whereState).size();
+			return storage.size;
+		if (whereRow == indexComponent) {
+			Bucket bucket = getWhereBucket();
+			return bucket == null ? 0 : bucket.states.size();
+		}
 		throw new UnsupportedOperationException("Cannot determine reached set size for non-index component restrictions!");
 	}
+	
+	@Override
+	public boolean isEmpty() {
+		if (whereRow < 0)
+			return storage.size == 0;
+		if (whereRow == indexComponent) {
+			Bucket bucket = getWhereBucket();
+			return bucket == null || bucket.states.isEmpty();
+		}
+		return !iterator().hasNext();
+	}
 
 	@Override
 	public boolean contains(Object o) {
 		if (selectedRow < 0) { 
-			if (o instanceof CompositeState) 
-				return compositeMap.containsEntry(((CompositeState)o).getComponent(indexComponent), o);
+			if (o instanceof CompositeState) {
+				CompositeState c = (CompositeState)o;
+				Bucket bucket = (whereRow == indexComponent) ?
+						getWhereBucket() : storage.getBucket(c.getComponent(indexComponent), false);
+				if (bucket == null || !bucket.states.contains(c)) return false;
+				return whereRow <= indexComponent || c.getComponent(whereRow).equals(whereState);
+			}
 			else throw new UnsupportedOperationException();
 		} else {
 			for (AbstractState as : this) {
@@ -114,32 +449,39 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 	}
 	
 	public void logHighestStateCounts(int count) {
-		AbstractState[] stateArray = compositeMap.keySet().toArray(new AbstractState[compositeMap.keySet().size()]);
-		Arrays.sort(stateArray, new Comparator<AbstractState>() {
+		List<CompositeState[]> bucketList = storage.nonEmptyBuckets();
+		// Sort indices by bucket size, spilled buckets are decoded one at a time
+		final int[] sizes = new int[bucketList.size()];
+		List<Integer> order = new ArrayList<Integer>(sizes.length);
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = bucketList.get(i).length;
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
 			@Override
-			public int compare(AbstractState o1, AbstractState o2) {
-				Integer size1 = compositeMap.get(o1).size();
-				Integer size2 = compositeMap.get(o2).size();
-				return size2.compareTo(size1);
+			public int compare(Integer o1, Integer o2) {
+				return sizes[o2] - sizes[o1];
 			}
 		});
 		
 		logger.fatal("==========================================");
 		logger.fatal("The " + count + " locations with highest state count:");
 		logger.fatal("==========================================");
-		for (int i=0; i < Math.min(count, stateArray.length); i++) {
-			logger.fatal(stateArray[i] + ":\t" + compositeMap.get(stateArray[i]).size());
+		for (int i=0; i < Math.min(count, order.size()); i++) {
+			CompositeState[] bucket = bucketList.get(order.get(i));
+			logger.fatal(bucket[0].getComponent(indexComponent) + ":\t" + bucket.length);
 		}
+		if (order.isEmpty()) return;
 		logger.fatal("-------------");
 		logger.fatal("Top Location:");
 		logger.fatal("-------------");
-		for (AbstractState s : compositeMap.get(stateArray[0])) {
+		for (AbstractState s : bucketList.get(order.get(0))) {
 			logger.fatal(s);
 		}
 	}
 	
 	public void logStates(RTLLabel loc) {
-		for (CompositeState c : compositeMap.get(new LocationState(loc))) {
+		for (CompositeState c : getStatesAt(new LocationState(loc))) {
 			logger.fatal(c);
 		}
 	}
@@ -148,21 +490,32 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 	public Iterator<AbstractState> iterator() {
 		return new Iterator<AbstractState>() {
 			CompositeState next;
-			private Iterator<CompositeState> compIter;
+			CompositeState last;
+			private CompositeState[] states;
+			private int index;
+			private Iterator<CompositeState[]> bucketIter;
 			// Select either generic iterator or refine by indexed map
 			{
 				if (whereRow == indexComponent) {
-					compIter = compositeMap.get(whereState).iterator();
+					Bucket bucket = getWhereBucket();
+					states = bucket == null ? noStates : bucket.toArray();
+					bucketIter = Collections.<CompositeState[]>emptySet().iterator();
 				} else {
-					compIter = compositeMap.values().iterator();
+					states = noStates;
+					bucketIter = storage.nonEmptyBuckets().iterator();
 				}
 			}
 			
 			@Override
 			public boolean hasNext() {
 				while (next == null) {
-					if (!compIter.hasNext()) return false;
-					CompositeState c = compIter.next();
+					while (index == states.length) {
+						if (!bucketIter.hasNext()) return false;
+						states = bucketIter.next();
+						index = 0;
+					}
+					CompositeState c = states[index++];
+					last = c;
 					
 					// If we're filtering by indexed component (or not at all), no need for an extra comparison
 					if (whereRow < 0 || whereRow == indexComponent) {
@@ -193,7 +546,8 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 
 			@Override
 			public void remove() {
-				compIter.remove();
+				// Iterated arrays are not affected, and spilled states are moved back to the heap
+				storage.remove(last);
 			}
 		};
 	}
@@ -0,0 +1,63 @@
+/*
+ * SlowPostEvent.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import org.jakstab.cfa.CFAEdge;
+
+/**
+ * JFR event for a post operation that took unusually long. Only referenced
+ * by {@link CPAProfile} if the JVM supports JFR.
+ */
+@Name("org.jakstab.SlowPost")
+@Label("Slow Post")
+@Category("Jakstab")
+@Description("A post operation of the CPA algorithm that took longer than the configured threshold.")
+@StackTrace(false)
+final class SlowPostEvent extends Event {
+
+	@Label("Source")
+	String source;
+
+	@Label("Target")
+	String target;
+
+	@Label("Transformer")
+	String transformer;
+
+	@Label("Post Duration")
+	@Timespan(Timespan.NANOSECONDS)
+	long postDuration;
+
+	static void emit(CFAEdge edge, long duration) {
+		SlowPostEvent event = new SlowPostEvent();
+		if (!event.isEnabled())
+			return;
+		event.source = edge.getSource().toString();
+		event.target = edge.getTarget().toString();
+		event.transformer = edge.getTransformer().toString();
+		event.postDuration = duration;
+		event.commit();
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * StateBudget.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jakstab.analysis.composite.CompositePrecision;
+import org.jakstab.analysis.composite.CompositeState;
+import org.jakstab.cfa.Location;
+import org.jakstab.util.Logger;
+
+/**
+ * Counts the states in the reached set at each location while the CPA 
+ * algorithm runs, and enforces a budget of reached states per location. When a
+ * location goes over budget, its precision is coarsened, the composite analysis
+ * is switched to joining states at the location, and the states already reached
+ * there are joined, using a copy of the precision so other locations sharing 
+ * it are not affected. This trades precision at a few hot locations (e.g., string 
+ * loops or jump tables) for a bounded state space. All methods are thread safe.
+ */
+final class StateBudget {
+
+	private static final Logger logger = Logger.getLogger(StateBudget.class);
+
+	private final int budget;
+	private final ConcurrentMap<Location, AtomicInteger> reachedStates;
+	// State limits of locations that went over budget 
+	private final ConcurrentMap<Location, Integer> limits;
+	private final AtomicInteger interventions;
+
+	/**
+	 * @param budget the maximum number of states per location, or 0 to only
+	 *        count states.
+	 */
+	StateBudget(int budget) {
+		this.budget = budget;
+		reachedStates = new ConcurrentHashMap<Location, AtomicInteger>();
+		limits = new ConcurrentHashMap<Location, Integer>();
+		interventions = new AtomicInteger();
+	}
+
+	/**
+	 * Counts a state added to the reached set at the given location.
+	 */
+	void countAdded(Location l) {
+		AtomicInteger count = reachedStates.get(l);
+		if (count == null) {
+			count = new AtomicInteger();
+			AtomicInteger existing = reachedStates.putIfAbsent(l, count);
+			if (existing != null) count = existing;
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Counts a state removed from the reached set at the given location.
+	 */
+	void countRemoved(Location l) {
+		AtomicInteger count = reachedStates.get(l);
+		if (count != null)
+			count.decrementAndGet();
+	}
+
+	/**
+	 * Returns the number of states currently reached at the given location.
+	 */
+	int getCount(Location l) {
+		AtomicInteger count = reachedStates.get(l);
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * Checks the number of reached states at a location against the budget, and
+	 * if the location is over budget, joins its states. The caller has to 
+	 * remove the replaced states from its worklist and schedule the new ones.
+	 * 
+	 * @param l the location to check
+	 * @param locationState the location component of the states at l
+	 * @param cpa the composite analysis
+	 * @param precisionMap the precisions by location, updated for l
+	 * @param reached the reached set, or the partition of it containing l
+	 * @param removed receives the states removed from reached
+	 * @return the new states added to reached, or an empty list if the 
+	 *         location is within budget
+	 */
+	List<AbstractState> enforce(Location l, AbstractState locationState, 
+			ConfigurableProgramAnalysis cpa, Map<Location, Precision> precisionMap, 
+			ReachedSet reached, Collection<AbstractState> removed) {
+		if (budget <= 0)
+			return Collections.emptyList();
+		CompositeState[] states = reached.getStatesAt(locationState);
+		Integer limit = limits.get(l);
+		if (states.length <= (limit == null ? budget : limit))
+			return Collections.emptyList();
+
+		Precision precision = precisionMap.get(l);
+		boolean first = limit == null;
+		if (first) {
+			precision = coarsen(precision);
+			precisionMap.put(l, precision);
+		}
+
+		// Join states as far as the merge operator allows (it may keep calling contexts apart)
+		List<AbstractState> before = new ArrayList<AbstractState>(Arrays.asList(states));
+		List<AbstractState> joined = new LinkedList<AbstractState>();
+		for (AbstractState s : before) {
+			boolean absorbed = false;
+			for (ListIterator<AbstractState> it = joined.listIterator(); it.hasNext();) {
+				AbstractState r = it.next();
+				AbstractState merged = cpa.merge(s, r, precision);
+				if (!merged.equals(r)) {
+					it.set(merged);
+					absorbed = true;
+					break;
+				} else if (s.lessOrEqual(r)) {
+					absorbed = true;
+					break;
+				}
+			}
+			if (!absorbed)
+				joined.add(s);
+		}
+
+		Set<AbstractState> keep = new HashSet<AbstractState>(joined);
+		for (AbstractState s : before) {
+			if (!keep.contains(s)) {
+				if (reached.remove(s))
+					countRemoved(l);
+				removed.add(s);
+			}
+		}
+		List<AbstractState> added = new LinkedList<AbstractState>();
+		for (AbstractState s : joined) {
+			if (reached.add(s)) {
+				added.add(s);
+				countAdded(l);
+			}
+		}
+
+		// If states could not be joined below budget, wait for the count to double
+		// before trying again
+		limits.put(l, Math.max(budget, 2 * joined.size()));
+		interventions.incrementAndGet();
+		if (first) {
+			logger.warn("State budget exceeded at " + l + ": joined " + before.size() + " states into " + 
+					joined.size() + ", precision now " + precision);
+		} else {
+			logger.info("State budget exceeded again at " + l + ": joined " + before.size() + " states into " + 
+					joined.size());
+		}
+		return added;
+	}
+
+	/**
+	 * Coarsens copies of all components of a composite precision that support 
+	 * it and switches it to joining states. Precisions can be shared between
+	 * locations, so the given precision is left unchanged.
+	 */
+	private static Precision coarsen(Precision precision) {
+		if (!(precision instanceof CompositePrecision))
+			return precision;
+		CompositePrecision cprec = (CompositePrecision)precision;
+		Precision[] components = new Precision[cprec.getComponentCount()];
+		for (int i = 0; i < components.length; i++) {
+			components[i] = cprec.getComponent(i);
+			if (components[i] instanceof CoarsenablePrecision) {
+				CoarsenablePrecision copy = ((CoarsenablePrecision)components[i]).copy();
+				copy.coarsen();
+				components[i] = copy;
+			}
+		}
+		return new CompositePrecision(components, true);
+	}
+
+	int getInterventionCount() {
+		return interventions.get();
+	}
+
+	/**
+	 * Logs the locations with the most reached states.
+	 */
+	void logHottestLocations(int count) {
+		// Snapshot the counts, they may change while sorting
+		final Map<Location, Integer> counts = new HashMap<Location, Integer>();
+		for (Map.Entry<Location, AtomicInteger> entry : reachedStates.entrySet())
+			counts.put(entry.getKey(), entry.getValue().get());
+		List<Location> locations = new ArrayList<Location>(counts.keySet());
+		Collections.sort(locations, new Comparator<Location>() {
+			@Override
+			public int compare(Location o1, Location o2) {
+				return counts.get(o2) - counts.get(o1);
+			}
+		});
+		StringBuilder sb = new StringBuilder("    Hottest locations:");
+		for (int i = 0; i < Math.min(count, locations.size()); i++) {
+			Location l = locations.get(i);
+			sb.append(' ').append(l).append(" (").append(counts.get(l));
+			if (limits.containsKey(l)) sb.append(", joined");
+			sb.append(')');
+		}
+		logger.info(sb.toString());
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * StateCodec.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.io.IOException;
+
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
+
+/**
+ * Binary encoding of the abstract states and precisions of an analysis, used
+ * to write the state of a running analysis to disk and read it back later.
+ * Expressions are written through the RTL streams, so states should encode
+ * variables and numbers as expressions to benefit from back references.
+ */
+public interface StateCodec {
+
+	public void writeState(AbstractState s, RTLOutputStream out) throws IOException;
+
+	public AbstractState readState(RTLInputStream in) throws IOException;
+
+	/**
+	 * Writes a precision of this analysis, which may be null if the analysis
+	 * does not use precisions.
+	 */
+	public void writePrecision(Precision p, RTLOutputStream out) throws IOException;
+
+	public Precision readPrecision(RTLInputStream in) throws IOException;
+
+}
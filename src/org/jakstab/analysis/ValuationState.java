@@ -18,6 +18,7 @@
 package org.jakstab.analysis;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jakstab.cfa.Location;
 import org.jakstab.rtl.expressions.*;
@@ -41,7 +42,8 @@ public class ValuationState implements AbstractState {
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(ValuationState.class);
 	
-	private static long maxStateId = 0;
+	// Shared by concurrent analyses in batch mode
+	private static final AtomicLong maxStateId = new AtomicLong();
 
 	private final long id;
 	private final AbstractValueFactory<AbstractDomainElement> valueFactory;
@@ -66,7 +68,7 @@ public class ValuationState implements AbstractState {
 		this.valueFactory = valueFactory;
 		this.varVal = varVal;
 		this.store = store;
-		this.id = maxStateId++;
+		this.id = maxStateId.getAndIncrement();
 	}
 	
 	public AbstractDomainElement abstractEval(RTLExpression e) {	
@@ -0,0 +1,36 @@
+/*
+ * ValueCodec.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.io.IOException;
+
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
+
+/**
+ * Binary encoding of abstract values, used by the generic valuations 
+ * {@link VariableValuation} and {@link PartitionedMemory} for encoding
+ * their contents.
+ * @param <A> The type of elements in the abstract domain 
+ */
+public interface ValueCodec<A extends AbstractValue> {
+
+	public void writeValue(A value, RTLOutputStream out) throws IOException;
+
+	public A readValue(RTLInputStream in) throws IOException;
+
+}
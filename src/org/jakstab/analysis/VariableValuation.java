@@ -17,14 +17,23 @@
  */
 package org.jakstab.analysis;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
 
 import org.jakstab.rtl.Context;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
 import org.jakstab.rtl.expressions.*;
 import org.jakstab.util.Logger;
+import org.jakstab.util.PersistentIntMap;
 
 /**
+ * A valuation of variables to abstract values. Values are kept in a persistent map 
+ * indexed by variable indices, so copies are created in constant time and share
+ * all unmodified parts of the map. Iteration follows the natural ordering of 
+ * variables, i.e., descending indices.
+ * 
  * @author Johannes Kinder
  */
 public class VariableValuation<A extends AbstractValue> implements LatticeElement, Iterable<Map.Entry<RTLVariable, A>> {
@@ -32,28 +41,27 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(VariableValuation.class);
 
-	protected final TreeMap<RTLVariable,A> aVarVal;
+	protected PersistentIntMap<RTLVariable,A> aVarVal;
 	protected final AbstractValueFactory<A> valueFactory;
 
-	protected VariableValuation(TreeMap<RTLVariable,A> aVarVal, 
+	protected VariableValuation(PersistentIntMap<RTLVariable,A> aVarVal, 
 			AbstractValueFactory<A> valueFactory) {
 		this.aVarVal = aVarVal;
 		this.valueFactory = valueFactory;
 	}
 	
 	public VariableValuation(VariableValuation<A> proto) {
-		this(new TreeMap<RTLVariable, A>(proto.aVarVal), 
-				proto.valueFactory);
+		this(proto.aVarVal, proto.valueFactory);
 	}
 	
 	public VariableValuation(AbstractValueFactory<A> valueFactory) {
-		this(new TreeMap<RTLVariable, A>(),
+		this(PersistentIntMap.<RTLVariable, A>empty(),
 				valueFactory);
 	}
 	
 
 	public A get(RTLVariable var) {
-		A e = aVarVal.get(var);
+		A e = aVarVal.get(var.getIndex());
 		if (e != null) {
 			return e;
 		} else {
@@ -90,14 +98,14 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 	
 	private void clearCovering(RTLVariable var) {
 		for (RTLVariable covering : ExpressionFactory.coveringRegisters(var)) {
-			aVarVal.remove(covering);
+			aVarVal = aVarVal.remove(covering.getIndex());
 			//clearCovering(covering);
 		}
 	}
 	
 	private void clearCovered(RTLVariable var) {
 		for (RTLVariable covered : ExpressionFactory.coveredRegisters(var)) {
-			aVarVal.remove(covered);
+			aVarVal = aVarVal.remove(covered.getIndex());
 			//clearCovered(covered);
 		}
 	}
@@ -138,9 +146,9 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 		clearCovered(var);
 		
 		if (value.isTop()) {
-			aVarVal.remove(var);
+			aVarVal = aVarVal.remove(var.getIndex());
 		} else {
-			aVarVal.put(var, value);
+			aVarVal = aVarVal.put(var.getIndex(), var, value);
 		}
 	}
 	
@@ -148,7 +156,7 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 		clearCovering(var);
 		clearCovered(var);
 
-		aVarVal.remove(var);
+		aVarVal = aVarVal.remove(var.getIndex());
 	}
 
 	@Override
@@ -164,17 +172,22 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 	@SuppressWarnings("unchecked")
 	@Override
 	public VariableValuation<A> join(LatticeElement l) {
-		VariableValuation<A> other = (VariableValuation<A>)l;
+		final VariableValuation<A> other = (VariableValuation<A>)l;
 		if (isTop() || other.isBot()) return this;
 		if (isBot() || other.isTop()) return other;
 
-		VariableValuation<A> joinedValuation = new VariableValuation<A>(valueFactory);
-		// Join variable valuations
-		for (Map.Entry<RTLVariable,A> entry : aVarVal.entrySet()) {
-			RTLVariable var = entry.getKey();
-			A value = entry.getValue();
-			joinedValuation.set(var, (A)value.join(other.get(var)));
-		}
+		// Start from this valuation and only join the values that are not
+		// shared with the other valuation, shared values join to themselves.
+		final VariableValuation<A> joinedValuation = new VariableValuation<A>(this);
+		aVarVal.visitUnshared(other.aVarVal, new PersistentIntMap.EntryVisitor<RTLVariable, A>() {
+			@Override
+			public boolean visit(RTLVariable var, A value) {
+				A joined = (A)value.join(other.get(var));
+				if (!joined.equals(value))
+					joinedValuation.set(var, joined);
+				return true;
+			}
+		});
 				
 		return joinedValuation;
 	}
@@ -190,27 +203,43 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 		// For all variables in other valuation, check if their
 		// value in this valuation is less. Other way round is not
 		// possible, as their could be variables present in the other
-		// valuation but not in this one.
-		for (Map.Entry<RTLVariable,A> entry : other.aVarVal.entrySet()) {
-			RTLVariable var = entry.getKey();
-			A value = entry.getValue();
-			if (!get(var).lessOrEqual(value)) {
-				return false;
+		// valuation but not in this one. Values shared by both 
+		// valuations need not be checked.
+		return other.aVarVal.visitUnshared(aVarVal, new PersistentIntMap.EntryVisitor<RTLVariable, A>() {
+			@Override
+			public boolean visit(RTLVariable var, A value) {
+				return get(var).lessOrEqual(value);
 			}
-		}
-		return true;
+		});
+	}
+
+	/**
+	 * Visits the variables of this valuation, skipping all variables that are known 
+	 * to have the same value in the other valuation because the two share the
+	 * underlying map structure. 
+	 * 
+	 * @return false if the visitor stopped the traversal.
+	 */
+	public boolean visitUnshared(VariableValuation<A> other, PersistentIntMap.EntryVisitor<RTLVariable, A> visitor) {
+		return aVarVal.visitUnshared(other.aVarVal, visitor);
 	}
 
 	@Override
 	public String toString() {
-		return aVarVal.toString();
+		StringBuilder sb = new StringBuilder("{");
+		for (Iterator<Entry<RTLVariable, A>> it = iterator(); it.hasNext();) {
+			Entry<RTLVariable, A> entry = it.next();
+			sb.append(entry.getKey()).append('=').append(entry.getValue());
+			if (it.hasNext()) sb.append(", ");
+		}
+		return sb.append('}').toString();
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((aVarVal == null) ? 0 : aVarVal.hashCode());
+		result = prime * result + aVarVal.hashCode();
 		return result;
 	}
 
@@ -224,16 +253,40 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 		if (getClass() != obj.getClass())
 			return false;
 		VariableValuation<A> other = (VariableValuation<A>) obj;
-		if (aVarVal == null) {
-			return other.aVarVal == null;
-		} else {
-			return aVarVal.equals(other.aVarVal);
-		}
+		return aVarVal.equals(other.aVarVal);
 	}
 
 	@Override
 	public Iterator<Entry<RTLVariable, A>> iterator() {
-		return aVarVal.entrySet().iterator();
+		return aVarVal.descendingIterator();
+	}
+	
+	/**
+	 * Writes all variables of this valuation and their values. 
+	 */
+	public void write(RTLOutputStream out, ValueCodec<A> codec) throws IOException {
+		out.writeInt(aVarVal.size());
+		for (Map.Entry<RTLVariable, A> entry : aVarVal) {
+			out.writeExpression(entry.getKey());
+			codec.writeValue(entry.getValue(), out);
+		}
+	}
+	
+	/**
+	 * Reads a valuation written by {@link #write(RTLOutputStream, ValueCodec)}.
+	 */
+	public static <A extends AbstractValue> VariableValuation<A> read(RTLInputStream in, 
+			AbstractValueFactory<A> valueFactory, ValueCodec<A> codec) throws IOException {
+		PersistentIntMap<RTLVariable, A> aVarVal = PersistentIntMap.empty();
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			RTLExpression e = in.readExpression();
+			if (!(e instanceof RTLVariable))
+				throw new IOException("Expected a variable, but read " + e);
+			RTLVariable var = (RTLVariable)e;
+			aVarVal = aVarVal.put(var.getIndex(), var, codec.readValue(in));
+		}
+		return new VariableValuation<A>(aVarVal, valueFactory);
 	}
 	
 }
@@ -31,7 +31,7 @@ import org.jakstab.util.Pair;
 /**
  * @author Johannes Kinder
  */
-public class CallStackAnalysis implements ConfigurableProgramAnalysis {
+public class CallStackAnalysis implements ConfigurableProgramAnalysis, OrderIndependent {
 
 	public static void register(AnalysisProperties p) {
 		p.setShortHand('s');
@@ -31,21 +31,39 @@ public class CompositePrecision implements Precision {
 	private static final Logger logger = Logger.getLogger(CompositePrecision.class);
 	
 	private Precision[] precisions;
+	private final boolean joinMerge;
 	
 	public CompositePrecision(Precision[] precisions) {
+		this(precisions, false);
+	}
+
+	/**
+	 * @param joinMerge whether states at the location of this precision should
+	 *        be joined on merge, regardless of the merge operators of the components
+	 */
+	public CompositePrecision(Precision[] precisions, boolean joinMerge) {
 		this.precisions = precisions;
+		this.joinMerge = joinMerge;
 	}
 
 	public Precision getComponent(int i) {
 		return precisions[i];
 	}
 
+	public int getComponentCount() {
+		return precisions.length;
+	}
+
+	public boolean isJoinMerge() {
+		return joinMerge;
+	}
+
 	/*
 	 * @see java.lang.Object#toString()
 	 */
 	@Override
 	public String toString() {
-		return Arrays.toString(precisions);
+		return (joinMerge ? "join " : "") + Arrays.toString(precisions);
 	}
 
 }
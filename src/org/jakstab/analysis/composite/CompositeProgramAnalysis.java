@@ -17,12 +17,15 @@
  */
 package org.jakstab.analysis.composite;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
 
 import org.jakstab.AnalysisProperties;
 import org.jakstab.JOption;
+import org.jakstab.Program;
 import org.jakstab.analysis.*;
+import org.jakstab.analysis.CPAProfile.Phase;
 import org.jakstab.analysis.callstack.CallStackAnalysis;
 import org.jakstab.analysis.location.BackwardLocationAnalysis;
 import org.jakstab.analysis.location.LocationAnalysis;
@@ -31,6 +34,8 @@ import org.jakstab.analysis.substitution.SubstitutionState;
 import org.jakstab.cfa.CFAEdge;
 import org.jakstab.cfa.Location;
 import org.jakstab.cfa.StateTransformer;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
 import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLNumber;
 import org.jakstab.rtl.statements.*;
@@ -56,9 +61,13 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 	protected int expressionSubstitutionIndex;
 	protected int callStackAnalysisIndex;
 	
+	// Null unless profiling is enabled
+	protected final CPAProfile profile;
+	
 	public CompositeProgramAnalysis(BackwardLocationAnalysis locationAnalysis) {
 		cpas = new ConfigurableProgramAnalysis[1];
 		cpas[0] = locationAnalysis;
+		profile = getProfile();
 	}
 
 	public CompositeProgramAnalysis(LocationAnalysis locationAnalysis, 
@@ -74,6 +83,12 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 			} else if (cpas[i] instanceof CallStackAnalysis) {
 				callStackAnalysisIndex = i;
 			}
+		profile = getProfile();
+	}
+	
+	private static CPAProfile getProfile() {
+		Program program = Program.getProgram();
+		return program != null ? program.getProfile() : null;
 	}
 
 	@Override
@@ -89,6 +104,7 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 		// Cartesian merge
 		CompositeState cs1 = (CompositeState)s1;
 		CompositeState cs2 = (CompositeState)s2;
+		CompositePrecision cprec = (CompositePrecision)precision;
 		AbstractState[] mergedComponents = new AbstractState[cpas.length];
 		
 		// If analysis is context sensitive, never merge different calling contexts
@@ -99,11 +115,22 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 		}
 		
 		for (int i=0; i<cpas.length; i++) {
-			mergedComponents[i] = cpas[i].merge(
-					cs1.getComponent(i), 
-					cs2.getComponent(i), 
-					((CompositePrecision)precision).getComponent(i)
-					);
+			long startNanos = profile != null ? System.nanoTime() : 0;
+			// Locations over their state budget join states regardless of the component
+			if (cprec.isJoinMerge()) {
+				mergedComponents[i] = CPAOperators.mergeJoin(
+						cs1.getComponent(i), 
+						cs2.getComponent(i), 
+						cprec.getComponent(i)
+						);
+			} else {
+				mergedComponents[i] = cpas[i].merge(
+						cs1.getComponent(i), 
+						cs2.getComponent(i), 
+						cprec.getComponent(i)
+						);
+			}
+			if (profile != null) profile.record(cpas[i], Phase.MERGE, startNanos);
 		}
 		return createCompositeState(mergedComponents);
 	}
@@ -122,16 +149,13 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 			Set<AbstractState> lastSuccs = new FastSet<AbstractState>();
 			lastSuccs.add(state);
 			// Iterate over all statements in the basic block
-			for (RTLStatement stmt : (BasicBlock)cfaEdge.getTransformer()) {
+			for (CFAEdge stmtEdge : ((BasicBlock)cfaEdge.getTransformer()).getStatementEdges()) {
 				// Set of new states for this statement. 
 				Set<AbstractState> newSuccs = new FastSet<AbstractState>();
 				// Grow set of new states through post over each of the old states
 				for (AbstractState lastState : lastSuccs) {
 					try {
-						newSuccs.addAll(postSingleStatement(
-								lastState, 
-								new CFAEdge(stmt.getLabel(), stmt.getNextLabel(), stmt), 
-								precision));
+						newSuccs.addAll(postSingleStatement(lastState, stmtEdge, precision));
 					} catch (UnknownPointerAccessException e) {
 						e.setState(lastState);
 						throw e;
@@ -200,6 +224,7 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 			// For forward expression substitution, use the original cfa edge, 
 			// it takes care of substitutions itself. Also for CallStackAnalysis.
 			Set<AbstractState> succs;
+			long startNanos = profile != null ? System.nanoTime() : 0;
 			if (i == expressionSubstitutionIndex || i == callStackAnalysisIndex) {
 				succs = cpas[i].post(c.getComponent(i), origCFAEdge, 
 					((CompositePrecision)precision).getComponent(i));
@@ -207,6 +232,7 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 				succs = cpas[i].post(c.getComponent(i), cfaEdge, 
 						((CompositePrecision)precision).getComponent(i));
 			}
+			if (profile != null) profile.record(cpas[i], Phase.POST, startNanos);
 			// If one analysis reports no successors, there is no composite successor
 			if (succs.isEmpty()) return Collections.emptySet();
 			sComponents.set(i, succs);
@@ -240,15 +266,18 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 		Precision[] newPrecComponents = new Precision[cpas.length];
 		
 		for (int i=0; i<cpas.length; i++) {
+			 long startNanos = profile != null ? System.nanoTime() : 0;
 			 Pair<AbstractState, Precision> pair = cpas[i].prec(cs.getComponent(i), 
 					((CompositePrecision)precision).getComponent(i),
 					reached.select(i).where(0, cs.getComponent(0)));
+			 if (profile != null) profile.record(cpas[i], Phase.PREC, startNanos);
 			 newComponents[i] = pair.getLeft();
 			 newPrecComponents[i] = pair.getRight();
 		}
 		
 		return Pair.create((AbstractState)(createCompositeState(newComponents)),
-				(Precision)(new CompositePrecision(newPrecComponents)));
+				(Precision)(new CompositePrecision(newPrecComponents, 
+						((CompositePrecision)precision).isJoinMerge())));
 	}
 
 	@Override
@@ -258,11 +287,14 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 
 		// cartesian stop
 		for (int i=0; i<cpas.length; i++) {
-			if (!cpas[i].stop(
+			long startNanos = profile != null ? System.nanoTime() : 0;
+			boolean stopped = cpas[i].stop(
 					cs.getComponent(i), 
 					reached.select(i).where(0, cs.getComponent(0)), 
 					((CompositePrecision)precision).getComponent(i)
-			)) {
+			);
+			if (profile != null) profile.record(cpas[i], Phase.STOP, startNanos);
+			if (!stopped) {
 				//logger.error(cs.getComponent(i).getClass().getSimpleName() + " says continue");
 				return false;
 			}
@@ -296,6 +328,65 @@ public class CompositeProgramAnalysis implements ConfigurableProgramAnalysis {
 		throw new UnsupportedOperationException("Strengthening should never be called on composite analysis!");
 	}
 	
+	/**
+	 * Returns whether the reached states of this analysis do not depend on the
+	 * order in which states are processed, i.e., if all component analyses are
+	 * {@link OrderIndependent}.
+	 */
+	public boolean isOrderIndependent() {
+		for (ConfigurableProgramAnalysis cpa : cpas)
+			if (!(cpa instanceof OrderIndependent))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns a codec for the composite states and precisions of this analysis, 
+	 * or null if not all component analyses can encode their states.
+	 */
+	public StateCodec getStateCodec() {
+		final StateCodec[] codecs = new StateCodec[cpas.length];
+		for (int i = 0; i < cpas.length; i++) {
+			if (!(cpas[i] instanceof StateCodec))
+				return null;
+			codecs[i] = (StateCodec)cpas[i];
+		}
+		return new StateCodec() {
+
+			@Override
+			public void writeState(AbstractState s, RTLOutputStream out) throws IOException {
+				CompositeState cs = (CompositeState)s;
+				for (int i = 0; i < codecs.length; i++)
+					codecs[i].writeState(cs.getComponent(i), out);
+			}
+
+			@Override
+			public AbstractState readState(RTLInputStream in) throws IOException {
+				AbstractState[] components = new AbstractState[codecs.length];
+				for (int i = 0; i < codecs.length; i++)
+					components[i] = codecs[i].readState(in);
+				return createCompositeState(components);
+			}
+
+			@Override
+			public void writePrecision(Precision p, RTLOutputStream out) throws IOException {
+				CompositePrecision cp = (CompositePrecision)p;
+				out.writeBoolean(cp.isJoinMerge());
+				for (int i = 0; i < codecs.length; i++)
+					codecs[i].writePrecision(cp.getComponent(i), out);
+			}
+
+			@Override
+			public Precision readPrecision(RTLInputStream in) throws IOException {
+				boolean joinMerge = in.readBoolean();
+				Precision[] components = new Precision[codecs.length];
+				for (int i = 0; i < codecs.length; i++)
+					components[i] = codecs[i].readPrecision(in);
+				return new CompositePrecision(components, joinMerge);
+			}
+		};
+	}
+	
 	protected CompositeState createCompositeState(Tuple<AbstractState> tuple) {
 		AbstractState[] components = new AbstractState[tuple.size()];
 		for (int i=0; i<components.length; i++) {
@@ -44,7 +44,7 @@ public class BDDVariableValuation extends VariableValuation<BDDSet> {
 
 			BDDVariableValuation joinedValuation = new BDDVariableValuation(valueFactory);
 			// Join variable valuations
-			for (Map.Entry<RTLVariable,BDDSet> entry : aVarVal.entrySet()) {
+			for (Map.Entry<RTLVariable,BDDSet> entry : aVarVal) {
 				RTLVariable var = entry.getKey();
 				BDDSet value = entry.getValue();
 				joinedValuation.set(var, (BDDSet)value.join(other.get(var)));
@@ -57,7 +57,7 @@ public class BDDVariableValuation extends VariableValuation<BDDSet> {
 	@Override
 	public BDDSet get(RTLVariable var) {
 		logger.debug("getting var: " + var );
-		BDDSet e = aVarVal.get(var);
+		BDDSet e = aVarVal.get(var.getIndex());
 		if (e != null) {
 			return e;
 		} else {
@@ -120,10 +120,10 @@ public class BDDVariableValuation extends VariableValuation<BDDSet> {
 		}
 
 		if (value.isTop()) {
-			aVarVal.remove(var);
+			aVarVal = aVarVal.remove(var.getIndex());
 		} else {
 			logger.debug("putting var: " + var + " to value: " + value);
-			aVarVal.put(var, value);
+			aVarVal = aVarVal.put(var.getIndex(), var, value);
 		}
 	}
 }
@@ -32,7 +32,7 @@ import org.jakstab.util.Pair;
 /**
  * @author Johannes Kinder
  */
-public class BasedConstantPropagation implements ConfigurableProgramAnalysis {
+public class BasedConstantPropagation implements ConfigurableProgramAnalysis, OrderIndependent {
 
 	
 	public static void register(AnalysisProperties p) {
@@ -17,11 +17,17 @@
  */
 package org.jakstab.analysis.explicit;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.jakstab.analysis.AbstractValueFactory;
+import org.jakstab.analysis.MemoryRegion;
+import org.jakstab.analysis.ValueCodec;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
+import org.jakstab.rtl.expressions.RTLExpression;
 import org.jakstab.rtl.expressions.RTLNumber;
 import org.jakstab.util.Lattices;
 import org.jakstab.util.Logger;
@@ -30,7 +36,7 @@ import org.jakstab.util.Logger;
  * @author Johannes Kinder
  */
 public class BasedNumberElementFactory implements
-		AbstractValueFactory<BasedNumberElement> {
+		AbstractValueFactory<BasedNumberElement>, ValueCodec<BasedNumberElement> {
 
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(BasedNumberElementFactory.class);
@@ -74,4 +80,32 @@ public class BasedNumberElementFactory implements
 		return BasedNumberElement.TRUE;
 	}
 
+	@Override
+	public void writeValue(BasedNumberElement value, RTLOutputStream out) throws IOException {
+		value.getRegion().write(out);
+		out.writeInt(value.getBitWidth());
+		// TOP numbers are only recognized by identity, so they are written as a flag
+		boolean numberTop = value.isTop() || value.isNumberTop();
+		out.writeBoolean(numberTop);
+		if (!numberTop)
+			out.writeExpression(value.getNumber());
+	}
+
+	@Override
+	public BasedNumberElement readValue(RTLInputStream in) throws IOException {
+		MemoryRegion region = MemoryRegion.read(in);
+		int bitWidth = in.readInt();
+		if (bitWidth < 1 || bitWidth > 128)
+			throw new IOException("Invalid bit width " + bitWidth);
+		if (in.readBoolean()) {
+			if (region == MemoryRegion.TOP)
+				return BasedNumberElement.getTop(bitWidth);
+			return new BasedNumberElement(region, NumberElement.getTop(bitWidth));
+		}
+		RTLExpression number = in.readExpression();
+		if (!(number instanceof RTLNumber))
+			throw new IOException("Expected a number, but read " + number);
+		return new BasedNumberElement(region, (RTLNumber)number);
+	}
+
 }
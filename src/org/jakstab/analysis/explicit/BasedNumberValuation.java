@@ -17,6 +17,7 @@
  */
 package org.jakstab.analysis.explicit;
 
+import java.io.IOException;
 import java.util.*;
 
 import org.jakstab.Program;
@@ -96,6 +97,28 @@ public final class BasedNumberValuation implements AbstractState {
 			return this;
 		}
 		
+		public void write(RTLOutputStream out) throws IOException {
+			int count = 0;
+			for (AllocationTreeNode iter = leaf; iter != null; iter = iter.parent)
+				count++;
+			out.writeInt(count);
+			for (AllocationTreeNode iter = leaf; iter != null; iter = iter.parent)
+				out.writeLabel(iter.location);
+		}
+		
+		public static AllocationCounter read(RTLInputStream in) throws IOException {
+			int count = in.readInt();
+			if (count < 0)
+				throw new IOException("Invalid allocation count " + count);
+			RTLLabel[] locations = new RTLLabel[count];
+			for (int i = 0; i < count; i++)
+				locations[i] = in.readLabel();
+			AllocationTreeNode leaf = null;
+			for (int i = count - 1; i >= 0; i--)
+				leaf = new AllocationTreeNode(locations[i], leaf);
+			return new AllocationCounter(leaf);
+		}
+		
 	}
 
 	/*	
@@ -1092,6 +1115,31 @@ public final class BasedNumberValuation implements AbstractState {
 
 	}
 	
+	/**
+	 * Writes this state for {@link BoundedAddressTracking#writeState}.
+	 */
+	void write(RTLOutputStream out) throws IOException {
+		out.writeBoolean(isBot());
+		if (isBot())
+			return;
+		BasedNumberElementFactory codec = new BasedNumberElementFactory();
+		aVarVal.write(out, codec);
+		aStore.write(out, codec);
+		allocCounters.write(out);
+	}
+	
+	/**
+	 * Reads a state written by {@link #write(RTLOutputStream)}.
+	 */
+	static BasedNumberValuation read(RTLInputStream in) throws IOException {
+		if (in.readBoolean())
+			return BOT;
+		BasedNumberElementFactory codec = new BasedNumberElementFactory();
+		VariableValuation<BasedNumberElement> aVarVal = VariableValuation.read(in, codec, codec);
+		PartitionedMemory<BasedNumberElement> aStore = PartitionedMemory.read(in, codec, codec);
+		return new BasedNumberValuation(aVarVal, aStore, AllocationCounter.read(in));
+	}
+	
 	public VariableValuation<BasedNumberElement> getVariableValuation() {
 		return aVarVal;
 	}
@@ -18,6 +18,7 @@
 
 package org.jakstab.analysis.explicit;
 
+import java.io.IOException;
 import java.util.*;
 
 import org.jakstab.AnalysisProperties;
@@ -29,18 +30,19 @@ import org.jakstab.asm.x86.X86Instruction;
 import org.jakstab.cfa.CFAEdge;
 import org.jakstab.cfa.Location;
 import org.jakstab.cfa.StateTransformer;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
 import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLVariable;
 import org.jakstab.rtl.statements.RTLStatement;
 import org.jakstab.util.*;
-import org.jakstab.util.MapMap.EntryIterator;
 
 import com.google.common.collect.*;
 
 /**
  * @author Johannes Kinder
  */
-public class BoundedAddressTracking implements ConfigurableProgramAnalysis {
+public class BoundedAddressTracking implements ConfigurableProgramAnalysis, StateCodec {
 
 	private final static Logger logger = Logger.getLogger(BoundedAddressTracking.class);
 
@@ -95,8 +97,9 @@ public class BoundedAddressTracking implements ConfigurableProgramAnalysis {
 			
 			boolean changed = false;
 
-			// Check value counts for variables
-			for (RTLVariable v : eprec.varMap.keySet()) {
+			// Check value counts for variables, only those that were over threshold 
+			// when their last value was collected can be over threshold now
+			for (RTLVariable v : eprec.varsOverThreshold) {
 				//BasedNumberElement currentValue = ((BasedNumberValuation)s).getValue(v);
 				Set<BasedNumberElement> existingValues = eprec.varMap.get(v);
 				int threshold = eprec.getThreshold(v);
@@ -128,12 +131,12 @@ public class BoundedAddressTracking implements ConfigurableProgramAnalysis {
 			
 			// Check value counts for store
 			PartitionedMemory<BasedNumberElement> sStore = ((BasedNumberValuation)s).getStore();
-			for (EntryIterator<MemoryRegion, Long, BasedNumberElement> entryIt = sStore.entryIterator(); entryIt.hasEntry(); entryIt.next()) {
-				MemoryRegion region = entryIt.getLeftKey();
-				Long offset = entryIt.getRightKey();
-				BasedNumberElement value = entryIt.getValue();
+			for (Map.Entry<MemoryRegion, Long> cell : eprec.cellsOverThreshold.entries()) {
+				MemoryRegion region = cell.getKey();
+				Long offset = cell.getValue();
+				BasedNumberElement value = sStore.getCellValue(region, offset);
+				if (value == null) continue;
 				SetMultimap<Long, BasedNumberElement> memoryMap = eprec.regionMaps.get(region);
-				if (memoryMap == null) continue;
 				
 				//BasedNumberElement currentValue = entry.getValue();
 				Set<BasedNumberElement> existingValues = memoryMap.get(offset);
@@ -162,22 +165,8 @@ public class BoundedAddressTracking implements ConfigurableProgramAnalysis {
 			}
 		}
 		
-		// Collect all values for all variables
-		for (Map.Entry<RTLVariable, BasedNumberElement> entry : widenedState.getVariableValuation()) {
-			eprec.varMap.put(entry.getKey(), entry.getValue());
-		}
-
-		// Collect all values for all memory areas
-		PartitionedMemory<BasedNumberElement> store = widenedState.getStore();
-		for (EntryIterator<MemoryRegion, Long, BasedNumberElement> entryIt = store.entryIterator(); entryIt.hasEntry(); entryIt.next()) {
-			SetMultimap<Long, BasedNumberElement> memoryMap = eprec.regionMaps.get(entryIt.getLeftKey());
-			if (memoryMap == null) {
-				memoryMap = HashMultimap.create();
-				eprec.regionMaps.put(entryIt.getLeftKey(), memoryMap);
-			}
-			memoryMap.put(entryIt.getRightKey(), entryIt.getValue());
-		}
-
+		// Collect all values for all variables and memory areas
+		eprec.collectValues(widenedState);
 
 		// If it was changed, widenedState is now a new state
 		return Pair.create((AbstractState)widenedState, precision);
@@ -208,6 +197,26 @@ public class BoundedAddressTracking implements ConfigurableProgramAnalysis {
 		return p;
 	}
 	
+	@Override
+	public void writeState(AbstractState s, RTLOutputStream out) throws IOException {
+		((BasedNumberValuation)s).write(out);
+	}
+
+	@Override
+	public AbstractState readState(RTLInputStream in) throws IOException {
+		return BasedNumberValuation.read(in);
+	}
+
+	@Override
+	public void writePrecision(Precision p, RTLOutputStream out) throws IOException {
+		((ExplicitPrecision)p).write(out);
+	}
+
+	@Override
+	public Precision readPrecision(RTLInputStream in) throws IOException {
+		return ExplicitPrecision.read(in);
+	}
+	
 	private int countRegions(Set<BasedNumberElement> values) {
 		Set<MemoryRegion> regions = new HashSet<MemoryRegion>();
 		for (BasedNumberElement e : values)
@@ -32,7 +32,7 @@ import org.jakstab.util.Pair;
 /**
  * @author Johannes Kinder
  */
-public class ConstantPropagation implements ConfigurableProgramAnalysis {
+public class ConstantPropagation implements ConfigurableProgramAnalysis, OrderIndependent {
 
 	public static void register(AnalysisProperties p) {
 		p.setShortHand('c');
@@ -17,14 +17,22 @@
  */
 package org.jakstab.analysis.explicit;
 
+import java.io.IOException;
 import java.util.*;
 
+import org.jakstab.analysis.CoarsenablePrecision;
 import org.jakstab.analysis.MemoryRegion;
-import org.jakstab.analysis.Precision;
+import org.jakstab.analysis.PartitionedMemory;
+import org.jakstab.analysis.VariableValuation;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
+import org.jakstab.rtl.expressions.RTLExpression;
 import org.jakstab.rtl.expressions.RTLVariable;
 import org.jakstab.util.HashMapMap;
 import org.jakstab.util.Logger;
 import org.jakstab.util.MapMap;
+import org.jakstab.util.MapMap.EntryIterator;
+import org.jakstab.util.PersistentIntMap;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.SetMultimap;
@@ -34,21 +42,36 @@ import com.google.common.collect.SetMultimap;
  * with which it is tracked. Can also hold individual thresholds for some variables 
  * that override the default value bound.   
  * 
+ * Values are collected incrementally: only the parts of a state that are not 
+ * shared with the previously collected state are visited, and variables and 
+ * memory locations exceeding their threshold are kept in separate sets, so 
+ * checking the thresholds does not need to scan all collected values.
+ * 
  * @author Johannes Kinder
  */
-public class ExplicitPrecision implements Precision {
+public class ExplicitPrecision implements CoarsenablePrecision {
 
 	private static final Logger logger = Logger.getLogger(ExplicitPrecision.class);
 	
 	public enum TrackingLevel { NONE, REGION, FULL }
 	
+	private static final TrackingLevel[] trackingLevels = TrackingLevel.values();
+	
 	private Map<RTLVariable, Integer> thresholds;
 	private final int defaultThreshold;
+	// Number of times all thresholds have been halved
+	private int coarsening;
 	private Map<RTLVariable, TrackingLevel> varLevels;
 	private MapMap<MemoryRegion, Long, TrackingLevel> memLevels;
 	
 	final SetMultimap<RTLVariable, BasedNumberElement> varMap;
 	final Map<MemoryRegion, SetMultimap<Long, BasedNumberElement>> regionMaps;
+	
+	final Set<RTLVariable> varsOverThreshold;
+	final SetMultimap<MemoryRegion, Long> cellsOverThreshold;
+	
+	private VariableValuation<BasedNumberElement> lastVarVal;
+	private PartitionedMemory<BasedNumberElement> lastStore;
 
 	public ExplicitPrecision(int defaultThreshold) {
 		this.defaultThreshold = defaultThreshold;
@@ -57,6 +80,26 @@ public class ExplicitPrecision implements Precision {
 		this.memLevels = new HashMapMap<MemoryRegion, Long, TrackingLevel>();
 		varMap = HashMultimap.create();
 		regionMaps = new HashMap<MemoryRegion, SetMultimap<Long,BasedNumberElement>>();
+		varsOverThreshold = new HashSet<RTLVariable>();
+		cellsOverThreshold = HashMultimap.create();
+	}
+	
+	@Override
+	public ExplicitPrecision copy() {
+		ExplicitPrecision p = new ExplicitPrecision(defaultThreshold);
+		p.coarsening = coarsening;
+		p.thresholds.putAll(thresholds);
+		p.varLevels.putAll(varLevels);
+		p.memLevels = new HashMapMap<MemoryRegion, Long, TrackingLevel>(memLevels);
+		p.varMap.putAll(varMap);
+		for (Map.Entry<MemoryRegion, SetMultimap<Long, BasedNumberElement>> entry : regionMaps.entrySet())
+			p.regionMaps.put(entry.getKey(), HashMultimap.create(entry.getValue()));
+		p.varsOverThreshold.addAll(varsOverThreshold);
+		p.cellsOverThreshold.putAll(cellsOverThreshold);
+		// The last collected state is immutable, so it can be shared
+		p.lastVarVal = lastVarVal;
+		p.lastStore = lastStore;
+		return p;
 	}
 	
 	public TrackingLevel getTrackingLevel(RTLVariable v) {
@@ -93,19 +136,215 @@ public class ExplicitPrecision implements Precision {
 	
 	public int getStoreThreshold(MemoryRegion region, long offset) {
 		if (region.equals(MemoryRegion.GLOBAL) || region.equals(MemoryRegion.STACK))
-			return defaultThreshold;
+			return coarsened(defaultThreshold);
 		else
-			return BoundedAddressTracking.heapThreshold.getValue();
+			return coarsened(BoundedAddressTracking.heapThreshold.getValue());
 	}
 	
 	public int getThreshold(RTLVariable v) {
 		Integer t = thresholds.get(v);
-		if (t == null) return defaultThreshold;
-		else return t;
+		if (t == null) return coarsened(defaultThreshold);
+		else return coarsened(t);
+	}
+	
+	private int coarsened(int threshold) {
+		return Math.max(1, threshold >> coarsening);
+	}
+	
+	/**
+	 * Halves all thresholds, down to 1, and marks the variables and memory 
+	 * locations that are over their new threshold.
+	 */
+	@Override
+	public boolean coarsen() {
+		boolean lowered = coarsened(defaultThreshold) > 1 || 
+				coarsened(BoundedAddressTracking.heapThreshold.getValue()) > 1;
+		for (Integer t : thresholds.values())
+			lowered |= coarsened(t) > 1;
+		if (!lowered) 
+			return false;
+		coarsening++;
+		logger.debug("Halving thresholds, now " + coarsened(defaultThreshold));
+		
+		for (RTLVariable v : varMap.keySet())
+			if (varMap.get(v).size() > getThreshold(v))
+				varsOverThreshold.add(v);
+		for (Map.Entry<MemoryRegion, SetMultimap<Long, BasedNumberElement>> entry : regionMaps.entrySet())
+			for (Long offset : entry.getValue().keySet())
+				if (entry.getValue().get(offset).size() > getStoreThreshold(entry.getKey(), offset))
+					cellsOverThreshold.put(entry.getKey(), offset);
+		return true;
 	}
 	
 	public void setThreshold(RTLVariable v, int threshold) {
 		thresholds.put(v, threshold);
+		if (varMap.get(v).size() > threshold)
+			varsOverThreshold.add(v);
+	}
+	
+	/**
+	 * Records the values of all variables and memory cells of the given state. 
+	 * Skips everything the state shares with the last state collected by this 
+	 * precision, since those values have been recorded before. 
+	 */
+	void collectValues(BasedNumberValuation state) {
+		VariableValuation<BasedNumberElement> varVal = state.getVariableValuation();
+		if (lastVarVal == null) {
+			for (Map.Entry<RTLVariable, BasedNumberElement> entry : varVal)
+				addValue(entry.getKey(), entry.getValue());
+		} else {
+			varVal.visitUnshared(lastVarVal, new PersistentIntMap.EntryVisitor<RTLVariable, BasedNumberElement>() {
+				@Override
+				public boolean visit(RTLVariable v, BasedNumberElement value) {
+					addValue(v, value);
+					return true;
+				}
+			});
+		}
+		
+		PartitionedMemory<BasedNumberElement> store = state.getStore();
+		for (EntryIterator<MemoryRegion, Long, BasedNumberElement> entryIt = store.unsharedEntryIterator(lastStore); entryIt.hasEntry(); entryIt.next()) {
+			addValue(entryIt.getLeftKey(), entryIt.getRightKey(), entryIt.getValue());
+		}
+		
+		// Copies share all data with the state, so they are cheap to keep
+		lastVarVal = new VariableValuation<BasedNumberElement>(varVal);
+		lastStore = new PartitionedMemory<BasedNumberElement>(store);
+	}
+	
+	private void addValue(RTLVariable v, BasedNumberElement value) {
+		if (varMap.put(v, value) && varMap.get(v).size() > getThreshold(v))
+			varsOverThreshold.add(v);
+	}
+	
+	private void addValue(MemoryRegion region, long offset, BasedNumberElement value) {
+		SetMultimap<Long, BasedNumberElement> memoryMap = regionMaps.get(region);
+		if (memoryMap == null) {
+			memoryMap = HashMultimap.create();
+			regionMaps.put(region, memoryMap);
+		}
+		if (memoryMap.put(offset, value) && memoryMap.get(offset).size() > getStoreThreshold(region, offset))
+			cellsOverThreshold.put(region, offset);
+	}
+	
+	/**
+	 * Writes this precision including all collected values, which are needed
+	 * to continue checking the thresholds after reading it back.
+	 */
+	void write(RTLOutputStream out) throws IOException {
+		BasedNumberElementFactory codec = new BasedNumberElementFactory();
+		out.writeInt(defaultThreshold);
+		out.writeInt(coarsening);
+		out.writeInt(thresholds.size());
+		for (Map.Entry<RTLVariable, Integer> entry : thresholds.entrySet()) {
+			out.writeExpression(entry.getKey());
+			out.writeInt(entry.getValue());
+		}
+		out.writeInt(varLevels.size());
+		for (Map.Entry<RTLVariable, TrackingLevel> entry : varLevels.entrySet()) {
+			out.writeExpression(entry.getKey());
+			out.writeByte(entry.getValue().ordinal());
+		}
+		out.writeInt(memLevels.size());
+		for (EntryIterator<MemoryRegion, Long, TrackingLevel> entryIt = memLevels.entryIterator(); entryIt.hasEntry(); entryIt.next()) {
+			entryIt.getLeftKey().write(out);
+			out.writeLong(entryIt.getRightKey());
+			out.writeByte(entryIt.getValue().ordinal());
+		}
+		out.writeInt(varMap.keySet().size());
+		for (RTLVariable v : varMap.keySet()) {
+			out.writeExpression(v);
+			writeValues(varMap.get(v), out, codec);
+			out.writeBoolean(varsOverThreshold.contains(v));
+		}
+		out.writeInt(regionMaps.size());
+		for (Map.Entry<MemoryRegion, SetMultimap<Long, BasedNumberElement>> entry : regionMaps.entrySet()) {
+			entry.getKey().write(out);
+			SetMultimap<Long, BasedNumberElement> memoryMap = entry.getValue();
+			Set<Long> offsetsOverThreshold = cellsOverThreshold.get(entry.getKey());
+			out.writeInt(memoryMap.keySet().size());
+			for (Long offset : memoryMap.keySet()) {
+				out.writeLong(offset);
+				writeValues(memoryMap.get(offset), out, codec);
+				out.writeBoolean(offsetsOverThreshold.contains(offset));
+			}
+		}
+	}
+	
+	private static void writeValues(Set<BasedNumberElement> values, RTLOutputStream out, 
+			BasedNumberElementFactory codec) throws IOException {
+		out.writeInt(values.size());
+		for (BasedNumberElement value : values)
+			codec.writeValue(value, out);
+	}
+	
+	/**
+	 * Reads a precision written by {@link #write(RTLOutputStream)}.
+	 */
+	static ExplicitPrecision read(RTLInputStream in) throws IOException {
+		BasedNumberElementFactory codec = new BasedNumberElementFactory();
+		ExplicitPrecision p = new ExplicitPrecision(in.readInt());
+		p.coarsening = in.readInt();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			RTLVariable v = readVariable(in);
+			p.thresholds.put(v, in.readInt());
+		}
+		count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			RTLVariable v = readVariable(in);
+			p.varLevels.put(v, readTrackingLevel(in));
+		}
+		count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			MemoryRegion region = MemoryRegion.read(in);
+			long offset = in.readLong();
+			p.memLevels.put(region, offset, readTrackingLevel(in));
+		}
+		count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			RTLVariable v = readVariable(in);
+			p.varMap.putAll(v, readValues(in, codec));
+			if (in.readBoolean())
+				p.varsOverThreshold.add(v);
+		}
+		count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			MemoryRegion region = MemoryRegion.read(in);
+			SetMultimap<Long, BasedNumberElement> memoryMap = HashMultimap.create();
+			p.regionMaps.put(region, memoryMap);
+			int offsetCount = in.readInt();
+			for (int j = 0; j < offsetCount; j++) {
+				long offset = in.readLong();
+				memoryMap.putAll(offset, readValues(in, codec));
+				if (in.readBoolean())
+					p.cellsOverThreshold.put(region, offset);
+			}
+		}
+		return p;
+	}
+	
+	private static RTLVariable readVariable(RTLInputStream in) throws IOException {
+		RTLExpression e = in.readExpression();
+		if (!(e instanceof RTLVariable))
+			throw new IOException("Expected a variable, but read " + e);
+		return (RTLVariable)e;
+	}
+	
+	private static TrackingLevel readTrackingLevel(RTLInputStream in) throws IOException {
+		int level = in.readByte();
+		if (level < 0 || level >= trackingLevels.length)
+			throw new IOException("Invalid tracking level " + level);
+		return trackingLevels[level];
+	}
+	
+	private static List<BasedNumberElement> readValues(RTLInputStream in, 
+			BasedNumberElementFactory codec) throws IOException {
+		int count = in.readInt();
+		List<BasedNumberElement> values = new ArrayList<BasedNumberElement>(Math.max(0, count));
+		for (int i = 0; i < count; i++)
+			values.add(codec.readValue(in));
+		return values;
 	}
 	
 	@Override
@@ -19,6 +19,7 @@ package org.jakstab.analysis.explicit;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jakstab.Program;
 import org.jakstab.analysis.*;
@@ -44,7 +45,8 @@ import org.jakstab.util.*;
 public final class NumberValuation implements AbstractState {
 
 	private static final Logger logger = Logger.getLogger(NumberValuation.class);
-	private static long maxStateId = 0;
+	// Shared by concurrent analyses in batch mode
+	private static final AtomicLong maxStateId = new AtomicLong();
 	
 	static final NumberValuation TOP = new NumberValuation(new HashMap<RTLVariable, NumberElement>(), new HashMap<RTLMemoryLocation, NumberElement>(), true);
 
@@ -74,7 +76,7 @@ public final class NumberValuation implements AbstractState {
 	}
 	
 	private NumberValuation(Map<RTLVariable,NumberElement> aVarVal, Map<RTLMemoryLocation,NumberElement> aMemVal, boolean dataIsTop) {
-		stateId = ++maxStateId;
+		stateId = maxStateId.incrementAndGet();
 		this.aVarVal = aVarVal;
 		this.aMemVal = aMemVal;
 		this.dataIsTop = dataIsTop;
@@ -281,8 +281,9 @@ public class VpcTrackingAnalysis implements ConfigurableProgramAnalysis {
 			
 			boolean changed = false;
 
-			// Check value counts for variables
-			for (RTLVariable v : eprec.varMap.keySet()) {
+			// Check value counts for variables, only those that were over threshold 
+			// when their last value was collected can be over threshold now
+			for (RTLVariable v : eprec.varsOverThreshold) {
 				//BasedNumberElement currentValue = ((BasedNumberValuation)s).getValue(v);
 				Set<BasedNumberElement> existingValues = eprec.varMap.get(v);
 				
@@ -316,12 +317,12 @@ public class VpcTrackingAnalysis implements ConfigurableProgramAnalysis {
 			
 			// Check value counts for store
 			PartitionedMemory<BasedNumberElement> sStore = ((BasedNumberValuation)s).getStore();
-			for (EntryIterator<MemoryRegion, Long, BasedNumberElement> entryIt = sStore.entryIterator(); entryIt.hasEntry(); entryIt.next()) {
-				MemoryRegion region = entryIt.getLeftKey();
-				Long offset = entryIt.getRightKey();
-				BasedNumberElement value = entryIt.getValue();
+			for (Map.Entry<MemoryRegion, Long> cell : eprec.cellsOverThreshold.entries()) {
+				MemoryRegion region = cell.getKey();
+				Long offset = cell.getValue();
+				BasedNumberElement value = sStore.getCellValue(region, offset);
+				if (value == null) continue;
 				SetMultimap<Long, BasedNumberElement> memoryMap = eprec.regionMaps.get(region);
-				if (memoryMap == null) continue;
 				
 				//BasedNumberElement currentValue = entry.getValue();
 				Set<BasedNumberElement> existingValues = memoryMap.get(offset);
@@ -350,22 +351,8 @@ public class VpcTrackingAnalysis implements ConfigurableProgramAnalysis {
 			}
 		}
 		
-		// Collect all values for all variables
-		for (Map.Entry<RTLVariable, BasedNumberElement> entry : widenedState.getVariableValuation()) {
-			RTLVariable var = entry.getKey();
-			eprec.varMap.put(var, entry.getValue());
-		}
-
-		// Collect all values for all memory areas
-		PartitionedMemory<BasedNumberElement> store = widenedState.getStore();
-		for (EntryIterator<MemoryRegion, Long, BasedNumberElement> entryIt = store.entryIterator(); entryIt.hasEntry(); entryIt.next()) {
-			SetMultimap<Long, BasedNumberElement> memoryMap = eprec.regionMaps.get(entryIt.getLeftKey());
-			if (memoryMap == null) {
-				memoryMap = HashMultimap.create();
-				eprec.regionMaps.put(entryIt.getLeftKey(), memoryMap);
-			}
-			memoryMap.put(entryIt.getRightKey(), entryIt.getValue());
-		}
+		// Collect all values for all variables and memory areas
+		eprec.collectValues(widenedState);
 
 		// If it was changed, widenedState is now a new state
 		return Pair.create((AbstractState)widenedState, precision);
@@ -18,6 +18,7 @@
 package org.jakstab.analysis.location;
 
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
 
@@ -25,7 +26,10 @@ import org.jakstab.AnalysisProperties;
 import org.jakstab.analysis.*;
 import org.jakstab.cfa.CFAEdge;
 import org.jakstab.cfa.Location;
+import org.jakstab.cfa.RTLLabel;
 import org.jakstab.cfa.StateTransformer;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
 import org.jakstab.util.Logger;
 import org.jakstab.util.Pair;
 
@@ -34,7 +38,7 @@ import org.jakstab.util.Pair;
  * 
  * @author Johannes Kinder
  */
-public class LocationAnalysis implements ConfigurableProgramAnalysis {
+public class LocationAnalysis implements ConfigurableProgramAnalysis, StateCodec, OrderIndependent {
 
 	public static void register(AnalysisProperties p) {
 		p.setName("Forward location analysis");
@@ -86,4 +90,31 @@ public class LocationAnalysis implements ConfigurableProgramAnalysis {
 		return null;
 	}
 
+	@Override
+	public void writeState(AbstractState s, RTLOutputStream out) throws IOException {
+		if (s.isTop() || s.isBot()) {
+			out.writeBoolean(false);
+			out.writeBoolean(s.isTop());
+		} else {
+			out.writeBoolean(true);
+			out.writeLabel((RTLLabel)s.getLocation());
+		}
+	}
+
+	@Override
+	public AbstractState readState(RTLInputStream in) throws IOException {
+		if (in.readBoolean())
+			return new LocationState(in.readLabel());
+		return in.readBoolean() ? LocationState.TOP : LocationState.BOT;
+	}
+
+	@Override
+	public void writePrecision(Precision p, RTLOutputStream out) throws IOException {
+	}
+
+	@Override
+	public Precision readPrecision(RTLInputStream in) throws IOException {
+		return null;
+	}
+
 }
@@ -18,6 +18,7 @@
 package org.jakstab.analysis.substitution;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jakstab.analysis.*;
 import org.jakstab.cfa.Location;
@@ -40,7 +41,8 @@ public final class SubstitutionState implements AbstractState {
 
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(SubstitutionState.class);
-	private static long maxStateId = 0;
+	// Shared by concurrent analyses in batch mode
+	private static final AtomicLong maxStateId = new AtomicLong();
 	
 	public static final SubstitutionState TOP = new SubstitutionState();
 	public static final SubstitutionState BOT = new SubstitutionState();
@@ -54,7 +56,7 @@ public final class SubstitutionState implements AbstractState {
 	}
 	
 	private SubstitutionState(Map<Writable,SubstitutionElement> aVarVal) {
-		stateId = ++maxStateId;
+		stateId = maxStateId.incrementAndGet();
 		this.aVarVal = aVarVal;
 	}
 	
@@ -177,39 +177,41 @@ public class AlternatingStateTransformerFactory extends ResolvingTransformerFact
 						if (!isProgramAddress(targetValue)) {
 							logger.debug(dcs.getLocation() + ": Jumping out of module to " + targetValue.toHexString());
 
-							// Attempt to map this out-of-module location to a stub
-							if (realToStub.containsKey(targetValue)) {
-								// If we saw this concrete address before, replace it by the known stub
-								logger.debug("Replacing concrete target " + targetValue.toHexString() + " with stub to " + program.getSymbolFor(new AbsoluteAddress(realToStub.get(targetValue))));
-								targetValue = realToStub.get(targetValue);
-							} else {
-
-								// Check the statically produced edges for one that is not yet mapped to a concrete address.
-								// If the over-approximation resolved an import to a stub, it's going to be contained.
-								boolean foundStub = false;
-								for (CFAEdge e : results) {
-									RTLNumber staticTarget = e.getTarget().getAddress().toNumericConstant();
-									if (!isProgramAddress(staticTarget) && !stubToReal.containsKey(staticTarget)) {
-										// Take the first one that's neither taken nor in the program
-										// TODO: This could map the wrong addresses in some (hopefully) rare cases depending on analysis order
-										stubToReal.put(staticTarget, targetValue);
-										realToStub.put(targetValue, staticTarget);
-										targetValue = staticTarget;
-										foundStub = true;
-										break;
+							// Attempt to map this out-of-module location to a stub, the mapping is shared by all threads
+							synchronized (AlternatingStateTransformerFactory.this) {
+								if (realToStub.containsKey(targetValue)) {
+									// If we saw this concrete address before, replace it by the known stub
+									logger.debug("Replacing concrete target " + targetValue.toHexString() + " with stub to " + program.getSymbolFor(new AbsoluteAddress(realToStub.get(targetValue))));
+									targetValue = realToStub.get(targetValue);
+								} else {
+
+									// Check the statically produced edges for one that is not yet mapped to a concrete address.
+									// If the over-approximation resolved an import to a stub, it's going to be contained.
+									boolean foundStub = false;
+									for (CFAEdge e : results) {
+										RTLNumber staticTarget = e.getTarget().getAddress().toNumericConstant();
+										if (!isProgramAddress(staticTarget) && !stubToReal.containsKey(staticTarget)) {
+											// Take the first one that's neither taken nor in the program
+											// TODO: This could map the wrong addresses in some (hopefully) rare cases depending on analysis order
+											stubToReal.put(staticTarget, targetValue);
+											realToStub.put(targetValue, staticTarget);
+											targetValue = staticTarget;
+											foundStub = true;
+											break;
+										}
 									}
-								}
 
-								if (!foundStub) {
-									// If we have not found anything suitable, we need to create a new stub
-									// FIXME: The new stub will likely have incorrect stack height adjustment.
-									//        We should extract that information from the trace.
+									if (!foundStub) {
+										// If we have not found anything suitable, we need to create a new stub
+										// FIXME: The new stub will likely have incorrect stack height adjustment.
+										//        We should extract that information from the trace.
 
-									logger.info(dcs.getLocation() + ": Creating new stub for unknown function at " + targetValue.toHexString());
-									RTLNumber stubTarget = Program.getProgram().getProcAddress("JAK_UNKNOWN", "proc" + targetValue.toHexString()).toNumericConstant();
-									stubToReal.put(stubTarget, targetValue);
-									realToStub.put(targetValue, stubTarget);
-									targetValue = stubTarget;
+										logger.info(dcs.getLocation() + ": Creating new stub for unknown function at " + targetValue.toHexString());
+										RTLNumber stubTarget = Program.getProgram().getProcAddress("JAK_UNKNOWN", "proc" + targetValue.toHexString()).toNumericConstant();
+										stubToReal.put(stubTarget, targetValue);
+										realToStub.put(targetValue, stubTarget);
+										targetValue = stubTarget;
+									}
 								}
 							}
 
@@ -249,7 +251,7 @@ public class AlternatingStateTransformerFactory extends ResolvingTransformerFact
 	}
 
 	@Override
-	protected void saveNewEdges(Set<CFAEdge> transformers, RTLLabel l) {
+	protected synchronized void saveNewEdges(Set<CFAEdge> transformers, RTLLabel l) {
 		// Make sure we only add new edges. Edges are mutable so we cannot just implement
 		// hashCode and equals and add everything into a HashSet.
 		for (CFAEdge edge : transformers) {
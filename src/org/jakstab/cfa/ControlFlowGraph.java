@@ -17,10 +17,17 @@
  */
 package org.jakstab.cfa;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.jakstab.Program;
@@ -32,30 +39,46 @@ import org.jakstab.rtl.statements.RTLStatement;
 import org.jakstab.util.FastSet;
 import org.jakstab.util.Logger;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
-
+/**
+ * An immutable control flow graph. The graph is frozen when it is built: 
+ * locations are numbered densely in their natural order, and the edges are 
+ * stored in compressed sparse row form, i.e., in one array grouped by source 
+ * location (and one grouped by target location), with an offset array 
+ * pointing to the first edge of each location. The id based accessors 
+ * iterate over the graph without allocating; the set valued accessors 
+ * return read-only views on the arrays.
+ */
 public class ControlFlowGraph {
 	
 	private static final Logger logger = Logger.getLogger(ControlFlowGraph.class);
 
+	private static final CFAEdge[] NO_EDGES = new CFAEdge[0];
+
 	private Location entryPoint;
-	private Set<Location> locations;
-	private SetMultimap<Location, CFAEdge> outEdges;
-	private SetMultimap<Location, CFAEdge> inEdges;
+
+	// Locations by id, and ids by location
+	private Location[] locations;
+	private Map<Location, Integer> locationIds;
+
+	// Out-edges of location i are outEdges[outStart[i]] to outEdges[outStart[i + 1] - 1]
+	private CFAEdge[] outEdges;
+	private int[] outStart;
+	// In-edges of location i are inEdges[inStart[i]] to inEdges[inStart[i + 1] - 1]
+	private CFAEdge[] inEdges;
+	private int[] inStart;
 
 	private Map<Location, BasicBlock> basicBlocks;
-	private SetMultimap<Location, CFAEdge> bbOutEdges;
-	private SetMultimap<Location, CFAEdge> bbInEdges;
+	// Basic block edges, indexed by the location id of the block head
+	private CFAEdge[] bbOutEdges;
+	private int[] bbOutStart;
+
+	private Set<Location> nodeView;
+	private Set<CFAEdge> edgeView;
+	private Set<CFAEdge> bbEdgeView;
 	
 	protected ControlFlowGraph() {
-		outEdges = HashMultimap.create();
-		inEdges = HashMultimap.create();
-		locations = new HashSet<Location>();
-
-		basicBlocks = new HashMap<Location, BasicBlock>();
-		bbOutEdges = HashMultimap.create();
-		bbInEdges = HashMultimap.create();
+		freeze(Collections.<CFAEdge>emptyList());
+		buildBasicBlocks();
 	}
 	
 	
@@ -69,8 +92,7 @@ public class ControlFlowGraph {
 	}
 	
 	public Set<CFAEdge> getBasicBlockEdges() {
-		return Collections.unmodifiableSet(
-				new HashSet<CFAEdge>(bbOutEdges.values()));
+		return bbEdgeView;
 	}
 
 	public Set<Location> getBasicBlockNodes() {
@@ -78,24 +100,32 @@ public class ControlFlowGraph {
 	}
 	
 	public Set<CFAEdge> getBasicBlockOutEdges(Location l) {
-		return bbOutEdges.get(l);
+		int id = getLocationId(l);
+		if (id < 0) 
+			return Collections.emptySet();
+		return new EdgeRange(bbOutEdges, bbOutStart[id], bbOutStart[id + 1]);
 	}
 	
+	/**
+	 * Returns the basic blocks of the graph, ordered by their head locations.
+	 */
 	public Map<Location, BasicBlock> getBasicBlocks() {
 		return Collections.unmodifiableMap(basicBlocks);
 	}
 	
 	public CFAEdge getEdgeBetween(Location src, Location tgt) {
-		Set<CFAEdge> out = outEdges.get(src);
-		if (out != null) for (CFAEdge e : out)
-			if (e.getTarget().equals(tgt))
-				return e;
+		int id = getLocationId(src);
+		if (id >= 0) for (int i = outStart[id]; i < outStart[id + 1]; i++)
+			if (outEdges[i].getTarget().equals(tgt))
+				return outEdges[i];
 		return null;
 	}
 	
+	/**
+	 * Returns a read-only view of all edges, ordered by source location.
+	 */
 	public Set<CFAEdge> getEdges() {
-		return Collections.unmodifiableSet(
-				new HashSet<CFAEdge>(outEdges.values()));
+		return edgeView;
 	}
 	
 	public Location getEntryPoint() {
@@ -103,85 +133,213 @@ public class ControlFlowGraph {
 	}
 	
 	public int getInDegree(Location l) {
-		return inEdges.get(l).size();
+		int id = getLocationId(l);
+		return id < 0 ? 0 : getInDegree(id);
 	}
 	
 	public Set<CFAEdge> getInEdges(Location l) {
-		return Collections.unmodifiableSet(inEdges.get(l));
+		int id = getLocationId(l);
+		if (id < 0) 
+			return Collections.emptySet();
+		return new EdgeRange(inEdges, inStart[id], inStart[id + 1]);
 	}
 	
+	/**
+	 * Returns a read-only view of all locations, ordered by id.
+	 */
 	public Set<Location> getNodes() {
-		return Collections.unmodifiableSet(locations);
+		return nodeView;
 	}
 	
 	public int getOutDegree(Location l) {
-		return outEdges.get(l).size();
+		int id = getLocationId(l);
+		return id < 0 ? 0 : getOutDegree(id);
 	}
 	
 	public Set<CFAEdge> getOutEdges(Location l) {
-		return Collections.unmodifiableSet(outEdges.get(l));
+		int id = getLocationId(l);
+		if (id < 0) 
+			return Collections.emptySet();
+		return new EdgeRange(outEdges, outStart[id], outStart[id + 1]);
 	}
 	
 	public Set<Location> getSuccessorLocations(Location l) {
 		Set<Location> res = new FastSet<Location>();
-		for (CFAEdge e : outEdges.get(l))
-			res.add(e.getTarget());
+		int id = getLocationId(l);
+		if (id >= 0) for (int i = outStart[id]; i < outStart[id + 1]; i++)
+			res.add(outEdges[i].getTarget());
 		return res;
 	}
 	
 	public int numEdges() {
-		return outEdges.size();
+		return outEdges.length;
+	}
+
+	/**
+	 * Returns the number of locations. Location ids range from 0 to the 
+	 * number of locations - 1.
+	 */
+	public int getLocationCount() {
+		return locations.length;
+	}
+
+	public Location getLocation(int id) {
+		return locations[id];
+	}
+
+	/**
+	 * Returns the id of a location, or -1 if the location is not part of 
+	 * the graph.
+	 */
+	public int getLocationId(Location l) {
+		Integer id = locationIds.get(l);
+		return id == null ? -1 : id.intValue();
+	}
+
+	public int getOutDegree(int id) {
+		return outStart[id + 1] - outStart[id];
+	}
+
+	/**
+	 * Returns the i-th out-edge of the location with the given id.
+	 */
+	public CFAEdge getOutEdge(int id, int i) {
+		return outEdges[outStart[id] + i];
+	}
+
+	public int getInDegree(int id) {
+		return inStart[id + 1] - inStart[id];
+	}
+
+	/**
+	 * Returns the i-th in-edge of the location with the given id.
+	 */
+	public CFAEdge getInEdge(int id, int i) {
+		return inEdges[inStart[id] + i];
+	}
+
+	/**
+	 * Returns the edge with the given index, where edges are ordered by 
+	 * source location and range from 0 to numEdges() - 1.
+	 */
+	public CFAEdge getEdge(int index) {
+		return outEdges[index];
 	}
 	
 	protected final void buildFromEdgeSet(Set<CFAEdge> edges) {
+		List<CFAEdge> statementEdges = new ArrayList<CFAEdge>(edges.size());
 		for (CFAEdge e : edges) {
-			addEdge(e);
+			addEdge(e, statementEdges);
 		}
 		
+		freeze(statementEdges);
 		findEntryPoint();		
 		buildBasicBlocks();
 		assert valid();
 	}
 
-	protected void addEdge(CFAEdge e) {
-		
+	private static void addEdge(CFAEdge e, List<CFAEdge> statementEdges) {
 		if (e.getTransformer() instanceof BasicBlock) {
 			BasicBlock bb = (BasicBlock)e.getTransformer();
 			for (RTLStatement stmt : bb) {
-				CFAEdge newEdge = new CFAEdge(stmt.getLabel(), stmt.getNextLabel(), stmt);
-				addEdge(newEdge);
+				statementEdges.add(new CFAEdge(stmt.getLabel(), stmt.getNextLabel(), stmt));
 			}
-			return;
+		} else {
+			statementEdges.add(e);
 		}
-		
-		// Check if edge already exists (equality on edges uses not only source & target)
-		Set<CFAEdge> existingEdges = outEdges.get(e.getSource());
-		for (CFAEdge existing : existingEdges) {
-			if (existing.getTarget().equals(e.getTarget()))
-				return;
+	}
+
+	/**
+	 * Assigns location ids and builds the adjacency arrays. Of several edges
+	 * between the same pair of locations, only the first one is kept.
+	 */
+	private void freeze(List<CFAEdge> edges) {
+		Set<Location> locationSet = new HashSet<Location>();
+		for (CFAEdge e : edges) {
+			locationSet.add(e.getSource());
+			locationSet.add(e.getTarget());
 		}
-		
-		outEdges.put(e.getSource(), e);
-		inEdges.put(e.getTarget(), e);
-		locations.add(e.getSource());
-		locations.add(e.getTarget());
+		locations = locationSet.toArray(new Location[locationSet.size()]);
+		Arrays.sort(locations);
+		int n = locations.length;
+		locationIds = new HashMap<Location, Integer>(n * 4 / 3 + 1);
+		for (int i = 0; i < n; i++)
+			locationIds.put(locations[i], i);
+
+		// Bucket the edges by source, keeping the order of the input list
+		int m = edges.size();
+		int[] source = new int[m];
+		int[] target = new int[m];
+		int[] bucketStart = new int[n + 1];
+		for (int i = 0; i < m; i++) {
+			CFAEdge e = edges.get(i);
+			source[i] = locationIds.get(e.getSource());
+			target[i] = locationIds.get(e.getTarget());
+			bucketStart[source[i] + 1]++;
+		}
+		for (int i = 0; i < n; i++)
+			bucketStart[i + 1] += bucketStart[i];
+		int[] fill = Arrays.copyOf(bucketStart, n);
+		int[] bucketed = new int[m];
+		for (int i = 0; i < m; i++)
+			bucketed[fill[source[i]]++] = i;
+
+		// Order the out-edges of each location by target and drop duplicates 
+		// (equality on edges uses not only source & target)
+		CFAEdge[] out = new CFAEdge[m];
+		int[] outTarget = new int[m];
+		outStart = new int[n + 1];
+		int k = 0;
+		for (int s = 0; s < n; s++) {
+			int first = k;
+			outStart[s] = first;
+			edgeLoop: for (int j = bucketStart[s]; j < bucketStart[s + 1]; j++) {
+				int t = target[bucketed[j]];
+				for (int i = first; i < k; i++)
+					if (outTarget[i] == t) continue edgeLoop;
+				int p = k++;
+				for (; p > first && outTarget[p - 1] > t; p--) {
+					out[p] = out[p - 1];
+					outTarget[p] = outTarget[p - 1];
+				}
+				out[p] = edges.get(bucketed[j]);
+				outTarget[p] = t;
+			}
+		}
+		outStart[n] = k;
+		outEdges = k == 0 ? NO_EDGES : Arrays.copyOf(out, k);
+
+		// Group the same edges by target
+		inStart = new int[n + 1];
+		for (int i = 0; i < k; i++)
+			inStart[outTarget[i] + 1]++;
+		for (int i = 0; i < n; i++)
+			inStart[i + 1] += inStart[i];
+		fill = Arrays.copyOf(inStart, n);
+		inEdges = k == 0 ? NO_EDGES : new CFAEdge[k];
+		for (int i = 0; i < k; i++)
+			inEdges[fill[outTarget[i]]++] = outEdges[i];
+
+		nodeView = new NodeSet();
+		edgeView = new EdgeSet(outEdges, outStart);
 	}
 	
 	protected boolean isBasicBlockHead(Location l) {
-		Set<CFAEdge> in = getInEdges(l);
+		int id = getLocationId(l);
+		int inDegree = getInDegree(id);
 		
-		if (in.size() <= 0) {
+		if (inDegree <= 0) {
 			logger.debug("Orphan block at " + l);
 			return true;
 		}
 		
 		// If it has in-degree greater than 1, it's a head
-		if (in.size() > 1) {
+		if (inDegree > 1) {
 			return true;
 		}
 		
 		// There's only one edge
-		CFAEdge e = in.iterator().next();
+		CFAEdge e = getInEdge(id, 0);
 		Location predLoc = e.getSource();
 
 		// If out-degree of predecessor is greater than 1, this is a head
@@ -208,47 +366,44 @@ public class ControlFlowGraph {
 		
 		int errors = 0;
 		
-		for (CFAEdge e : outEdges.values()) {
-			if (!locations.contains(e.getSource())) {
-				logger.error("Locations do not contain " + e.getSource() + " from edge " + e);
-				errors++;
-			}
-			if (!locations.contains(e.getTarget())) {
-				logger.error("Locations do not contain " + e.getTarget() + " from edge " + e);
-				errors++;
-			}
-			if (!outEdges.get(e.getSource()).contains(e)) {
-				logger.error("Out-edges do not contain out-edge " + e + " with statement " + e.getTransformer() + " and hashcode " + e.hashCode());
-				errors++;
+		for (int id = 0; id < locations.length; id++) {
+			Location l = locations[id];
+			for (int i = outStart[id]; i < outStart[id + 1]; i++) {
+				CFAEdge e = outEdges[i];
+				if (!e.getSource().equals(l)) {
+					logger.error("Out-edge " + e + " stored for wrong location " + l);
+					errors++;
+				}
+				if (getLocationId(e.getTarget()) < 0) {
+					logger.error("Locations do not contain " + e.getTarget() + " from edge " + e);
+					errors++;
+				}
+				if (i > outStart[id] && 
+						getLocationId(outEdges[i - 1].getTarget()) >= getLocationId(e.getTarget())) {
+					logger.error("Out-edges of " + l + " not ordered or not unique at " + e);
+					errors++;
+				}
 			}
-			if (!inEdges.get(e.getTarget()).contains(e)) {
-				logger.error("In-edges do not contain out-edge " + e + " with statement " + e.getTransformer() + " and hashcode " + e.hashCode());
-				errors++;
+			for (int i = inStart[id]; i < inStart[id + 1]; i++) {
+				CFAEdge e = inEdges[i];
+				if (!e.getTarget().equals(l)) {
+					logger.error("In-edge " + e + " stored for wrong location " + l);
+					errors++;
+				}
+				if (!getOutEdges(e.getSource()).contains(e)) {
+					logger.error("Out-edges do not contain in-edge " + e + " with statement " + e.getTransformer() + " and hashcode " + e.hashCode());
+					errors++;
+				}
 			}
 		}
-		
-		for (CFAEdge e : inEdges.values()) {
-			if (!locations.contains(e.getSource())) {
-				logger.error("Locations do not contain " + e.getSource() + " from edge " + e);
-				errors++;
-			}
-			if (!locations.contains(e.getTarget())) {
-				logger.error("Locations do not contain " + e.getTarget() + " from edge " + e);
-				errors++;
-			}
-			if (!outEdges.get(e.getSource()).contains(e)) {
-				logger.error("Out-edges do not contain in-edge " + e + " with statement " + e.getTransformer() + " and hashcode " + e.hashCode());
-				errors++;
-			}
-			if (!inEdges.get(e.getTarget()).contains(e)) {
-				logger.error("In-edges do not contain in-edge " + e + " with statement " + e.getTransformer() + " and hashcode " + e.hashCode());
-				errors++;
-			}
+		if (inEdges.length != outEdges.length) {
+			logger.error("Number of in-edges " + inEdges.length + " differs from number of out-edges " + outEdges.length);
+			errors++;
 		}
 		
 		Set<Location> bbLocations = basicBlocks.keySet();
 
-		for (CFAEdge e : bbOutEdges.values()) {
+		for (CFAEdge e : bbOutEdges) {
 			if (!bbLocations.contains(e.getSource())) {
 				logger.error("Basicblock locations do not contain " + e.getSource() + " from edge " + e);
 				errors++;
@@ -257,26 +412,8 @@ public class ControlFlowGraph {
 				logger.error("Basicblock locations do not contain " + e.getTarget() + " from edge " + e);
 				errors++;
 			}
-			if (!bbInEdges.get(e.getTarget()).contains(e)) {
-				logger.error("BB in-edges do not contain out-edge " + e);
-				errors++;
-			}
 		}
 		
-		for (CFAEdge e : bbInEdges.values()) {
-			if (!bbLocations.contains(e.getSource())) {
-				logger.error("Basicblock locations do not contain " + e.getSource() + " from edge " + e);
-				errors++;
-			}
-			if (!bbLocations.contains(e.getTarget())) {
-				logger.error("Basicblock locations do not contain " + e.getTarget() + " from edge " + e);
-				errors++;
-			}
-			if (!bbOutEdges.get(e.getSource()).contains(e)) {
-				logger.error("BB out-edges do not contain in-edge " + e);
-				errors++;
-			}
-		}
 		if (errors != 0) {
 			logger.error(errors + " errors in CFG audit.");
 			return false;
@@ -287,24 +424,39 @@ public class ControlFlowGraph {
 	
 	private void buildBasicBlocks() {
 		
-		Set<Location> basicBlockHeads = findBasicBlockHeads();
+		int n = locations.length;
+		boolean[] isHead = new boolean[n];
+		
+		// Find basic block heads
+		basicBlocks = new LinkedHashMap<Location, BasicBlock>();
+		for (int id = 0; id < n; id++) {
+			if (isBasicBlockHead(locations[id])) {
+				isHead[id] = true;
+				basicBlocks.put(locations[id], new BasicBlock());
+			}
+		}
+		logger.debug(basicBlocks.size() + " basic blocks.");
 		
-		for (Location l : basicBlockHeads)
-			basicBlocks.put(l, new BasicBlock());
+		List<CFAEdge> bbEdges = new ArrayList<CFAEdge>();
+		bbOutStart = new int[n + 1];
 		
-		for (Map.Entry<Location, BasicBlock> entry : basicBlocks.entrySet()) {
-			Location head = entry.getKey();
-			BasicBlock bb = entry.getValue();
+		for (int headId = 0; headId < n; headId++) {
+			bbOutStart[headId] = bbEdges.size();
+			if (!isHead[headId])
+				continue;
+			Location head = locations[headId];
+			BasicBlock bb = basicBlocks.get(head);
 			
-			//bb.add(program.getStatement(head.getLabel()));
-			Location l = head;
-			Set<CFAEdge> out = outEdges.get(l);
-			while (!out.isEmpty()) {
+			// Current location, and the location whose out-edges are considered
+			int l = headId;
+			int out = l;
+			int outDegree = getOutDegree(out);
+			while (outDegree > 0) {
 				
-				CFAEdge edge = out.iterator().next();				
+				CFAEdge edge = getOutEdge(out, 0);
 
 				// If there is more than one out edge, we'll break out
-				if (out.size() > 1) {
+				if (outDegree > 1) {
 					// Normally this is because of an assume - add the Goto to the BB instead of an assume
 					if (edge.getTransformer() instanceof RTLAssume) {
 						bb.add(((RTLAssume)edge.getTransformer()).getSource());
@@ -320,26 +472,26 @@ public class ControlFlowGraph {
 				}
 
 				bb.add((RTLStatement)edge.getTransformer());
-				
 
-				l = edge.getTarget();
-				if (basicBlocks.containsKey(l))
+				l = getLocationId(edge.getTarget());
+				if (isHead[l])
 					break;
-				//bb.add(program.getStatement(l.getLabel()));
-				out = outEdges.get(l);
+				out = l;
+				outDegree = getOutDegree(out);
 			}
 			// If there's no statement (because there's an immediate jump), add a skip
 			if (bb.isEmpty()) {
 				RTLStatement dummy = new RTLSkip();
-				dummy.setLabel(l.getLabel());
-				if (!out.isEmpty())
-					dummy.setNextLabel(out.iterator().next().getTarget().getLabel());
+				dummy.setLabel(locations[l].getLabel());
+				if (outDegree > 0)
+					dummy.setNextLabel(getOutEdge(out, 0).getTarget().getLabel());
 				bb.add(dummy);
 			}
 			
-			for (CFAEdge e : out) {
+			for (int i = 0; i < outDegree; i++) {
+				CFAEdge e = getOutEdge(out, i);
 				RTLStatement edgeStmt;
-				if (out.size() > 1 && e.getTransformer() instanceof RTLAssume) {
+				if (outDegree > 1 && e.getTransformer() instanceof RTLAssume) {
 					edgeStmt = (RTLStatement)e.getTransformer();
 				} else {
 					edgeStmt = new RTLSkip();
@@ -348,38 +500,127 @@ public class ControlFlowGraph {
 					edgeStmt.setNextLabel(oldStmt.getNextLabel());
 				}
 				CFAEdge bbEdge = new CFAEdge(head, e.getTarget(), edgeStmt);
-				if (!basicBlocks.containsKey(e.getTarget())) {
+				if (!isHead[getLocationId(e.getTarget())]) {
 					logger.error("Target not in basic block head list? " + bbEdge);
 				} else {
-					bbOutEdges.put(head, bbEdge);
-					//assert basicBlocks.containsKey(e.getTarget()) : "Target not in basic block head list? " + bbEdge;
-					bbInEdges.put(e.getTarget(), bbEdge);
+					bbEdges.add(bbEdge);
 				}
 			}
 		}
-		
+		bbOutStart[n] = bbEdges.size();
+		bbOutEdges = bbEdges.toArray(new CFAEdge[bbEdges.size()]);
+		bbEdgeView = new EdgeSet(bbOutEdges, bbOutStart);
 	}
 
-	private Set<Location> findBasicBlockHeads() {
-		Set<Location> result = new HashSet<Location>();
-		
-		// Find basic block heads
-		for (Location l : getNodes()) {
-			if (isBasicBlockHead(l))
-				result.add(l);
-		}
-		logger.debug(result.size() + " basic blocks.");
-		return result;
-	}
-	
 	private void findEntryPoint() {
-		for (Location l : getNodes()) {
-			if (getInDegree(l) == 0) {
-				assert entryPoint == null : "Graph has multiple entry points: " + entryPoint + " and " + l; 
-				entryPoint = l;
+		for (int id = 0; id < locations.length; id++) {
+			if (getInDegree(id) == 0) {
+				assert entryPoint == null : "Graph has multiple entry points: " + entryPoint + " and " + locations[id]; 
+				entryPoint = locations[id];
 			}
 		}
 		assert entryPoint != null : "No entry point found! First statement in cycle?";
 	}
+
+	/**
+	 * Read-only set view of a range of an edge array.
+	 */
+	private static class EdgeRange extends AbstractSet<CFAEdge> {
+
+		protected final CFAEdge[] edges;
+		protected final int from;
+		protected final int to;
+
+		EdgeRange(CFAEdge[] edges, int from, int to) {
+			this.edges = edges;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			for (int i = from; i < to; i++)
+				if (edges[i].equals(o))
+					return true;
+			return false;
+		}
+
+		@Override
+		public Iterator<CFAEdge> iterator() {
+			return new Iterator<CFAEdge>() {
+				private int next = from;
+
+				@Override
+				public boolean hasNext() {
+					return next < to;
+				}
+
+				@Override
+				public CFAEdge next() {
+					if (next >= to)
+						throw new NoSuchElementException();
+					return edges[next++];
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+
+	/**
+	 * Read-only set view of an entire edge array grouped by source location,
+	 * which looks up edges in the range of their source.
+	 */
+	private final class EdgeSet extends EdgeRange {
+
+		private final int[] start;
+
+		EdgeSet(CFAEdge[] edges, int[] start) {
+			super(edges, 0, edges.length);
+			this.start = start;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof CFAEdge))
+				return false;
+			int id = getLocationId(((CFAEdge)o).getSource());
+			if (id < 0)
+				return false;
+			for (int i = start[id]; i < start[id + 1]; i++)
+				if (edges[i].equals(o))
+					return true;
+			return false;
+		}
+	}
+
+	/**
+	 * Read-only set view of the locations.
+	 */
+	private final class NodeSet extends AbstractSet<Location> {
+
+		@Override
+		public boolean contains(Object o) {
+			return locationIds.containsKey(o);
+		}
+
+		@Override
+		public Iterator<Location> iterator() {
+			return Arrays.asList(locations).iterator();
+		}
+
+		@Override
+		public int size() {
+			return locations.length;
+		}
+	}
 	
 }
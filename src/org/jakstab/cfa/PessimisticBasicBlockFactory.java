@@ -17,8 +17,7 @@
  */
 package org.jakstab.cfa;
 
-import java.util.Collections;
-import java.util.Set;
+import java.util.*;
 
 import org.jakstab.Options;
 import org.jakstab.Program;
@@ -34,57 +33,161 @@ import org.jakstab.util.FastSet;
 import org.jakstab.util.Logger;
 import org.jakstab.util.Tuple;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
 /**
  * The transformers created by this factory are basic blocks that begin with a 
  * control flow statement and end on the last statement before the next control
  * flow statement. The CFA edges created point from the first statement to the
  * first statement of each successor block.
  * 
+ * Blocks are built once and cached. A cached block is discarded when one of its
+ * statements is replaced in the program. Edges are mutable and later passes 
+ * change the edges of the CFA, so only the blocks are cached and every call
+ * returns new edges. The cache is guarded by the lock of the factory, gotos are
+ * resolved outside of it.
+ * 
  * @author Johannes Kinder
  */
 public class PessimisticBasicBlockFactory extends ResolvingTransformerFactory implements StateTransformerFactory {
 
 	private static final Logger logger = Logger.getLogger(PessimisticBasicBlockFactory.class);
+	
+	// Blocks beginning with a straight-line statement, by block head
+	private final Map<RTLLabel, CachedBlock> blocks = new HashMap<RTLLabel, CachedBlock>();
+	// Blocks beginning with an assume for a goto, by label of the goto
+	private final Map<RTLLabel, List<CachedBlock>> assumeBlocks = new HashMap<RTLLabel, List<CachedBlock>>();
+	// Keys of the cached blocks that contain or end on a label
+	private final SetMultimap<RTLLabel, RTLLabel> blocksContaining = HashMultimap.create();
+	// Number of statement replacements in the program that were already handled
+	private int replacementsSeen = 0;
 
 	@Override
 	public Set<CFAEdge> getTransformers(final AbstractState a) {
 		Program program = Program.getProgram();
+		RTLLabel location = (RTLLabel)a.getLocation();
+		
 		// First statement
-		RTLStatement firstStmt = program.getStatement((RTLLabel)a.getLocation());
+		RTLStatement firstStmt = program.getStatement(location);
+		Set<RTLStatement> assumes = firstStmt instanceof RTLGoto ? 
+				gotoToAssumes(a, (RTLGoto)firstStmt) : null;
+		return getBlockEdges(program, location, firstStmt, assumes);
+	}
+	
+	/**
+	 * Returns the edges of the cached blocks starting at the location, and 
+	 * builds the blocks that are missing.
+	 * 
+	 * @param assumes the heads of the blocks if the first statement is a goto
+	 */
+	private synchronized Set<CFAEdge> getBlockEdges(Program program, RTLLabel location, 
+			RTLStatement firstStmt, Set<RTLStatement> assumes) {
+		invalidateReplacedBlocks(program);
+		
+		CachedBlock cachedBlock = blocks.get(location);
+		if (cachedBlock != null)
+			return Collections.singleton(cachedBlock.createEdge());
 
-		Set<RTLStatement> blockHeads = new FastSet<RTLStatement>();
+		Set<CFAEdge> transformers = new FastSet<CFAEdge>();
 		if (firstStmt instanceof RTLGoto) {
-			// Multiple blocks
-			blockHeads = gotoToAssumes(a, (RTLGoto)firstStmt);
+			// Multiple blocks, the assumes depend on the state
+			List<CachedBlock> cachedBlocks = assumeBlocks.get(location);
+			if (cachedBlocks == null) {
+				cachedBlocks = new ArrayList<CachedBlock>(2);
+				assumeBlocks.put(location, cachedBlocks);
+			}
+			Set<CFAEdge> newEdges = new FastSet<CFAEdge>();
+			for (RTLStatement head : assumes) {
+				CachedBlock block = findBlockWithHead(cachedBlocks, head);
+				CFAEdge edge;
+				if (block == null) {
+					block = createBlock(program, head, location);
+					cachedBlocks.add(block);
+					edge = block.createEdge();
+					newEdges.add(edge);
+				} else {
+					edge = block.createEdge();
+				}
+				transformers.add(edge);
+			}
+			saveNewEdges(newEdges, location);
 		} else if (firstStmt instanceof RTLHalt) {
 			// Nothing
-			blockHeads = Collections.emptySet();
 		} else {
 			// Single Block
-			blockHeads = new FastSet<RTLStatement>(firstStmt);
+			CachedBlock block = createBlock(program, firstStmt, location);
+			blocks.put(location, block);
+			transformers.add(block.createEdge());
+			saveNewEdges(transformers, location);
 		}
 
-		Set<CFAEdge> transformers = new FastSet<CFAEdge>();
-
-		for (RTLStatement head : blockHeads) {
-
-			BasicBlock block = new BasicBlock();
-			RTLStatement stmt = head;
-
-			while (true) {
-				if (stmt instanceof RTLGoto || stmt instanceof RTLHalt) {
-					break;
-				} else {
-					block.add(stmt);
-					stmt = program.getStatement(stmt.getNextLabel());
-				}
+		return transformers;
+	}
+	
+	/**
+	 * A basic block and the label of the statement it ends on. The block is not
+	 * modified after it was built, so it can be shared by the edges created for it.
+	 */
+	private static final class CachedBlock {
+		final BasicBlock block;
+		final RTLLabel target;
+		
+		CachedBlock(BasicBlock block, RTLLabel target) {
+			this.block = block;
+			this.target = target;
+		}
+		
+		CFAEdge createEdge() {
+			return new CFAEdge(block.getFirst().getLabel(), target, block);
+		}
+	}
+	
+	/**
+	 * Creates the basic block starting with the given statement and ending 
+	 * before the next goto or halt statement, and registers its statements
+	 * for invalidation of the cache entry with the given key.
+	 */
+	private CachedBlock createBlock(Program program, RTLStatement head, RTLLabel key) {
+		BasicBlock block = new BasicBlock();
+		RTLStatement stmt = head;
+
+		while (true) {
+			blocksContaining.put(stmt.getLabel(), key);
+			if (stmt instanceof RTLGoto || stmt instanceof RTLHalt) {
+				break;
+			} else {
+				block.add(stmt);
+				stmt = program.getStatement(stmt.getNextLabel());
 			}
-			transformers.add(new CFAEdge(head.getLabel(), stmt.getLabel(), block));
 		}
-
-		saveNewEdges(transformers, (RTLLabel)a.getLocation());
-
-		return transformers;
+		return new CachedBlock(block, stmt.getLabel());
+	}
+	
+	private static CachedBlock findBlockWithHead(List<CachedBlock> blocks, RTLStatement head) {
+		for (CachedBlock cached : blocks) {
+			RTLStatement first = cached.block.getFirst();
+			if (first.equals(head) && first.getNextLabel().equals(head.getNextLabel()))
+				return cached;
+		}
+		return null;
+	}
+	
+	/**
+	 * Discards all cached blocks containing statements that were replaced in the 
+	 * program since the last call.
+	 */
+	private void invalidateReplacedBlocks(Program program) {
+		int replacements = program.getReplacementCount();
+		if (replacements == replacementsSeen)
+			return;
+		for (RTLLabel replaced : program.getReplacedLabels(replacementsSeen)) {
+			for (RTLLabel key : blocksContaining.removeAll(replaced)) {
+				blocks.remove(key);
+				assumeBlocks.remove(key);
+			}
+		}
+		replacementsSeen = replacements;
 	}
 
 	public Set<RTLStatement> gotoToAssumes(final AbstractState a, final RTLGoto stmt) {
@@ -17,11 +17,14 @@
  */
 package org.jakstab.cfa;
 
+import java.io.IOException;
 import java.util.*;
 
 import org.jakstab.Program;
 import org.jakstab.analysis.AbstractState;
 import org.jakstab.cfa.RTLLabel;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
 import org.jakstab.rtl.statements.*;
 import org.jakstab.util.FastSet;
 import org.jakstab.util.Logger;
@@ -34,6 +37,9 @@ import com.google.common.collect.SetMultimap;
  * the resolve-operator from "Kinder, Veith, Zuleger - An abstract interpretation-based 
  * framework for control flow reconstruction from binaries, VMCAI 2009".
  * 
+ * Transformers can be requested from several threads at once. The resolved edges
+ * are guarded by the lock of the factory.
+ * 
  * @author Johannes Kinder
  */
 public abstract class ResolvingTransformerFactory implements StateTransformerFactory {
@@ -41,8 +47,8 @@ public abstract class ResolvingTransformerFactory implements StateTransformerFac
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(ResolvingTransformerFactory.class);
 
-	protected final Set<RTLLabel> unresolvedBranches = new FastSet<RTLLabel>();
-	protected boolean sound = true;
+	protected final Set<RTLLabel> unresolvedBranches = Collections.synchronizedSet(new FastSet<RTLLabel>());
+	protected volatile boolean sound = true;
 	protected SetMultimap<RTLLabel,CFAEdge> outEdges = HashMultimap.create();
 
 	public boolean isSound() {
@@ -82,7 +88,7 @@ public abstract class ResolvingTransformerFactory implements StateTransformerFac
 		return transformers;
 	}
 
-	protected void saveNewEdges(Set<CFAEdge> transformers, RTLLabel l) {
+	protected synchronized void saveNewEdges(Set<CFAEdge> transformers, RTLLabel l) {
 		// Make sure we only add new edges. Edges are mutable so we cannot just implement
 		// hashCode and equals and add everything into a HashSet.
 		Set<CFAEdge> newEdges;
@@ -105,11 +111,23 @@ public abstract class ResolvingTransformerFactory implements StateTransformerFac
 		outEdges.putAll(l, newEdges);
 	}
 
-	public Set<CFAEdge> getExistingOutEdges(RTLLabel l) {
+	public synchronized Set<CFAEdge> getExistingOutEdges(RTLLabel l) {
 		return outEdges.get(l);
 	}
 
-	public Set<CFAEdge> getCFA() {
+	/**
+	 * Returns a live view of all edges resolved so far. It must not be used 
+	 * while transformers are requested from other threads.
+	 */
+	public Collection<CFAEdge> getEdges() {
+		return Collections.unmodifiableCollection(outEdges.values());
+	}
+
+	public synchronized int numEdges() {
+		return outEdges.size();
+	}
+
+	public synchronized Set<CFAEdge> getCFA() {
 		Set<CFAEdge> cfa = new HashSet<CFAEdge>();
 		for (CFAEdge edge : outEdges.values()) {
 			cfa.add(edge);
@@ -117,6 +135,69 @@ public abstract class ResolvingTransformerFactory implements StateTransformerFac
 		return cfa;
 	}
 
+	/**
+	 * Writes the edges resolved so far, the unresolved branches, and whether
+	 * unsound assumptions were made, so the reconstruction can be continued
+	 * later.
+	 */
+	public synchronized void writeState(RTLOutputStream out) throws IOException {
+		out.writeBoolean(sound);
+		out.writeInt(unresolvedBranches.size());
+		for (RTLLabel l : unresolvedBranches)
+			out.writeLabel(l);
+		out.writeInt(outEdges.size());
+		for (Map.Entry<RTLLabel, CFAEdge> entry : outEdges.entries()) {
+			out.writeLabel(entry.getKey());
+			out.writeEdge(entry.getValue());
+		}
+	}
+
+	/**
+	 * The state of a factory as read by {@link ResolvingTransformerFactory#readState}.
+	 */
+	public static final class SavedState {
+		private final boolean sound;
+		private final Set<RTLLabel> unresolvedBranches;
+		private final SetMultimap<RTLLabel,CFAEdge> outEdges;
+
+		private SavedState(boolean sound, Set<RTLLabel> unresolvedBranches, 
+				SetMultimap<RTLLabel,CFAEdge> outEdges) {
+			this.sound = sound;
+			this.unresolvedBranches = unresolvedBranches;
+			this.outEdges = outEdges;
+		}
+	}
+
+	/**
+	 * Reads the resolved edges and unresolved branches written by 
+	 * {@link #writeState(RTLOutputStream)} without changing this factory. 
+	 * They are applied by {@link #restoreState(SavedState)}.
+	 */
+	public SavedState readState(RTLInputStream in) throws IOException {
+		boolean readSound = in.readBoolean();
+		int count = in.readInt();
+		Set<RTLLabel> readBranches = new FastSet<RTLLabel>();
+		for (int i = 0; i < count; i++)
+			readBranches.add(in.readLabel());
+		count = in.readInt();
+		SetMultimap<RTLLabel,CFAEdge> readEdges = HashMultimap.create();
+		for (int i = 0; i < count; i++) {
+			RTLLabel l = in.readLabel();
+			readEdges.put(l, in.readEdge());
+		}
+		return new SavedState(readSound, readBranches, readEdges);
+	}
+
+	/**
+	 * Replaces the resolved edges and unresolved branches by those of a saved state.
+	 */
+	public synchronized void restoreState(SavedState state) {
+		sound = state.sound;
+		unresolvedBranches.clear();
+		unresolvedBranches.addAll(state.unresolvedBranches);
+		outEdges = state.outEdges;
+	}
+
 	protected abstract Set<CFAEdge> resolveGoto(final AbstractState a, final RTLGoto stmt);
 
 	@Override
@@ -17,7 +17,10 @@
  */
 package org.jakstab.cfa;
 
-import java.util.HashSet;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Set;
 
 import org.jakstab.analysis.AbstractState;
@@ -27,48 +30,77 @@ import org.jakstab.rtl.statements.RTLSkip;
 import org.jakstab.util.FastSet;
 import org.jakstab.util.Logger;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Iterators;
 
+/**
+ * Provides the edges of a reconstructed control flow graph in reverse, i.e.,
+ * the transformers of a location are its in-edges. If the graph has multiple 
+ * sinks, they are connected to an artificial sink that serves as initial
+ * location.
+ */
 public class ReverseCFATransformerFactory implements StateTransformerFactory {
 
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(ReverseCFATransformerFactory.class);
 	
-	private SetMultimap<Location, CFAEdge> reverseCFA;
+	private final ControlFlowGraph cfg;
 	private Location sink;
+	// Edges into the artificial sink, empty if the graph has a unique sink
+	private Set<CFAEdge> sinkEdges;
 	
 	public ReverseCFATransformerFactory(ControlFlowGraph cfg) {
-		reverseCFA = HashMultimap.create();
-		Set<Location> nonSinks = new HashSet<Location>();
-		for (CFAEdge e : cfg.getEdges()) {
-			reverseCFA.put(e.getTarget(), e);
-			nonSinks.add(e.getSource());
-		}
+		this.cfg = cfg;
 		
 		FastSet<Location> sinks = new FastSet<Location>();
-		for (Location l : reverseCFA.keySet()) {
-			if (!nonSinks.contains(l)) {
-				sinks.add(l);
+		for (int id = 0; id < cfg.getLocationCount(); id++) {
+			if (cfg.getOutDegree(id) == 0) {
+				sinks.add(cfg.getLocation(id));
 			}
 		}
 		
 		if (sinks.size() == 1) {
 			sink = sinks.pick();
+			sinkEdges = Collections.emptySet();
 		} else if (sinks.size() == 0) {
 			throw new RuntimeException("CFA has no sink!");
 		} else {
 			// Generate artificial exit node
 			sink = new RTLLabel(new AbsoluteAddress(0xFFFFFF01L));
+			sinkEdges = new FastSet<CFAEdge>();
 			for (Location l : sinks) {
-				reverseCFA.put(sink, new CFAEdge(l, sink, new RTLSkip()));
+				sinkEdges.add(new CFAEdge(l, sink, new RTLSkip()));
 			}
 		}
 	}
 
 	@Override
 	public Set<CFAEdge> getTransformers(AbstractState a) {
-		return reverseCFA.get(a.getLocation());
+		Location l = a.getLocation();
+		if (!sinkEdges.isEmpty() && l.equals(sink))
+			return sinkEdges;
+		return cfg.getInEdges(l);
+	}
+
+	/**
+	 * Returns all edges of the CFA, including the edges to an artificial sink.
+	 */
+	public Collection<CFAEdge> getEdges() {
+		return new AbstractCollection<CFAEdge>() {
+			@Override
+			public Iterator<CFAEdge> iterator() {
+				return Iterators.unmodifiableIterator(Iterators.concat(
+						cfg.getEdges().iterator(), sinkEdges.iterator()));
+			}
+
+			@Override
+			public int size() {
+				return numEdges();
+			}
+		};
+	}
+
+	public int numEdges() {
+		return cfg.numEdges() + sinkEdges.size();
 	}
 
 	@Override
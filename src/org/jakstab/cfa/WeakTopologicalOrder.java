@@ -0,0 +1,355 @@
+/*
+ * WeakTopologicalOrder.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import java.util.*;
+
+import org.jakstab.util.Logger;
+
+/**
+ * Computes orderings of the locations of a control flow graph for worklist
+ * scheduling: the reverse postorder, and the weak topological order (WTO) from
+ * "Bourdoncle - Efficient chaotic iteration strategies with widenings, FMPA 1993"
+ * together with the loop nesting depth of each location.
+ *
+ * The WTO is computed by hierarchical decomposition into strongly connected
+ * components: components are emitted in topological order, and each nontrivial
+ * component is emitted as its head followed by the WTO of the component without
+ * the head. The head of a component is its location visited first by a depth first
+ * search from the entry point. Locations not reachable from the entry point are
+ * ordered after all reachable locations.
+ */
+public class WeakTopologicalOrder {
+
+	@SuppressWarnings("unused")
+	private static final Logger logger = Logger.getLogger(WeakTopologicalOrder.class);
+
+	private final Map<Location, Integer> ids;
+	private final Location[] nodes;
+	private final int[][] successors;
+
+	/** Depth first preorder number */
+	private final int[] dfn;
+	private final int[] rpo;
+	private final int[] wtoPosition;
+	private final int[] depth;
+	private final boolean[] head;
+	private int maxDepth;
+	private int nextPosition;
+
+	/**
+	 * Computes the orderings for the graph given by a set of edges.
+	 *
+	 * @param entry the entry point of the graph
+	 * @param edges the edges of the graph
+	 * @param reverse if true, the edges are interpreted in reverse direction
+	 */
+	public WeakTopologicalOrder(Location entry, Collection<CFAEdge> edges, boolean reverse) {
+		ids = new HashMap<Location, Integer>();
+		List<Location> nodeList = new ArrayList<Location>();
+		List<List<Integer>> succList = new ArrayList<List<Integer>>();
+
+		getId(entry, nodeList, succList);
+		for (CFAEdge e : edges) {
+			Location src = reverse ? e.getTarget() : e.getSource();
+			Location tgt = reverse ? e.getSource() : e.getTarget();
+			int s = getId(src, nodeList, succList);
+			int t = getId(tgt, nodeList, succList);
+			succList.get(s).add(t);
+		}
+
+		int n = nodeList.size();
+		nodes = nodeList.toArray(new Location[n]);
+		successors = new int[n][];
+		for (int i = 0; i < n; i++) {
+			List<Integer> succs = succList.get(i);
+			successors[i] = new int[succs.size()];
+			for (int j = 0; j < successors[i].length; j++)
+				successors[i][j] = succs.get(j);
+		}
+
+		dfn = new int[n];
+		rpo = new int[n];
+		wtoPosition = new int[n];
+		depth = new int[n];
+		head = new boolean[n];
+
+		computeDepthFirstOrders();
+		computeWTO();
+	}
+
+	private int getId(Location l, List<Location> nodeList, List<List<Integer>> succList) {
+		Integer id = ids.get(l);
+		if (id == null) {
+			id = nodeList.size();
+			ids.put(l, id);
+			nodeList.add(l);
+			succList.add(new ArrayList<Integer>(2));
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the roots for depth first searches: the entry point first, then all
+	 * other locations in their natural order (only used if not reachable from the entry).
+	 * Locations can only be compared to locations of the same type, so they are
+	 * ordered by type first.
+	 */
+	private int[] getRoots() {
+		Integer[] others = new Integer[nodes.length - 1];
+		for (int i = 1; i < nodes.length; i++)
+			others[i - 1] = i;
+		Arrays.sort(others, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				Location l1 = nodes[o1];
+				Location l2 = nodes[o2];
+				if (l1.getClass() != l2.getClass())
+					return l1.getClass().getName().compareTo(l2.getClass().getName());
+				return l1.compareTo(l2);
+			}
+		});
+		int[] roots = new int[nodes.length];
+		roots[0] = 0;
+		for (int i = 1; i < nodes.length; i++)
+			roots[i] = others[i - 1];
+		return roots;
+	}
+
+	private void computeDepthFirstOrders() {
+		int n = nodes.length;
+		Arrays.fill(dfn, -1);
+		int[] stack = new int[n];
+		int[] edgeIndex = new int[n];
+		int preorder = 0;
+		int postorder = 0;
+
+		for (int root : getRoots()) {
+			if (dfn[root] >= 0) continue;
+			int sp = 0;
+			stack[sp++] = root;
+			dfn[root] = preorder++;
+			edgeIndex[root] = 0;
+			while (sp > 0) {
+				int v = stack[sp - 1];
+				if (edgeIndex[v] < successors[v].length) {
+					int w = successors[v][edgeIndex[v]++];
+					if (dfn[w] < 0) {
+						dfn[w] = preorder++;
+						edgeIndex[w] = 0;
+						stack[sp++] = w;
+					}
+				} else {
+					sp--;
+					// Reverse postorder is the postorder counted from the end
+					rpo[v] = n - 1 - postorder++;
+				}
+			}
+		}
+	}
+
+	private void computeWTO() {
+		int n = nodes.length;
+		int[] subset = new int[n];
+		boolean[] inSubset = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			subset[i] = i;
+			inSubset[i] = true;
+		}
+		sortByDfn(subset);
+		nextPosition = 0;
+		maxDepth = 0;
+		decompose(subset, inSubset, 0);
+	}
+
+	private void sortByDfn(int[] array) {
+		Integer[] boxed = new Integer[array.length];
+		for (int i = 0; i < array.length; i++) boxed[i] = array[i];
+		Arrays.sort(boxed, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return dfn[o1] - dfn[o2];
+			}
+		});
+		for (int i = 0; i < array.length; i++) array[i] = boxed[i];
+	}
+
+	/**
+	 * Emits the WTO of the subgraph induced by the given locations, which are sorted by dfn.
+	 */
+	private void decompose(int[] subset, boolean[] inSubset, int currentDepth) {
+		for (int[] scc : stronglyConnectedComponents(subset, inSubset)) {
+			int h = scc[0];
+			boolean selfLoop = false;
+			for (int w : successors[h])
+				if (w == h) selfLoop = true;
+
+			if (scc.length == 1 && !selfLoop) {
+				depth[h] = currentDepth;
+				wtoPosition[h] = nextPosition++;
+				continue;
+			}
+
+			// A loop: emit head, then the decomposition of the remaining component
+			head[h] = true;
+			depth[h] = currentDepth + 1;
+			maxDepth = Math.max(maxDepth, currentDepth + 1);
+			wtoPosition[h] = nextPosition++;
+
+			for (int v : scc) inSubset[v] = false;
+			int[] body = Arrays.copyOfRange(scc, 1, scc.length);
+			for (int v : body) inSubset[v] = true;
+			decompose(body, inSubset, currentDepth + 1);
+			for (int v : body) inSubset[v] = false;
+			// Restore membership for the caller's subset
+			for (int v : scc) inSubset[v] = true;
+		}
+	}
+
+	/**
+	 * Iterative version of Tarjan's algorithm restricted to a subset of locations.
+	 * Returns the components in topological order, each sorted by dfn.
+	 */
+	private List<int[]> stronglyConnectedComponents(int[] subset, boolean[] inSubset) {
+		int n = nodes.length;
+		int[] index = new int[n];
+		int[] lowlink = new int[n];
+		boolean[] onStack = new boolean[n];
+		for (int v : subset) index[v] = -1;
+		int[] sccStack = new int[subset.length];
+		int sccSp = 0;
+		int[] callStack = new int[subset.length];
+		int[] edgeIndex = new int[n];
+		int nextIndex = 0;
+		LinkedList<int[]> components = new LinkedList<int[]>();
+
+		for (int root : subset) {
+			if (index[root] >= 0) continue;
+			int sp = 0;
+			callStack[sp++] = root;
+			index[root] = lowlink[root] = nextIndex++;
+			edgeIndex[root] = 0;
+			sccStack[sccSp++] = root;
+			onStack[root] = true;
+
+			while (sp > 0) {
+				int v = callStack[sp - 1];
+				if (edgeIndex[v] < successors[v].length) {
+					int w = successors[v][edgeIndex[v]++];
+					if (!inSubset[w]) continue;
+					if (index[w] < 0) {
+						index[w] = lowlink[w] = nextIndex++;
+						edgeIndex[w] = 0;
+						sccStack[sccSp++] = w;
+						onStack[w] = true;
+						callStack[sp++] = w;
+					} else if (onStack[w]) {
+						lowlink[v] = Math.min(lowlink[v], index[w]);
+					}
+				} else {
+					sp--;
+					if (sp > 0) {
+						int parent = callStack[sp - 1];
+						lowlink[parent] = Math.min(lowlink[parent], lowlink[v]);
+					}
+					if (lowlink[v] == index[v]) {
+						int start = sccSp;
+						do {
+							start--;
+							onStack[sccStack[start]] = false;
+						} while (sccStack[start] != v);
+						int[] component = Arrays.copyOfRange(sccStack, start, sccSp);
+						sccSp = start;
+						sortByDfn(component);
+						// Tarjan finds components in reverse topological order
+						components.addFirst(component);
+					}
+				}
+			}
+		}
+		return components;
+	}
+
+	private int id(Location l) {
+		Integer id = ids.get(l);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @return true if the location is part of the ordered graph.
+	 */
+	public boolean contains(Location l) {
+		return ids.containsKey(l);
+	}
+
+	/**
+	 * @return the number of locations in the ordered graph.
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * @return the position of the location in the reverse postorder, or -1 if unknown.
+	 */
+	public int getReversePostorderNumber(Location l) {
+		int id = id(l);
+		return id < 0 ? -1 : rpo[id];
+	}
+
+	/**
+	 * @return the position of the location in the weak topological order, or -1 if unknown.
+	 */
+	public int getWTOPosition(Location l) {
+		int id = id(l);
+		return id < 0 ? -1 : wtoPosition[id];
+	}
+
+	/**
+	 * @return the number of nested loops (WTO components) containing the location, or -1 if unknown.
+	 */
+	public int getLoopDepth(Location l) {
+		int id = id(l);
+		return id < 0 ? -1 : depth[id];
+	}
+
+	/**
+	 * @return the maximum loop depth of any location.
+	 */
+	public int getMaxLoopDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return true if the location is the head of a WTO component.
+	 */
+	public boolean isComponentHead(Location l) {
+		int id = id(l);
+		return id >= 0 && head[id];
+	}
+
+	/**
+	 * Returns the locations in weak topological order.
+	 */
+	public List<Location> getLocations() {
+		Location[] result = new Location[nodes.length];
+		for (int i = 0; i < nodes.length; i++)
+			result[wtoPosition[i]] = nodes[i];
+		return Arrays.asList(result);
+	}
+
+}
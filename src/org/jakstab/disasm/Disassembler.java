@@ -30,4 +30,13 @@ public interface Disassembler {
 	 * @return instr The disassembled instruction, null on failure.
 	 */
 	public Instruction decodeInstruction(long fp);
+
+	/**
+	 * Disassembles one instruction like {@link #decodeInstruction(long)}, but
+	 * does not report invalid code. Used for linear sweeps that may run into
+	 * data.
+	 * 
+	 * @return instr The disassembled instruction, null on failure.
+	 */
+	public Instruction decodeInstructionQuietly(long fp);
 }
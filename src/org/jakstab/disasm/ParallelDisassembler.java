@@ -0,0 +1,161 @@
+/*
+ * ParallelDisassembler.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.disasm;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.asm.Instruction;
+import org.jakstab.loader.ExecutableImage;
+import org.jakstab.loader.ImageSection;
+import org.jakstab.util.Logger;
+
+/**
+ * Decodes the executable sections of a module ahead of the analysis. The code is
+ * split into chunks that are disassembled linearly by the worker threads of a
+ * fork-join pool. Linear disassembly of a chunk may start in the middle of an
+ * instruction, but decoding is deterministic, so every instruction in the
+ * index is exactly what decoding on demand at its address would yield. 
+ * Addresses missing from the index can still be decoded on demand. Decoding
+ * errors are not reported, since the sweep may run into data.
+ * 
+ * Requires a reentrant disassembler.
+ */
+public class ParallelDisassembler {
+
+	private static final Logger logger = Logger.getLogger(ParallelDisassembler.class);
+
+	/** Number of bytes to be disassembled by a single task. */
+	private static final int CHUNK_SIZE = 4096;
+
+	private final ExecutableImage module;
+	private final Disassembler disassembler;
+	private final Map<AbsoluteAddress, Instruction> index;
+
+	public ParallelDisassembler(ExecutableImage module) {
+		this.module = module;
+		this.disassembler = module.getDisassembler();
+		this.index = new ConcurrentHashMap<AbsoluteAddress, Instruction>();
+	}
+
+	/**
+	 * Disassembles all code sections of the module using the given number 
+	 * of threads.
+	 * 
+	 * @return a thread safe map from virtual addresses to instructions
+	 */
+	public Map<AbsoluteAddress, Instruction> run(int threads) {
+		long startTime = System.currentTimeMillis();
+
+		List<long[]> ranges = getCodeRanges();
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (long[] range : ranges) {
+			for (long start = range[0]; start < range[1]; start += CHUNK_SIZE)
+				tasks.add(new ChunkTask(start, Math.min(start + CHUNK_SIZE, range[1])));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (RecursiveAction task : tasks)
+				pool.execute(task);
+			for (RecursiveAction task : tasks)
+				task.join();
+		} finally {
+			pool.shutdown();
+		}
+
+		logger.info("Pre-disassembled " + index.size() + " instructions in " + tasks.size() + 
+				" chunks using " + threads + " threads in " + (System.currentTimeMillis() - startTime) + "ms.");
+		return index;
+	}
+
+	/**
+	 * Collapses the code bytes of the module into ranges of consecutive 
+	 * virtual addresses, restricted to the file backed parts of executable
+	 * sections.
+	 */
+	private List<long[]> getCodeRanges() {
+		List<long[]> ranges = new ArrayList<long[]>();
+		Iterator<AbsoluteAddress> it;
+		try {
+			it = module.codeBytesIterator();
+		} catch (UnsupportedOperationException e) {
+			logger.warn("Cannot determine code sections for pre-disassembly: " + e.getMessage());
+			return ranges;
+		}
+		long[] current = null;
+		while (it.hasNext()) {
+			long a = it.next().getValue();
+			if (current != null && current[1] == a) {
+				current[1]++;
+			} else {
+				current = new long[] {a, a + 1};
+				ranges.add(current);
+			}
+		}
+
+		List<long[]> executableRanges = new ArrayList<long[]>();
+		for (ImageSection section : module.getSections()) {
+			if (!section.isExecutable() || section.getFilePointer() < 0)
+				continue;
+			for (long[] range : ranges) {
+				long start = Math.max(range[0], section.getStart());
+				long end = Math.min(range[1], section.getEnd());
+				if (start < end)
+					executableRanges.add(new long[] {start, end});
+			}
+		}
+		return executableRanges;
+	}
+
+	private class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -3577306962153926712L;
+
+		private final long start;
+		private final long end;
+
+		ChunkTask(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			long a = start;
+			while (a < end) {
+				AbsoluteAddress address = new AbsoluteAddress(a);
+				long fp = module.getFilePointer(address);
+				if (fp < 0 || (int)fp < 0)
+					return;
+				Instruction instr = disassembler.decodeInstructionQuietly(fp);
+				if (instr == null) {
+					a++;
+				} else {
+					index.put(address, instr);
+					a += instr.getSize();
+				}
+			}
+		}
+	}
+}
@@ -39,9 +39,9 @@ public class CallDecoder extends InstructionDecoder {
     public CallDecoder(String name, int addrMode1, int operandType1) {
         super(name, addrMode1, operandType1);
     }
-    protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-        Operand operand = getOperand1(bytesArray, operandSize, addrSize);
-        int size = byteIndex - instrStartIndex;
-        return factory.newCallInstruction(name, operand, size, prefixes);
+    protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+        Operand operand = getOperand1(ctx, bytesArray, operandSize, addrSize);
+        int size = ctx.byteIndex - ctx.instrStartIndex;
+        return factory.newCallInstruction(ctx.name, operand, size, ctx.prefixes);
     }
 }
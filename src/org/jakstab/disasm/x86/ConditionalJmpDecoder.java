@@ -42,9 +42,9 @@ public class ConditionalJmpDecoder extends InstructionDecoder {
       super(name, addrMode1, operandType1);
    }
 
-   protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-      Operand addr = getOperand1(bytesArray, operandSize, addrSize);
+   protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+      Operand addr = getOperand1(ctx, bytesArray, operandSize, addrSize);
       assert(addr instanceof X86PCRelativeAddress) : "Address should be PC Relative!";
-      return factory.newCondJmpInstruction(name, (X86PCRelativeAddress)addr, byteIndex-instrStartIndex, prefixes);
+      return factory.newCondJmpInstruction(ctx.name, (X86PCRelativeAddress)addr, ctx.byteIndex-ctx.instrStartIndex, ctx.prefixes);
    }
 }
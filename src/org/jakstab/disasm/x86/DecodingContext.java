@@ -0,0 +1,43 @@
+/*
+ * DecodingContext.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.disasm.x86;
+
+/**
+ * The working state of decoding a single instruction. A new context is
+ * created for every call to {@link X86Disassembler#decodeInstruction(long)},
+ * so the shared decoder tables do not hold any per-instruction state and
+ * instructions can be decoded concurrently.
+ */
+final class DecodingContext {
+
+	/** The index of the next byte to be read. */
+	int byteIndex;
+	/** The index of the first byte of the instruction, including prefixes. */
+	final int instrStartIndex;
+	int prefixes;
+	String name;
+
+	// ModR/M byte fields
+	int mod;
+	int regOrOpcode;
+	int rm;
+
+	DecodingContext(int instrStartIndex) {
+		this.instrStartIndex = instrStartIndex;
+		this.byteIndex = instrStartIndex;
+	}
+}
@@ -48,11 +48,11 @@ public class FPArithmeticDecoder extends FPInstructionDecoder {
       this.rtlOperation = rtlOperation;
    }
 
-   protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-      Operand op1 = getOperand1(bytesArray, operandSize, addrSize);
-      Operand op2 = getOperand2(bytesArray, operandSize, addrSize);
-      int size = byteIndex - instrStartIndex;
-      return factory.newFPArithmeticInstruction(name, rtlOperation, op1, op2, size, prefixes);
+   protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+      Operand op1 = getOperand1(ctx, bytesArray, operandSize, addrSize);
+      Operand op2 = getOperand2(ctx, bytesArray, operandSize, addrSize);
+      int size = ctx.byteIndex - ctx.instrStartIndex;
+      return factory.newFPArithmeticInstruction(ctx.name, rtlOperation, op1, op2, size, ctx.prefixes);
    }
 }
 
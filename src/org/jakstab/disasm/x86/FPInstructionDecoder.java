@@ -52,17 +52,17 @@ public class FPInstructionDecoder extends InstructionDecoder {
 		super(name, addrMode1, operandType1, addrMode2, operandType2);
 	}
 
-	protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-		Operand op1 = getOperand1(bytesArray, operandSize, addrSize);
+	protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+		Operand op1 = getOperand1(ctx, bytesArray, operandSize, addrSize);
 
-		if (byteIndex <= instrStartIndex + 1) {
-			logger.warn("Adjusting instruction size of float instruction " + name);
-			byteIndex = instrStartIndex + 2;
+		if (ctx.byteIndex <= ctx.instrStartIndex + 1) {
+			logger.warn("Adjusting instruction size of float instruction " + ctx.name);
+			ctx.byteIndex = ctx.instrStartIndex + 2;
 		}
 
 
-		int size = byteIndex - instrStartIndex;
-		return factory.newFPInstruction(name, op1, size, prefixes);
+		int size = ctx.byteIndex - ctx.instrStartIndex;
+		return factory.newFPInstruction(ctx.name, op1, size, ctx.prefixes);
 	}
 }
 
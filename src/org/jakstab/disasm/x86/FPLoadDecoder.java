@@ -40,9 +40,9 @@ class FPLoadDecoder extends FPInstructionDecoder {
       super(name, addrMode1, operandType1);
    }
 
-   protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-      Operand op = getOperand1(bytesArray, operandSize, addrSize);
-      int size = byteIndex - instrStartIndex;
-      return factory.newFPLoadInstruction(name, op, size, prefixes);
+   protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+      Operand op = getOperand1(ctx, bytesArray, operandSize, addrSize);
+      int size = ctx.byteIndex - ctx.instrStartIndex;
+      return factory.newFPLoadInstruction(ctx.name, op, size, ctx.prefixes);
    }
 }
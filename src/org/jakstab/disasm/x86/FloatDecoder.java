@@ -230,12 +230,8 @@ public class FloatDecoder extends FPInstructionDecoder {
 		}
 	};
 
-	public Instruction decode(BinaryInputBuffer bytesArray, int index, int instrStartIndex, int segmentOverride, int prefixes, X86InstructionFactory factory) {
-		this.byteIndex = index;
-		this.instrStartIndex = instrStartIndex;
-		this.prefixes = prefixes;
-
-		int ModRM = readByte(bytesArray, byteIndex);
+	public Instruction decode(DecodingContext ctx, BinaryInputBuffer bytesArray, int segmentOverride, X86InstructionFactory factory) {
+		int ModRM = readByte(bytesArray, ctx.byteIndex);
 		int reg = (ModRM >> 3) & 7;
 		// int regOrOpcode = (ModRM >> 3) & 7;
 		// int rm = ModRM & 7;
@@ -243,10 +239,10 @@ public class FloatDecoder extends FPInstructionDecoder {
 		int startIndexWithoutPrefix;
 		
 		// JK: FWAIT was broken
-		if ((prefixes & PREFIX_FWAIT) != 0)
-			startIndexWithoutPrefix = instrStartIndex + 1;
+		if ((ctx.prefixes & PREFIX_FWAIT) != 0)
+			startIndexWithoutPrefix = ctx.instrStartIndex + 1;
 		else
-			startIndexWithoutPrefix = instrStartIndex;
+			startIndexWithoutPrefix = ctx.instrStartIndex;
 		
 		int floatOpcode = InstructionDecoder.readByte(bytesArray, startIndexWithoutPrefix);
 
@@ -261,8 +257,7 @@ public class FloatDecoder extends FPInstructionDecoder {
 
 		Instruction instr = null;
 		if(instrDecoder != null) {
-			instr = instrDecoder.decode(bytesArray, byteIndex, instrStartIndex, segmentOverride, prefixes, factory);
-			byteIndex = instrDecoder.getCurrentIndex();
+			instr = instrDecoder.decode(ctx, bytesArray, segmentOverride, factory);
 		}
 
 		return instr;
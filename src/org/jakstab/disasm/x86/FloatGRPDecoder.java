@@ -152,12 +152,8 @@ public class FloatGRPDecoder extends FPInstructionDecoder {
 		this.number = number;
 	}
 
-	public Instruction decode(BinaryInputBuffer bytesArray, int index, int instrStartIndex, int segmentOverride, int prefixes, X86InstructionFactory factory) {
-		this.byteIndex = index;
-		this.instrStartIndex = instrStartIndex;
-		this.prefixes = prefixes;
-
-		int ModRM = readByte(bytesArray, byteIndex);
+	public Instruction decode(DecodingContext ctx, BinaryInputBuffer bytesArray, int segmentOverride, X86InstructionFactory factory) {
+		int ModRM = readByte(bytesArray, ctx.byteIndex);
 		int rm = ModRM & 7;
 
 		FPInstructionDecoder instrDecoder = null;
@@ -165,8 +161,7 @@ public class FloatGRPDecoder extends FPInstructionDecoder {
 
 		Instruction instr = null;
 		if(instrDecoder != null) {
-			instr = instrDecoder.decode(bytesArray, byteIndex, instrStartIndex, segmentOverride, prefixes, factory);
-			byteIndex = instrDecoder.getCurrentIndex();
+			instr = instrDecoder.decode(ctx, bytesArray, segmentOverride, factory);
 		}
 		return instr;
 	}
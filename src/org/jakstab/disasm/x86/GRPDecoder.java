@@ -309,19 +309,14 @@ public class GRPDecoder extends InstructionDecoder {
       this.number = number;
    }
 
-   public Instruction decode(BinaryInputBuffer bytesArray, int index, int instrStartIndex, int segmentOverride, int prefixes, X86InstructionFactory factory) {
-      this.byteIndex = index;
-      this.instrStartIndex = instrStartIndex;
-      this.prefixes = prefixes;
-
-      int ModRM = readByte(bytesArray, byteIndex);
+   public Instruction decode(DecodingContext ctx, BinaryInputBuffer bytesArray, int segmentOverride, X86InstructionFactory factory) {
+      int ModRM = readByte(bytesArray, ctx.byteIndex);
       int reg = (ModRM >> 3) & 7;
 
       InstructionDecoder instrDecoder = grpTable[number][reg];
       Instruction instr = null;
       if(instrDecoder != null) {
-         instr = instrDecoder.decode(bytesArray, byteIndex, instrStartIndex, segmentOverride, prefixes, factory);
-         byteIndex = instrDecoder.getCurrentIndex();
+         instr = instrDecoder.decode(ctx, bytesArray, segmentOverride, factory);
       }
       return instr;
    }
@@ -80,15 +80,6 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 	protected final int operandType2;
 	protected final int operandType3;
 
-	// Working variables, change with every decoded instruction
-	private int mod;
-	private int regOrOpcode;
-	private int rm;
-	protected int byteIndex;
-	protected int instrStartIndex;
-	protected String name;
-	protected int prefixes;
-
 	public InstructionDecoder(String name) {
 		this(name, INVALID_ADDRMODE, INVALID_OPERANDTYPE);
 	}
@@ -112,10 +103,19 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 		this.addrMode3 = addrMode3;
 	}
 
-	public Instruction decode(BinaryInputBuffer bytesArray, int index, int instrStartIndex, int segmentOverride, int prefixes, X86InstructionFactory factory) {
-		this.byteIndex = index;
-		this.instrStartIndex = instrStartIndex;
-		this.prefixes = prefixes;
+	/**
+	 * Decodes the instruction at the current index of the given context. All
+	 * state of the decoding process is kept in the context, so decoders can be
+	 * shared between threads.
+	 * 
+	 * @param ctx the decoding context, holding the current index and prefixes.
+	 * @param bytesArray The array of bytes representing the binary.
+	 * @param segmentOverride 1 for 32bit mode.
+	 * @param factory The instruction factory to use.
+	 * @return A new object representing the decoded instruction.
+	 */
+	public Instruction decode(DecodingContext ctx, BinaryInputBuffer bytesArray, int segmentOverride, X86InstructionFactory factory) {
+		int prefixes = ctx.prefixes;
 		boolean operandSize; //operand-size prefix
 		boolean addrSize;    //address-size prefix
 		// segmentoverride is set to 1 in X86Disassembler. Correct for 32bit mode.
@@ -127,23 +127,19 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 			addrSize = true;
 		else
 			addrSize = false;
-		this.name = getCorrectOpcodeName(nameTemplate, prefixes, operandSize, addrSize);
+		ctx.name = getCorrectOpcodeName(nameTemplate, prefixes, operandSize, addrSize);
 
 		//Fetch the mod/reg/rm byte only if it is present.
 		if( isModRMPresent(addrMode1) || isModRMPresent(addrMode2) || isModRMPresent(addrMode3) ) {
 
-			int ModRM = readByte(bytesArray, byteIndex);
-			byteIndex++;
-			mod = (ModRM >> 6) & 3;
-			regOrOpcode = (ModRM >> 3) & 7;
-			rm = ModRM & 7;
+			int ModRM = readByte(bytesArray, ctx.byteIndex);
+			ctx.byteIndex++;
+			ctx.mod = (ModRM >> 6) & 3;
+			ctx.regOrOpcode = (ModRM >> 3) & 7;
+			ctx.rm = ModRM & 7;
 		}
 		// Call instruction specific code
-		return decodeInstruction(bytesArray, operandSize, addrSize, factory);
-	}
-
-	public int getCurrentIndex() {
-		return byteIndex;
+		return decodeInstruction(ctx, bytesArray, operandSize, addrSize, factory);
 	}
 
 	/**
@@ -151,37 +147,38 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 	 * InstructionDecoder. This is the fallback implementation for X86Instruction
 	 * Objects. Note that 8bit operands are encoded implicitly in the opcode.
 	 * 
+	 * @param ctx The decoding context.
 	 * @param bytesArray The array of bytes representing the binary.
 	 * @param operandSize True for 32bit, false for 16bit operands.
 	 * @param addrSize True for 32bit addresses, false for 16bit.
 	 * @param factory The instruction factory to use.
-	 * @return A new object representing the instruction at the current byteIndex.
+	 * @return A new object representing the instruction at the current index of the context.
 	 */
-	protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-		Operand op1 = getOperand1(bytesArray, operandSize, addrSize);
-		Operand op2 = getOperand2(bytesArray, operandSize, addrSize);
-		Operand op3 = getOperand3(bytesArray, operandSize, addrSize);
-		int size = byteIndex - instrStartIndex;
-		return factory.newGeneralInstruction(name, op1, op2, op3, size, prefixes);
+	protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+		Operand op1 = getOperand1(ctx, bytesArray, operandSize, addrSize);
+		Operand op2 = getOperand2(ctx, bytesArray, operandSize, addrSize);
+		Operand op3 = getOperand3(ctx, bytesArray, operandSize, addrSize);
+		int size = ctx.byteIndex - ctx.instrStartIndex;
+		return factory.newGeneralInstruction(ctx.name, op1, op2, op3, size, ctx.prefixes);
 	}
 
-	protected Operand getOperand1(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize) {
+	protected Operand getOperand1(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize) {
 		if( (addrMode1 != INVALID_ADDRMODE) && (operandType1 != INVALID_OPERANDTYPE) )
-			return getOperand(bytesArray, addrMode1, operandType1, operandSize, addrSize);
+			return getOperand(ctx, bytesArray, addrMode1, operandType1, operandSize, addrSize);
 		else
 			return null;
 	}
 
-	protected Operand getOperand2(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize) {
+	protected Operand getOperand2(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize) {
 		if( (addrMode2 != INVALID_ADDRMODE) && (operandType2 != INVALID_OPERANDTYPE) )
-			return getOperand(bytesArray, addrMode2, operandType2, operandSize, addrSize);
+			return getOperand(ctx, bytesArray, addrMode2, operandType2, operandSize, addrSize);
 		else
 			return null;
 	}
 
-	protected Operand getOperand3(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize) {
+	protected Operand getOperand3(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize) {
 		if( (addrMode3 != INVALID_ADDRMODE) && (operandType3 != INVALID_OPERANDTYPE) )
-			return getOperand(bytesArray, addrMode3, operandType3, operandSize, addrSize);
+			return getOperand(ctx, bytesArray, addrMode3, operandType3, operandSize, addrSize);
 		else
 			return null;
 	}
@@ -264,6 +261,7 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 	/**
 	 * Get correct Operand object from address type and operand type
 	 * 
+	 * @param ctx the decoding context
 	 * @param bytesArray the code array
 	 * @param addrMode addressing mode constant
 	 * @param operandType operand type constant
@@ -271,49 +269,49 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 	 * @param addrSize true for 32bit, false for 16bit addresses
 	 * @return a new operand object
 	 */
-	private Operand getOperand(BinaryInputBuffer bytesArray, int addrMode, int operandType, boolean operandSize, boolean addrSize) {
+	private Operand getOperand(DecodingContext ctx, BinaryInputBuffer bytesArray, int addrMode, int operandType, boolean operandSize, boolean addrSize) {
 		Operand op = null;
-		X86SegmentRegister segReg = getSegmentRegisterFromPrefix(prefixes);
+		X86SegmentRegister segReg = getSegmentRegisterFromPrefix(ctx.prefixes);
 		switch(addrMode) {
 		case ADDR_E:
 		case ADDR_W:   //SSE: ModR/M byte specifies either 128 bit XMM register or memory
 		case ADDR_Q:   //SSE: ModR/M byte specifies either 128 bit MMX register or memory
 			//X86SegmentRegister segReg = getSegmentRegisterFromPrefix(prefixes);
 
-			if (mod == 3) {    //Register operand, no SIB follows
+			if (ctx.mod == 3) {    //Register operand, no SIB follows
 				if (addrMode == ADDR_E) {
 					switch (operandType) {
 					case b_mode:
-						op = X86Registers.getRegister8(rm);
+						op = X86Registers.getRegister8(ctx.rm);
 						break;
 					case w_mode:
-						op = X86Registers.getRegister16(rm);
+						op = X86Registers.getRegister16(ctx.rm);
 						break;
 					case v_mode:
 						if (operandSize == true) //Operand size prefix is present
-							op = X86Registers.getRegister32(rm);
+							op = X86Registers.getRegister32(ctx.rm);
 						else
-							op = X86Registers.getRegister16(rm);
+							op = X86Registers.getRegister16(ctx.rm);
 						break;
 					case p_mode:
 						X86Register reg;
 						if (operandSize == true) //Operand size prefix is present
-							reg = X86Registers.getRegister32(rm);
+							reg = X86Registers.getRegister32(ctx.rm);
 						else
-							reg = X86Registers.getRegister16(rm);
+							reg = X86Registers.getRegister16(ctx.rm);
 
 						op = new X86MemoryOperand(getDataType(operandType, operandSize), segReg, reg, null, 0);
 						break;
 					case d_mode:
-						op = X86Registers.getRegister32(rm);
+						op = X86Registers.getRegister32(ctx.rm);
 						break;
 					default:
 						break;
 					}
 				} else if (addrMode == ADDR_W) {
-					op = X86XMMRegisters.getRegister(rm);
+					op = X86XMMRegisters.getRegister(ctx.rm);
 				} else if (addrMode == ADDR_Q) {
-					op = X86MMXRegisters.getRegister(rm);
+					op = X86MMXRegisters.getRegister(ctx.rm);
 				}
 
 			} else {   //mod != 3
@@ -325,21 +323,21 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 				int index = 0;
 				int base = 0;
 				long disp = 0;
-				if(rm == 4) {
-					int sib = readByte(bytesArray, byteIndex);
-					byteIndex++;
+				if(ctx.rm == 4) {
+					int sib = readByte(bytesArray, ctx.byteIndex);
+					ctx.byteIndex++;
 					scale = (sib >> 6) & 3;
 					index = (sib >> 3) & 7;
 					base = sib & 7;
 				}
 
-				switch (mod) {
+				switch (ctx.mod) {
 				case 0:
-					switch(rm) {
+					switch(ctx.rm) {
 					case 4:
 						if(base == 5) {
-							disp = readInt32(bytesArray, byteIndex);
-							byteIndex += 4;
+							disp = readInt32(bytesArray, ctx.byteIndex);
+							ctx.byteIndex += 4;
 							if (index != 4) {
 								op = new X86MemoryOperand(getDataType(operandType, operandSize), segReg, null, X86Registers.getRegister32(index), disp, scale);
 							} else {
@@ -355,23 +353,23 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 						}
 						break;
 					case 5:
-						disp = readInt32(bytesArray, byteIndex);
-						byteIndex += 4;
+						disp = readInt32(bytesArray, ctx.byteIndex);
+						ctx.byteIndex += 4;
 						//Create an Address object only with displacement
 						op = new X86MemoryOperand(getDataType(operandType, operandSize), segReg, null, null, disp);
 						break;
 					default:
-						base = rm;
+						base = ctx.rm;
 					//Create an Address object only with base
 					op = new X86MemoryOperand(getDataType(operandType, operandSize), segReg, X86Registers.getRegister32(base), null, 0);
 					break;
 					}
 					break;
 				case 1:
-					disp = (byte)readByte(bytesArray, byteIndex);
-					byteIndex++;
-					if (rm !=4) {
-						base = rm;
+					disp = (byte)readByte(bytesArray, ctx.byteIndex);
+					ctx.byteIndex++;
+					if (ctx.rm !=4) {
+						base = ctx.rm;
 						//Address with base and disp only
 						op = new X86MemoryOperand(getDataType(operandType, operandSize), segReg, X86Registers.getRegister32(base), null, disp);
 					} else {
@@ -383,10 +381,10 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 					}
 					break;
 				case 2:
-					disp = readInt32(bytesArray, byteIndex);
-					byteIndex += 4;
-					if (rm !=4) {
-						base = rm;
+					disp = readInt32(bytesArray, ctx.byteIndex);
+					ctx.byteIndex += 4;
+					if (ctx.rm !=4) {
+						base = ctx.rm;
 						//Address with base and disp
 						op = new X86MemoryOperand(getDataType(operandType, operandSize), segReg, X86Registers.getRegister32(base), null, disp);
 					} else if (index != 4) {
@@ -402,20 +400,20 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 		case ADDR_I:
 			switch (operandType) {
 			case b_mode:
-				op = new Immediate(new Byte((byte)readByte(bytesArray, byteIndex)), DataType.UINT8);
-				byteIndex++;
+				op = new Immediate(new Byte((byte)readByte(bytesArray, ctx.byteIndex)), DataType.UINT8);
+				ctx.byteIndex++;
 				break;
 			case w_mode:
-				op = new Immediate(new Short((short)readInt16(bytesArray, byteIndex)), DataType.UINT16);
-				byteIndex += 2;
+				op = new Immediate(new Short((short)readInt16(bytesArray, ctx.byteIndex)), DataType.UINT16);
+				ctx.byteIndex += 2;
 				break;
 			case v_mode:
 				if (operandSize == true) { //Operand size prefix is present
-					op = new Immediate(new Integer(readInt32(bytesArray, byteIndex)), DataType.UINT32);
-					byteIndex += 4;
+					op = new Immediate(new Integer(readInt32(bytesArray, ctx.byteIndex)), DataType.UINT32);
+					ctx.byteIndex += 4;
 				} else {
-					op = new Immediate(new Short((short)readInt16(bytesArray, byteIndex)), DataType.UINT16);
-					byteIndex += 2;
+					op = new Immediate(new Short((short)readInt16(bytesArray, ctx.byteIndex)), DataType.UINT16);
+					ctx.byteIndex += 2;
 				}
 				break;
 			default:
@@ -475,25 +473,25 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 			switch (operandType) {
 			case p_mode:
 				if (addrSize == true) {
-					offset = readInt32(bytesArray, byteIndex);
-					byteIndex += 4;
-					segment = readInt16(bytesArray, byteIndex);
-					byteIndex += 2;
+					offset = readInt32(bytesArray, ctx.byteIndex);
+					ctx.byteIndex += 4;
+					segment = readInt16(bytesArray, ctx.byteIndex);
+					ctx.byteIndex += 2;
 				} else {
-					offset = readInt16(bytesArray, byteIndex);
-					byteIndex += 2;
-					segment = readInt16(bytesArray, byteIndex);
-					byteIndex += 2;
+					offset = readInt16(bytesArray, ctx.byteIndex);
+					ctx.byteIndex += 2;
+					segment = readInt16(bytesArray, ctx.byteIndex);
+					ctx.byteIndex += 2;
 				}
 				op = new X86AbsoluteAddress(segment, offset); //with offset
 				break;
 			case v_mode:
 				if (addrSize == true) {
-					offset = readInt32(bytesArray, byteIndex);
-					byteIndex += 4;
+					offset = readInt32(bytesArray, ctx.byteIndex);
+					ctx.byteIndex += 4;
 				} else {
-					offset = readInt16(bytesArray, byteIndex);
-					byteIndex += 2;
+					offset = readInt16(bytesArray, ctx.byteIndex);
+					ctx.byteIndex += 2;
 				}
 				op = new X86AbsoluteAddress(offset); //with offset
 				break;
@@ -504,36 +502,36 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 		case ADDR_G:
 			switch (operandType) {
 			case b_mode:
-				op = X86Registers.getRegister8(regOrOpcode);
+				op = X86Registers.getRegister8(ctx.regOrOpcode);
 				break;
 			case w_mode:
-				op = X86Registers.getRegister16(regOrOpcode);
+				op = X86Registers.getRegister16(ctx.regOrOpcode);
 				break;
 			case d_mode:
-				op = X86Registers.getRegister32(regOrOpcode);
+				op = X86Registers.getRegister32(ctx.regOrOpcode);
 				break;
 			case v_mode:
 				if (operandSize == true)
-					op = X86Registers.getRegister32(regOrOpcode);
+					op = X86Registers.getRegister32(ctx.regOrOpcode);
 				else
-					op = X86Registers.getRegister16(regOrOpcode);
+					op = X86Registers.getRegister16(ctx.regOrOpcode);
 				break;
 			default:
 				break;
 			}
 			break;
 		case ADDR_SEG:
-			op = X86SegmentRegisters.getSegmentRegister(regOrOpcode);
+			op = X86SegmentRegisters.getSegmentRegister(ctx.regOrOpcode);
 			break;
 		case ADDR_OFF:
 			int off = 0;
 			if (addrSize == true) {
-				off = readInt32(bytesArray, byteIndex);
-				byteIndex += 4;
+				off = readInt32(bytesArray, ctx.byteIndex);
+				ctx.byteIndex += 4;
 			}
 			else {
-				off = readInt16(bytesArray, byteIndex);
-				byteIndex += 2;
+				off = readInt16(bytesArray, ctx.byteIndex);
+				ctx.byteIndex += 2;
 			}
 			//op = new X86AbsoluteAddress((long)off);
 			// --JK: This is actually a memory operand with constant address used by MOV. 
@@ -545,17 +543,17 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 			//The effective address is Instruction pointer + relative offset
 			switch(operandType) {
 			case b_mode:
-				disp = (byte)readByte(bytesArray, byteIndex);
-				byteIndex++;
+				disp = (byte)readByte(bytesArray, ctx.byteIndex);
+				ctx.byteIndex++;
 				break;
 			case v_mode:
 				if (operandSize == true) {
-					disp = readInt32(bytesArray, byteIndex);
-					byteIndex += 4;
+					disp = readInt32(bytesArray, ctx.byteIndex);
+					ctx.byteIndex += 4;
 				}
 				else {
-					disp = readInt16(bytesArray, byteIndex);
-					byteIndex += 2;
+					disp = readInt16(bytesArray, ctx.byteIndex);
+					ctx.byteIndex += 2;
 				}
 				//disp = disp + (byteIndex-instrStartIndex);
 				break;
@@ -571,19 +569,19 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 		case ADDR_R:
 			switch (operandType) {
 			case b_mode:
-				op = X86Registers.getRegister8(mod);
+				op = X86Registers.getRegister8(ctx.mod);
 				break;
 			case w_mode:
-				op = X86Registers.getRegister16(mod);
+				op = X86Registers.getRegister16(ctx.mod);
 				break;
 			case d_mode:
-				op = X86Registers.getRegister32(mod);
+				op = X86Registers.getRegister32(ctx.mod);
 				break;
 			case v_mode:
 				if (operandSize == true)
-					op = X86Registers.getRegister32(mod);
+					op = X86Registers.getRegister32(ctx.mod);
 				else
-					op = X86Registers.getRegister16(mod);
+					op = X86Registers.getRegister16(ctx.mod);
 				break;
 			default:
 				break;
@@ -595,25 +593,25 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 				op = X86FloatRegisters.getRegister(0);
 				break;
 			case 1:
-				op = X86FloatRegisters.getRegister(rm);
+				op = X86FloatRegisters.getRegister(ctx.rm);
 				break;
 			}
 			break;
 
 			//SSE: reg field of ModR/M byte selects a 128-bit XMM register
 		case ADDR_V:    
-			op = X86XMMRegisters.getRegister(regOrOpcode);
+			op = X86XMMRegisters.getRegister(ctx.regOrOpcode);
 			break; 
 
 			//SSE: reg field of ModR/M byte selects a 64-bit MMX register
 		case ADDR_P:    
-			op = X86MMXRegisters.getRegister(regOrOpcode);
+			op = X86MMXRegisters.getRegister(ctx.regOrOpcode);
 			break;
 		case ADDR_C:
-			op = X86ControlRegisters.getRegister(regOrOpcode);
+			op = X86ControlRegisters.getRegister(ctx.regOrOpcode);
 			break;
 		case ADDR_RMR:
-			op = X86Registers.getRegister32(rm);
+			op = X86Registers.getRegister32(ctx.rm);
 			break;
 		case ADDR_D:
 			logger.error("Debug registers not supported!");
@@ -624,7 +622,7 @@ public class InstructionDecoder implements /* imports */ X86Opcodes {
 			break;
 		default:
 			logger.error("Error decoding operand: Unsupported addressing mode: " + addrMode 
-					+ "\n Register code: " + regOrOpcode);
+					+ "\n Register code: " + ctx.regOrOpcode);
 		}
 		if (op == null) throw new 
 			RuntimeException("Unable to decode instruction operand for addressing mode " + addrMode + ", operand type " + operandType + ", and operand size " + operandSize);
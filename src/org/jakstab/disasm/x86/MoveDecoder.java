@@ -40,10 +40,10 @@ public class MoveDecoder extends InstructionDecoder {
       super(name, addrMode1, operandType1, addrMode2, operandType2);
    }
 
-   protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-      Operand op1 = getOperand1(bytesArray, operandSize, addrSize);
-      Operand op2 = getOperand2(bytesArray, operandSize, addrSize);
-      int size = byteIndex - instrStartIndex;
-      return factory.newMoveInstruction(name, op1, op2, size, prefixes);
+   protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+      Operand op1 = getOperand1(ctx, bytesArray, operandSize, addrSize);
+      Operand op2 = getOperand2(ctx, bytesArray, operandSize, addrSize);
+      int size = ctx.byteIndex - ctx.instrStartIndex;
+      return factory.newMoveInstruction(ctx.name, op1, op2, size, ctx.prefixes);
    }
 }
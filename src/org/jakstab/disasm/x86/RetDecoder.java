@@ -44,10 +44,10 @@ public class RetDecoder extends InstructionDecoder {
    public RetDecoder(String name, int addrMode1, int operandType1) {
       super(name, addrMode1, operandType1);
    }
-   protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-      Operand op1 = getOperand1(bytesArray, operandSize, addrSize);
+   protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+      Operand op1 = getOperand1(ctx, bytesArray, operandSize, addrSize);
       assert(op1 == null || op1 instanceof Immediate) : "Operand should be immediate Value!";
-      int size = byteIndex - instrStartIndex;
-      return factory.newRetInstruction(name, (Immediate)op1, size, prefixes);
+      int size = ctx.byteIndex - ctx.instrStartIndex;
+      return factory.newRetInstruction(ctx.name, (Immediate)op1, size, ctx.prefixes);
    }
 }
@@ -49,11 +49,11 @@ public class SSEArithmeticDecoder extends SSEInstructionDecoder {
       this.rtlOperation = rtlOperation;
    }
 
-   protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-      Operand op1 = getOperand1(bytesArray, operandSize, addrSize);
-      Operand op2 = getOperand2(bytesArray, operandSize, addrSize);
-      int size = byteIndex - instrStartIndex;
-      return factory.newArithmeticInstruction(name, rtlOperation, op1, op2, size, prefixes);
+   protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+      Operand op1 = getOperand1(ctx, bytesArray, operandSize, addrSize);
+      Operand op2 = getOperand2(ctx, bytesArray, operandSize, addrSize);
+      int size = ctx.byteIndex - ctx.instrStartIndex;
+      return factory.newArithmeticInstruction(ctx.name, rtlOperation, op1, op2, size, ctx.prefixes);
    }
 }
 
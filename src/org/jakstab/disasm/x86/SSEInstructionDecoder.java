@@ -52,12 +52,12 @@ public class SSEInstructionDecoder extends InstructionDecoder {
       super(name, addrMode1, operandType1, addrMode2, operandType2, addrMode3, operandType3);
    }
 
-   protected Instruction decodeInstruction(BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
-      Operand op1 = getOperand1(bytesArray, operandSize, addrSize);
-      Operand op2 = getOperand2(bytesArray, operandSize, addrSize);
-      Operand op3 = getOperand3(bytesArray, operandSize, addrSize);
-      int size = byteIndex - instrStartIndex;
-      return factory.newGeneralInstruction(name, op1, op2, op3, size, 0);
+   protected Instruction decodeInstruction(DecodingContext ctx, BinaryInputBuffer bytesArray, boolean operandSize, boolean addrSize, X86InstructionFactory factory) {
+      Operand op1 = getOperand1(ctx, bytesArray, operandSize, addrSize);
+      Operand op2 = getOperand2(ctx, bytesArray, operandSize, addrSize);
+      Operand op3 = getOperand3(ctx, bytesArray, operandSize, addrSize);
+      int size = ctx.byteIndex - ctx.instrStartIndex;
+      return factory.newGeneralInstruction(ctx.name, op1, op2, op3, size, 0);
    }
 }
 
@@ -48,7 +48,6 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 
 	protected final X86InstructionFactory factory;
 	protected final BinaryInputBuffer code;
-	private int byteIndex;
 
 	private X86Disassembler(BinaryInputBuffer code, X86InstructionFactory factory) {
 		this.code = code;
@@ -56,7 +55,9 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 	}
 
 	/**
-	 * Creates a new disassembler working on the given bytearray.
+	 * Creates a new disassembler working on the given bytearray. The 
+	 * disassembler is reentrant, i.e., it can be used from multiple threads
+	 * at the same time.
 	 * 
 	 * @param code Byte array of code to be disassembled. 
 	 */
@@ -66,29 +67,34 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 	
 	@Override
 	public final Instruction decodeInstruction(long index) {
+		return decodeInstruction(index, false);
+	}
+
+	@Override
+	public final Instruction decodeInstructionQuietly(long index) {
+		return decodeInstruction(index, true);
+	}
+
+	private Instruction decodeInstruction(long index, boolean quiet) {
 		Instruction instr = null;
 		InstructionDecoder instrDecoder = null;
-		byteIndex = (int)index; // For 64bit systems, this needs to be fixed
-		//int len = byteIndex;
-		int instrStartIndex = 0;
-
+		DecodingContext ctx = new DecodingContext((int)index); // For 64bit systems, this needs to be fixed
 		int prefixes = 0;
-		instrStartIndex = byteIndex;
 
 		try {
 			//check if there is any prefix
-			prefixes = getPrefixes();
+			prefixes = getPrefixes(ctx);
 
 			int segmentOverride = 1;  //get segment override prefix
 
 			//Read opcode
-			int opcode = InstructionDecoder.readByte(code, byteIndex);
-			byteIndex++;
+			int opcode = InstructionDecoder.readByte(code, ctx.byteIndex);
+			ctx.byteIndex++;
 
 			// Check for escape opcode 0Fh
 			if (opcode == 0x0f) {
-				opcode = InstructionDecoder.readByte(code, byteIndex);
-				byteIndex++;
+				opcode = InstructionDecoder.readByte(code, ctx.byteIndex);
+				ctx.byteIndex++;
 
 				//SSE: SSE instructions have reserved use of 0xF2, 0xF3, 0x66 prefixes
 				if ((prefixes & PREFIX_REPNZ) != 0) {  
@@ -113,21 +119,22 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 			}
 			
 			if (instrDecoder == null) {
-				logger.error("Cannot find decoder for opcode " + Long.toHexString(opcode) + ".");
+				if (!quiet)
+					logger.error("Cannot find decoder for opcode " + Long.toHexString(opcode) + ".");
 				return null;
 			}
 
-			instr = instrDecoder.decode(code, byteIndex, instrStartIndex, 
-					segmentOverride, prefixes, factory);
+			ctx.prefixes = prefixes;
+			instr = instrDecoder.decode(ctx, code, segmentOverride, factory);
 			if (instr == null) {
-				logger.error("Decoder " + instrDecoder.getClass().toString() + " for opcode " + 
-						Long.toHexString(opcode)+ " returned null instruction!");
+				if (!quiet)
+					logger.error("Decoder " + instrDecoder.getClass().toString() + " for opcode " + 
+							Long.toHexString(opcode)+ " returned null instruction!");
 				return null;
 			}
-			//len = instrDecoder.getCurrentIndex();
-			//byteIndex = len;
-			byteIndex = instrDecoder.getCurrentIndex();
 		} catch (Exception exp) {
+			if (quiet)
+				return null;
 			logger.error("Error during disassembly:", exp);
 			if (logger.isInfoEnabled())
 				exp.printStackTrace();
@@ -136,13 +143,13 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 		return instr;
 	}
 	
-	private final int getPrefixes() {
+	private final int getPrefixes(DecodingContext ctx) {
 		
 		int prefixes = 0;
 		boolean isPrefix = true;
 
 		while (isPrefix) {
-			int prefixByte = InstructionDecoder.readByte(code, byteIndex);
+			int prefixByte = InstructionDecoder.readByte(code, ctx.byteIndex);
 
 			switch (prefixByte) {
 			case 0xf3:
@@ -191,7 +198,7 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 				isPrefix = false;
 			}
 			if(isPrefix)
-				byteIndex++;
+				ctx.byteIndex++;
 		}
 		return prefixes;
 	}
@@ -0,0 +1,147 @@
+/*
+ * AddressIndex.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.loader;
+
+import java.util.List;
+import java.util.ListIterator;
+
+import org.jakstab.util.IntervalMap;
+import org.jakstab.util.Logger;
+
+/**
+ * An immutable index from virtual addresses to the file-backed sections of 
+ * all loaded modules. Lookups are binary searches over sorted primitive 
+ * arrays, so their cost does not depend on the number of modules and sections.
+ * 
+ * The index agrees with {@link ExecutableImage#getFilePointer(org.jakstab.asm.AbsoluteAddress)}:
+ * an address is covered if some module maps it to a file pointer, and modules
+ * loaded first take precedence.
+ */
+public final class AddressIndex {
+
+	@SuppressWarnings("unused")
+	private static final Logger logger = Logger.getLogger(AddressIndex.class);
+
+	private final long[] starts;
+	private final long[] ends;
+	private final long[] filePointers;
+	private final ImageSection[] sections;
+
+	/**
+	 * Builds the index for the given modules.
+	 */
+	public AddressIndex(List<ExecutableImage> modules) {
+		IntervalMap<ImageSection> map = new IntervalMap<ImageSection>();
+		// Later puts overwrite earlier ones, so go backwards to let the first modules win
+		for (ListIterator<ExecutableImage> it = modules.listIterator(modules.size()); it.hasPrevious();) {
+			IntervalMap<ImageSection> moduleMap = getFileBackedRanges(it.previous());
+			for (int i = 0; i < moduleMap.size(); i++)
+				map.put(moduleMap.getStart(i), moduleMap.getEnd(i), moduleMap.getValue(i));
+		}
+
+		int size = map.size();
+		starts = new long[size];
+		ends = new long[size];
+		filePointers = new long[size];
+		sections = new ImageSection[size];
+		for (int i = 0; i < size; i++) {
+			ImageSection section = map.getValue(i);
+			starts[i] = map.getStart(i);
+			ends[i] = map.getEnd(i);
+			filePointers[i] = section.getFilePointer() + (starts[i] - section.getStart());
+			sections[i] = section;
+		}
+	}
+
+	/**
+	 * Resolves overlapping sections of a module and returns the ranges
+	 * that are backed by the file.
+	 */
+	private static IntervalMap<ImageSection> getFileBackedRanges(ExecutableImage module) {
+		List<ImageSection> moduleSections = module.getSections();
+		IntervalMap<ImageSection> moduleMap = new IntervalMap<ImageSection>();
+		for (ListIterator<ImageSection> it = moduleSections.listIterator(moduleSections.size()); it.hasPrevious();) {
+			ImageSection section = it.previous();
+			if (section.getStart() < section.getEnd())
+				moduleMap.put(section.getStart(), section.getEnd(), section);
+		}
+		// Sections not backed by the file still hide later sections of the same module,
+		// so drop them only after resolving overlaps
+		IntervalMap<ImageSection> fileBacked = new IntervalMap<ImageSection>();
+		for (int i = 0; i < moduleMap.size(); i++) {
+			if (moduleMap.getValue(i).getFilePointer() >= 0)
+				fileBacked.put(moduleMap.getStart(i), moduleMap.getEnd(i), moduleMap.getValue(i));
+		}
+		return fileBacked;
+	}
+
+	/**
+	 * Returns the index of the range containing the given address, or -1.
+	 */
+	private int find(long va) {
+		int lo = 0, hi = starts.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ends[mid] <= va) lo = mid + 1;
+			else if (starts[mid] > va) hi = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the section containing the given virtual address, or null if
+	 * the address is not backed by any module.
+	 */
+	public ImageSection getSection(long va) {
+		int i = find(va);
+		return i < 0 ? null : sections[i];
+	}
+
+	/**
+	 * Returns the module containing the given virtual address, or null if
+	 * the address is not backed by any module.
+	 */
+	public ExecutableImage getModule(long va) {
+		int i = find(va);
+		return i < 0 ? null : sections[i].getModule();
+	}
+
+	/**
+	 * Returns the file pointer of the given virtual address in its module, or
+	 * -1 if the address is not backed by any module.
+	 */
+	public long getFilePointer(long va) {
+		int i = find(va);
+		return i < 0 ? -1 : filePointers[i] + (va - starts[i]);
+	}
+
+	/**
+	 * Checks whether the given virtual address lies in a code section.
+	 */
+	public boolean isCodeArea(long va) {
+		int i = find(va);
+		return i >= 0 && sections[i].isCode();
+	}
+
+	/**
+	 * Returns the number of disjoint address ranges in the index.
+	 */
+	public int size() {
+		return starts.length;
+	}
+}
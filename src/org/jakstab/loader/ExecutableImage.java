@@ -20,6 +20,7 @@ package org.jakstab.loader;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.jakstab.asm.AbsoluteAddress;
@@ -27,6 +28,7 @@ import org.jakstab.asm.SymbolFinder;
 import org.jakstab.disasm.Disassembler;
 import org.jakstab.rtl.expressions.RTLMemoryLocation;
 import org.jakstab.rtl.expressions.RTLNumber;
+import org.jakstab.util.WritableInputBuffer;
 
 /**
  * {@code ExecutableImage} provides an interface to information about the logical structure
@@ -52,8 +54,8 @@ public interface ExecutableImage {
 	 * 
 	 * @param va a virtual address that lies within the values of {@code getMinAddress()} 
 	 * and {@code getMaxAddress()}.
-	 * @return A file pointer, which is an offset into the byte array returned by 
-	 * {@code getByteArray()}.
+	 * @return A file pointer, which is an offset into the buffer returned by 
+	 * {@code getInputBuffer()}.
 	 */
 	public long getFilePointer(AbsoluteAddress va);
 	
@@ -155,9 +157,18 @@ public interface ExecutableImage {
 	public Set<ExportedSymbol> getExportedSymbols();
 	
 	/**
-	 * Returns the file contents as an array of bytes.
+	 * Returns the file contents as a buffer that supports positional reads.
 	 *  
-	 * @return the byte array.
+	 * @return the input buffer.
 	 */
-	public byte[] getByteArray();
+	public WritableInputBuffer getInputBuffer();
+	
+	/**
+	 * Returns the sections of this image in the order in which they are searched
+	 * by {@code getFilePointer()}. Used for building the address index of the
+	 * program.
+	 * 
+	 * @return the list of sections.
+	 */
+	public List<ImageSection> getSections();
 }
\ No newline at end of file
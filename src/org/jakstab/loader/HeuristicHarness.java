@@ -29,6 +29,7 @@ import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLExpression;
 import org.jakstab.rtl.expressions.RTLVariable;
 import org.jakstab.rtl.statements.*;
+import org.jakstab.util.BinaryInputBuffer;
 import org.jakstab.util.Logger;
 
 public class HeuristicHarness implements Harness {
@@ -56,11 +57,11 @@ public class HeuristicHarness implements Harness {
 		Program program = Program.getProgram();
 		
 		if (program.getMainModule() instanceof AbstractCOFFModule) {
-		byte[] data = ((AbstractCOFFModule)program.getMainModule()).getByteArray();
-		for (int filePtr=0; filePtr<data.length; filePtr++) {
+		BinaryInputBuffer data = program.getMainModule().getInputBuffer();
+		for (int filePtr=0; filePtr<data.getSize(); filePtr++) {
 			patternLoop: for (int patternIdx = 0; patternIdx < procedureHeads.length; patternIdx++) {
 				for (int i = 0; i < procedureHeads[patternIdx].length; i++) {
-					if (data[filePtr + i] != procedureHeads[patternIdx][i])
+					if (data.getByteAt(filePtr + i) != procedureHeads[patternIdx][i])
 						continue patternLoop;
 				}
 				// Pattern matched!
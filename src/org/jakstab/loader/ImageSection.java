@@ -0,0 +1,101 @@
+/*
+ * ImageSection.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.loader;
+
+/**
+ * A contiguous range of virtual addresses of an executable image, as used by
+ * the image for mapping virtual addresses to file pointers. Sections may
+ * overlap, in which case the first section of an image takes precedence.
+ */
+public final class ImageSection {
+
+	private final ExecutableImage module;
+	private final int number;
+	private final long start;
+	private final long end;
+	private final long filePointer;
+	private final boolean code;
+	private final boolean executable;
+
+	/**
+	 * @param module the image containing the section
+	 * @param number the image specific number of the section
+	 * @param start the first virtual address of the section
+	 * @param end the virtual address after the last address of the section
+	 * @param filePointer the file pointer of the start address, or -1 if the
+	 * section is not backed by the file
+	 * @param code whether the section is a code area
+	 */
+	public ImageSection(ExecutableImage module, int number, long start, long end, long filePointer, boolean code) {
+		this(module, number, start, end, filePointer, code, code);
+	}
+
+	/**
+	 * @param module the image containing the section
+	 * @param number the image specific number of the section
+	 * @param start the first virtual address of the section
+	 * @param end the virtual address after the last address of the section
+	 * @param filePointer the file pointer of the start address, or -1 if the
+	 * section is not backed by the file
+	 * @param code whether the section is a code area
+	 * @param executable whether the section is marked as executable, which
+	 * can be stricter than being a code area
+	 */
+	public ImageSection(ExecutableImage module, int number, long start, long end, long filePointer, 
+			boolean code, boolean executable) {
+		this.module = module;
+		this.number = number;
+		this.start = start;
+		this.end = end;
+		this.filePointer = filePointer;
+		this.code = code;
+		this.executable = executable;
+	}
+
+	public ExecutableImage getModule() {
+		return module;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long getFilePointer() {
+		return filePointer;
+	}
+
+	public boolean isCode() {
+		return code;
+	}
+
+	public boolean isExecutable() {
+		return executable;
+	}
+
+	@Override
+	public String toString() {
+		return "Section " + number + " [0x" + Long.toHexString(start) + ", 0x" + Long.toHexString(end) + ")";
+	}
+}
@@ -17,8 +17,8 @@
  */
 package org.jakstab.loader;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jakstab.Program;
 import org.jakstab.asm.AbsoluteAddress;
@@ -46,8 +46,9 @@ public class LinuxStubLibrary implements StubProvider {
 
 	public LinuxStubLibrary(Architecture arch) {
 		this.arch = arch;
-		activeStubs = new HashMap<String, AbsoluteAddress>();
-		addressMap = new HashMap<AbsoluteAddress, String>();
+		// Stubs are created under the lock of the library, but symbols are looked up without it
+		activeStubs = new ConcurrentHashMap<String, AbsoluteAddress>();
+		addressMap = new ConcurrentHashMap<AbsoluteAddress, String>();
 		impId = 0;
 	}
 	
@@ -142,7 +143,7 @@ public class LinuxStubLibrary implements StubProvider {
 	}
 
 	@Override
-	public AbsoluteAddress resolveSymbol(String library, String symbol) {
+	public synchronized AbsoluteAddress resolveSymbol(String library, String symbol) {
 		if (library == null) return null;
 		AbsoluteAddress functionAddress;
 		if (activeStubs.containsKey(symbol))
@@ -20,6 +20,7 @@ package org.jakstab.loader;
 import java.io.*;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.jakstab.asm.AbsoluteAddress;
@@ -30,7 +31,8 @@ import org.jakstab.disasm.x86.X86Disassembler;
 import org.jakstab.rtl.expressions.RTLMemoryLocation;
 import org.jakstab.rtl.expressions.RTLNumber;
 import org.jakstab.ssl.Architecture;
-import org.jakstab.util.BinaryFileInputBuffer;
+import org.jakstab.util.WritableInputBuffer;
+import org.jakstab.util.MappedFileInputBuffer;
 import org.jakstab.util.Logger;
 
 /**
@@ -40,14 +42,13 @@ public class RawModule implements ExecutableImage {
 
 	private static final Logger logger = Logger.getLogger(RawModule.class);
 	
-	private final BinaryFileInputBuffer inBuf;
+	private final MappedFileInputBuffer inBuf;
 	private final AbsoluteAddress baseAddress;
 	private Disassembler disassembler;
 
 	public RawModule(File file, Architecture architecture) throws IOException {
 		logger.info("Loading image as raw binary...");
-		InputStream inStream = new FileInputStream(file);
-		inBuf = new BinaryFileInputBuffer(inStream);
+		inBuf = new MappedFileInputBuffer(file);
 		baseAddress = new AbsoluteAddress(0x0);
 	}
 
@@ -74,6 +75,12 @@ public class RawModule implements ExecutableImage {
 		return va.getValue() - baseAddress.getValue();
 	}
 
+	@Override
+	public List<ImageSection> getSections() {
+		// The whole address space above the base address maps to the file
+		return Collections.singletonList(new ImageSection(this, 0, baseAddress.getValue(), Long.MAX_VALUE, 0, true));
+	}
+
 	@Override
 	public AbsoluteAddress getMaxAddress() {
 		return new AbsoluteAddress(baseAddress.getValue() + inBuf.getSize());
@@ -121,8 +128,8 @@ public class RawModule implements ExecutableImage {
 	}
 
 	@Override
-	public byte[] getByteArray() {
-		return inBuf.getByteArray();
+	public WritableInputBuffer getInputBuffer() {
+		return inBuf;
 	}
 
 	@Override
@@ -40,7 +40,8 @@ public interface StubProvider {
 	/**
 	 * Resolves a reference to an external symbol to a concrete address. The 
 	 * StubProvider needs to ensure that the address is properly initialized
-	 * with statements or values.
+	 * with statements or values. Symbols can be resolved from several threads
+	 * at once, and each symbol is resolved to a single address.
 	 *  
 	 * @param library the referenced library
 	 * @param symbol the referenced symbol, a function or variable name
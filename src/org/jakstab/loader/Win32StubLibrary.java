@@ -19,9 +19,13 @@
 package org.jakstab.loader;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jakstab.Options;
 import org.jakstab.Program;
@@ -90,6 +94,22 @@ public class Win32StubLibrary implements StubProvider {
 
 	private static final String stubDir =  Options.jakstabHome + "/stubs/win32/";
 	private static final String jakstab_internal = "jakstab.dll";
+
+	/**
+	 * Returns all definition files stubs can be created from, sorted by name.
+	 */
+	public static List<File> getDefinitionFiles() {
+		File[] files = new File(stubDir).listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".def");
+			}
+		});
+		if (files == null)
+			return Collections.emptyList();
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
 	
 	static class Stub {
 		public int callingConvention;
@@ -123,9 +143,10 @@ public class Win32StubLibrary implements StubProvider {
 	
 	public Win32StubLibrary(Architecture arch) {
 		this.arch = arch;
-		activeStubs = new HashMap<String, Map<String, AbsoluteAddress>>();
+		// Stubs are created under the lock of the library, but symbols are looked up without it
+		activeStubs = new ConcurrentHashMap<String, Map<String, AbsoluteAddress>>();
 		stubMap = new HashMap<String, Map<String,Stub>>();
-		addressMap = new HashMap<AbsoluteAddress, String>();
+		addressMap = new ConcurrentHashMap<AbsoluteAddress, String>();
 		impId = 0;
 		arg0 = ExpressionFactory.createMemoryLocation(ExpressionFactory.createPlus(arch.stackPointer(), ExpressionFactory.createNumber(4, 32)), 32);
 		arg1 = ExpressionFactory.createMemoryLocation(ExpressionFactory.createPlus(arch.stackPointer(), ExpressionFactory.createNumber(8, 32)), 32);
@@ -361,7 +382,7 @@ public class Win32StubLibrary implements StubProvider {
 	}
 
 	@Override
-	public AbsoluteAddress resolveSymbol(String library, String symbol) {
+	public synchronized AbsoluteAddress resolveSymbol(String library, String symbol) {
 		AbsoluteAddress functionAddress;
 		if (library == null) {
 			// no library means this symbol comes from an obj.
@@ -390,7 +411,7 @@ public class Win32StubLibrary implements StubProvider {
 			functionAddress = createStubInstance(library, symbol);
 			
 			if (!activeStubs.containsKey(library))
-				activeStubs.put(library, new HashMap<String, AbsoluteAddress>());
+				activeStubs.put(library, new ConcurrentHashMap<String, AbsoluteAddress>());
 			activeStubs.get(library).put(symbol, functionAddress);
 			addressMap.put(functionAddress, symbol);
 			
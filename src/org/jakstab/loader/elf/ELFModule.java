@@ -18,7 +18,6 @@
 package org.jakstab.loader.elf;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
 
@@ -35,8 +34,9 @@ import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLMemoryLocation;
 import org.jakstab.rtl.expressions.RTLNumber;
 import org.jakstab.ssl.Architecture;
-import org.jakstab.util.BinaryFileInputBuffer;
+import org.jakstab.util.WritableInputBuffer;
 import org.jakstab.util.FastSet;
+import org.jakstab.util.MappedFileInputBuffer;
 import org.jakstab.util.Logger;
 
 /**
@@ -49,7 +49,7 @@ public class ELFModule implements ExecutableImage {
 	private static final Logger logger = Logger.getLogger(ELFModule.class);
 
 	private Elf elf;
-	private BinaryFileInputBuffer inBuf;
+	private MappedFileInputBuffer inBuf;
 	private Disassembler disassembler;
 	private long pltStart;
 	private long pltSize;
@@ -61,8 +61,7 @@ public class ELFModule implements ExecutableImage {
 
 	public ELFModule(File moduleFile, Architecture architecture) throws IOException, BinaryParseException {
 		
-		inBuf = new BinaryFileInputBuffer(new FileInputStream(moduleFile));
-		byte[] data = inBuf.getByteArray();
+		inBuf = new MappedFileInputBuffer(moduleFile);
 		elf = new Elf(moduleFile.getAbsolutePath());
 		elf.loadSymbols();
 		
@@ -128,7 +127,7 @@ public class ELFModule implements ExecutableImage {
 		pltIdx += instr.getSize();
 
 		while (true) {
-			if (data[pltIdx] == 0) {
+			if (inBuf.getByteAt(pltIdx) == 0) {
 				pltIdx++;
 			} else {
 				instr = disasm.decodeInstruction(pltIdx);
@@ -183,7 +182,7 @@ public class ELFModule implements ExecutableImage {
 			// And now pltIdx points to the next PLT entry
 
 			// Check if there are more plt entries.
-			if (data[pltIdx] == 0) {
+			if (inBuf.getByteAt(pltIdx) == 0) {
 				break;
 			}
 			instr = disasm.decodeInstruction(pltIdx);
@@ -278,6 +277,22 @@ public class ELFModule implements ExecutableImage {
 		//throw new RuntimeException("Virtual address " + va + " matches no section?"); 
 	}
 
+	@Override
+	public List<ImageSection> getSections() {
+		List<ImageSection> sections = new ArrayList<ImageSection>();
+		for (int i = 0; i < elf.sections.length; i++) {
+			Elf.Section section = elf.sections[i];
+			long start = section.sh_addr.getValue().longValue();
+			// getFilePointer includes the end address in the section
+			sections.add(new ImageSection(this, i, start, start + section.sh_size + 1, 
+					section.sh_type == Elf.Section.SHT_NOBITS ? -1 : section.sh_offset, 
+					section.sh_type == Elf.Section.SHT_PROGBITS, 
+					section.sh_type == Elf.Section.SHT_PROGBITS && 
+					(section.sh_flags & Elf.Section.SHF_EXECINTR) != 0));
+		}
+		return sections;
+	}
+
 	/*
 	 * @see org.jakstab.loader.ExecutableImage#getSymbolFinder()
 	 */
@@ -344,16 +359,10 @@ public class ELFModule implements ExecutableImage {
 		long fp = getFilePointer(va);
 		if (fp > 0) {
 			assert m.getBitWidth() % 8 == 0 : "Non-byte-aligned memory reference!";
-			long val = 0;
 			int bytes = m.getBitWidth()/8;
-			
-			inBuf.seek(fp);
-			// OR together the least significant bytes 
-			for (int i=0; i<bytes - 1; i++) {
-				val = val | ((long)inBuf.readBYTE()) << (i*8);
-			}
-			// do not mask the MSB with 0xFF, so we get sign extension for free
-			val = val | (((long)inBuf.readINT8()) << (bytes - 1) * 8);
+			if (fp + bytes > inBuf.getSize())
+				throw new IOException("Memory read outside of file bounds: " + m);
+			long val = inBuf.getValueAt((int)fp, bytes);
 			//logger.debug("Read constant value " + val + " from address " + m + " (file offset: " + Long.toHexString(fp) + ") in image.");
 			return ExpressionFactory.createNumber(val, m.getBitWidth());
 
@@ -429,8 +438,8 @@ public class ELFModule implements ExecutableImage {
 
 
 	@Override
-	public byte[] getByteArray() {
-		return inBuf.getByteArray();
+	public WritableInputBuffer getInputBuffer() {
+		return inBuf;
 	}
 
 	@Override
@@ -18,16 +18,19 @@
 package org.jakstab.loader.pe;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.jakstab.asm.AbsoluteAddress;
 import org.jakstab.disasm.Disassembler;
 import org.jakstab.disasm.x86.X86Disassembler;
 import org.jakstab.loader.ExecutableImage;
+import org.jakstab.loader.ImageSection;
 import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLMemoryLocation;
 import org.jakstab.rtl.expressions.RTLNumber;
-import org.jakstab.util.BinaryFileInputBuffer;
+import org.jakstab.util.WritableInputBuffer;
 import org.jakstab.util.Logger;
 
 /**
@@ -40,7 +43,7 @@ public abstract class AbstractCOFFModule implements ExecutableImage {
 
 	private static final Logger logger = Logger.getLogger(AbstractCOFFModule.class);
 	
-	protected BinaryFileInputBuffer inBuf;
+	protected WritableInputBuffer inBuf;
 	protected COFF_Header coff_header;
 	protected SectionHeader[] section_headers;
 	protected Disassembler disassembler;
@@ -110,6 +113,32 @@ public abstract class AbstractCOFFModule implements ExecutableImage {
 	 */
 	protected abstract int getSectionNumberByRVA(long rva);
 
+	/**
+	 * Returns the number of bytes of a section that are found by 
+	 * getSectionNumberByRVA, or 0 if the section is not loaded.
+	 * 
+	 * @param section the section number
+	 * @return the size of the section in memory
+	 */
+	protected abstract long getMappedSize(int section);
+
+	@Override
+	public List<ImageSection> getSections() {
+		List<ImageSection> sections = new ArrayList<ImageSection>();
+		for (int i=0; i < getNumberOfSections(); i++) {
+			long size = getMappedSize(i);
+			if (size <= 0) continue;
+			SectionHeader sh = getSectionHeader(i);
+			long start = getBaseAddress() + sh.VirtualAddress;
+			// getFilePointerFromRVA accepts offsets up to and including SizeOfRawData
+			long fileSize = Math.min(size, sh.SizeOfRawData + 1);
+			sections.add(new ImageSection(this, i, start, start + fileSize, sh.PointerToRawData, isCodeSection(i)));
+			if (fileSize < size)
+				sections.add(new ImageSection(this, i, start + fileSize, start + size, -1, isCodeSection(i)));
+		}
+		return sections;
+	}
+
 	/**
 	 * Returns the virtual address that corresponds to a given file pointer
 	 * 
@@ -163,15 +192,10 @@ public abstract class AbstractCOFFModule implements ExecutableImage {
 		long fp = getFilePointer(va);
 		if (getSectionNumber(fp) >= 0) {
 			assert m.getBitWidth() % 8 == 0 : "Non-byte-aligned memory reference!";
-			long val = 0;
 			int bytes = m.getBitWidth()/8;
-			// OR together the least significant bytes 
-			inBuf.seek(fp);
-			for (int i=0; i<bytes - 1; i++) {
-				val = val | ((long)inBuf.readBYTE()) << (i*8);
-			}
-			// do not mask the MSB with 0xFF, so we get sign extension for free
-			val = val | (((long)inBuf.readINT8()) << (bytes - 1) * 8);
+			if (fp + bytes > inBuf.getSize())
+				throw new IOException("Memory read outside of file bounds: " + m);
+			long val = inBuf.getValueAt((int)fp, bytes);
 			//logger.debug("Read constant value " + val + " from address " + m + " (file offset: " + Long.toHexString(fp) + ") in image.");
 			return ExpressionFactory.createNumber(val, m.getBitWidth());
 		}
@@ -179,8 +203,9 @@ public abstract class AbstractCOFFModule implements ExecutableImage {
 		return null;
 	}
 	
-	public byte[] getByteArray() {
-		return inBuf.getByteArray();
+	@Override
+	public WritableInputBuffer getInputBuffer() {
+		return inBuf;
 	}
 	
 	@Override
@@ -245,6 +245,14 @@ public class ObjectFile extends AbstractCOFFModule {
 		return -1;
 	}
 
+	@Override
+	protected final long getMappedSize(int section) {
+		SectionHeader sh = getSectionHeader(section);
+		if (sh.isDiscardable() || sh.isRemovedByLinker())
+			return 0;
+		return sh.VirtualSize;
+	}
+
 
 	@Override
 	public Set<UnresolvedSymbol> getUnresolvedSymbols() {
@@ -55,10 +55,9 @@ public class PEModule extends AbstractCOFFModule {
 	 */
 	public PEModule(File peFile, Architecture arch) throws IOException, BinaryParseException {
 
-		InputStream inStream = new FileInputStream(peFile);
 		fileName = peFile.getName();
 		
-		inBuf = new BinaryFileInputBuffer(inStream);
+		inBuf = new MappedFileInputBuffer(peFile);
 
 		msdos_stub = new MSDOS_Stub(inBuf);
 
@@ -253,6 +252,11 @@ public class PEModule extends AbstractCOFFModule {
 		return -1;
 	}
 
+	@Override
+	protected final long getMappedSize(int section) {
+		return getSectionHeader(section).SizeOfRawData;
+	}
+
 	@Override
 	public Set<UnresolvedSymbol> getUnresolvedSymbols() {
 		Set<UnresolvedSymbol> unresolvedSymbols = new FastSet<UnresolvedSymbol>();
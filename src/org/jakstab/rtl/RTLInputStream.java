@@ -0,0 +1,260 @@
+/*
+ * RTLInputStream.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.rtl;
+
+import static org.jakstab.rtl.RTLOutputStream.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.RTLLabel;
+import org.jakstab.cfa.StateTransformer;
+import org.jakstab.rtl.expressions.*;
+import org.jakstab.rtl.statements.*;
+
+/**
+ * A data input stream that reads RTL expressions, statements, and labels
+ * written by an {@link RTLOutputStream}. Expressions are recreated through
+ * the {@link ExpressionFactory}, so variables are shared with the rest of
+ * the program.
+ */
+public class RTLInputStream extends DataInputStream {
+
+	private static final Operator[] operators = Operator.values();
+	private static final RTLGoto.Type[] gotoTypes = RTLGoto.Type.values();
+	private static final CFAEdge.Kind[] edgeKinds = CFAEdge.Kind.values();
+
+	private final List<RTLExpression> expressions;
+	private final List<RTLStatement> statements;
+
+	public RTLInputStream(InputStream in) {
+		super(in);
+		expressions = new ArrayList<RTLExpression>();
+		statements = new ArrayList<RTLStatement>();
+	}
+
+	/**
+	 * Reads a label, which may be null.
+	 */
+	public RTLLabel readLabel() throws IOException {
+		int index = readInt();
+		if (index < 0)
+			return null;
+		return new RTLLabel(new AbsoluteAddress(readLong()), index);
+	}
+
+	/**
+	 * Reads an expression, which may be null.
+	 */
+	public RTLExpression readExpression() throws IOException {
+		int tag = readByte();
+		RTLExpression e;
+		switch (tag) {
+		case NULL:
+			return null;
+		case REFERENCE:
+			int id = readInt();
+			if (id < 0 || id >= expressions.size())
+				throw new IOException("Invalid expression reference " + id);
+			return expressions.get(id);
+		case VARIABLE:
+			e = ExpressionFactory.createVariable(readUTF(), readInt());
+			break;
+		case NUMBER:
+			e = ExpressionFactory.createNumber(readLong(), readInt());
+			break;
+		case NONDET:
+			e = ExpressionFactory.nondet(readInt());
+			break;
+		case MEMORY_LOCATION: {
+			int memoryState = readInt();
+			RTLExpression segment = readExpression();
+			RTLExpression address = readExpression();
+			e = ExpressionFactory.createMemoryLocation(memoryState, segment, address, readInt());
+			break;
+		}
+		case OPERATION: {
+			int op = readByte();
+			if (op < 0 || op >= operators.length)
+				throw new IOException("Invalid operator " + op);
+			e = ExpressionFactory.createOperation(operators[op], readExpressions());
+			break;
+		}
+		case SPECIAL_EXPRESSION: {
+			String op = readUTF();
+			e = ExpressionFactory.createSpecialExpression(op, readExpressions());
+			break;
+		}
+		case BIT_RANGE: {
+			RTLExpression operand = readExpression();
+			RTLExpression firstBit = readExpression();
+			e = ExpressionFactory.createBitRange(operand, firstBit, readExpression());
+			break;
+		}
+		case CONDITIONAL_EXPRESSION: {
+			RTLExpression condition = readExpression();
+			RTLExpression trueExpression = readExpression();
+			e = ExpressionFactory.createConditionalExpression(condition, trueExpression, readExpression());
+			break;
+		}
+		default:
+			throw new IOException("Invalid expression tag " + tag);
+		}
+		expressions.add(e);
+		return e;
+	}
+
+	private RTLExpression[] readExpressions() throws IOException {
+		RTLExpression[] operands = new RTLExpression[readInt()];
+		for (int i = 0; i < operands.length; i++)
+			operands[i] = readExpression();
+		return operands;
+	}
+
+	/**
+	 * Reads a statement including its label and next label. Returns null if
+	 * a null statement was written.
+	 */
+	public RTLStatement readStatement() throws IOException {
+		int tag = readByte();
+		RTLStatement s;
+		try {
+			switch (tag) {
+			case NULL:
+				return null;
+			case REFERENCE:
+				int id = readInt();
+				if (id < 0 || id >= statements.size())
+					throw new IOException("Invalid statement reference " + id);
+				return statements.get(id);
+			case VARIABLE_ASSIGNMENT: {
+				RTLVariable lhs = (RTLVariable)readExpression();
+				s = new RTLVariableAssignment(lhs.getBitWidth(), lhs, readExpression());
+				break;
+			}
+			case MEMORY_ASSIGNMENT: {
+				RTLMemoryLocation lhs = (RTLMemoryLocation)readExpression();
+				s = new RTLMemoryAssignment(lhs, readExpression());
+				break;
+			}
+			case GOTO: {
+				RTLExpression target = readExpression();
+				RTLExpression condition = readExpression();
+				s = new RTLGoto(target, condition, gotoTypes[readByte()]);
+				break;
+			}
+			case ASSUME: {
+				RTLExpression assumption = readExpression();
+				s = new RTLAssume(assumption, (RTLGoto)readStatement());
+				break;
+			}
+			case ASSERT:
+				s = new RTLAssert(readExpression());
+				break;
+			case SKIP:
+				s = new RTLSkip();
+				break;
+			case HALT:
+				s = new RTLHalt();
+				break;
+			case ALLOC: {
+				Writable pointer = (Writable)readExpression();
+				s = new RTLAlloc(pointer, readNullableUTF());
+				break;
+			}
+			case DEALLOC:
+				s = new RTLDealloc(readExpression());
+				break;
+			case UNKNOWN_PROCEDURE_CALL:
+				s = new RTLUnknownProcedureCall((RTLGoto)readStatement());
+				break;
+			case CALL_RETURN:
+				s = new RTLCallReturn();
+				break;
+			case HAVOC: {
+				RTLVariable var = (RTLVariable)readExpression();
+				s = new RTLHavoc(var, readExpression());
+				break;
+			}
+			case MEMSET: {
+				RTLExpression dest = readExpression();
+				RTLExpression value = readExpression();
+				s = new RTLMemset(dest, value, readExpression());
+				break;
+			}
+			case MEMCPY: {
+				RTLExpression src = readExpression();
+				RTLExpression dest = readExpression();
+				s = new RTLMemcpy(src, dest, readExpression());
+				break;
+			}
+			case DEBUG_PRINT: {
+				String message = readNullableUTF();
+				s = new RTLDebugPrint(message, readExpression());
+				break;
+			}
+			case ASSIGNMENT_TEMPLATE: {
+				int bitWidth = readInt();
+				Writable lhs = (Writable)readExpression();
+				s = new AssignmentTemplate(bitWidth, lhs, readExpression());
+				break;
+			}
+			default:
+				throw new IOException("Invalid statement tag " + tag);
+			}
+		} catch (ClassCastException e) {
+			throw new IOException("Invalid operand in statement with tag " + tag);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Invalid goto type in statement with tag " + tag);
+		}
+		s.setLabel(readLabel());
+		s.setNextLabel(readLabel());
+		statements.add(s);
+		return s;
+	}
+
+	/**
+	 * Reads a CFA edge written by {@link RTLOutputStream#writeEdge(CFAEdge)}.
+	 */
+	public CFAEdge readEdge() throws IOException {
+		RTLLabel source = readLabel();
+		RTLLabel target = readLabel();
+		int kind = readByte();
+		if (kind < 0 || kind >= edgeKinds.length)
+			throw new IOException("Invalid edge kind " + kind);
+		StateTransformer transformer;
+		if (readByte() == EDGE_BASIC_BLOCK) {
+			BasicBlock bb = new BasicBlock();
+			int size = readInt();
+			for (int i = 0; i < size; i++)
+				bb.add(readStatement());
+			transformer = bb;
+		} else {
+			transformer = readStatement();
+		}
+		return new CFAEdge(source, target, transformer, edgeKinds[kind]);
+	}
+
+	private String readNullableUTF() throws IOException {
+		return readBoolean() ? readUTF() : null;
+	}
+}
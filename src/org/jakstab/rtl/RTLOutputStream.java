@@ -0,0 +1,285 @@
+/*
+ * RTLOutputStream.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.rtl;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.RTLLabel;
+import org.jakstab.rtl.expressions.*;
+import org.jakstab.rtl.statements.*;
+
+/**
+ * A data output stream that writes RTL expressions, statements, and labels in
+ * a compact binary format, which can be read back by an {@link RTLInputStream}.
+ * Expressions and statements that have been written before are written as
+ * back references, so shared subexpressions are stored only once.
+ */
+public class RTLOutputStream extends DataOutputStream {
+
+	/** 
+	 * Version of the encoding. Files containing RTL include it in their keys,
+	 * so it has to be incremented whenever the encoding changes. 
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	static final int NULL = 0;
+	static final int REFERENCE = 1;
+
+	static final int VARIABLE = 2;
+	static final int NUMBER = 3;
+	static final int NONDET = 4;
+	static final int MEMORY_LOCATION = 5;
+	static final int OPERATION = 6;
+	static final int SPECIAL_EXPRESSION = 7;
+	static final int BIT_RANGE = 8;
+	static final int CONDITIONAL_EXPRESSION = 9;
+
+	static final int VARIABLE_ASSIGNMENT = 16;
+	static final int MEMORY_ASSIGNMENT = 17;
+	static final int GOTO = 18;
+	static final int ASSUME = 19;
+	static final int ASSERT = 20;
+	static final int SKIP = 21;
+	static final int HALT = 22;
+	static final int ALLOC = 23;
+	static final int DEALLOC = 24;
+	static final int UNKNOWN_PROCEDURE_CALL = 25;
+	static final int CALL_RETURN = 26;
+	static final int HAVOC = 27;
+	static final int MEMSET = 28;
+	static final int MEMCPY = 29;
+	static final int DEBUG_PRINT = 30;
+	static final int ASSIGNMENT_TEMPLATE = 31;
+
+	static final int EDGE_STATEMENT = 0;
+	static final int EDGE_BASIC_BLOCK = 1;
+
+	private final Map<RTLExpression, Integer> expressionIds;
+	private final Map<RTLStatement, Integer> statementIds;
+
+	public RTLOutputStream(OutputStream out) {
+		super(out);
+		expressionIds = new IdentityHashMap<RTLExpression, Integer>();
+		statementIds = new IdentityHashMap<RTLStatement, Integer>();
+	}
+
+	/**
+	 * Writes a label, which may be null.
+	 */
+	public void writeLabel(RTLLabel label) throws IOException {
+		if (label == null) {
+			writeInt(-1);
+		} else {
+			writeInt(label.getIndex());
+			writeLong(label.getAddress().getValue());
+		}
+	}
+
+	/**
+	 * Writes an expression, which may be null.
+	 */
+	public void writeExpression(RTLExpression e) throws IOException {
+		if (e == null) {
+			writeByte(NULL);
+			return;
+		}
+		Integer id = expressionIds.get(e);
+		if (id != null) {
+			writeByte(REFERENCE);
+			writeInt(id);
+			return;
+		}
+
+		if (e instanceof RTLVariable) {
+			RTLVariable v = (RTLVariable)e;
+			writeByte(VARIABLE);
+			writeUTF(v.getName());
+			writeInt(v.getBitWidth());
+		} else if (e instanceof RTLNumber) {
+			RTLNumber n = (RTLNumber)e;
+			writeByte(NUMBER);
+			writeLong(n.longValue());
+			writeInt(n.getBitWidth());
+		} else if (e instanceof RTLNondet) {
+			writeByte(NONDET);
+			writeInt(e.getBitWidth());
+		} else if (e instanceof RTLMemoryLocation) {
+			RTLMemoryLocation m = (RTLMemoryLocation)e;
+			writeByte(MEMORY_LOCATION);
+			writeInt(m.getMemoryState());
+			writeExpression(m.getSegmentRegister());
+			writeExpression(m.getAddress());
+			writeInt(m.getBitWidth());
+		} else if (e instanceof RTLOperation) {
+			RTLOperation op = (RTLOperation)e;
+			writeByte(OPERATION);
+			writeByte(op.getOperator().ordinal());
+			writeExpressions(op.getOperands());
+		} else if (e instanceof RTLSpecialExpression) {
+			RTLSpecialExpression op = (RTLSpecialExpression)e;
+			writeByte(SPECIAL_EXPRESSION);
+			writeUTF(op.getOperator());
+			writeExpressions(op.getOperands());
+		} else if (e instanceof RTLBitRange) {
+			RTLBitRange br = (RTLBitRange)e;
+			writeByte(BIT_RANGE);
+			writeExpression(br.getOperand());
+			writeExpression(br.getFirstBitIndex());
+			writeExpression(br.getLastBitIndex());
+		} else if (e instanceof RTLConditionalExpression) {
+			RTLConditionalExpression c = (RTLConditionalExpression)e;
+			writeByte(CONDITIONAL_EXPRESSION);
+			writeExpression(c.getCondition());
+			writeExpression(c.getTrueExpression());
+			writeExpression(c.getFalseExpression());
+		} else {
+			throw new IOException("Cannot write expression of type " + e.getClass().getSimpleName());
+		}
+		// Ids are assigned after the operands, in the same order as when reading
+		expressionIds.put(e, expressionIds.size());
+	}
+
+	private void writeExpressions(RTLExpression[] operands) throws IOException {
+		writeInt(operands.length);
+		for (RTLExpression operand : operands)
+			writeExpression(operand);
+	}
+
+	/**
+	 * Writes a statement including its label and next label. The statement
+	 * may be null.
+	 */
+	public void writeStatement(RTLStatement s) throws IOException {
+		if (s == null) {
+			writeByte(NULL);
+			return;
+		}
+		Integer id = statementIds.get(s);
+		if (id != null) {
+			writeByte(REFERENCE);
+			writeInt(id);
+			return;
+		}
+
+		if (s instanceof RTLVariableAssignment) {
+			RTLVariableAssignment a = (RTLVariableAssignment)s;
+			writeByte(VARIABLE_ASSIGNMENT);
+			writeExpression(a.getLeftHandSide());
+			writeExpression(a.getRightHandSide());
+		} else if (s instanceof RTLMemoryAssignment) {
+			RTLMemoryAssignment a = (RTLMemoryAssignment)s;
+			writeByte(MEMORY_ASSIGNMENT);
+			writeExpression(a.getLeftHandSide());
+			writeExpression(a.getRightHandSide());
+		} else if (s instanceof RTLGoto) {
+			RTLGoto g = (RTLGoto)s;
+			writeByte(GOTO);
+			writeExpression(g.getTargetExpression());
+			writeExpression(g.getCondition());
+			writeByte(g.getType().ordinal());
+		} else if (s instanceof RTLAssume) {
+			RTLAssume a = (RTLAssume)s;
+			writeByte(ASSUME);
+			writeExpression(a.getAssumption());
+			writeStatement(a.getSource());
+		} else if (s instanceof RTLAssert) {
+			writeByte(ASSERT);
+			writeExpression(((RTLAssert)s).getAssertion());
+		} else if (s instanceof RTLSkip) {
+			writeByte(SKIP);
+		} else if (s instanceof RTLHalt) {
+			writeByte(HALT);
+		} else if (s instanceof RTLAlloc) {
+			RTLAlloc a = (RTLAlloc)s;
+			writeByte(ALLOC);
+			writeExpression(a.getPointer());
+			writeNullableUTF(a.getAllocationName());
+		} else if (s instanceof RTLDealloc) {
+			writeByte(DEALLOC);
+			writeExpression(((RTLDealloc)s).getPointer());
+		} else if (s instanceof RTLUnknownProcedureCall) {
+			writeByte(UNKNOWN_PROCEDURE_CALL);
+			writeStatement(((RTLUnknownProcedureCall)s).getSource());
+		} else if (s instanceof RTLCallReturn) {
+			writeByte(CALL_RETURN);
+		} else if (s instanceof RTLHavoc) {
+			RTLHavoc h = (RTLHavoc)s;
+			writeByte(HAVOC);
+			writeExpression(h.getVariable());
+			writeExpression(h.getMaximum());
+		} else if (s instanceof RTLMemset) {
+			RTLMemset m = (RTLMemset)s;
+			writeByte(MEMSET);
+			writeExpression(m.getDestination());
+			writeExpression(m.getValue());
+			writeExpression(m.getCount());
+		} else if (s instanceof RTLMemcpy) {
+			RTLMemcpy m = (RTLMemcpy)s;
+			writeByte(MEMCPY);
+			writeExpression(m.getSource());
+			writeExpression(m.getDestination());
+			writeExpression(m.getSize());
+		} else if (s instanceof RTLDebugPrint) {
+			RTLDebugPrint p = (RTLDebugPrint)s;
+			writeByte(DEBUG_PRINT);
+			writeNullableUTF(p.getMessage());
+			writeExpression(p.getExpression());
+		} else if (s instanceof AssignmentTemplate) {
+			AssignmentTemplate a = (AssignmentTemplate)s;
+			writeByte(ASSIGNMENT_TEMPLATE);
+			writeInt(a.getBitWidth());
+			writeExpression(a.getLeftHandSide());
+			writeExpression(a.getRightHandSide());
+		} else {
+			throw new IOException("Cannot write statement of type " + s.getClass().getSimpleName());
+		}
+		writeLabel(s.getLabel());
+		writeLabel(s.getNextLabel());
+		statementIds.put(s, statementIds.size());
+	}
+
+	/**
+	 * Writes a CFA edge between two labels, with a statement or a basic
+	 * block as transformer.
+	 */
+	public void writeEdge(CFAEdge e) throws IOException {
+		writeLabel((RTLLabel)e.getSource());
+		writeLabel((RTLLabel)e.getTarget());
+		writeByte(e.getKind().ordinal());
+		if (e.getTransformer() instanceof BasicBlock) {
+			BasicBlock bb = (BasicBlock)e.getTransformer();
+			writeByte(EDGE_BASIC_BLOCK);
+			writeInt(bb.size());
+			for (RTLStatement s : bb)
+				writeStatement(s);
+		} else {
+			writeByte(EDGE_STATEMENT);
+			writeStatement((RTLStatement)e.getTransformer());
+		}
+	}
+
+	private void writeNullableUTF(String s) throws IOException {
+		writeBoolean(s != null);
+		if (s != null)
+			writeUTF(s);
+	}
+}
@@ -20,7 +20,9 @@ package org.jakstab.rtl.expressions;
 
 import java.util.*;
 
+import org.jakstab.Options;
 import org.jakstab.util.Logger;
+import org.jakstab.util.WeakInterner;
 import org.jakstab.asm.*;
 import org.jakstab.asm.x86.*;
 
@@ -29,7 +31,8 @@ import com.google.common.collect.SetMultimap;
 
 /**
  * Factory class for all RTL expressions. It is a singleton that holds the references to variables 
- * and commonly used constants. 
+ * and commonly used constants. If hash-consing is enabled, structurally equal expressions are
+ * created as the same instance.
  * 
  * @author Johannes Kinder
  */
@@ -57,6 +60,8 @@ public final class ExpressionFactory {
 	private static final SetMultimap<RTLVariable, RTLVariable> coveredRegs;
 	private static final SetMultimap<RTLVariable, RTLVariable> coveredBy;
 	
+	private static final WeakInterner<RTLExpression> expressionTable = new WeakInterner<RTLExpression>();
+	
 	static {
 		uniqueVariableCount = 0;
 		variableInstances = new HashMap<String, RTLVariable>(DEFAULT_VARIABLE_COUNT);
@@ -74,9 +79,21 @@ public final class ExpressionFactory {
 	private ExpressionFactory() {
 	}
 	
+	/**
+	 * Returns the canonical instance of the given expression if hash-consing 
+	 * is enabled, or the expression itself otherwise.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends RTLExpression> T intern(T e) {
+		if (!Options.hashCons.getValue())
+			return e;
+		// Equal expressions are of the same class
+		return (T)expressionTable.intern(e);
+	}
+	
 	public static RTLBitRange createBitRange(RTLExpression operand,
 			RTLExpression firstBit, RTLExpression lastBit) {
-		return new RTLBitRange(operand, firstBit, lastBit);
+		return intern(new RTLBitRange(operand, firstBit, lastBit));
 	}
 
 	public static RTLConditionalExpression createConditionalExpression(
@@ -89,8 +106,8 @@ public final class ExpressionFactory {
 					falseExpression,
 					trueExpression);
 		}
-		return new RTLConditionalExpression(condition, trueExpression,
-				falseExpression);
+		return intern(new RTLConditionalExpression(condition, trueExpression,
+				falseExpression));
 	}
 	
 	public static RTLExpression createImplication(RTLExpression a, RTLExpression b) {
@@ -111,7 +128,7 @@ public final class ExpressionFactory {
 
 	public static RTLMemoryLocation createMemoryLocation(int memoryState, RTLExpression segmentRegister, RTLExpression address, int bitWidth) {
 		assert bitWidth > 0 : "Trying to create memory location of unknown width with address " + address + "!";
-		return new RTLMemoryLocation(memoryState, segmentRegister, address, bitWidth);
+		return intern(new RTLMemoryLocation(memoryState, segmentRegister, address, bitWidth));
 	}
 
 	public static RTLNumber createNumber(Number value) {
@@ -120,7 +137,7 @@ public final class ExpressionFactory {
 		else if (value instanceof Integer) bitWidth = 32;
 		else if (value instanceof Short) bitWidth = 16;
 		else if (value instanceof Byte) bitWidth = 8;
-		return new RTLNumber(value.longValue(), bitWidth);
+		return intern(new RTLNumber(value.longValue(), bitWidth));
 	}
 
 	public static RTLNumber createNumber(long value, int bitWidth) {
@@ -128,11 +145,11 @@ public final class ExpressionFactory {
 			if (value == 0) return FALSE;
 			else return TRUE;
 		}
-		return new RTLNumber(value, bitWidth);
+		return intern(new RTLNumber(value, bitWidth));
 	}
 	
 	public static RTLNumber createNumber(AbsoluteAddress addr) {
-		return new RTLNumber(addr.getValue(), addr.getBitWidth());
+		return intern(new RTLNumber(addr.getValue(), addr.getBitWidth()));
 	}
 
 	/**
@@ -353,7 +370,7 @@ public final class ExpressionFactory {
 			break;
 		default: // nothing
 		}
-		return new RTLOperation(operator, operands);
+		return intern(new RTLOperation(operator, operands));
 	}
 
 	public static RTLExpression createSpecialExpression(
@@ -368,10 +385,10 @@ public final class ExpressionFactory {
 			return nondet(((RTLNumber)operands[0]).intValue());
 		}
 
-		return new RTLSpecialExpression(operation, operands);
+		return intern(new RTLSpecialExpression(operation, operands));
 	}
 
-	public static RTLVariable createVariable(String name, int bitWidth) {
+	public static synchronized RTLVariable createVariable(String name, int bitWidth) {
 		// Remove leading %-signs on registers to avoid confusion of users
 		if (name.charAt(0) == '%') name = name.substring(1);
 		
@@ -19,12 +19,14 @@ package org.jakstab.rtl.expressions;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
 
 import org.jakstab.Options;
 import org.jakstab.rtl.Context;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
+import org.jakstab.ssl.SSLSnapshot;
 import org.jakstab.ssl.parser.SSLFunction;
 import org.jakstab.ssl.parser.SSLLexer;
 import org.jakstab.ssl.parser.SSLParser;
@@ -35,60 +37,249 @@ import org.jakstab.util.Logger;
  * Template based expression simplifier. Reads a set of simplification rules from 
  * an SSL file when initialized.
  * 
+ * Rules are indexed by the top operator of their pattern, so only rules that can
+ * match are tried on a subexpression. Results of recent simplifications are cached.
+ * 
  * @author Johannes Kinder
  */
 public class ExpressionSimplifier {
 	
 	private final static Logger logger = Logger.getLogger(ExpressionSimplifier.class);
-	private static ExpressionSimplifier instance;
+	private static volatile ExpressionSimplifier instance;
 	
 	public final static ExpressionSimplifier getInstance() {
 		if (instance == null) {
-			try {
-				instance = new ExpressionSimplifier();
-			} catch (Exception e) {
-				logger.fatal("Could not parse simplification rules!");
-				e.printStackTrace();
-				throw new RuntimeException(e);
+			// Programs can be analyzed concurrently, so create the instance only once
+			synchronized (ExpressionSimplifier.class) {
+				if (instance == null) {
+					try {
+						instance = new ExpressionSimplifier();
+					} catch (Exception e) {
+						logger.fatal("Could not parse simplification rules!");
+						e.printStackTrace();
+						throw new RuntimeException(e);
+					}
+				}
 			}
 		}
 		return instance;
 	}
 	
+	private static final int CACHE_SIZE = 10000;
+	// Number of independently locked parts of the cache, a power of two
+	private static final int CACHE_STRIPES = 16;
+	// Version of the snapshot contents written by writeSnapshot
+	private static final int SNAPSHOT_VERSION = 1;
+	
 	private final RTLExpression[] patterns;
 	private final RTLExpression[] results;
+	// Sorted indices of the rules that can match an expression, by its top operator
+	private final Map<Object, int[]> candidateRules;
+	// Sorted indices of the rules whose pattern is a variable, which match everything
+	private final int[] wildcardRules;
+	// Recently simplified expressions, striped by hash code so concurrent analyses 
+	// rarely wait for each other. Each stripe is only accessed while holding its lock.
+	private final CacheStripe[] cache;
 	
+	/**
+	 * Returns the file the simplification rules are read from.
+	 */
+	public static File getSpecificationFile() {
+		return new File(Options.jakstabHome + "/ssl/simplifications.ssl");
+	}
+
 	private ExpressionSimplifier() throws Exception {
 		// (x < y) | (x = y)   <->   x <= y
-		File specFile = new File(Options.jakstabHome + "/ssl/simplifications.ssl");
-		logger.info("Reading simplifications from " + specFile.getName() + ".");
+		File specFile = getSpecificationFile();
+
+		SSLSnapshot snapshot = null;
+		RTLExpression[][] rules = null;
+		if (!Options.noSSLSnapshots.getValue()) {
+			snapshot = new SSLSnapshot(specFile, SNAPSHOT_VERSION);
+			RTLInputStream in = snapshot.read();
+			if (in != null) {
+				try {
+					rules = readSnapshot(in);
+					logger.info("Loaded simplifications from snapshot of " + specFile.getName() + ".");
+				} catch (IOException e) {
+					logger.warn("Failed to read snapshot of " + specFile.getName() + ": " + e.getMessage());
+					snapshot = null;
+				} finally {
+					in.close();
+				}
+			}
+		}
 
-		SSLLexer lex = new SSLLexer(new FileInputStream(specFile));
-		SSLParser parser = new SSLParser(lex);
-		SSLPreprocessor prep = new SSLPreprocessor();
+		if (rules != null) {
+			patterns = rules[0];
+			results = rules[1];
+		} else {
+			int firstVariable = ExpressionFactory.getVariableCount();
+			logger.info("Reading simplifications from " + specFile.getName() + ".");
 
-		parser.start();
-		prep.start(parser.getAST());
+			SSLLexer lex = new SSLLexer(new FileInputStream(specFile));
+			SSLParser parser = new SSLParser(lex);
+			SSLPreprocessor prep = new SSLPreprocessor();
 
-		Map<String,SSLFunction> instrPrototypes = prep.getInstructions();
-		//registers = prep.getRegisters();
-		//registers.removeAll(statusFlags);
+			parser.start();
+			prep.start(parser.getAST());
 
-		logger.debug("-- Got " + instrPrototypes.size() + " simplification groups.");
-		
-		Map<RTLExpression, RTLExpression> wholeMapping = new LinkedHashMap<RTLExpression, RTLExpression>();
+			Map<String,SSLFunction> instrPrototypes = prep.getInstructions();
+			//registers = prep.getRegisters();
+			//registers.removeAll(statusFlags);
+
+			logger.debug("-- Got " + instrPrototypes.size() + " simplification groups.");
+
+			Map<RTLExpression, RTLExpression> wholeMapping = new LinkedHashMap<RTLExpression, RTLExpression>();
 
-		for (Map.Entry<String, SSLFunction> entry : instrPrototypes.entrySet()) {
-			Map<RTLExpression, RTLExpression> mapping = prep.convertSimplificationTemplates(entry.getValue().getAST());
-			wholeMapping.putAll(mapping);
+			for (Map.Entry<String, SSLFunction> entry : instrPrototypes.entrySet()) {
+				Map<RTLExpression, RTLExpression> mapping = prep.convertSimplificationTemplates(entry.getValue().getAST());
+				wholeMapping.putAll(mapping);
+			}
+
+			patterns = wholeMapping.keySet().toArray(new RTLExpression[0]);
+			results = wholeMapping.values().toArray(new RTLExpression[0]);
+
+			if (snapshot != null) {
+				RTLOutputStream out = null;
+				try {
+					out = snapshot.beginWrite(firstVariable);
+					out.writeInt(patterns.length);
+					for (int i = 0; i < patterns.length; i++) {
+						out.writeExpression(patterns[i]);
+						out.writeExpression(results[i]);
+					}
+					snapshot.endWrite(out);
+				} catch (IOException e) {
+					logger.debug("Could not write snapshot of " + specFile.getName() + ": " + e.getMessage());
+					if (out != null)
+						snapshot.abortWrite(out);
+				}
+			}
 		}
 		
-		patterns = wholeMapping.keySet().toArray(new RTLExpression[0]);
-		results = wholeMapping.values().toArray(new RTLExpression[0]);
-		
 		logger.debug("Substitution rules:");
 		for (int i=0; i<patterns.length; i++)
 			logger.debug("  " + patterns[i] + " ----> " + results[i]);
+		
+		List<Integer> wildcards = new ArrayList<Integer>();
+		Map<Object, List<Integer>> rulesByKey = new HashMap<Object, List<Integer>>();
+		for (int i=0; i<patterns.length; i++) {
+			if (patterns[i] instanceof RTLVariable) {
+				wildcards.add(i);
+				continue;
+			}
+			addRule(rulesByKey, getIndexKey(patterns[i]), i);
+			// Negated variables can match constants
+			if (patterns[i] instanceof RTLOperation && ((RTLOperation)patterns[i]).getOperator() == Operator.NEG)
+				addRule(rulesByKey, RTLNumber.class, i);
+		}
+		wildcardRules = toSortedArray(wildcards);
+		candidateRules = new HashMap<Object, int[]>();
+		for (Map.Entry<Object, List<Integer>> entry : rulesByKey.entrySet()) {
+			entry.getValue().addAll(wildcards);
+			candidateRules.put(entry.getKey(), toSortedArray(entry.getValue()));
+		}
+		
+		cache = new CacheStripe[CACHE_STRIPES];
+		for (int i = 0; i < cache.length; i++)
+			cache[i] = new CacheStripe(CACHE_SIZE / CACHE_STRIPES);
+	}
+	
+	/**
+	 * A part of the simplification cache that evicts its least recently used entries.
+	 */
+	private static final class CacheStripe extends LinkedHashMap<RTLExpression, RTLExpression> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+		
+		CacheStripe(int capacity) {
+			super(capacity, 0.75f, true);
+			this.capacity = capacity;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<RTLExpression, RTLExpression> eldest) {
+			return size() > capacity;
+		}
+	}
+	
+	private CacheStripe stripeOf(RTLExpression e) {
+		int h = e.hashCode();
+		h ^= (h >>> 16);
+		return cache[h & (CACHE_STRIPES - 1)];
+	}
+	
+	private void putCached(RTLExpression e, RTLExpression simplified) {
+		CacheStripe stripe = stripeOf(e);
+		synchronized (stripe) {
+			stripe.put(e, simplified);
+		}
+	}
+	
+	/**
+	 * Reads the patterns and results of the simplification rules from a snapshot.
+	 */
+	private static RTLExpression[][] readSnapshot(RTLInputStream in) throws IOException {
+		int count = in.readInt();
+		RTLExpression[][] rules = new RTLExpression[2][count];
+		for (int i = 0; i < count; i++) {
+			rules[0][i] = in.readExpression();
+			rules[1][i] = in.readExpression();
+		}
+		return rules;
+	}
+
+	private static void addRule(Map<Object, List<Integer>> rulesByKey, Object key, int rule) {
+		List<Integer> rules = rulesByKey.get(key);
+		if (rules == null) {
+			rules = new ArrayList<Integer>();
+			rulesByKey.put(key, rules);
+		}
+		rules.add(rule);
+	}
+	
+	private static int[] toSortedArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i=0; i<array.length; i++)
+			array[i] = list.get(i);
+		Arrays.sort(array);
+		return array;
+	}
+	
+	/**
+	 * Returns the key under which rules with the given expression as pattern
+	 * are indexed: the operator for operations and special expressions, the
+	 * class otherwise.
+	 */
+	private static Object getIndexKey(RTLExpression e) {
+		if (e instanceof RTLOperation)
+			return ((RTLOperation)e).getOperator();
+		else if (e instanceof RTLSpecialExpression)
+			return ((RTLSpecialExpression)e).getOperator();
+		else
+			return e.getClass();
+	}
+	
+	private int[] getCandidateRules(RTLExpression e) {
+		int[] rules = candidateRules.get(getIndexKey(e));
+		return rules != null ? rules : wildcardRules;
+	}
+	
+	/**
+	 * Discards all cached simplification results, e.g., to release memory.
+	 * 
+	 * @return the number of results discarded
+	 */
+	public int clearCache() {
+		int size = 0;
+		for (CacheStripe stripe : cache) {
+			synchronized (stripe) {
+				size += stripe.size();
+				stripe.clear();
+			}
+		}
+		return size;
 	}
 	
 	/**
@@ -101,6 +292,21 @@ public class ExpressionSimplifier {
 	 */
 	public RTLExpression simplify(RTLExpression e) {
 		
+		// Leaves are never simplified
+		if (e instanceof RTLVariable || e instanceof RTLNumber || 
+				e instanceof RTLMemoryLocation || e instanceof RTLNondet)
+			return e;
+		
+		RTLExpression cached;
+		CacheStripe stripe = stripeOf(e);
+		synchronized (stripe) {
+			cached = stripe.get(e);
+		}
+		// Return an expression that is already simplified as is, so callers can 
+		// still detect changes by identity
+		if (cached != null)
+			return cached.equals(e) ? e : cached;
+		
 		ExpressionVisitor<RTLExpression> simplificationVisitor = new ExpressionVisitor<RTLExpression>() {
 
 			@Override
@@ -191,6 +397,7 @@ public class ExpressionSimplifier {
 			
 		};
 		
+		RTLExpression original = e;
 		int rounds = 0;
 		RTLExpression old;
 		do {
@@ -202,6 +409,10 @@ public class ExpressionSimplifier {
 			}
 			// Repeat while it's still changing
 		} while (old != e);
+		
+		putCached(original, e);
+		// The result is a fixpoint
+		putCached(e, e);
 		return e;
 	}
 	
@@ -210,10 +421,15 @@ public class ExpressionSimplifier {
 	 */
 	private RTLExpression applyTemplates(RTLExpression e) {
 		
+		int[] rules = getCandidateRules(e);
+		if (rules.length == 0)
+			return e;
+		
 		Map<RTLVariable, RTLExpression> bindings = new HashMap<RTLVariable, RTLExpression>(); 
 
-		// Just go through all patterns and check for a match
-		for (int i=0; i<patterns.length; i++) {
+		// Go through the patterns that can match in rule order and check for a match
+		for (int c=0; c<rules.length; c++) {
+			int i = rules[c];
 			if (match(e, patterns[i], bindings)) {
 				// Success
 				Context context = new Context();
@@ -222,6 +438,13 @@ public class ExpressionSimplifier {
 				RTLExpression result = results[i].evaluate(context);
 				//logger.debug("Simplified " + e + " to " + result);
 				e = result;
+				// Continue with the rules after this one that can match the result 
+				int[] resultRules = getCandidateRules(e);
+				if (resultRules != rules) {
+					rules = resultRules;
+					int pos = Arrays.binarySearch(rules, i);
+					c = (pos >= 0 ? pos : -pos - 1) - 1;
+				}
 			}
 			bindings.clear();
 		}
@@ -63,6 +63,7 @@ public class RTLBitRange extends AbstractRTLExpression implements RTLExpression,
 	private final RTLExpression lastBit;
 	private final RTLExpression operand;
 	private final int size;
+	private final int hashCode;
 	private SetOfVariables usedVariablesOnWrite = null;
 
 	protected RTLBitRange(RTLExpression variable, RTLExpression firstBit, RTLExpression lastBit) {
@@ -71,6 +72,7 @@ public class RTLBitRange extends AbstractRTLExpression implements RTLExpression,
 		this.firstBit = firstBit;
 		this.lastBit = lastBit;
 		this.size = 1 + operand.size() + firstBit.size() + lastBit.size();
+		this.hashCode = 3 + firstBit.hashCode() + lastBit.hashCode() + operand.hashCode();
 	}
 	
 	@Override
@@ -257,9 +259,10 @@ public class RTLBitRange extends AbstractRTLExpression implements RTLExpression,
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) return true;
 		if (obj == null || obj.getClass() != this.getClass()) return false;
 		RTLBitRange other = (RTLBitRange)obj;
-		return  other.operand.equals(this.operand) && 
+		return  other.hashCode == hashCode && other.operand.equals(this.operand) && 
 		other.firstBit.equals(this.firstBit) && 
 		other.lastBit.equals(this.lastBit);
 	}
@@ -269,7 +272,7 @@ public class RTLBitRange extends AbstractRTLExpression implements RTLExpression,
 	 */
 	@Override
 	public int hashCode() {
-		return 3 + firstBit.hashCode() + lastBit.hashCode() + operand.hashCode();
+		return hashCode;
 	}
 
 	@Override
@@ -41,6 +41,7 @@ public class RTLConditionalExpression extends AbstractRTLExpression implements R
 	private final RTLExpression trueExpression;
 	private final RTLExpression falseExpression;
 	private final int size;
+	private final int hashCode;
 
 	/**
 	 * @param condition
@@ -54,6 +55,7 @@ public class RTLConditionalExpression extends AbstractRTLExpression implements R
 		this.trueExpression = trueExpression;
 		this.falseExpression = falseExpression;
 		this.size = 1 + condition.size() + trueExpression.size() + falseExpression.size();
+		this.hashCode = 17 + condition.hashCode() + trueExpression.hashCode() + falseExpression.hashCode();
 	}
 
 	/**
@@ -137,9 +139,10 @@ public class RTLConditionalExpression extends AbstractRTLExpression implements R
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) return true;
 		if (obj == null || obj.getClass() != this.getClass()) return false;
 		RTLConditionalExpression other = (RTLConditionalExpression)obj; 
-		return other.condition.equals(condition) && 
+		return other.hashCode == hashCode && other.condition.equals(condition) && 
 		other.trueExpression.equals(trueExpression) && 
 		other.falseExpression.equals(falseExpression);
 	}
@@ -149,7 +152,7 @@ public class RTLConditionalExpression extends AbstractRTLExpression implements R
 	 */
 	@Override
 	public int hashCode() {
-		return 17 + condition.hashCode() + trueExpression.hashCode() + falseExpression.hashCode();
+		return hashCode;
 	}
 
 	@Override
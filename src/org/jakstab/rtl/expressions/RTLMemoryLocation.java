@@ -45,6 +45,7 @@ public class RTLMemoryLocation extends AbstractRTLExpression implements RTLExpre
 	private final int bitWidth;
 	private final int size;
 	private final int memoryState;
+	private final int hashCode;
 
 	protected RTLMemoryLocation(int memoryState, RTLExpression segmentRegister, RTLExpression address, int bitWidth) {
 		super();
@@ -54,6 +55,7 @@ public class RTLMemoryLocation extends AbstractRTLExpression implements RTLExpre
 		this.bitWidth = bitWidth;
 		this.size = 1 + (address != null ? address.size() : 0 ) 
 				+ (segmentRegister != null ? segmentRegister.size() : 0 );
+		this.hashCode = 59 + address.hashCode() + bitWidth;
 	}
 
 	/**
@@ -193,9 +195,10 @@ public class RTLMemoryLocation extends AbstractRTLExpression implements RTLExpre
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) return true;
 		if (obj == null || obj.getClass() != this.getClass()) return false;
 		RTLMemoryLocation other = (RTLMemoryLocation)obj;
-		return other.address.equals(address) && 
+		return other.hashCode == hashCode && other.address.equals(address) && 
 		other.bitWidth == bitWidth && 
 		other.memoryState == memoryState && 
 		(other.segmentRegister == segmentRegister || 
@@ -207,7 +210,7 @@ public class RTLMemoryLocation extends AbstractRTLExpression implements RTLExpre
 	 */
 	@Override
 	public int hashCode() {
-		return 59 + address.hashCode() + bitWidth;
+		return hashCode;
 	}
 
 	@Override
@@ -84,6 +84,7 @@ public class RTLNumber extends AbstractRTLExpression implements RTLExpression, A
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) return true;
 		if (obj == null || obj.getClass() != this.getClass()) 
 			return false;
 		RTLNumber other = ((RTLNumber)obj);
@@ -41,6 +41,7 @@ public class RTLOperation extends AbstractRTLExpression implements RTLExpression
 	private final int operandCount;
 	private final int size;
 	private final int bitWidth;
+	private final int hashCode;
 
 	protected RTLOperation(Operator operator, RTLExpression... operands) {
 		super();
@@ -53,6 +54,7 @@ public class RTLOperation extends AbstractRTLExpression implements RTLExpression
 		size = theSize;
 		
 		bitWidth = calculateBitWidth(operator, operands);
+		hashCode = 43 + operator.hashCode() + Arrays.hashCode(operands);
 		assert bitWidth == 1 || (bitWidth % 8 == 0) : "Bitwidth not a multiple of 8: " + bitWidth + ". Operation was " + this;
 	}
 
@@ -518,9 +520,11 @@ public class RTLOperation extends AbstractRTLExpression implements RTLExpression
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) return true;
 		if (obj == null || obj.getClass() != this.getClass()) return false;
 		RTLOperation other = (RTLOperation)obj;
-		return this.operator.equals(other.operator) && Arrays.equals(this.operands, other.operands);
+		return hashCode == other.hashCode && this.operator.equals(other.operator) && 
+				Arrays.equals(this.operands, other.operands);
 	}
 
 	/*
@@ -528,7 +532,7 @@ public class RTLOperation extends AbstractRTLExpression implements RTLExpression
 	 */
 	@Override
 	public int hashCode() {
-		return 43 + operator.hashCode() + Arrays.hashCode(operands);
+		return hashCode;
 	}
 
 	@Override
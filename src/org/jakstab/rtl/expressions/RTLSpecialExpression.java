@@ -48,6 +48,7 @@ public class RTLSpecialExpression extends AbstractRTLExpression implements RTLEx
 	private final int operandCount;
 	private final int size;
 	private final int bitWidth;
+	private final int hashCode;
 	
 	protected RTLSpecialExpression(String operation, RTLExpression... operands) {
 		super();
@@ -78,6 +79,7 @@ public class RTLSpecialExpression extends AbstractRTLExpression implements RTLEx
 			this.operandCount = opCount;
 			this.size = theSize;
 		}
+		this.hashCode = 7 + operation.hashCode() + Arrays.hashCode(this.operands);
 	}
 
 	/**
@@ -103,9 +105,11 @@ public class RTLSpecialExpression extends AbstractRTLExpression implements RTLEx
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) return true;
 		if (obj == null || obj.getClass() != this.getClass()) return false;
 		RTLSpecialExpression other = (RTLSpecialExpression)obj;
-		return other.operation.equals(this.operation) && Arrays.equals(this.operands, other.operands);
+		return hashCode == other.hashCode && other.operation.equals(this.operation) && 
+				Arrays.equals(this.operands, other.operands);
 	}
 
 	/*
@@ -113,7 +117,7 @@ public class RTLSpecialExpression extends AbstractRTLExpression implements RTLEx
 	 */
 	@Override
 	public int hashCode() {
-		return 7 + operation.hashCode() + Arrays.hashCode(operands);
+		return hashCode;
 	}
 
 	/* (non-Javadoc)
@@ -17,12 +17,11 @@
  */
 package org.jakstab.rtl.statements;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.NoSuchElementException;
+import java.util.*;
 
 import org.jakstab.Program;
 import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.CFAEdge;
 import org.jakstab.cfa.RTLLabel;
 import org.jakstab.cfa.StateTransformer;
 import org.jakstab.util.Characters;
@@ -37,6 +36,28 @@ public class BasicBlock extends LinkedList<RTLStatement> implements StateTransfo
 
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(BasicBlock.class);
+	
+	// Edges of the single statements, valid while modCount is unchanged
+	private transient List<CFAEdge> statementEdges;
+	private transient int statementEdgesModCount;
+
+	/**
+	 * Returns an edge for each statement in the block, from the statement's label to its
+	 * next label. The edges are created once and reused until the block is modified.
+	 */
+	public List<CFAEdge> getStatementEdges() {
+		List<CFAEdge> edges = statementEdges;
+		if (edges == null || statementEdgesModCount != modCount) {
+			CFAEdge[] edgeArray = new CFAEdge[size()];
+			int i = 0;
+			for (RTLStatement stmt : this)
+				edgeArray[i++] = new CFAEdge(stmt.getLabel(), stmt.getNextLabel(), stmt);
+			edges = Collections.unmodifiableList(Arrays.asList(edgeArray));
+			statementEdgesModCount = modCount;
+			statementEdges = edges;
+		}
+		return edges;
+	}
 
 	public boolean containsLocation(RTLLabel l) {
 		for (RTLStatement stmt : this)
@@ -19,6 +19,7 @@ package org.jakstab.ssl;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jakstab.Options;
 import org.jakstab.util.Logger;
@@ -92,6 +93,9 @@ public class Architecture {
 	}
 
 	
+	// Version of the snapshot contents written by writeSnapshot
+	private static final int SNAPSHOT_VERSION = 1;
+
 	private File specFile;
 	private Map<String, SSLInstruction> instructions;
 	private Map<String, List<SSLInstruction>> instrGroups;
@@ -104,6 +108,14 @@ public class Architecture {
 	private final MagicInstructions magicInstructions;
 
 	private SetOfVariables registers;
+	
+	// Translations of instruction shapes with placeholders, null for shapes that cannot be cached.
+	// Shared by all programs analyzed with this architecture, so it is synchronized.
+	private final Map<InstructionShape, CachedTranslation> translationCache;
+	private final AtomicInteger translationCacheHits = new AtomicInteger();
+	private final AtomicInteger translationCacheMisses = new AtomicInteger();
+	// The first instances of each cached shape are checked against the direct translation
+	static final int VERIFIED_INSTANCES = 8;
 
 	/**
 	 * Parses an SSL specification from a given filename and converts the RTL 
@@ -115,6 +127,7 @@ public class Architecture {
 
 		parseSSL(fileName);
 		magicInstructions = new MagicInstructions();
+		translationCache = Collections.synchronizedMap(new HashMap<InstructionShape, CachedTranslation>());
 		
 		stackPointer = ExpressionFactory.createVariable("%esp", 32);
 		framePointer = ExpressionFactory.createVariable("%ebp", 32);
@@ -337,15 +350,174 @@ public class Architecture {
 	 * The instruction is looked up in the library and the RTL template is instantiated
 	 * with the instruction's parameters.
 	 * 
+	 * Translations are cached by the shape of the instruction, so instructions that 
+	 * only differ in immediate values and their address are only translated once.
+	 * The cached translation is then relabeled and its placeholders are replaced by 
+	 * the actual values. Only shapes whose placeholders do not influence the 
+	 * simplification are cached. The first instances of each cached shape are 
+	 * compared to the direct translation, and shapes that fail the check are no 
+	 * longer cached.
+	 * 
 	 * @param address the address of the instruction
 	 * @param instr the assembly instruction to be translated to RTL
 	 * @return a sequence of RTL statements that match the instruction's behavior 
 	 */
 	public StatementSequence getRTLEquivalent(AbsoluteAddress address, Instruction instr) {
+		InstructionShape shape = Options.noRtlCache.getValue() ? null : InstructionShape.create(instr);
+		if (shape == null)
+			return translate(address, instr, null);
+
+		CachedTranslation generic = translationCache.get(shape);
+		if (generic == null) {
+			translationCacheMisses.incrementAndGet();
+			StatementSequence instrRTL = translate(address, instr, null);
+			if (!translationCache.containsKey(shape)) {
+				// Only cache the translation with placeholders if it yields the same 
+				// result as the direct translation. 
+				StatementSequence genericRTL = translate(address, instr, shape);
+				if (genericRTL != null && shape.isValueIndependent(genericRTL)) {
+					generic = new CachedTranslation(genericRTL, shape);
+					if (!sameTranslation(instantiate(generic, shape, address, instr), instrRTL))
+						generic = null;
+				}
+				translationCache.put(shape, generic);
+			}
+			return instrRTL;
+		}
+		
+		StatementSequence instrRTL = instantiate(generic, shape, address, instr);
+		if (instrRTL == null) {
+			// Instantiation simplified away some statements, the direct translation
+			// may be labeled differently.
+			translationCacheMisses.incrementAndGet();
+			return translate(address, instr, null);
+		}
+		if (generic.verified.get() < VERIFIED_INSTANCES) {
+			StatementSequence directRTL = translate(address, instr, null);
+			if (!sameTranslation(instrRTL, directRTL)) {
+				logger.error("Cached translation of " + shape + " differs at " + address + 
+						", no longer caching this shape: " + instrRTL);
+				translationCache.put(shape, null);
+				translationCacheMisses.incrementAndGet();
+				return directRTL;
+			}
+			generic.verified.incrementAndGet();
+		}
+		translationCacheHits.incrementAndGet();
+		return instrRTL;
+	}
+	
+	public int getTranslationCacheHits() {
+		return translationCacheHits.get();
+	}
+	
+	public int getTranslationCacheMisses() {
+		return translationCacheMisses.get();
+	}
+	
+	/**
+	 * Discards all cached translations, e.g., to release memory.
+	 * 
+	 * @return the number of translations discarded
+	 */
+	public int clearTranslationCache() {
+		synchronized (translationCache) {
+			int size = translationCache.size();
+			translationCache.clear();
+			return size;
+		}
+	}
+	
+	/**
+	 * A translation with placeholders, which remembers the statements that use 
+	 * placeholders, as only those need to be evaluated again when instantiating.
+	 */
+	private static final class CachedTranslation {
+		final StatementSequence statements;
+		final boolean[] usesHoles;
+		final AbsoluteAddress address;
+		// Number of instances that were checked against the direct translation
+		final AtomicInteger verified = new AtomicInteger();
+		
+		CachedTranslation(StatementSequence statements, InstructionShape shape) {
+			this.statements = statements;
+			usesHoles = new boolean[statements.getLength()];
+			int i = 0;
+			for (RTLStatement stmt : statements) {
+				for (RTLVariable v : stmt.getUsedVariables())
+					if (shape.isHole(v)) usesHoles[i] = true;
+				i++;
+			}
+			address = statements.getFirst().getAddress();
+		}
+	}
+	
+	/**
+	 * Instantiates a cached translation for an instruction of the given shape.
+	 *  
+	 * @return the instantiated statements, or null if the instantiation did not 
+	 * preserve the structure of the cached translation. 
+	 */
+	private StatementSequence instantiate(CachedTranslation generic, InstructionShape shape, 
+			AbsoluteAddress address, Instruction instr) {
+		AbsoluteAddress fallThroughAddress = new AbsoluteAddress(address.getValue() + instr.getSize());
+		Context holeValues = null;
+		StatementSequence instrRTL = new StatementSequence();
+		int i = 0;
+		for (RTLStatement genericStmt : generic.statements) {
+			RTLStatement stmt = genericStmt.copy();
+			// Relabel before evaluation, so the evaluated statement carries the new labels
+			stmt.setLabel(address, stmt.getLabel().getIndex());
+			RTLLabel next = stmt.getNextLabel();
+			if (next.getAddress().equals(generic.address))
+				stmt.setNextLabel(new RTLLabel(address, next.getIndex()));
+			else
+				stmt.setNextLabel(new RTLLabel(fallThroughAddress, next.getIndex()));
+			if (generic.usesHoles[i++]) {
+				if (holeValues == null)
+					holeValues = shape.getHoleAssignments(instr, getPCValue(address, instr));
+				stmt = stmt.evaluate(holeValues);
+				if (stmt == null) 
+					return null;
+			}
+			instrRTL.addLast(stmt);
+		}
+		return instrRTL;
+	}
+	
+	private static boolean sameTranslation(StatementSequence a, StatementSequence b) {
+		if (a == null || b == null || a.getLength() != b.getLength())
+			return false;
+		Iterator<RTLStatement> it = b.iterator();
+		for (RTLStatement stmt : a) {
+			RTLStatement other = it.next();
+			if (!stmt.equals(other) || !stmt.getNextLabel().equals(other.getNextLabel()) ||
+					!stmt.toString().equals(other.toString()))
+				return false;
+		}
+		return true;
+	}
+	
+	private static long getPCValue(AbsoluteAddress address, Instruction instr) {
+		/* The PC value in the RTL is that of the next instruction in Intel assembly */
+		long pcValue = address.getValue(); 
+		if (instr instanceof X86Instruction) pcValue += instr.getSize();
+		return pcValue;
+	}
+
+	/**
+	 * Translates an instruction by instantiating its RTL template. If a shape
+	 * is given, its placeholders are used instead of the values of immediate 
+	 * operands and the program counter.
+	 */
+	private StatementSequence translate(AbsoluteAddress address, Instruction instr, InstructionShape shape) {
 
 		StatementSequence rtlTemplate = null;
 
 		SSLInstruction sslInstr = matchInstruction(instr);
+		// Do not cache unknown instructions, so they are reported at every address
+		if (sslInstr == null && shape != null)
+			return null;
 		if (sslInstr == null) {
 			logger.warn(address + ": No equivalent SSL instruction found for: " + instr.getName());
 		} else {
@@ -373,15 +545,19 @@ public class Architecture {
 		 * This fixes the problem with an implicit EAX operand. Might not work on other
 		 * architectures than x86! */
 		if (sslInstr != null) for (int i=0; i<sslInstr.getParameterCount(); i++) {
-			Operand iOp = excessAsmOps ? instr.getOperand(i+1) : instr.getOperand(i);
-			RTLExpression opAsExpr = ExpressionFactory.createOperand(iOp);
+			int opIndex = excessAsmOps ? i+1 : i;
+			RTLExpression opAsExpr = shape != null ? shape.getHole(opIndex) : null;
+			if (opAsExpr == null)
+				opAsExpr = ExpressionFactory.createOperand(instr.getOperand(opIndex));
 			instrParamContext.substitute(sslInstr.getParameter(i), opAsExpr);
 		}
 
 		/* Assign PC - the PC value in the RTL is that of the next instruction in Intel assembly */
-		long pcValue = address.getValue(); 
-		if (instr instanceof X86Instruction) pcValue += instr.getSize();
-		instrParamContext.addAssignment(ExpressionFactory.pc, ExpressionFactory.createNumber(pcValue, ExpressionFactory.pc.getBitWidth()));
+		long pcValue = getPCValue(address, instr);
+		if (shape != null)
+			instrParamContext.addAssignment(ExpressionFactory.pc, shape.getPCHole());
+		else
+			instrParamContext.addAssignment(ExpressionFactory.pc, ExpressionFactory.createNumber(pcValue, ExpressionFactory.pc.getBitWidth()));
 
 		if (rtlTemplate == null) {
 			logger.debug("Null RTL body for instruction: " + instr.getName());
@@ -415,6 +591,10 @@ public class Architecture {
 			for (RTLStatement s : instrRTL)
 				s.inferTypes(this);
 		} catch (TypeInferenceException e) {
+			// Numbers can adapt their bit width during type inference, but placeholders 
+			// cannot, so the instruction cannot be translated with placeholders.
+			if (shape != null)
+				return null;
 			e.printStackTrace();
 			logger.error("Instruction: " + instr.toString(pcValue, DummySymbolFinder.getInstance()));
 			logger.error("RTL: " + instrRTL);
@@ -437,6 +617,31 @@ public class Architecture {
 	
 	public void parseSSL(String fileName) throws FileNotFoundException, ANTLRException {
 		specFile = new File(fileName);
+
+		SSLSnapshot snapshot = null;
+		if (!Options.noSSLSnapshots.getValue()) {
+			snapshot = new SSLSnapshot(specFile, SNAPSHOT_VERSION);
+			RTLInputStream in = snapshot.read();
+			if (in != null) {
+				try {
+					readSnapshot(in);
+					logger.info("Loaded machine specification from snapshot of " + specFile.getName() + ".");
+					return;
+				} catch (IOException e) {
+					logger.warn("Failed to read snapshot of " + specFile.getName() + ": " + e.getMessage());
+					// Variables may be partially recreated, so do not write a new snapshot
+					snapshot = null;
+				} finally {
+					try {
+						in.close();
+					} catch (IOException e) {
+						// Ignore
+					}
+				}
+			}
+		}
+		int firstVariable = ExpressionFactory.getVariableCount();
+
 		logger.info("Reading machine specification from " + specFile.getName() + ".");
 
 		SSLLexer lex = new SSLLexer(new FileInputStream(specFile));
@@ -530,6 +735,88 @@ public class Architecture {
 				instrGroups.get(parts[0]).add(instr);
 		}
 		logger.debug("-- Suffix map has " + instrGroups.size() + " unique instructions.");
+
+		if (snapshot != null) {
+			RTLOutputStream out = null;
+			try {
+				out = snapshot.beginWrite(firstVariable);
+				writeSnapshot(out);
+				snapshot.endWrite(out);
+			} catch (IOException e) {
+				logger.debug("Could not write snapshot of " + specFile.getName() + ": " + e.getMessage());
+				if (out != null)
+					snapshot.abortWrite(out);
+			}
+		}
+	}
+
+	/**
+	 * Writes registers and instruction groups to an SSL snapshot.
+	 */
+	private void writeSnapshot(RTLOutputStream out) throws IOException {
+		out.writeInt(registers.size());
+		for (RTLVariable v : registers)
+			out.writeExpression(v);
+
+		out.writeInt(instrGroups.size());
+		for (Map.Entry<String, List<SSLInstruction>> entry : instrGroups.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (SSLInstruction instr : entry.getValue()) {
+				out.writeUTF(instr.getName());
+				out.writeInt(instr.getParameterCount());
+				for (int i = 0; i < instr.getParameterCount(); i++)
+					out.writeUTF(instr.getParameter(i).getName());
+				StatementSequence body = instr.getBody();
+				if (body == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(body.getLength());
+					for (RTLStatement stmt : body)
+						out.writeStatement(stmt);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads registers and instruction groups from an SSL snapshot.
+	 */
+	private void readSnapshot(RTLInputStream in) throws IOException {
+		registers = new SetOfVariables();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++)
+			registers.add((RTLVariable)in.readExpression());
+
+		instructions = new TreeMap<String, SSLInstruction>();
+		instrGroups = new TreeMap<String, List<SSLInstruction>>();
+		int groupCount = in.readInt();
+		for (int g = 0; g < groupCount; g++) {
+			String group = in.readUTF();
+			List<SSLInstruction> instrList = new LinkedList<SSLInstruction>();
+			count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				String[] parameters = null;
+				int parameterCount = in.readInt();
+				if (parameterCount > 0) {
+					parameters = new String[parameterCount];
+					for (int j = 0; j < parameterCount; j++)
+						parameters[j] = in.readUTF();
+				}
+				StatementSequence body = null;
+				int length = in.readInt();
+				if (length >= 0) {
+					body = new StatementSequence();
+					for (int j = 0; j < length; j++)
+						body.addLast(in.readStatement());
+				}
+				SSLInstruction instr = new SSLInstruction(name, parameters, body);
+				instructions.put(name, instr);
+				instrList.add(instr);
+			}
+			instrGroups.put(group, instrList);
+		}
 	}
 
 }
@@ -0,0 +1,236 @@
+/*
+ * InstructionShape.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.ssl;
+
+import java.util.Arrays;
+
+import org.jakstab.asm.*;
+import org.jakstab.asm.x86.X86Instruction;
+import org.jakstab.rtl.Context;
+import org.jakstab.rtl.expressions.*;
+import org.jakstab.rtl.statements.*;
+import org.jakstab.util.Logger;
+
+/**
+ * The shape of an assembly instruction: its name, prefixes, and operands, where
+ * immediates, relative addresses, and the program counter are replaced by
+ * placeholder variables ("holes"). Instructions of the same shape translate to
+ * the same RTL up to the values of the holes, so shapes serve as keys for
+ * caching translations. Holes are named with a '#' prefix, which cannot
+ * occur in names from the SSL specification.
+ *
+ * Immediates -1, 0, and 1 are kept as part of the shape, as the simplifier
+ * treats them specially and may remove statements depending on them. Holes
+ * in positions where the simplifier makes decisions based on their value
+ * (conditions, shift amounts, bit indices) make the shape value-dependent,
+ * see {@link #isValueIndependent(StatementSequence)}.
+ */
+final class InstructionShape {
+
+	@SuppressWarnings("unused")
+	private static final Logger logger = Logger.getLogger(InstructionShape.class);
+
+	private static final RTLVariable pcHole = ExpressionFactory.createVariable(
+			"#hole_pc", ExpressionFactory.pc.getBitWidth());
+
+	private final String name;
+	private final int prefixes;
+	private final Object[] operands;
+	private final RTLVariable[] holes;
+	private final int hashCode;
+
+	/**
+	 * Returns the shape of an instruction, or null if the instruction has
+	 * operands that cannot be part of a shape.
+	 */
+	static InstructionShape create(Instruction instr) {
+		if (!(instr instanceof X86Instruction))
+			return null;
+		X86Instruction x86instr = (X86Instruction)instr;
+		int prefixes = (x86instr.hasPrefixLOCK() ? 1 : 0) |
+				(x86instr.hasPrefixREPZ() ? 2 : 0) |
+				(x86instr.hasPrefixREPNZ() ? 4 : 0);
+
+		Object[] operands = new Object[instr.getOperandCount()];
+		RTLVariable[] holes = new RTLVariable[operands.length];
+		for (int i = 0; i < operands.length; i++) {
+			Operand op = instr.getOperand(i);
+			if (op instanceof Immediate) {
+				Immediate imm = (Immediate)op;
+				RTLNumber value = (RTLNumber)ExpressionFactory.createOperand(imm);
+				long v = value.longValue();
+				if (v >= -1 && v <= 1) {
+					operands[i] = "i" + imm.getDataType().bits() + ":" + value.getBitWidth() + "=" + v;
+				} else {
+					operands[i] = "i" + imm.getDataType().bits() + ":" + value.getBitWidth();
+					holes[i] = createHole(i, value.getBitWidth());
+				}
+			} else if (op instanceof PCRelativeAddress) {
+				int bitWidth = ((PCRelativeAddress)op).getBitWidth();
+				operands[i] = "r" + bitWidth;
+				holes[i] = createHole(i, bitWidth);
+			} else if (op instanceof Register || op instanceof AbsoluteAddress) {
+				operands[i] = op;
+			} else if (op instanceof MemoryOperand) {
+				operands[i] = ExpressionFactory.createOperand(op);
+			} else {
+				return null;
+			}
+		}
+		return new InstructionShape(instr.getName(), prefixes, operands, holes);
+	}
+
+	private static RTLVariable createHole(int index, int bitWidth) {
+		return ExpressionFactory.createVariable("#hole" + bitWidth + "_" + index, bitWidth);
+	}
+
+	private InstructionShape(String name, int prefixes, Object[] operands, RTLVariable[] holes) {
+		this.name = name;
+		this.prefixes = prefixes;
+		this.operands = operands;
+		this.holes = holes;
+		this.hashCode = 31 * (31 * name.hashCode() + prefixes) + Arrays.hashCode(operands);
+	}
+
+	/**
+	 * Returns the placeholder variable for the given operand, or null if the
+	 * operand is part of the shape.
+	 */
+	RTLVariable getHole(int operandIndex) {
+		return holes[operandIndex];
+	}
+
+	RTLVariable getPCHole() {
+		return pcHole;
+	}
+
+	/**
+	 * Checks whether the given variable is a placeholder of this shape.
+	 */
+	boolean isHole(RTLVariable v) {
+		if (v == pcHole) return true;
+		for (RTLVariable hole : holes)
+			if (v == hole) return true;
+		return false;
+	}
+
+	/**
+	 * Creates a context that assigns the values of the given instruction of
+	 * this shape to the holes.
+	 *
+	 * @param pcValue the value of the program counter for the instruction
+	 */
+	Context getHoleAssignments(Instruction instr, long pcValue) {
+		Context context = new Context();
+		for (int i = 0; i < holes.length; i++)
+			if (holes[i] != null)
+				context.addAssignment(holes[i], ExpressionFactory.createOperand(instr.getOperand(i)));
+		context.addAssignment(pcHole, ExpressionFactory.createNumber(pcValue, pcHole.getBitWidth()));
+		return context;
+	}
+
+	/**
+	 * Checks whether the given translation with placeholders of this shape
+	 * uses the placeholders only as operands of expressions that simplify
+	 * the same way for any value, i.e., in addresses, assignment values, and
+	 * jump targets, combined with bitwise, arithmetic, and comparison operators
+	 * or as the shifted operand of a shift. Holes in conditions, bit indices,
+	 * shift amounts, or any other position make the translation dependent on
+	 * the actual values, so it must not be cached.
+	 */
+	boolean isValueIndependent(StatementSequence seq) {
+		for (RTLStatement stmt : seq) {
+			if (stmt instanceof RTLVariableAssignment) {
+				if (!isValueIndependent(((RTLVariableAssignment)stmt).getRightHandSide()))
+					return false;
+			} else if (stmt instanceof RTLMemoryAssignment) {
+				RTLMemoryAssignment a = (RTLMemoryAssignment)stmt;
+				if (!isValueIndependent(a.getLeftHandSide()) || !isValueIndependent(a.getRightHandSide()))
+					return false;
+			} else if (stmt instanceof RTLGoto) {
+				RTLGoto g = (RTLGoto)stmt;
+				if (!isValueIndependent(g.getTargetExpression()) || usesHole(g.getCondition()))
+					return false;
+			} else {
+				for (RTLVariable v : stmt.getUsedVariables())
+					if (isHole(v)) return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isValueIndependent(RTLExpression e) {
+		if (e == null || e instanceof RTLNumber || e instanceof RTLVariable)
+			return true;
+		if (e instanceof RTLMemoryLocation)
+			return isValueIndependent(((RTLMemoryLocation)e).getAddress());
+		if (e instanceof RTLBitRange) {
+			RTLBitRange r = (RTLBitRange)e;
+			return isValueIndependent(r.getOperand()) &&
+					!usesHole(r.getFirstBitIndex()) && !usesHole(r.getLastBitIndex());
+		}
+		if (e instanceof RTLConditionalExpression) {
+			RTLConditionalExpression c = (RTLConditionalExpression)e;
+			return !usesHole(c.getCondition()) &&
+					isValueIndependent(c.getTrueExpression()) && isValueIndependent(c.getFalseExpression());
+		}
+		if (e instanceof RTLOperation) {
+			RTLOperation op = (RTLOperation)e;
+			RTLExpression[] operands = op.getOperands();
+			switch (op.getOperator()) {
+			case AND: case OR: case XOR: case PLUS: case MUL: case NOT: case NEG:
+			case EQUAL: case LESS: case LESS_OR_EQUAL: case UNSIGNED_LESS: case UNSIGNED_LESS_OR_EQUAL:
+				for (int i = 0; i < op.getOperandCount(); i++)
+					if (!isValueIndependent(operands[i])) return false;
+				return true;
+			case SHR: case SAR: case SHL: case ROL: case ROR:
+				for (int i = 1; i < op.getOperandCount(); i++)
+					if (usesHole(operands[i])) return false;
+				return isValueIndependent(operands[0]);
+			default:
+				break;
+			}
+		}
+		return !usesHole(e);
+	}
+
+	private boolean usesHole(RTLExpression e) {
+		if (e == null) return false;
+		for (RTLVariable v : e.getUsedVariables())
+			if (isHole(v)) return true;
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof InstructionShape)) return false;
+		InstructionShape other = (InstructionShape)obj;
+		return hashCode == other.hashCode && prefixes == other.prefixes &&
+				name.equals(other.name) && Arrays.equals(operands, other.operands);
+	}
+
+	@Override
+	public String toString() {
+		return name + Arrays.toString(operands);
+	}
+}
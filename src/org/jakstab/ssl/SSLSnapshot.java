@@ -0,0 +1,205 @@
+/*
+ * SSLSnapshot.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.ssl;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.jakstab.Main;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLBitRange;
+import org.jakstab.rtl.expressions.RTLNumber;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.util.Logger;
+
+/**
+ * A precompiled form of a parsed SSL file, stored next to it with the suffix
+ * ".snapshot". A snapshot is only read if it was written by the same version
+ * of Jakstab from an SSL file with the same contents, so editing the SSL file
+ * invalidates it. The versions of the snapshot header, of the RTL encoding,
+ * and of the contents written by the user of this class also have to match,
+ * so format changes invalidate snapshots even without a new Jakstab version.
+ * 
+ * The snapshot starts with the variables that were created while parsing, in
+ * order of creation and including shared register definitions. Reading the
+ * snapshot recreates them first, so variables get the same indices as when
+ * parsing. The rest of the snapshot is written and read by the user of this
+ * class.
+ */
+public class SSLSnapshot {
+
+	private static final Logger logger = Logger.getLogger(SSLSnapshot.class);
+
+	private static final int MAGIC = 0x4a4b5353; // "JKSS"
+	private static final int FORMAT_VERSION = 2;
+
+	private final File specFile;
+	private final File snapshotFile;
+	private final int contentVersion;
+	private File tmpFile;
+
+	/**
+	 * @param specFile the SSL file
+	 * @param contentVersion the version of the format of the contents that
+	 * follow the variables in the snapshot
+	 */
+	public SSLSnapshot(File specFile, int contentVersion) {
+		this.specFile = specFile;
+		this.snapshotFile = new File(specFile.getPath() + ".snapshot");
+		this.contentVersion = contentVersion;
+	}
+
+	private byte[] hashSpecFile() throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage());
+		}
+		InputStream in = new FileInputStream(specFile);
+		try {
+			byte[] buffer = new byte[65536];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				digest.update(buffer, 0, n);
+		} finally {
+			in.close();
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Opens the snapshot for reading and recreates the variables stored in it.
+	 * 
+	 * @return a stream positioned after the variables, or null if there is no
+	 * valid snapshot for the SSL file.
+	 */
+	public RTLInputStream read() {
+		if (!snapshotFile.isFile())
+			return null;
+		RTLInputStream in = null;
+		try {
+			in = new RTLInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+			byte[] hash = new byte[32];
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || 
+					in.readInt() != RTLOutputStream.FORMAT_VERSION || in.readInt() != contentVersion ||
+					!in.readUTF().equals(Main.version))
+				throw new IOException("Snapshot is from a different version");
+			in.readFully(hash);
+			if (!Arrays.equals(hash, hashSpecFile()))
+				throw new IOException(specFile.getName() + " has changed");
+
+			int count = in.readInt();
+			String[] parents = new String[count];
+			int[] fromBits = new int[count];
+			int[] toBits = new int[count];
+			String[] names = new String[count];
+			for (int i = 0; i < count; i++) {
+				names[i] = in.readUTF();
+				ExpressionFactory.createVariable(names[i], in.readInt());
+				if (in.readBoolean()) {
+					parents[i] = in.readUTF();
+					fromBits[i] = in.readInt();
+					toBits[i] = in.readInt();
+				}
+			}
+			// Shared registers are defined after all variables exist
+			for (int i = 0; i < count; i++)
+				if (parents[i] != null)
+					ExpressionFactory.createSharedRegisterVariable(names[i], parents[i], fromBits[i], toBits[i]);
+			return in;
+		} catch (IOException e) {
+			logger.debug("Not using snapshot of " + specFile.getName() + ": " + e.getMessage());
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e1) {
+					// Ignore
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Starts writing a new snapshot to a temporary file, beginning with the 
+	 * variables created since the given variable count. The snapshot only 
+	 * replaces an existing one when calling {@link #endWrite(RTLOutputStream)}.
+	 * 
+	 * @param firstVariable the variable count before parsing the SSL file
+	 */
+	public RTLOutputStream beginWrite(int firstVariable) throws IOException {
+		byte[] hash = hashSpecFile();
+		tmpFile = File.createTempFile(specFile.getName(), ".tmp", snapshotFile.getAbsoluteFile().getParentFile());
+		RTLOutputStream out = new RTLOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(RTLOutputStream.FORMAT_VERSION);
+		out.writeInt(contentVersion);
+		out.writeUTF(Main.version);
+		out.write(hash);
+
+		int count = ExpressionFactory.getVariableCount();
+		out.writeInt(count - firstVariable);
+		for (int i = firstVariable; i < count; i++) {
+			RTLVariable v = ExpressionFactory.getVariable(i);
+			out.writeUTF(v.getName());
+			out.writeInt(v.getBitWidth());
+			RTLBitRange asParent = ExpressionFactory.getRegisterAsParent(v);
+			out.writeBoolean(asParent != null);
+			if (asParent != null) {
+				out.writeUTF(((RTLVariable)asParent.getOperand()).getName());
+				out.writeInt(((RTLNumber)asParent.getFirstBitIndex()).intValue());
+				out.writeInt(((RTLNumber)asParent.getLastBitIndex()).intValue());
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Closes the stream returned by {@link #beginWrite(int)} and replaces any
+	 * existing snapshot with the new one.
+	 */
+	public void endWrite(RTLOutputStream out) throws IOException {
+		out.close();
+		if (!tmpFile.renameTo(snapshotFile)) {
+			snapshotFile.delete();
+			if (!tmpFile.renameTo(snapshotFile)) {
+				tmpFile.delete();
+				throw new IOException("Cannot rename " + tmpFile + " to " + snapshotFile);
+			}
+		}
+		logger.verbose("Wrote snapshot of " + specFile.getName() + ".");
+	}
+
+	/**
+	 * Closes the stream returned by {@link #beginWrite(int)} and discards the
+	 * new snapshot.
+	 */
+	public void abortWrite(RTLOutputStream out) {
+		try {
+			out.close();
+		} catch (IOException e) {
+			// Ignore
+		}
+		tmpFile.delete();
+	}
+}
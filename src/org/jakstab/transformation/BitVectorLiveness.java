@@ -0,0 +1,451 @@
+/*
+ * BitVectorLiveness.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.transformation;
+
+import java.util.*;
+
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.Location;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.expressions.SetOfVariables;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.rtl.statements.RTLUnknownProcedureCall;
+
+/**
+ * Live variable analysis on a CFA of single statements, which supports 
+ * removing edges and re-solving only the part of the CFA affected by the 
+ * removal. 
+ * 
+ * Locations and edges are numbered densely, and sets of live variables are 
+ * bit vectors indexed by variable index and stored in a single array. The 
+ * GEN and KILL sets of each edge are computed once, including registers 
+ * covering used registers and registers covered by defined registers, and 
+ * are shared between edges with equal sets.
+ */
+final class BitVectorLiveness {
+
+	private final int words;
+	private final long[] liveInSinks;
+
+	private final Location[] locations;
+	private final Map<Location, Integer> locationIds;
+	// Live variables at each location, words consecutive words per location
+	private final long[] live;
+	private final int[][] inEdges;
+	private final int[] inCount;
+	private final int[][] outEdges;
+	private final int[] outCount;
+
+	// Removed edges are set to null
+	private final CFAEdge[] edges;
+	private final int[] source;
+	private final int[] target;
+	private final long[][] gen;
+	private final long[][] kill;
+
+	// Locations whose outgoing edges changed since the last solve 
+	private int[] changed;
+	private int changedCount;
+	// Locations of the current region are marked with the current stamp
+	private final int[] mark;
+	private int stamp;
+	private final int[] region;
+	private int regionSize;
+	// Locations in the work list, all false between solves
+	private final boolean[] queued;
+	private volatile boolean stop = false;
+	
+	/**
+	 * Creates the analysis for the given CFA. Edges of the CFA are modified in
+	 * place when edges are removed.
+	 * 
+	 * @param cfa the edges of the CFA, all of which must have RTLStatements as transformers 
+	 * @param liveInSinks the variables live at locations without outgoing edges
+	 * @param registers the variables possibly used by unknown procedure calls
+	 */
+	BitVectorLiveness(Collection<CFAEdge> cfa, SetOfVariables liveInSinks, SetOfVariables registers) {
+		words = (ExpressionFactory.getVariableCount() + 63) >>> 6;
+		this.liveInSinks = toBits(liveInSinks);
+		long[] registerBits = toBits(registers);
+
+		// Number locations and edges
+		locationIds = new HashMap<Location, Integer>();
+		List<Location> locationList = new ArrayList<Location>();
+		edges = cfa.toArray(new CFAEdge[cfa.size()]);
+		source = new int[edges.length];
+		target = new int[edges.length];
+		for (int e = 0; e < edges.length; e++) {
+			source[e] = locationId(edges[e].getSource(), locationList);
+			target[e] = locationId(edges[e].getTarget(), locationList);
+		}
+		locations = locationList.toArray(new Location[locationList.size()]);
+		int n = locations.length;
+
+		inCount = new int[n];
+		outCount = new int[n];
+		for (int e = 0; e < edges.length; e++) {
+			inCount[target[e]]++;
+			outCount[source[e]]++;
+		}
+		inEdges = new int[n][];
+		outEdges = new int[n][];
+		for (int l = 0; l < n; l++) {
+			inEdges[l] = new int[inCount[l]];
+			outEdges[l] = new int[outCount[l]];
+			inCount[l] = 0;
+			outCount[l] = 0;
+		}
+		for (int e = 0; e < edges.length; e++) {
+			inEdges[target[e]][inCount[target[e]]++] = e;
+			outEdges[source[e]][outCount[source[e]]++] = e;
+		}
+
+		// Compute GEN and KILL sets
+		gen = new long[edges.length][];
+		kill = new long[edges.length][];
+		Map<BitVector, long[]> sharedSets = new HashMap<BitVector, long[]>();
+		for (int e = 0; e < edges.length; e++) {
+			RTLStatement stmt = (RTLStatement)edges[e].getTransformer();
+			long[] k = new long[words];
+			for (RTLVariable v : stmt.getDefinedVariables()) {
+				set(k, v);
+				// Also kill al for eax etc.
+				for (RTLVariable covered : ExpressionFactory.coveredRegisters(v))
+					set(k, covered);
+			}
+			long[] g = new long[words];
+			for (RTLVariable v : stmt.getUsedVariables()) {
+				set(g, v);
+				// Also use eax for al etc.
+				for (RTLVariable covering : ExpressionFactory.coveringRegisters(v))
+					set(g, covering);
+			}
+			// Registers might be used inside an unknown procedure call
+			if (stmt instanceof RTLUnknownProcedureCall) {
+				for (int w = 0; w < words; w++)
+					g[w] |= registerBits[w];
+			}
+			gen[e] = share(g, sharedSets);
+			kill[e] = share(k, sharedSets);
+		}
+
+		live = new long[n * words];
+		mark = new int[n];
+		region = new int[n];
+		queued = new boolean[n];
+		changed = new int[16];
+	}
+
+	private int locationId(Location l, List<Location> locationList) {
+		Integer id = locationIds.get(l);
+		if (id == null) {
+			id = locationList.size();
+			locationIds.put(l, id);
+			locationList.add(l);
+		}
+		return id;
+	}
+
+	private long[] toBits(SetOfVariables vars) {
+		long[] bits = new long[words];
+		for (RTLVariable v : vars)
+			set(bits, v);
+		return bits;
+	}
+
+	private static void set(long[] bits, RTLVariable v) {
+		bits[v.getIndex() >>> 6] |= 1L << v.getIndex();
+	}
+
+	private static long[] share(long[] bits, Map<BitVector, long[]> sharedSets) {
+		BitVector key = new BitVector(bits);
+		long[] shared = sharedSets.get(key);
+		if (shared == null) {
+			sharedSets.put(key, bits);
+			shared = bits;
+		}
+		return shared;
+	}
+
+	/**
+	 * Wraps a bit vector to compare it by contents.
+	 */
+	private static final class BitVector {
+		private final long[] bits;
+		private final int hashCode;
+
+		BitVector(long[] bits) {
+			this.bits = bits;
+			hashCode = Arrays.hashCode(bits);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof BitVector && Arrays.equals(bits, ((BitVector)obj).bits);
+		}
+	}
+
+	int getEdgeCount() {
+		return edges.length;
+	}
+
+	/**
+	 * Returns the edge with the given number, or null if it has been removed.
+	 */
+	CFAEdge getEdge(int e) {
+		return edges[e];
+	}
+
+	/**
+	 * Returns the number of edges leaving the source of an edge.
+	 */
+	int getSourceOutDegree(int e) {
+		return outCount[source[e]];
+	}
+
+	/**
+	 * Checks whether a variable is live at the target of an edge. 
+	 */
+	boolean isLiveAtTarget(int e, RTLVariable v) {
+		int i = v.getIndex();
+		return (live[target[e] * words + (i >>> 6)] & (1L << i)) != 0;
+	}
+
+	/**
+	 * Solves liveness for the whole CFA.
+	 * 
+	 * @return the number of locations in the solved region
+	 */
+	int solve() {
+		stamp++;
+		regionSize = 0;
+		for (int l = 0; l < locations.length; l++) {
+			if (inCount[l] > 0 || outCount[l] > 0) {
+				mark[l] = stamp;
+				region[regionSize++] = l;
+			}
+		}
+		changedCount = 0;
+		return solveRegion();
+	}
+
+	/**
+	 * Solves liveness again for all locations that can reach a location whose
+	 * outgoing edges changed since the last solve. Liveness at all other 
+	 * locations cannot have changed.
+	 * 
+	 * @return the number of locations in the solved region
+	 */
+	int resolve() {
+		stamp++;
+		regionSize = 0;
+		for (int i = 0; i < changedCount; i++) {
+			int l = changed[i];
+			if (mark[l] != stamp && (inCount[l] > 0 || outCount[l] > 0)) {
+				mark[l] = stamp;
+				region[regionSize++] = l;
+			}
+		}
+		changedCount = 0;
+		// Backward closure
+		for (int i = 0; i < regionSize; i++) {
+			int l = region[i];
+			for (int j = 0; j < inCount[l]; j++) {
+				int pred = source[inEdges[l][j]];
+				if (mark[pred] != stamp) {
+					mark[pred] = stamp;
+					region[regionSize++] = pred;
+				}
+			}
+		}
+		return solveRegion();
+	}
+
+	/**
+	 * Computes the least fixpoint for the locations in the region, starting 
+	 * from empty sets (or the live variables at sinks).
+	 */
+	private int solveRegion() {
+		// Reset the region
+		for (int i = 0; i < regionSize; i++) {
+			int l = region[i];
+			int base = l * words;
+			for (int w = 0; w < words; w++)
+				live[base + w] = outCount[l] == 0 ? liveInSinks[w] : 0L;
+		}
+
+		// Work list of locations to update, as a ring buffer over the region. 
+		// Start in postorder, so locations usually come after their successors.
+		int[] queue = postorder();
+		int head = 0;
+		int size = queue.length;
+		for (int l : queue)
+			queued[l] = true;
+
+		while (size > 0 && !stop) {
+			int l = queue[head];
+			head = (head + 1) % queue.length;
+			size--;
+			queued[l] = false;
+
+			// live(l) = union over outgoing edges of GEN(e) + (live(target) - KILL(e))
+			int base = l * words;
+			boolean grown = false;
+			for (int j = 0; j < outCount[l]; j++) {
+				int e = outEdges[l][j];
+				long[] g = gen[e];
+				long[] k = kill[e];
+				int targetBase = target[e] * words;
+				for (int w = 0; w < words; w++) {
+					long bits = g[w] | (live[targetBase + w] & ~k[w]);
+					if ((bits & ~live[base + w]) != 0) {
+						live[base + w] |= bits;
+						grown = true;
+					}
+				}
+			}
+			if (grown) {
+				for (int j = 0; j < inCount[l]; j++) {
+					// Predecessors are in the region, as it is closed under predecessors
+					int pred = source[inEdges[l][j]];
+					if (!queued[pred]) {
+						queue[(head + size) % queue.length] = pred;
+						size++;
+						queued[pred] = true;
+					}
+				}
+			}
+		}
+		return regionSize;
+	}
+
+	/**
+	 * Returns the locations with outgoing edges in the current region, in 
+	 * postorder of a depth first search along outgoing edges. 
+	 */
+	private int[] postorder() {
+		int[] order = new int[regionSize];
+		int count = 0;
+		int[] stack = new int[regionSize];
+		int[] position = new int[regionSize];
+		// Visited locations are marked with the negated stamp
+		for (int i = 0; i < regionSize; i++) {
+			int root = region[i];
+			if (mark[root] != stamp || outCount[root] == 0)
+				continue;
+			mark[root] = -stamp;
+			int depth = 0;
+			stack[0] = root;
+			position[0] = 0;
+			while (depth >= 0) {
+				int l = stack[depth];
+				if (position[depth] < outCount[l]) {
+					int succ = target[outEdges[l][position[depth]++]];
+					if (mark[succ] == stamp && outCount[succ] > 0) {
+						mark[succ] = -stamp;
+						depth++;
+						stack[depth] = succ;
+						position[depth] = 0;
+					}
+				} else {
+					order[count++] = l;
+					depth--;
+				}
+			}
+		}
+		// Restore the marks of the region
+		for (int i = 0; i < count; i++)
+			mark[order[i]] = stamp;
+		return Arrays.copyOf(order, count);
+	}
+
+	/**
+	 * Makes the current and all later solves return immediately, leaving
+	 * liveness incomplete.
+	 */
+	void stop() {
+		stop = true;
+	}
+
+	/**
+	 * Returns the number of locations in the region solved last.
+	 */
+	int getRegionSize() {
+		return regionSize;
+	}
+
+	/**
+	 * Returns the edges leaving the location with the given index in the 
+	 * region solved last. These are all edges whose target's liveness or whose 
+	 * source's outgoing edges may have changed.
+	 */
+	int[] getRegionOutEdges(int i) {
+		int l = region[i];
+		return Arrays.copyOf(outEdges[l], outCount[l]);
+	}
+
+	/**
+	 * Removes an edge and redirects all edges into its source to its target.
+	 * For a self-loop, the remaining edges into its location stay as they are.
+	 */
+	void removeEdge(int e) {
+		int s = source[e];
+		int t = target[e];
+		remove(outEdges[s], outCount, s, e);
+		remove(inEdges[t], inCount, t, e);
+		edges[e] = null;
+		addChanged(s);
+		if (s == t)
+			return;
+
+		while (inCount[s] > 0) {
+			int inEdge = inEdges[s][--inCount[s]];
+			edges[inEdge].setTarget(locations[t]);
+			target[inEdge] = t;
+			addIn(t, inEdge);
+			addChanged(source[inEdge]);
+		}
+	}
+
+	private static void remove(int[] list, int[] count, int l, int e) {
+		for (int i = 0; i < count[l]; i++) {
+			if (list[i] == e) {
+				list[i] = list[--count[l]];
+				return;
+			}
+		}
+		throw new IllegalStateException("Edge not found");
+	}
+
+	private void addIn(int l, int e) {
+		if (inCount[l] == inEdges[l].length)
+			inEdges[l] = Arrays.copyOf(inEdges[l], Math.max(4, 2 * inCount[l]));
+		inEdges[l][inCount[l]++] = e;
+	}
+
+	private void addChanged(int l) {
+		if (changedCount == changed.length)
+			changed = Arrays.copyOf(changed, 2 * changedCount);
+		changed[changedCount++] = l;
+	}
+}
@@ -22,17 +22,12 @@ import java.util.*;
 
 import org.jakstab.Program;
 import org.jakstab.cfa.CFAEdge;
-import org.jakstab.cfa.Location;
 import org.jakstab.cfa.StateTransformer;
 import org.jakstab.rtl.expressions.*;
 import org.jakstab.rtl.statements.*;
 import org.jakstab.util.Characters;
-import org.jakstab.util.FastSet;
 import org.jakstab.util.Logger;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
-
 /**
  * @author Johannes Kinder
  */
@@ -40,15 +35,13 @@ public class DeadCodeElimination implements CFATransformation {
 
 	private final static Logger logger = Logger.getLogger(DeadCodeElimination.class);
 
-	private Map<Location,SetOfVariables> liveVars;
+	private BitVectorLiveness liveness;
 	private SetOfVariables liveInSinks;
 	private Set<CFAEdge> cfa;
 	private Program program;
 	private long removalCount;
 	private boolean enableJumpThreading;
 	private volatile boolean stop = false;
-	private SetMultimap<Location, CFAEdge> inEdges;
-	private SetMultimap<Location, CFAEdge> outEdges;
 	
 	public Set<CFAEdge> getCFA() {
 		return cfa;
@@ -69,12 +62,13 @@ public class DeadCodeElimination implements CFATransformation {
 		
 	}
 
-	private boolean isDeadEdge(CFAEdge edge) {
+	private boolean isDeadEdge(int e) {
+		CFAEdge edge = liveness.getEdge(e);
 		StateTransformer t = edge.getTransformer();
 		if (t instanceof RTLVariableAssignment) {
 			RTLVariableAssignment a = (RTLVariableAssignment)edge.getTransformer();
 			RTLVariable lhs = a.getLeftHandSide();
-			if (!liveVars.get(edge.getTarget()).contains(lhs))
+			if (!liveness.isLiveAtTarget(e, lhs))
 				return true;
 		} else if (enableJumpThreading) {
 			// Don't remove assumes when doing procedure detection!
@@ -85,7 +79,7 @@ public class DeadCodeElimination implements CFATransformation {
 				//	return true;
 				//}
 				// Remove jumps that have just one target
-				if (outEdges.get(edge.getSource()).size() == 1) {
+				if (liveness.getSourceOutDegree(e) == 1) {
 					switch (a.getSource().getType()) {
 					case CALL: case RETURN:
 						return false;
@@ -114,123 +108,59 @@ public class DeadCodeElimination implements CFATransformation {
 		logger.infoString("Eliminating dead code");
 		long startTime = System.currentTimeMillis();
 
+		liveness = new BitVectorLiveness(cfa, liveInSinks, program.getArchitecture().getRegisters());
 
 		removalCount = 0;
 		long oldRemovalCount = 0;
 		int iterations = 0;
+		long solvedLocations = 0;
 		
 		// Outer fixpoint iteration for doing liveness + DCE as long as possible 
 		do {
 			logger.infoString(".");
 
-			// Reset and init liveness data
-			liveVars = new HashMap<Location, SetOfVariables>();
-			FastSet<Location> worklist = new FastSet<Location>();
-
-			// Reset and init in and out edge sets
-			inEdges = HashMultimap.create();
-			outEdges = HashMultimap.create();
-			for (CFAEdge e : cfa) {
-				inEdges.put(e.getTarget(), e);
-				outEdges.put(e.getSource(), e);
-			}
-
-			for (CFAEdge e : cfa) {
-				// Initialize all to bot / empty set
-				if (!liveVars.containsKey(e.getSource())) {
-					liveVars.put(e.getSource(), new SetOfVariables());
-					// There might be infinite loops where no sink is reachable, so we 
-					// just add all nodes to the work list here as a poor man's solution
-					worklist.add(e.getSource());
-				}
-			}
-
-			for (Location l : inEdges.keySet()) {
-				if (outEdges.get(l).size() == 0) {
-					// Sinks havn't been initialized yet
-					liveVars.put(l, new SetOfVariables(liveInSinks));
-					
-					// Initialize work list with sinks.
-					worklist.add(l);
+			// Only edges leaving the solved region can have become dead, as
+			// liveness at their targets or the edges of their sources changed
+			int[] candidates;
+			if (iterations == 0) {
+				solvedLocations += liveness.solve();
+				candidates = new int[liveness.getEdgeCount()];
+				for (int e = 0; e < candidates.length; e++)
+					candidates[e] = e;
+			} else {
+				solvedLocations += liveness.resolve();
+				int count = 0;
+				candidates = new int[16];
+				for (int i = 0; i < liveness.getRegionSize(); i++) {
+					for (int e : liveness.getRegionOutEdges(i)) {
+						if (count == candidates.length)
+							candidates = Arrays.copyOf(candidates, 2 * count);
+						candidates[count++] = e;
+					}
 				}
+				candidates = Arrays.copyOf(candidates, count);
 			}
 			
 			oldRemovalCount = removalCount;
 			iterations++;
-
-			while (!worklist.isEmpty() && !stop) {
-
-				Location node = worklist.pick();
-				SetOfVariables sLVout = liveVars.get(node);
-				
-				for (CFAEdge inEdge : inEdges.get(node)) {
-					RTLStatement stmt = (RTLStatement)inEdge.getTransformer();
-					// start by copying LVout -> LVin
-					SetOfVariables sLVin = new SetOfVariables(sLVout);
-
-					//// Remove KILL(s) from sLVin
-					sLVin.removeAll(stmt.getDefinedVariables());
-					
-					// Remove also al for eax etc.
-					for (RTLVariable v : stmt.getDefinedVariables()) {
-						sLVin.removeAll(ExpressionFactory.coveredRegisters(v));
-					}
-
-					//// Add GEN(s) to sLVin
-					sLVin.addAll(stmt.getUsedVariables());
-					
-					// Add also eax for al, etc.
-					for (RTLVariable v : stmt.getUsedVariables()) {
-						sLVin.addAll(ExpressionFactory.coveringRegisters(v));
-					}
-					
-					// Registers might be used inside an unknown procedure call
-					if (inEdge.getTransformer() instanceof RTLUnknownProcedureCall) {
-						sLVin.addAll(program.getArchitecture().getRegisters());
-					}
-					
-					SetOfVariables predLVOut = liveVars.get(inEdge.getSource());
-					if (predLVOut == null) {
-						logger.error("No LV out for inEdge " + inEdge + " for node " + node);
-						logger.error("In CFA: " + cfa.contains(inEdge));
-						logger.error("Containskey: " + liveVars.containsKey(inEdge.getSource()));
-					}
-
-					SetOfVariables newPredLVout = new SetOfVariables(predLVOut);
-					newPredLVout.addAll(sLVin);
-					if (!newPredLVout.equals(predLVOut)) {
-						liveVars.put(inEdge.getSource(), newPredLVout);
-						worklist.add(inEdge.getSource());
-					}
-
-				}
+			if (stop)
+				break;
+
+			int deadCount = 0;
+			int[] deadEdges = new int[candidates.length];
+			for (int e : candidates) {
+				if (liveness.getEdge(e) != null && isDeadEdge(e))
+					deadEdges[deadCount++] = e;
 			}
-
-			Set<CFAEdge> deadEdges = new FastSet<CFAEdge>();
-			for (CFAEdge edge : cfa) {
-				if (isDeadEdge(edge)) {
-					deadEdges.add(edge);
-				}
-			}			
 			
 			// Delete the dead edges
-			for (CFAEdge deadEdge : deadEdges) {
+			for (int i = 0; i < deadCount; i++) {
+				int deadEdge = deadEdges[i];
 				// Check that source only has this one outedge
-				if (outEdges.get(deadEdge.getSource()).size() <= 1) {
-					inEdges.remove(deadEdge.getTarget(), deadEdge);
-					outEdges.remove(deadEdge.getSource(), deadEdge);
-					cfa.remove(deadEdge);
+				if (liveness.getSourceOutDegree(deadEdge) <= 1) {
+					cfa.remove(liveness.getEdge(deadEdge));
 					// Make all edges pointing to the source of the edge point to it's target
-					Set<CFAEdge> edgesToDeadSource = new FastSet<CFAEdge>(inEdges.get(deadEdge.getSource()));
-					for (CFAEdge inEdge : edgesToDeadSource) {
-						inEdges.remove(deadEdge.getSource(), inEdge);
-						inEdge.setTarget(deadEdge.getTarget());
-						inEdges.put(inEdge.getTarget(), inEdge);
-						
-					}
-					/*if (deadEdge.getSource().equals(program.getStart())) {
-						program.setStart(deadEdge.getTarget().getLabel());
-					}*/
+					liveness.removeEdge(deadEdge);
 					removalCount++;
 				}
 			}
@@ -241,7 +171,8 @@ public class DeadCodeElimination implements CFATransformation {
 		
 		long endTime = System.currentTimeMillis();
 		logger.verbose("Removed " + removalCount + " edges, finished after " + 
-				(endTime - startTime) + "ms and " + iterations + " iterations.");
+				(endTime - startTime) + "ms and " + iterations + " iterations, solving liveness for " + 
+				solvedLocations + " locations.");
 
 		//program.setCFA(cfa);
 	}
@@ -250,6 +181,8 @@ public class DeadCodeElimination implements CFATransformation {
 		logger.fatal("");
 		logger.fatal(Characters.starredBox("Interrupt! Stopping Dead Code Elimination!"));
 		stop = true;
+		if (liveness != null)
+			liveness.stop();
 	}
 
 }
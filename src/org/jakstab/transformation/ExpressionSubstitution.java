@@ -121,6 +121,7 @@ public class ExpressionSubstitution implements CFATransformation {
 			SubstitutionState s = (SubstitutionState)exprSubstStates.where(edge.getSource()).iterator().next();
 			substituteCFAEdge(edge, s);
 		}
+		cpaAlgo.getReachedStates().release();
 		
 		long endTime = System.currentTimeMillis();
 		logger.verbose("Finished after " + (endTime - startTime) + "ms.");
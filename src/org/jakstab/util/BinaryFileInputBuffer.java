@@ -21,7 +21,7 @@ package org.jakstab.util;
 /**
  * @author Johannes Kinder
  */
-public class BinaryFileInputBuffer extends BinaryInputBuffer {
+public class BinaryFileInputBuffer extends WritableInputBuffer {
 
 	private byte[] data;
 	private int size;
@@ -54,6 +54,11 @@ public class BinaryFileInputBuffer extends BinaryInputBuffer {
 		return data[fp];
 	}
 
+	@Override
+	public void putByteAt(int fp, byte value) {
+		data[fp] = value;
+	}
+
 	@Override
 	public long getSize() {
 		return size;
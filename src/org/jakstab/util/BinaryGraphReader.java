@@ -0,0 +1,137 @@
+/*
+ * BinaryGraphReader.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads graphs written by {@link BinaryGraphWriter} and replays them to a 
+ * graph writer, e.g., to convert them to GraphViz or graphML files. 
+ * Compressed files are detected automatically.
+ */
+public class BinaryGraphReader {
+
+	private final DataInputStream in;
+	private final List<String> stringTable;
+
+	public BinaryGraphReader(InputStream in) throws IOException {
+		in = new BufferedInputStream(in, GraphFiles.BUFFER_SIZE);
+		// Check for the gzip magic number
+		in.mark(2);
+		int b1 = in.read();
+		int b2 = in.read();
+		in.reset();
+		if (b1 == 0x1f && b2 == 0x8b)
+			in = new BufferedInputStream(new GZIPInputStream(in, GraphFiles.BUFFER_SIZE), GraphFiles.BUFFER_SIZE);
+		this.in = new DataInputStream(in);
+		stringTable = new ArrayList<String>();
+	}
+
+	/**
+	 * Reads the graph in the given file and writes it to a graph writer. 
+	 * The writer is not closed.
+	 */
+	public static void read(String filename, GraphWriter out) throws IOException {
+		BinaryGraphReader reader = new BinaryGraphReader(new FileInputStream(filename));
+		try {
+			reader.read(out);
+		} finally {
+			reader.in.close();
+		}
+	}
+
+	/**
+	 * Reads the graph and writes it to a graph writer.
+	 */
+	public void read(GraphWriter out) throws IOException {
+		if (in.readInt() != BinaryGraphWriter.MAGIC)
+			throw new IOException("Not a binary graph file!");
+		int version = in.readUnsignedByte();
+		if (version != BinaryGraphWriter.VERSION)
+			throw new IOException("Unsupported binary graph version " + version);
+
+		while (true) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+			case BinaryGraphWriter.END:
+				return;
+			case BinaryGraphWriter.NODE: {
+				String id = readRef();
+				String body = readString();
+				int numProperties = readVarInt();
+				Map<String, String> properties = null;
+				if (numProperties > 0) {
+					properties = new HashMap<String, String>();
+					for (int i = 0; i < numProperties; i++)
+						properties.put(readRef(), readRef());
+				}
+				out.writeNode(id, body, properties);
+				break;
+			}
+			case BinaryGraphWriter.EDGE: {
+				String source = readRef();
+				String target = readRef();
+				String label = readString();
+				int rgb = in.readInt();
+				int flags = in.readUnsignedByte();
+				out.writeEdge(source, target, label.isEmpty() ? null : label, 
+						rgb < 0 ? null : new Color(rgb), 
+						(flags & BinaryGraphWriter.WEAK_EDGE) != 0);
+				break;
+			}
+			default:
+				throw new IOException("Invalid record type " + tag + " in binary graph file");
+			}
+		}
+	}
+
+	private String readRef() throws IOException {
+		int ref = readVarInt();
+		if (ref > 0)
+			return stringTable.get(ref - 1);
+		String s = readString();
+		stringTable.add(s);
+		return s;
+	}
+
+	private String readString() throws IOException {
+		byte[] bytes = new byte[readVarInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private int readVarInt() throws IOException {
+		int v = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("Malformed varint in binary graph file");
+	}
+}
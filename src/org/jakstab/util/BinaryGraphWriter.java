@@ -0,0 +1,155 @@
+/*
+ * BinaryGraphWriter.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.awt.Color;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes graphs in a compact binary format that can be loaded quickly by 
+ * {@link BinaryGraphReader}. The file starts with the magic number and a 
+ * version byte, followed by records that each start with a tag byte:
+ * 
+ * <pre>
+ * NODE: ref id, string body, varint #properties, (ref key, ref value)*
+ * EDGE: ref source, ref target, string label, int color (RGB or -1), byte flags
+ * END
+ * </pre>
+ * 
+ * Strings are the varint length of their UTF-8 encoding followed by the 
+ * bytes. Node ids and property keys and values are stored in a string table 
+ * that is built while writing: a ref is either 0 followed by a string, which 
+ * becomes the next table entry, or the index of an existing entry plus 1.
+ * All varints are unsigned LEB128.
+ */
+public class BinaryGraphWriter implements GraphWriter {
+
+	@SuppressWarnings("unused")
+	private final static Logger logger = Logger.getLogger(BinaryGraphWriter.class);
+
+	static final int MAGIC = 0x4A4B4752;
+	static final int VERSION = 1;
+
+	static final int END = 0;
+	static final int NODE = 1;
+	static final int EDGE = 2;
+
+	static final int WEAK_EDGE = 1;
+
+	private final DataOutputStream out;
+	private final String filename;
+	private final Map<String, Integer> stringTable;
+
+	public BinaryGraphWriter(String filename) throws IOException {
+		this.filename = GraphFiles.getFilename(filename + ".jgr");
+		out = new DataOutputStream(GraphFiles.openStream(this.filename));
+		stringTable = new HashMap<String, Integer>();
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.writeByte(END);
+		out.close();
+	}
+
+	@Override
+	public void writeNode(String id, String body) throws IOException {
+		writeNode(id, body, null);
+	}
+
+	@Override
+	public void writeNode(String id, String body, Map<String, String> properties) throws IOException {
+		out.writeByte(NODE);
+		writeRef(id);
+		writeString(body);
+		if (properties == null) {
+			writeVarInt(0);
+		} else {
+			writeVarInt(properties.size());
+			for (Map.Entry<String, String> property : properties.entrySet()) {
+				writeRef(property.getKey());
+				writeRef(property.getValue());
+			}
+		}
+	}
+
+	@Override
+	public void writeEdge(String id1, String id2) throws IOException {
+		writeEdge(id1, id2, null, null, false);
+	}
+
+	@Override
+	public void writeEdge(String id1, String id2, Color color) throws IOException {
+		writeEdge(id1, id2, null, color, false);
+	}
+
+	@Override
+	public void writeEdge(String id1, String id2, String label) throws IOException {
+		writeEdge(id1, id2, label, null, false);
+	}
+
+	@Override
+	public void writeEdge(String id1, String id2, String label, Color color) throws IOException {
+		writeEdge(id1, id2, label, color, false);
+	}
+
+	@Override
+	public void writeEdge(String id1, String id2, String label, Color color, 
+			boolean weakEdge) throws IOException {
+		out.writeByte(EDGE);
+		writeRef(id1);
+		writeRef(id2);
+		writeString(label == null ? "" : label);
+		out.writeInt(color == null ? -1 : color.getRGB() & 0xFFFFFF);
+		out.writeByte(weakEdge ? WEAK_EDGE : 0);
+	}
+
+	@Override
+	public String getFilename() {
+		return filename;
+	}
+
+	private void writeRef(String s) throws IOException {
+		Integer index = stringTable.get(s);
+		if (index != null) {
+			writeVarInt(index + 1);
+		} else {
+			stringTable.put(s, stringTable.size());
+			writeVarInt(0);
+			writeString(s);
+		}
+	}
+
+	private void writeString(String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		writeVarInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private void writeVarInt(int v) throws IOException {
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+}
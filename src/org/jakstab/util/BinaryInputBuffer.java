@@ -141,6 +141,62 @@ public abstract class BinaryInputBuffer {
 	 */
 	public abstract byte getByteAt(int fp);
 
+	/**
+	 * Reads a signed 2-byte integer without changing the file pointer.
+	 * 
+	 * @param fp Address to read from
+	 * @return a signed short value
+	 */
+	public short getShortAt(int fp) {
+		return (short)((getByteAt(fp) & 0xFF) | (getByteAt(fp + 1) << 8));
+	}
+
+	/**
+	 * Reads a signed 4-byte integer without changing the file pointer.
+	 * 
+	 * @param fp Address to read from
+	 * @return a signed int value
+	 */
+	public int getIntAt(int fp) {
+		return (getShortAt(fp) & 0xFFFF) | (getShortAt(fp + 2) << 16);
+	}
+
+	/**
+	 * Reads a signed 8-byte integer without changing the file pointer.
+	 * 
+	 * @param fp Address to read from
+	 * @return a signed long value
+	 */
+	public long getLongAt(int fp) {
+		return (getIntAt(fp) & 0xFFFFFFFFL) | ((long)getIntAt(fp + 4) << 32);
+	}
+
+	/**
+	 * Reads a signed integer of the given number of bytes without changing 
+	 * the file pointer. Since no file pointer is involved, this can be used 
+	 * by multiple threads at once.
+	 * 
+	 * @param fp Address to read from
+	 * @param bytes the size of the integer in bytes
+	 * @return the sign extended value
+	 */
+	public long getValueAt(int fp, int bytes) {
+		switch (bytes) {
+		case 1: return getByteAt(fp);
+		case 2: return getShortAt(fp);
+		case 4: return getIntAt(fp);
+		case 8: return getLongAt(fp);
+		default:
+			long val = 0;
+			// OR together the least significant bytes 
+			for (int i=0; i<bytes - 1; i++) {
+				val = val | (getByteAt(fp + i) & 0xFFL) << (i*8);
+			}
+			// do not mask the MSB with 0xFF, so we get sign extension for free
+			return val | (((long)getByteAt(fp + bytes - 1)) << (bytes - 1) * 8);
+		}
+	}
+
 		/**
 	 *  Reads an unsigned 2-byte integer from the file, returned in the lower 2 bytes of an int
 	 * Advances the file pointer by 2.
@@ -19,6 +19,7 @@
 package org.jakstab.util;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.Serializable;
 
 /**
@@ -33,9 +34,10 @@ public class FastSet<E> extends AbstractSet<E> implements Set<E>, Serializable,
 	private static final long serialVersionUID = -7387536630587627888L;
 	private static final int SMALL_CAPACITY = 15;
 	private static final int LARGE_CAPACITY = 100;
-	private static int conversions = 0;
+	/** Counts conversions of all sets in the VM, including concurrent batch analyses */
+	private static final AtomicInteger conversions = new AtomicInteger();
 	
-	public static int getConversionCount() { return conversions; }
+	public static int getConversionCount() { return conversions.get(); }
 	
 	private int capacity;
 	private Collection<E> collection;
@@ -110,7 +112,7 @@ public class FastSet<E> extends AbstractSet<E> implements Set<E>, Serializable,
 			newCollection.addAll(collection);
 			collection = newCollection;
 			capacity = LARGE_CAPACITY;
-			conversions++;
+			conversions.incrementAndGet();
 		}
 
 		// Returns whether the set already contains e
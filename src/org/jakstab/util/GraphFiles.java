@@ -0,0 +1,58 @@
+/*
+ * GraphFiles.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import org.jakstab.Options;
+
+/**
+ * Opens the output files of graph writers. Output is buffered and, if 
+ * configured on the command line, gzip compressed.
+ */
+final class GraphFiles {
+
+	static final int BUFFER_SIZE = 1 << 16;
+
+	private GraphFiles() {}
+
+	/**
+	 * Returns the name of the file that is actually written for the given 
+	 * file name, i.e., with the suffix .gz appended for compressed output.
+	 */
+	static String getFilename(String filename) {
+		return Options.compressGraphs.getValue() ? filename + ".gz" : filename;
+	}
+
+	static OutputStream openStream(String filename) throws IOException {
+		OutputStream out = new FileOutputStream(filename);
+		if (filename.endsWith(".gz"))
+			out = new GZIPOutputStream(out, BUFFER_SIZE);
+		return new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	static Writer openWriter(String filename) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(openStream(filename), "UTF-8"), BUFFER_SIZE);
+	}
+}
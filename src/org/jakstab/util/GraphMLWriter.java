@@ -20,9 +20,8 @@
 package org.jakstab.util;
 
 import java.awt.Color;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -36,12 +35,12 @@ public class GraphMLWriter implements GraphWriter {
 	@SuppressWarnings("unused")
 	private final static Logger logger = Logger.getLogger(GraphMLWriter.class);
 
-	private final OutputStreamWriter out;
+	private final Writer out;
 	private String filename;
 
 	public GraphMLWriter(String filename) throws IOException {
-		this.filename = filename + ".graphml";
-		out = new OutputStreamWriter(new FileOutputStream(this.filename));
+		this.filename = GraphFiles.getFilename(filename + ".graphml");
+		out = GraphFiles.openWriter(this.filename);
 		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
 		out.write("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns/graphml\" " +
 				"xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" " +
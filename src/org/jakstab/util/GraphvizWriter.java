@@ -19,11 +19,9 @@
 package org.jakstab.util;
 
 import java.awt.Color;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.jakstab.Main;
@@ -38,18 +36,18 @@ public class GraphvizWriter implements GraphWriter {
 	@SuppressWarnings("unused")
 	private final static Logger logger = Logger.getLogger(GraphvizWriter.class);
 
-	private final OutputStreamWriter out;
+	private final Writer out;
 	private String filename;
 
 	public GraphvizWriter(String filename) throws IOException {
-		this.filename = filename + ".dot";
-		out = new OutputStreamWriter(new FileOutputStream(this.filename));
+		this.filename = GraphFiles.getFilename(filename + ".dot");
+		out = GraphFiles.openWriter(this.filename);
 		out.write("digraph ");
 		out.write("G");
 		out.write(" {\n");
 		out.write("node[shape=rectangle,style=filled,fillcolor=lightsteelblue,color=lightsteelblue]\n");
 		out.write("bgcolor=\"transparent\"\n");
-		out.write("graph [label=\"Jakstab v" + Main.version + "   " + (new Date()) + "\\n" + Options.arguments + "\", labelloc=t, fontsize=35, pad=30]");
+		out.write("graph [label=\"Jakstab v" + Main.version + "   " + (new Date()) + "\\n" + Options.arguments + "\", labelloc=t, fontsize=35, pad=30]\n");
 
 	}
 
@@ -66,9 +64,9 @@ public class GraphvizWriter implements GraphWriter {
 	
 	@Override
 	public final void writeNode(String id, String body, Map<String,String> properties) throws IOException { 
-		out.write(toIdentifier(id));
+		writeIdentifier(id);
 		out.write("[label=\"");
-		out.write(body.replace("\n", "\\n"));
+		writeLabel(body);
 		out.write("\"");
 		if (properties != null && properties.size() > 0) {
 			for (Map.Entry<String, String> property : properties.entrySet()) {
@@ -84,12 +82,12 @@ public class GraphvizWriter implements GraphWriter {
 
 	@Override
 	public final void writeEdge(String id1, String id2) throws IOException {
-		writeEdge(id1, id2, (Map<String, String>)null);
+		writeEdge(id1, id2, null, null, false);
 	}
 	
 	@Override
 	public void writeEdge(String id1, String id2, Color color) throws IOException {
-		writeEdge(id1, id2, null, null);
+		writeEdge(id1, id2, null, color, false);
 	}
 
 	@Override
@@ -105,45 +103,53 @@ public class GraphvizWriter implements GraphWriter {
 	@Override
 	public void writeEdge(String id1, String id2, String label, Color color,
 			boolean weakEdge) throws IOException {
-		Map<String,String> map = new HashMap<String, String>();
-		if (label != null && !label.isEmpty()) {
-			map.put("label", label.replace("\n", "\\n"));
-		}
-		if (color != null) {
-			map.put("color", colorConvert(color));
-		}
-		if (weakEdge) {
-			map.put("constraint", "false");
-			map.put("style", "dashed");
-			map.put("splines", "false");
-		}
-		writeEdge(id1, id2, map);
-		
-	}
-
-	private final void writeEdge(String id1, String id2, Map<String,String> properties) throws IOException { 
-		out.write(toIdentifier(id1));
+		writeIdentifier(id1);
 		out.write(" -> ");
-		out.write(toIdentifier(id2));
-		if (properties != null && properties.size() > 0) {
-			out.write(" [");
-			boolean first = true;
-			for (Map.Entry<String, String> property : properties.entrySet()) {
-				if (first) first = false;
-				else out.write(",");
-				out.write(property.getKey());
-				out.write("=\"");
-				out.write(property.getValue());
-				out.write("\"");
+		writeIdentifier(id2);
+		boolean hasLabel = label != null && !label.isEmpty();
+		if (hasLabel || color != null || weakEdge) {
+			// Properties are written directly instead of collecting them in a map first
+			char separator = '[';
+			out.write(' ');
+			if (color != null) {
+				out.write(separator);
+				out.write("color=\"");
+				out.write(colorConvert(color));
+				out.write('"');
+				separator = ',';
+			}
+			if (hasLabel) {
+				out.write(separator);
+				out.write("label=\"");
+				writeLabel(label);
+				out.write('"');
+				separator = ',';
+			}
+			if (weakEdge) {
+				out.write(separator);
+				out.write("constraint=\"false\",style=\"dashed\",splines=\"false\"");
 			}
-			out.write("]");
+			out.write(']');
 		}
 		out.write(";\n");
 	}
 
-	private static final String toIdentifier(String id) {
-		id = id.replace("\"", "\\\"");
-		return "\"" + id + "\"";
+	private void writeIdentifier(String id) throws IOException {
+		out.write('"');
+		for (int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			if (c == '"') out.write('\\');
+			out.write(c);
+		}
+		out.write('"');
+	}
+
+	private void writeLabel(String label) throws IOException {
+		for (int i = 0; i < label.length(); i++) {
+			char c = label.charAt(i);
+			if (c == '\n') out.write("\\n");
+			else out.write(c);
+		}
 	}
 
 	@Override
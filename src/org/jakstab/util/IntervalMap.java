@@ -0,0 +1,415 @@
+/*
+ * IntervalMap.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.util.Arrays;
+
+/**
+ * Maps disjoint half-open intervals [start, end) of long keys to values. Behaves
+ * like a map from every single key inside an interval to the interval's value, but
+ * stores each interval only once, in sorted primitive arrays. Putting or removing
+ * a range cuts overlapping intervals, keeping the parts outside of the range.
+ *
+ * The intervals are split into immutable blocks of bounded size. Copies share
+ * their blocks, and a modification only replaces the blocks it affects, so
+ * copies of large maps stay cheap to modify and to compare.
+ */
+public final class IntervalMap<V> {
+
+	@SuppressWarnings("unused")
+	private static final Logger logger = Logger.getLogger(IntervalMap.class);
+
+	private static final int BLOCK_SIZE = 32;
+	private static final Block[] EMPTY_BLOCKS = new Block[0];
+	private static final int[] EMPTY_INDICES = new int[0];
+
+	/**
+	 * An immutable, sorted run of intervals.
+	 */
+	private static final class Block {
+		final long[] starts;
+		final long[] ends;
+		final Object[] values;
+
+		private Block(long[] starts, long[] ends, Object[] values) {
+			this.starts = starts;
+			this.ends = ends;
+			this.values = values;
+		}
+
+		int size() {
+			return starts.length;
+		}
+
+		long firstStart() {
+			return starts[0];
+		}
+
+		long lastEnd() {
+			return ends[ends.length - 1];
+		}
+
+		/**
+		 * Returns the index of the first interval that ends after the given key.
+		 */
+		int firstEndingAfter(long key) {
+			int lo = 0, hi = starts.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (ends[mid] <= key) lo = mid + 1;
+				else hi = mid;
+			}
+			return lo;
+		}
+	}
+
+	private Block[] blocks;
+	// Index of the first interval of each block
+	private int[] firstIndex;
+	private int blockCount;
+	private int size;
+	private boolean shared;
+	private int hashCode;
+
+	public IntervalMap() {
+		blocks = EMPTY_BLOCKS;
+		firstIndex = EMPTY_INDICES;
+		blockCount = 0;
+		size = 0;
+		shared = false;
+	}
+
+	/**
+	 * Creates a copy of the given map. Both maps share their data until one is modified.
+	 */
+	public IntervalMap(IntervalMap<V> proto) {
+		blocks = proto.blocks;
+		firstIndex = proto.firstIndex;
+		blockCount = proto.blockCount;
+		size = proto.size;
+		hashCode = proto.hashCode;
+		shared = true;
+		proto.shared = true;
+	}
+
+	/**
+	 * Returns the index of the first block that ends after the given key.
+	 */
+	private int blockEndingAfter(long key) {
+		int lo = 0, hi = blockCount;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (blocks[mid].lastEnd() <= key) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the index of the first block that starts at or after the given key.
+	 */
+	private int blockStartingFrom(long key) {
+		int lo = 0, hi = blockCount;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (blocks[mid].firstStart() < key) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the index of the block containing the interval with the given index.
+	 */
+	private int blockOf(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		int lo = 0, hi = blockCount - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (firstIndex[mid] <= index) lo = mid;
+			else hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the value of the interval containing the given key, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int b = blockEndingAfter(key);
+		if (b >= blockCount) return null;
+		Block block = blocks[b];
+		int i = block.firstEndingAfter(key);
+		if (block.starts[i] <= key)
+			return (V)block.values[i];
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		int b = blockEndingAfter(key);
+		if (b >= blockCount) return false;
+		Block block = blocks[b];
+		return block.starts[block.firstEndingAfter(key)] <= key;
+	}
+
+	/**
+	 * Maps all keys from start (inclusive) to end (exclusive) to the given value.
+	 */
+	public void put(long start, long end, V value) {
+		assert start < end;
+		replace(start, end, true, value);
+	}
+
+	/**
+	 * Removes all keys from start (inclusive) to end (exclusive).
+	 *
+	 * @return true if the map was modified.
+	 */
+	public boolean remove(long start, long end) {
+		if (start >= end) return false;
+		int b = blockEndingAfter(start);
+		if (b >= blockCount) return false;
+		Block block = blocks[b];
+		if (block.starts[block.firstEndingAfter(start)] >= end) return false;
+		replace(start, end, false, null);
+		return true;
+	}
+
+	/**
+	 * Replaces the intervals overlapping [start, end) by their remainders outside
+	 * of [start, end) and optionally inserts a new interval for [start, end). Only
+	 * the blocks overlapping the range are rebuilt.
+	 */
+	private void replace(long start, long end, boolean insert, Object value) {
+		hashCode = 0;
+		// Range of affected blocks
+		int lo = blockEndingAfter(start);
+		int hi = blockStartingFrom(end) - 1;
+		if (lo > hi) {
+			if (!insert) return;
+			// The new interval falls between two blocks, add it to one of them
+			if (blockCount == 0) {
+				lo = 0;
+				hi = -1;
+			} else {
+				lo = hi = Math.min(lo, blockCount - 1);
+			}
+		}
+
+		// Collect the intervals of the affected blocks
+		int count = 0;
+		for (int b = lo; b <= hi; b++)
+			count += blocks[b].size();
+		int capacity = count + 2;
+		long[] starts = new long[capacity];
+		long[] ends = new long[capacity];
+		Object[] values = new Object[capacity];
+		int n = 0;
+		boolean inserted = false;
+		for (int b = lo; b <= hi; b++) {
+			Block block = blocks[b];
+			for (int i = 0; i < block.size(); i++) {
+				long s = block.starts[i];
+				long e = block.ends[i];
+				if (e <= start || s >= end) {
+					// Not overlapping
+					if (insert && !inserted && s >= end) {
+						starts[n] = start; ends[n] = end; values[n] = value; n++;
+						inserted = true;
+					}
+					starts[n] = s; ends[n] = e; values[n] = block.values[i]; n++;
+					continue;
+				}
+				if (s < start) {
+					starts[n] = s; ends[n] = start; values[n] = block.values[i]; n++;
+				}
+				if (insert && !inserted) {
+					starts[n] = start; ends[n] = end; values[n] = value; n++;
+					inserted = true;
+				}
+				if (e > end) {
+					starts[n] = end; ends[n] = e; values[n] = block.values[i]; n++;
+				}
+			}
+		}
+		if (insert && !inserted) {
+			starts[n] = start; ends[n] = end; values[n] = value; n++;
+		}
+
+		// Split the intervals into new blocks
+		int newBlockCount;
+		if (n == 0) newBlockCount = 0;
+		else if (n <= BLOCK_SIZE) newBlockCount = 1;
+		// Leave room in split blocks, so the next insertion does not split again
+		else newBlockCount = (n + BLOCK_SIZE / 2 - 1) / (BLOCK_SIZE / 2);
+		int oldBlockCount = hi - lo + 1;
+		int totalBlocks = blockCount - oldBlockCount + newBlockCount;
+		if (shared || totalBlocks > blocks.length) {
+			Block[] newBlocks = new Block[Math.max(totalBlocks, blockCount)];
+			int[] newFirstIndex = new int[newBlocks.length];
+			System.arraycopy(blocks, 0, newBlocks, 0, lo);
+			System.arraycopy(firstIndex, 0, newFirstIndex, 0, lo);
+			System.arraycopy(blocks, hi + 1, newBlocks, lo + newBlockCount, blockCount - hi - 1);
+			blocks = newBlocks;
+			firstIndex = newFirstIndex;
+			shared = false;
+		} else {
+			System.arraycopy(blocks, hi + 1, blocks, lo + newBlockCount, blockCount - hi - 1);
+			for (int b = totalBlocks; b < blockCount; b++)
+				blocks[b] = null;
+		}
+		int from = 0;
+		for (int k = 0; k < newBlockCount; k++) {
+			int to = (int)((long)n * (k + 1) / newBlockCount);
+			blocks[lo + k] = new Block(Arrays.copyOfRange(starts, from, to),
+					Arrays.copyOfRange(ends, from, to), Arrays.copyOfRange(values, from, to));
+			from = to;
+		}
+		blockCount = totalBlocks;
+
+		// Update the interval indices of all following blocks
+		int index = lo > 0 ? firstIndex[lo - 1] + blocks[lo - 1].size() : 0;
+		for (int b = lo; b < blockCount; b++) {
+			firstIndex[b] = index;
+			index += blocks[b].size();
+		}
+		size = index;
+	}
+
+	public void clear() {
+		blocks = EMPTY_BLOCKS;
+		firstIndex = EMPTY_INDICES;
+		blockCount = 0;
+		size = 0;
+		shared = false;
+		hashCode = 0;
+	}
+
+	/**
+	 * @return the number of intervals in the map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public long getStart(int index) {
+		int b = blockOf(index);
+		return blocks[b].starts[index - firstIndex[b]];
+	}
+
+	public long getEnd(int index) {
+		int b = blockOf(index);
+		return blocks[b].ends[index - firstIndex[b]];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V getValue(int index) {
+		int b = blockOf(index);
+		return (V)blocks[b].values[index - firstIndex[b]];
+	}
+
+	/**
+	 * Returns the index of the first interval at or after the given index that
+	 * is not known to be shared with the other map, i.e., that does not lie in
+	 * a block common to both maps.
+	 *
+	 * @return the index of the interval or size() if there is none.
+	 */
+	public int nextUnshared(int index, IntervalMap<V> other) {
+		if (index >= size) return size;
+		if (blocks == other.blocks && blockCount == other.blockCount) return size;
+		int b = blockOf(index);
+		int ob = other.blockStartingFrom(blocks[b].firstStart());
+		// Walk both block lists in parallel, shared blocks are at aligned positions
+		while (b < blockCount) {
+			if (ob < other.blockCount && other.blocks[ob] == blocks[b]) {
+				b++;
+				ob++;
+			} else if (ob < other.blockCount && other.blocks[ob].firstStart() < blocks[b].firstStart()) {
+				ob++;
+			} else {
+				return Math.max(index, firstIndex[b]);
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public int hashCode() {
+		if (hashCode == 0) {
+			int h = 1;
+			for (int b = 0; b < blockCount; b++) {
+				Block block = blocks[b];
+				for (int i = 0; i < block.size(); i++) {
+					h = 31 * h + (int)(block.starts[i] ^ (block.starts[i] >>> 32));
+					h = 31 * h + (int)(block.ends[i] ^ (block.ends[i] >>> 32));
+					h = 31 * h + (block.values[i] == null ? 0 : block.values[i].hashCode());
+				}
+			}
+			hashCode = h;
+		}
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof IntervalMap)) return false;
+		IntervalMap<?> other = (IntervalMap<?>)obj;
+		if (size != other.size) return false;
+		if (blocks == other.blocks) return true;
+		// Block boundaries can differ between equal maps
+		int ob = 0, oi = 0;
+		for (int b = 0; b < blockCount; b++) {
+			Block block = blocks[b];
+			for (int i = 0; i < block.size(); i++) {
+				Block otherBlock = other.blocks[ob];
+				if (block.starts[i] != otherBlock.starts[oi] || block.ends[i] != otherBlock.ends[oi])
+					return false;
+				Object v = block.values[i];
+				Object ov = otherBlock.values[oi];
+				if (v == null ? ov != null : !v.equals(ov))
+					return false;
+				if (++oi == otherBlock.size()) {
+					ob++;
+					oi = 0;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (int b = 0; b < blockCount; b++) {
+			Block block = blocks[b];
+			for (int i = 0; i < block.size(); i++) {
+				if (b > 0 || i > 0) sb.append(", ");
+				sb.append('[').append(block.starts[i]).append(',').append(block.ends[i]).append(")=").append(block.values[i]);
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+}
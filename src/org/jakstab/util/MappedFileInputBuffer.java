@@ -0,0 +1,120 @@
+/*
+ * MappedFileInputBuffer.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A BinaryInputBuffer that maps a file into memory instead of copying it to
+ * the heap. Positional reads do not use the shared file pointer and are safe
+ * to use from multiple threads.
+ * 
+ * The mapping is read only. Patched bytes are kept in private copies of the
+ * affected pages, which take precedence over the mapped file. Patching is 
+ * meant for the loading phase and is not thread safe.
+ */
+public class MappedFileInputBuffer extends WritableInputBuffer {
+
+	@SuppressWarnings("unused")
+	private static final Logger logger = Logger.getLogger(MappedFileInputBuffer.class);
+
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+	private final ByteBuffer data;
+	private final int size;
+	private final byte[][] patchedPages;
+
+	public MappedFileInputBuffer(File file) throws IOException {
+		current = 0;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("File too large to be mapped: " + file);
+			size = (int)channel.size();
+			// The mapping stays valid after the channel is closed
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			raf.close();
+		}
+		patchedPages = new byte[(size >>> PAGE_BITS) + 1][];
+	}
+
+	@Override
+	public int readBYTE() throws IOException {
+		return getByteAt(current++) & 0xFF;
+	}
+
+	@Override
+	public byte getByteAt(int fp) {
+		byte[] page = patchedPages[fp >>> PAGE_BITS];
+		if (page != null)
+			return page[fp & PAGE_MASK];
+		return data.get(fp);
+	}
+
+	@Override
+	public short getShortAt(int fp) {
+		if (isPatched(fp, 2))
+			return super.getShortAt(fp);
+		return data.getShort(fp);
+	}
+
+	@Override
+	public int getIntAt(int fp) {
+		if (isPatched(fp, 4))
+			return super.getIntAt(fp);
+		return data.getInt(fp);
+	}
+
+	@Override
+	public long getLongAt(int fp) {
+		if (isPatched(fp, 8))
+			return super.getLongAt(fp);
+		return data.getLong(fp);
+	}
+
+	@Override
+	public void putByteAt(int fp, byte value) {
+		int pageIndex = fp >>> PAGE_BITS;
+		byte[] page = patchedPages[pageIndex];
+		if (page == null) {
+			int start = pageIndex << PAGE_BITS;
+			page = new byte[PAGE_MASK + 1];
+			for (int i = 0; i < page.length && start + i < size; i++)
+				page[i] = data.get(start + i);
+			patchedPages[pageIndex] = page;
+		}
+		page[fp & PAGE_MASK] = value;
+	}
+
+	@Override
+	public long getSize() {
+		return size;
+	}
+
+	private boolean isPatched(int fp, int length) {
+		return fp >= 0 && fp + length <= size && (patchedPages[fp >>> PAGE_BITS] != null || 
+				patchedPages[(fp + length - 1) >>> PAGE_BITS] != null);
+	}
+}
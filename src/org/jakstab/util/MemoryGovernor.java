@@ -0,0 +1,224 @@
+/*
+ * MemoryGovernor.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.lang.management.*;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Watches heap occupancy after garbage collections and lets the analysis react
+ * to memory pressure instead of forcing collections. The JVM notifies the governor
+ * when a heap pool is still above the configured fraction of its maximum size
+ * after a collection; registered actions are then run from the analysis thread
+ * on the next call to {@link #checkPressure()}.
+ * 
+ * The thresholds of the heap pools are global to the JVM. If several governors
+ * are active at the same time, e.g., in batch mode, the pools are set to the 
+ * lowest threshold among them, and each governor checks its own threshold when
+ * notified. The thresholds from before the first governor are restored when the
+ * last one is shut down.
+ */
+public class MemoryGovernor implements NotificationListener {
+
+	private static final Logger logger = Logger.getLogger(MemoryGovernor.class);
+
+	/**
+	 * An action that frees memory held by the analysis.
+	 */
+	public static interface PressureAction {
+		/**
+		 * Releases memory.
+		 * @return a short description of what was done, for logging.
+		 */
+		public String relieve();
+	}
+
+	/** Governors that have not been shut down yet, guarded by the class */
+	private static final List<MemoryGovernor> activeGovernors = new LinkedList<MemoryGovernor>();
+	/** Collection usage thresholds of the pools before they were set by the first active governor */
+	private static final List<Long> previousThresholds = new LinkedList<Long>();
+
+	private final double threshold;
+	private final List<PressureAction> actions;
+	private final List<MemoryPoolMXBean> pools;
+	private volatile boolean pressure;
+	private int pressureEvents;
+	private long gcTimeAtStart;
+	private long gcCountAtStart;
+
+	/**
+	 * Creates a new governor that reports memory pressure if heap occupancy after
+	 * a collection stays above the given fraction of the maximum heap size.
+	 *
+	 * @param threshold the fraction of occupancy that triggers pressure actions, between 0 and 1.
+	 */
+	public MemoryGovernor(double threshold) {
+		this.threshold = threshold;
+		actions = new LinkedList<PressureAction>();
+		pools = new LinkedList<MemoryPoolMXBean>();
+		pressure = false;
+		pressureEvents = 0;
+
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && 
+					pool.getUsage().getMax() > 0)
+				pools.add(pool);
+		}
+		synchronized (MemoryGovernor.class) {
+			if (activeGovernors.isEmpty()) {
+				for (MemoryPoolMXBean pool : pools)
+					previousThresholds.add(pool.getCollectionUsageThreshold());
+			}
+			activeGovernors.add(this);
+			setPoolThresholds();
+		}
+		((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+
+		gcTimeAtStart = getTotalGCTime();
+		gcCountAtStart = getTotalGCCount();
+	}
+
+	public void addAction(PressureAction action) {
+		actions.add(action);
+	}
+
+	/**
+	 * Called by the JVM on a notification thread, so only records the event.
+	 */
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if (notification.getType().equals(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED)) {
+			pressure = true;
+		}
+	}
+
+	/**
+	 * Checks whether memory pressure was reported since the last call and runs
+	 * the registered actions if so. Has to be called from the analysis thread.
+	 *
+	 * @return true if there was memory pressure.
+	 */
+	public boolean checkPressure() {
+		if (!pressure) return false;
+		pressure = false;
+
+		// Pressure might have been relieved by a later collection already
+		if (!isAboveThreshold()) return false;
+
+		pressureEvents++;
+		logger.warn(String.format("Memory pressure: %.2f MByte of heap in use after GC, threshold is %d%%.",
+				getUsedHeap()/(1024.0*1024.0), Math.round(threshold * 100)));
+		for (PressureAction action : actions) {
+			logger.warn("  " + action.relieve());
+		}
+		return true;
+	}
+
+	private boolean isAboveThreshold() {
+		for (MemoryPoolMXBean pool : pools) {
+			MemoryUsage usage = pool.getCollectionUsage();
+			if (usage != null && usage.getUsed() > getPoolThreshold(pool, threshold))
+				return true;
+		}
+		return false;
+	}
+
+	private static long getPoolThreshold(MemoryPoolMXBean pool, double threshold) {
+		return (long)(pool.getUsage().getMax() * threshold);
+	}
+
+	/**
+	 * Sets the pools to the lowest threshold of all active governors, so every
+	 * governor is notified. Has to be called with the class lock held.
+	 */
+	private static void setPoolThresholds() {
+		double lowest = 1.0;
+		for (MemoryGovernor governor : activeGovernors)
+			lowest = Math.min(lowest, governor.threshold);
+		for (MemoryPoolMXBean pool : activeGovernors.get(0).pools)
+			pool.setCollectionUsageThreshold(getPoolThreshold(pool, lowest));
+	}
+
+	/**
+	 * Unregisters the governor from the JVM. If it is the last active governor,
+	 * the previous collection usage thresholds of the heap pools are restored.
+	 */
+	public void shutdown() {
+		try {
+			((NotificationEmitter)ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+		} catch (javax.management.ListenerNotFoundException e) {
+			// Already removed
+		}
+		synchronized (MemoryGovernor.class) {
+			if (!activeGovernors.remove(this))
+				return;
+			if (activeGovernors.isEmpty()) {
+				Iterator<Long> previous = previousThresholds.iterator();
+				for (MemoryPoolMXBean pool : pools)
+					pool.setCollectionUsageThreshold(previous.next());
+				previousThresholds.clear();
+			} else {
+				setPoolThresholds();
+			}
+		}
+	}
+
+	public int getPressureEventCount() {
+		return pressureEvents;
+	}
+
+	/**
+	 * @return milliseconds spent in garbage collection since creation of this governor.
+	 */
+	public long getGCTime() {
+		return getTotalGCTime() - gcTimeAtStart;
+	}
+
+	/**
+	 * @return number of garbage collections since creation of this governor.
+	 */
+	public long getGCCount() {
+		return getTotalGCCount() - gcCountAtStart;
+	}
+
+	public static long getUsedHeap() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long getTotalGCTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	private static long getTotalGCCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+}
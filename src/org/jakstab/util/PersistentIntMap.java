@@ -0,0 +1,436 @@
+/*
+ * PersistentIntMap.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.util.*;
+
+/**
+ * An immutable map from keys with unique, non-negative integer indices to values,
+ * implemented as a bitmap-compressed array mapped trie over the index bits. Updates
+ * copy only the path to the changed entry, so all versions of a map share their
+ * unchanged subtrees. The shape of the trie depends only on the set of indices, so
+ * equal maps have equal structure and shared subtrees can be recognized by
+ * reference. Iteration is in ascending order of indices.
+ */
+public final class PersistentIntMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	/**
+	 * Visitor for entries of a map.
+	 */
+	public static interface EntryVisitor<K, V> {
+		/**
+		 * @return false to stop visiting further entries.
+		 */
+		public boolean visit(K key, V value);
+	}
+
+	/**
+	 * A trie node. Inner nodes hold child nodes, leaf nodes (height 0) hold
+	 * keys and values in alternating slots, both compressed by the bitmap.
+	 */
+	private static final class Node {
+		final int bitmap;
+		final Object[] slots;
+
+		Node(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+		int count() {
+			return Integer.bitCount(bitmap);
+		}
+
+		int position(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final PersistentIntMap EMPTY = new PersistentIntMap(null, 0, 0);
+
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentIntMap<K, V> empty() {
+		return EMPTY;
+	}
+
+	private final Node root;
+	private final int height;
+	private final int size;
+	private int hashCode;
+
+	private PersistentIntMap(Node root, int height, int size) {
+		this.root = root;
+		this.height = height;
+		this.size = size;
+	}
+
+	private static int bitAt(int index, int height) {
+		return 1 << ((index >>> (height * BITS)) & MASK);
+	}
+
+	/**
+	 * @return the smallest height of a trie that can hold the given index.
+	 */
+	private static int heightFor(int index) {
+		int h = 0;
+		while (h * BITS + BITS < 32 && (index >>> (h * BITS + BITS)) != 0) h++;
+		return h;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int index) {
+		if (root == null || index < 0 || heightFor(index) > height)
+			return null;
+		Node node = root;
+		for (int h = height; h > 0; h--) {
+			int bit = bitAt(index, h);
+			if ((node.bitmap & bit) == 0) return null;
+			node = (Node)node.slots[node.position(bit)];
+		}
+		int bit = bitAt(index, 0);
+		if ((node.bitmap & bit) == 0) return null;
+		return (V)node.slots[2 * node.position(bit) + 1];
+	}
+
+	public boolean containsKey(int index) {
+		return get(index) != null;
+	}
+
+	/**
+	 * Returns a map that additionally maps the given index to the key and value.
+	 * Returns this map if it already contains the same key and value.
+	 */
+	public PersistentIntMap<K, V> put(int index, K key, V value) {
+		assert index >= 0 && value != null;
+		Node newRoot = root;
+		int newHeight = height;
+		if (newRoot == null) {
+			newHeight = heightFor(index);
+		} else {
+			// Grow the trie upwards, the old root becomes the first child
+			int required = heightFor(index);
+			while (newHeight < required) {
+				newRoot = new Node(1, new Object[] {newRoot});
+				newHeight++;
+			}
+		}
+		int oldSize = size;
+		int[] added = new int[1];
+		Node result = insert(newRoot, newHeight, index, key, value, added);
+		if (result == newRoot && newHeight == height)
+			return this;
+		return new PersistentIntMap<K, V>(result, newHeight, oldSize + added[0]);
+	}
+
+	private static Node insert(Node node, int h, int index, Object key, Object value, int[] added) {
+		int bit = bitAt(index, h);
+		if (node == null) {
+			added[0] = 1;
+			if (h == 0)
+				return new Node(bit, new Object[] {key, value});
+			return new Node(bit, new Object[] {insert(null, h - 1, index, key, value, added)});
+		}
+		int pos = node.position(bit);
+		boolean present = (node.bitmap & bit) != 0;
+		if (h == 0) {
+			if (present) {
+				if (node.slots[2 * pos] == key && node.slots[2 * pos + 1] == value)
+					return node;
+				Object[] slots = node.slots.clone();
+				slots[2 * pos] = key;
+				slots[2 * pos + 1] = value;
+				return new Node(node.bitmap, slots);
+			}
+			added[0] = 1;
+			Object[] slots = new Object[node.slots.length + 2];
+			System.arraycopy(node.slots, 0, slots, 0, 2 * pos);
+			slots[2 * pos] = key;
+			slots[2 * pos + 1] = value;
+			System.arraycopy(node.slots, 2 * pos, slots, 2 * pos + 2, node.slots.length - 2 * pos);
+			return new Node(node.bitmap | bit, slots);
+		}
+		if (present) {
+			Node child = (Node)node.slots[pos];
+			Node newChild = insert(child, h - 1, index, key, value, added);
+			if (newChild == child)
+				return node;
+			Object[] slots = node.slots.clone();
+			slots[pos] = newChild;
+			return new Node(node.bitmap, slots);
+		}
+		Object[] slots = new Object[node.slots.length + 1];
+		System.arraycopy(node.slots, 0, slots, 0, pos);
+		slots[pos] = insert(null, h - 1, index, key, value, added);
+		System.arraycopy(node.slots, pos, slots, pos + 1, node.slots.length - pos);
+		return new Node(node.bitmap | bit, slots);
+	}
+
+	/**
+	 * Returns a map without an entry for the given index, or this map if
+	 * there is no such entry.
+	 */
+	public PersistentIntMap<K, V> remove(int index) {
+		if (root == null || index < 0 || heightFor(index) > height)
+			return this;
+		Node result = delete(root, height, index);
+		if (result == root)
+			return this;
+		if (result == null)
+			return empty();
+		// Shrink the trie while only the first child is left, to keep the shape canonical
+		int newHeight = height;
+		while (newHeight > 0 && result.bitmap == 1) {
+			result = (Node)result.slots[0];
+			newHeight--;
+		}
+		return new PersistentIntMap<K, V>(result, newHeight, size - 1);
+	}
+
+	private static Node delete(Node node, int h, int index) {
+		int bit = bitAt(index, h);
+		if ((node.bitmap & bit) == 0)
+			return node;
+		int pos = node.position(bit);
+		if (h == 0) {
+			if (node.bitmap == bit)
+				return null;
+			Object[] slots = new Object[node.slots.length - 2];
+			System.arraycopy(node.slots, 0, slots, 0, 2 * pos);
+			System.arraycopy(node.slots, 2 * pos + 2, slots, 2 * pos, slots.length - 2 * pos);
+			return new Node(node.bitmap & ~bit, slots);
+		}
+		Node child = (Node)node.slots[pos];
+		Node newChild = delete(child, h - 1, index);
+		if (newChild == child)
+			return node;
+		if (newChild == null) {
+			if (node.bitmap == bit)
+				return null;
+			Object[] slots = new Object[node.slots.length - 1];
+			System.arraycopy(node.slots, 0, slots, 0, pos);
+			System.arraycopy(node.slots, pos + 1, slots, pos, slots.length - pos);
+			return new Node(node.bitmap & ~bit, slots);
+		}
+		Object[] slots = node.slots.clone();
+		slots[pos] = newChild;
+		return new Node(node.bitmap, slots);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Visits all entries of this map except those that are known to be contained
+	 * in the other map as well, because they are in a subtree shared by both maps
+	 * or have the identical value object in both. Entries are visited in ascending
+	 * order of indices.
+	 *
+	 * @return false if the visitor stopped the traversal.
+	 */
+	public boolean visitUnshared(PersistentIntMap<K, V> other, EntryVisitor<K, V> visitor) {
+		if (root == null) return true;
+		return visitUnshared(root, height, other.root, other.height, visitor);
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean visitUnshared(Node node, int h, Node otherNode, int otherHeight, EntryVisitor<K, V> visitor) {
+		if (node == otherNode && h == otherHeight)
+			return true;
+		if (otherNode != null && otherHeight > h) {
+			// The lower part of the other trie is its chain of first children
+			Node first = (otherNode.bitmap & 1) != 0 ? (Node)otherNode.slots[0] : null;
+			return visitUnshared(node, h, first, otherHeight - 1, visitor);
+		}
+		if (otherNode != null && otherHeight < h) {
+			// Only our first child overlaps with the other trie
+			for (int i = 0; i < node.count(); i++) {
+				boolean first = i == 0 && (node.bitmap & 1) != 0;
+				if (!visitUnshared((Node)node.slots[i], h - 1, first ? otherNode : null,
+						first ? otherHeight : -1, visitor))
+					return false;
+			}
+			return true;
+		}
+		for (int remaining = node.bitmap, i = 0; remaining != 0; i++) {
+			int bit = Integer.lowestOneBit(remaining);
+			remaining &= ~bit;
+			int otherPos = -1;
+			if (otherNode != null && (otherNode.bitmap & bit) != 0)
+				otherPos = otherNode.position(bit);
+			if (h == 0) {
+				Object value = node.slots[2 * i + 1];
+				if (otherPos >= 0 && otherNode.slots[2 * otherPos + 1] == value)
+					continue;
+				if (!visitor.visit((K)node.slots[2 * i], (V)value))
+					return false;
+			} else {
+				Node otherChild = otherPos >= 0 ? (Node)otherNode.slots[otherPos] : null;
+				if (!visitUnshared((Node)node.slots[i], h - 1, otherChild, h - 1, visitor))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Iterates over all entries in ascending order of indices.
+	 */
+	@Override
+	public Iterator<Map.Entry<K, V>> iterator() {
+		return new EntryIterator(false);
+	}
+
+	/**
+	 * Iterates over all entries in descending order of indices.
+	 */
+	public Iterator<Map.Entry<K, V>> descendingIterator() {
+		return new EntryIterator(true);
+	}
+
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		private final boolean descending;
+		private final Node[] nodes;
+		private final int[] positions;
+		private int level;
+
+		private EntryIterator(boolean descending) {
+			this.descending = descending;
+			nodes = new Node[height + 1];
+			positions = new int[height + 1];
+			if (root == null) {
+				level = height + 1;
+			} else {
+				level = height;
+				nodes[level] = root;
+				positions[level] = first(root);
+				advance();
+			}
+		}
+
+		private int first(Node node) {
+			return descending ? node.count() - 1 : 0;
+		}
+
+		private int step() {
+			return descending ? -1 : 1;
+		}
+
+		/**
+		 * Moves to the next leaf position, or beyond the root if there is none.
+		 */
+		private void advance() {
+			while (level <= height) {
+				if (positions[level] < 0 || positions[level] >= nodes[level].count()) {
+					level++;
+					if (level <= height) positions[level] += step();
+				} else if (level == 0) {
+					return;
+				} else {
+					Node child = (Node)nodes[level].slots[positions[level]];
+					level--;
+					nodes[level] = child;
+					positions[level] = first(child);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return level == 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Map.Entry<K, V> next() {
+			if (level != 0) throw new NoSuchElementException();
+			int pos = positions[0];
+			positions[0] += step();
+			Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<K, V>(
+					(K)nodes[0].slots[2 * pos], (V)nodes[0].slots[2 * pos + 1]);
+			advance();
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Same hash code as a java.util.Map with the same entries.
+	 */
+	@Override
+	public int hashCode() {
+		if (hashCode == 0 && size > 0) {
+			int h = 0;
+			for (Map.Entry<K, V> entry : this)
+				h += entry.hashCode();
+			hashCode = h;
+		}
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof PersistentIntMap)) return false;
+		PersistentIntMap<?, ?> other = (PersistentIntMap<?, ?>)obj;
+		if (size != other.size || height != other.height) return false;
+		if (hashCode != 0 && other.hashCode != 0 && hashCode != other.hashCode) return false;
+		return nodesEqual(root, other.root, height);
+	}
+
+	private static boolean nodesEqual(Node a, Node b, int h) {
+		if (a == b) return true;
+		if (a == null || b == null || a.bitmap != b.bitmap) return false;
+		if (h == 0) {
+			for (int i = 0; i < a.slots.length; i++) {
+				if (a.slots[i] != b.slots[i] && !a.slots[i].equals(b.slots[i]))
+					return false;
+			}
+			return true;
+		}
+		for (int i = 0; i < a.slots.length; i++) {
+			if (!nodesEqual((Node)a.slots[i], (Node)b.slots[i], h - 1))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (Iterator<Map.Entry<K, V>> it = iterator(); it.hasNext();) {
+			Map.Entry<K, V> entry = it.next();
+			sb.append(entry.getKey()).append('=').append(entry.getValue());
+			if (it.hasNext()) sb.append(", ");
+		}
+		return sb.append('}').toString();
+	}
+
+}
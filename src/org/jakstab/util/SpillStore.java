@@ -0,0 +1,172 @@
+/*
+ * SpillStore.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap storage for byte records in a memory-mapped file. The file is
+ * mapped in segments, and records are appended to the current segment. Space
+ * is not reclaimed for single records, but a segment is reused once all records
+ * in it have been freed. Records are addressed by handles returned from 
+ * {@link #put(byte[])}. A store is meant to be used by a single thread.
+ */
+public class SpillStore {
+
+	private static final Logger logger = Logger.getLogger(SpillStore.class);
+
+	private static final int SEGMENT_SIZE = 1 << 26;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final List<MappedByteBuffer> segments;
+	/** Number of records not yet freed per segment */
+	private final List<Integer> liveRecords;
+	private long mappedSize;
+	private long liveBytes;
+	private int segmentIndex;
+	private int position;
+
+	/**
+	 * Creates a store in a new temporary file. The file is removed when the
+	 * store is closed or the VM exits.
+	 */
+	public static SpillStore createTemporary() throws IOException {
+		File file = File.createTempFile("jakstab", ".spill");
+		file.deleteOnExit();
+		return new SpillStore(file);
+	}
+
+	public SpillStore(File file) throws IOException {
+		this.file = file;
+		raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		segments = new ArrayList<MappedByteBuffer>();
+		liveRecords = new ArrayList<Integer>();
+		mappedSize = 0;
+		liveBytes = 0;
+		segmentIndex = -1;
+		position = 0;
+	}
+
+	/**
+	 * Stores a record.
+	 * 
+	 * @return the handle of the record
+	 */
+	public long put(byte[] data) throws IOException {
+		int length = data.length + 4;
+		if (segmentIndex < 0 || position + length > segments.get(segmentIndex).capacity())
+			nextSegment(length);
+		ByteBuffer segment = segments.get(segmentIndex);
+		segment.putInt(position, data.length);
+		ByteBuffer target = segment.duplicate();
+		target.position(position + 4);
+		target.put(data);
+
+		long handle = ((long)segmentIndex << 32) | position;
+		position += length;
+		liveRecords.set(segmentIndex, liveRecords.get(segmentIndex) + 1);
+		liveBytes += length;
+		return handle;
+	}
+
+	/**
+	 * Returns the contents of a record.
+	 */
+	public byte[] get(long handle) {
+		ByteBuffer source = segments.get((int)(handle >>> 32)).duplicate();
+		int offset = (int)handle;
+		byte[] data = new byte[source.getInt(offset)];
+		source.position(offset + 4);
+		source.get(data);
+		return data;
+	}
+
+	/**
+	 * Releases a record. Its handle must not be used afterwards.
+	 */
+	public void free(long handle) {
+		int index = (int)(handle >>> 32);
+		liveBytes -= segments.get(index).getInt((int)handle) + 4;
+		int live = liveRecords.get(index) - 1;
+		liveRecords.set(index, live);
+		// Rewind if the current segment became empty, other empty segments are reused later
+		if (live == 0 && index == segmentIndex)
+			position = 0;
+	}
+
+	/**
+	 * Continues in an empty segment that can hold a record of the given length,
+	 * mapping a new one if necessary.
+	 */
+	private void nextSegment(int length) throws IOException {
+		for (int i = 0; i < segments.size(); i++) {
+			if (i != segmentIndex && liveRecords.get(i) == 0 && segments.get(i).capacity() >= length) {
+				segmentIndex = i;
+				position = 0;
+				return;
+			}
+		}
+		int size = Math.max(SEGMENT_SIZE, length);
+		segments.add(channel.map(FileChannel.MapMode.READ_WRITE, mappedSize, size));
+		liveRecords.add(0);
+		mappedSize += size;
+		segmentIndex = segments.size() - 1;
+		position = 0;
+		logger.debug("Mapped " + segments.size() + " segments of spill file " + file);
+	}
+
+	/**
+	 * @return the number of bytes in records that have not been freed.
+	 */
+	public long getLiveBytes() {
+		return liveBytes;
+	}
+
+	/**
+	 * @return the number of bytes of the file mapped into memory.
+	 */
+	public long getMappedSize() {
+		return mappedSize;
+	}
+
+	/**
+	 * Closes the store and deletes its file. The mapped segments are released
+	 * once they are garbage collected.
+	 */
+	public void close() {
+		segments.clear();
+		liveRecords.clear();
+		try {
+			raf.close();
+		} catch (IOException e) {
+			logger.warn("Cannot close spill file " + file + ": " + e.getMessage());
+		}
+		if (!file.delete())
+			logger.debug("Spill file " + file + " will be deleted on exit.");
+	}
+}
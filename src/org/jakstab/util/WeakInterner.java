@@ -0,0 +1,74 @@
+/*
+ * WeakInterner.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * A table of canonical instances, such that for equal objects, always the same
+ * instance is returned. Instances are only weakly referenced by the table, so
+ * they can be garbage collected once they are no longer used elsewhere. The
+ * table is split into independently locked segments to allow concurrent use.
+ */
+public class WeakInterner<T> {
+
+	private static final int SEGMENTS = 16;
+
+	private final WeakHashMap<T, WeakReference<T>>[] segments;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public WeakInterner() {
+		segments = new WeakHashMap[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++)
+			segments[i] = new WeakHashMap<T, WeakReference<T>>();
+	}
+
+	/**
+	 * Returns the canonical instance equal to the given object. If there is
+	 * none yet, the object itself becomes the canonical instance.
+	 */
+	public T intern(T obj) {
+		int h = obj.hashCode();
+		WeakHashMap<T, WeakReference<T>> segment = segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+		synchronized (segment) {
+			WeakReference<T> ref = segment.get(obj);
+			if (ref != null) {
+				T canonical = ref.get();
+				// Null if it was collected after the lookup
+				if (canonical != null)
+					return canonical;
+			}
+			segment.put(obj, new WeakReference<T>(obj));
+			return obj;
+		}
+	}
+
+	/**
+	 * Returns the number of canonical instances in the table, including
+	 * instances that are no longer referenced but not yet removed.
+	 */
+	public int size() {
+		int size = 0;
+		for (WeakHashMap<T, WeakReference<T>> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+}
@@ -30,6 +30,8 @@ public interface Worklist<T> {
 	
 	public boolean remove(T element);
 	
+	public boolean contains(T element);
+	
 	public int size();
 
 }
@@ -0,0 +1,33 @@
+/*
+ * WritableInputBuffer.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+/**
+ * An input buffer whose contents can be changed after loading, e.g., for 
+ * patching the addresses of imported symbols into the image. 
+ */
+public abstract class WritableInputBuffer extends BinaryInputBuffer {
+
+	/**
+	 * Overwrites a single byte.
+	 * 
+	 * @param fp Address to write to
+	 * @param value the new value
+	 */
+	public abstract void putByteAt(int fp, byte value);
+
+}
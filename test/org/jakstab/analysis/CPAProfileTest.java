@@ -0,0 +1,61 @@
+/*
+ * CPAProfileTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Scanner;
+
+import org.jakstab.analysis.CPAProfile.Phase;
+import org.jakstab.analysis.location.LocationAnalysis;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.RTLLabel;
+import org.jakstab.rtl.statements.RTLSkip;
+import org.junit.Test;
+
+public class CPAProfileTest {
+
+	@Test
+	public void testReport() throws IOException {
+		CPAProfile profile = new CPAProfile(-1);
+		profile.record(Phase.PREC, System.nanoTime());
+		profile.record(Phase.PREC, System.nanoTime());
+		profile.record(new LocationAnalysis(), Phase.STOP, System.nanoTime());
+		RTLLabel l1 = new RTLLabel(new AbsoluteAddress(0x1000));
+		RTLLabel l2 = new RTLLabel(new AbsoluteAddress(0x1001));
+		profile.recordPost(new CFAEdge(l1, l2, new RTLSkip()), System.nanoTime());
+
+		assertEquals(2, profile.getCalls(Phase.PREC));
+		assertEquals(1, profile.getCalls(Phase.POST));
+		assertEquals(0, profile.getCalls(Phase.MERGE));
+
+		File file = File.createTempFile("profile", ".json");
+		profile.writeReport(file.getPath());
+		Scanner scanner = new Scanner(file, "UTF-8");
+		String report = scanner.useDelimiter("\\A").next();
+		scanner.close();
+		file.delete();
+
+		assertTrue(report.contains("\"prec\": {\"calls\": 2,"));
+		assertFalse(report.contains("\"merge\""));
+		assertTrue(report.contains("\"LocationAnalysis\": {\n      \"stop\": {\"calls\": 1,"));
+		assertTrue(report.contains("\"RTLSkip\": {\"calls\": 1,"));
+	}
+}
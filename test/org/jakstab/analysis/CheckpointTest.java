@@ -0,0 +1,206 @@
+/*
+ * CheckpointTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jakstab.Options;
+import org.jakstab.Program;
+import org.jakstab.analysis.composite.CompositeProgramAnalysis;
+import org.jakstab.analysis.explicit.BoundedAddressTracking;
+import org.jakstab.analysis.location.LocationAnalysis;
+import org.jakstab.cfa.PessimisticStateTransformerFactory;
+import org.jakstab.loader.DefaultHarness;
+import org.jakstab.ssl.Architecture;
+import org.jakstab.util.FastSet;
+import org.jakstab.util.Worklist;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckpointTest {
+
+	private static final String KEY = "helloworld";
+
+	/**
+	 * Stops the algorithm after a given number of states has been picked.
+	 */
+	private static class StoppingWorklist implements Worklist<AbstractState> {
+
+		private final Worklist<AbstractState> worklist = new FastSet<AbstractState>();
+		private final long stopAfter;
+		private CPAAlgorithm algorithm;
+		private long picks;
+
+		StoppingWorklist(long stopAfter) {
+			this.stopAfter = stopAfter;
+		}
+
+		@Override
+		public AbstractState pick() {
+			if (++picks == stopAfter)
+				algorithm.stop();
+			return worklist.pick();
+		}
+
+		@Override
+		public boolean add(AbstractState a) {
+			return worklist.add(a);
+		}
+
+		@Override
+		public boolean remove(AbstractState a) {
+			return worklist.remove(a);
+		}
+
+		@Override
+		public boolean contains(AbstractState a) {
+			return worklist.contains(a);
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return worklist.isEmpty();
+		}
+
+		@Override
+		public int size() {
+			return worklist.size();
+		}
+	}
+
+	private File file;
+	private Set<AbstractState> uninterruptedStates;
+	private long uninterruptedVisits;
+
+	@Before
+	public void setUp() throws Exception {
+		Options.cpas.setValue("x");
+		file = File.createTempFile("helloworld", ".jcp");
+		file.delete();
+
+		StoppingWorklist worklist = new StoppingWorklist(0);
+		CPAAlgorithm cpaAlg = run(worklist, null);
+		assertTrue(cpaAlg.isCompleted());
+		uninterruptedStates = new HashSet<AbstractState>(cpaAlg.getReachedStates());
+		uninterruptedVisits = cpaAlg.getNumberOfStatesVisited();
+		assertEquals(uninterruptedVisits, worklist.picks);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Options.resume.setValue(false);
+		file.delete();
+	}
+
+	/**
+	 * Reconstructs the control flow of helloworld.exe in a new program, like
+	 * a new run of Jakstab would.
+	 */
+	private CPAAlgorithm run(StoppingWorklist worklist, Checkpoint checkpoint) throws Exception {
+		Program program = Program.createProgram(new Architecture("ssl/pentium.ssl"));
+		program.loadMainModule(new File(Options.jakstabHome + "/input/bin/helloworld.exe"));
+		program.installHarness(new DefaultHarness());
+		CPAAlgorithm cpaAlg = new CPAAlgorithm(
+				new CompositeProgramAnalysis(new LocationAnalysis(), new BoundedAddressTracking()),
+				new PessimisticStateTransformerFactory(), worklist);
+		worklist.algorithm = cpaAlg;
+		if (checkpoint != null)
+			cpaAlg.setCheckpoint(checkpoint);
+		cpaAlg.run();
+		return cpaAlg;
+	}
+
+	/**
+	 * Stops a reconstruction halfway, which writes a checkpoint.
+	 */
+	private void interrupt(String key) throws Exception {
+		Checkpoint checkpoint = new Checkpoint(file, key, 0);
+		CPAAlgorithm cpaAlg = run(new StoppingWorklist(uninterruptedVisits / 2), checkpoint);
+		assertFalse(cpaAlg.isCompleted());
+		assertEquals(1, checkpoint.getWriteCount());
+		assertTrue(file.isFile());
+	}
+
+	/**
+	 * Runs the reconstruction to completion, resuming from the checkpoint
+	 * file if possible.
+	 *
+	 * @return the number of states picked after resuming
+	 */
+	private long resume(String key) throws Exception {
+		Options.resume.setValue(true);
+		StoppingWorklist worklist = new StoppingWorklist(0);
+		CPAAlgorithm cpaAlg = run(worklist, new Checkpoint(file, key, 0));
+		assertTrue(cpaAlg.isCompleted());
+		assertEquals(uninterruptedStates, new HashSet<AbstractState>(cpaAlg.getReachedStates()));
+		// A completed reconstruction does not leave a checkpoint behind
+		assertFalse(file.exists());
+		return worklist.picks;
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		interrupt(KEY);
+		long picks = resume(KEY);
+		assertTrue(picks > 0);
+		assertTrue(picks < uninterruptedVisits);
+	}
+
+	@Test
+	public void testMismatchedKey() throws Exception {
+		interrupt(KEY);
+		assertEquals(uninterruptedVisits, resume("other"));
+	}
+
+	@Test
+	public void testTruncatedCheckpoint() throws Exception {
+		interrupt(KEY);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() / 2);
+		raf.close();
+		assertEquals(uninterruptedVisits, resume(KEY));
+	}
+
+	@Test
+	public void testCorruptCheckpoint() throws Exception {
+		interrupt(KEY);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		byte[] data = new byte[(int)raf.length()];
+		raf.readFully(data);
+		raf.close();
+		// Keep the gzip header intact, so the compressed data is read
+		for (int i = 16; i < data.length; i += 7)
+			data[i] ^= 0x55;
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+		assertEquals(uninterruptedVisits, resume(KEY));
+	}
+
+	@Test
+	public void testMissingCheckpoint() throws Exception {
+		assertEquals(uninterruptedVisits, resume(KEY));
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * OrderedWorklistTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import org.jakstab.analysis.location.LocationState;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.Location;
+import org.jakstab.cfa.RTLLabel;
+import org.junit.Test;
+
+public class OrderedWorklistTest {
+
+	@Test
+	public void testPickEmpty() {
+		final RTLLabel entry = new RTLLabel(new AbsoluteAddress(0x401000));
+		OrderedWorklist worklist = new OrderedWorklist(OrderedWorklist.Strategy.RPO, 
+				new OrderedWorklist.EdgeSource() {
+			@Override
+			public int numEdges() {
+				return 0;
+			}
+
+			@Override
+			public Collection<CFAEdge> getEdges() {
+				return Collections.emptySet();
+			}
+
+			@Override
+			public Location getEntryPoint() {
+				return entry;
+			}
+		}, false);
+		LocationState s = new LocationState(entry);
+		assertTrue(worklist.add(s));
+		assertSame(s, worklist.pick());
+		assertTrue(worklist.isEmpty());
+		try {
+			worklist.pick();
+			fail("Picking from an empty worklist should fail");
+		} catch (NoSuchElementException e) {
+			// Same as FastSet
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * ParallelCPAEngineTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jakstab.Options;
+import org.jakstab.Program;
+import org.jakstab.analysis.explicit.BasedConstantPropagation;
+import org.jakstab.analysis.intervals.IntervalAnalysis;
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.loader.DefaultHarness;
+import org.jakstab.ssl.Architecture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelCPAEngineTest {
+
+	private Program program;
+
+	@Before
+	public void setUp() throws Exception {
+		Options.cpas.setValue("x");
+	}
+
+	private ControlFlowReconstruction reconstruct(String fileName) throws Exception {
+		program = Program.createProgram(new Architecture("ssl/pentium.ssl"));
+		program.loadMainModule(new File(Options.jakstabHome + "/input/bin/" + fileName));
+		program.installHarness(new DefaultHarness());
+		ControlFlowReconstruction cfr = new ControlFlowReconstruction(program);
+		cfr.run();
+		assertTrue(cfr.isCompleted());
+		return cfr;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Options.threads.setValue(1);
+		Options.basicBlocks.setValue(false);
+		Options.cpas.setValue("x");
+	}
+
+	/**
+	 * Edges have no value equality, so they are compared by their string 
+	 * representation including the transformer.
+	 */
+	private Set<String> cfaEdges() {
+		Set<String> edges = new HashSet<String>();
+		for (CFAEdge edge : program.getCFG().getEdges())
+			edges.add(edge + " " + edge.getTransformer());
+		return edges;
+	}
+
+	/**
+	 * Reconstructs the control flow once sequentially and repeatedly with 
+	 * four threads, and checks that all runs produce the same program, CFA 
+	 * and reached states.
+	 * 
+	 * @param parallel whether the parallel engine is expected to run, i.e., 
+	 * if the configured analyses are order independent
+	 */
+	private void checkParallelReconstruction(String fileName, boolean parallel) throws Exception {
+		Options.threads.setValue(1);
+		Set<AbstractState> sequentialStates = new HashSet<AbstractState>(reconstruct(fileName).getReachedStates());
+		Set<String> sequentialEdges = cfaEdges();
+		int sequentialStatements = program.getStatementCount();
+		int sequentialInstructions = program.getInstructionCount();
+
+		Options.threads.setValue(4);
+		for (int i = 0; i < 5; i++) {
+			ControlFlowReconstruction cfr = reconstruct(fileName);
+			assertEquals(fileName, parallel, cfr.getWorklistStrategy().equals("parallel"));
+			assertEquals(fileName, sequentialInstructions, program.getInstructionCount());
+			assertEquals(fileName, sequentialStatements, program.getStatementCount());
+			assertEquals(fileName, sequentialEdges, cfaEdges());
+			assertEquals(fileName, sequentialStates, new HashSet<AbstractState>(cfr.getReachedStates()));
+		}
+	}
+
+	/**
+	 * Control flow reconstruction lifts statements and resolves edges while 
+	 * the workers run.
+	 */
+	@Test
+	public void testParallelReconstruction() throws Exception {
+		for (String cpas : new String[] {"b", "bs"}) {
+			Options.cpas.setValue(cpas);
+			for (String fileName : new String[] {"helloworld.exe", "loop.exe", "while.exe", "memory.exe"})
+				checkParallelReconstruction(fileName, true);
+		}
+	}
+
+	@Test
+	public void testParallelReconstructionWithBasicBlocks() throws Exception {
+		Options.cpas.setValue("b");
+		Options.basicBlocks.setValue(true);
+		for (String fileName : new String[] {"helloworld.exe", "memory.exe"})
+			checkParallelReconstruction(fileName, true);
+	}
+
+	/**
+	 * Bounded address tracking widens at its explicit threshold depending on
+	 * the order of states, e.g., at the loop head in while.exe, so it is not 
+	 * run in parallel.
+	 */
+	@Test
+	public void testWideningReconstructionStaysSequential() throws Exception {
+		for (String fileName : new String[] {"helloworld.exe", "while.exe"})
+			checkParallelReconstruction(fileName, false);
+	}
+
+	private Set<AbstractState> run(int threads, boolean parallel, ConfigurableProgramAnalysis cpa) {
+		Options.threads.setValue(threads);
+		CPAAlgorithm cpaAlg = CPAAlgorithm.createForwardAlgorithm(program.getCFG(), cpa);
+		cpaAlg.run();
+		assertTrue(cpaAlg.isCompleted());
+		assertEquals(parallel, cpaAlg.isParallel());
+		return new HashSet<AbstractState>(cpaAlg.getReachedStates());
+	}
+
+	@Test
+	public void testSameReachedSet() throws Exception {
+		for (String fileName : new String[] {"helloworld.exe", "loop.exe", "while.exe"}) {
+			reconstruct(fileName);
+			Set<AbstractState> sequential = run(1, false, new BasedConstantPropagation());
+			for (int i = 0; i < 5; i++)
+				assertEquals(fileName, sequential, run(4, true, new BasedConstantPropagation()));
+		}
+	}
+
+	/**
+	 * Intervals are widened at loop heads, so the result could depend on the 
+	 * order in which states are processed and the analysis stays sequential.
+	 */
+	@Test
+	public void testWideningStaysSequential() throws Exception {
+		for (String fileName : new String[] {"loop.exe", "while.exe"}) {
+			reconstruct(fileName);
+			Set<AbstractState> sequential = run(1, false, new IntervalAnalysis());
+			assertEquals(fileName, sequential, run(4, false, new IntervalAnalysis()));
+		}
+	}
+
+	/**
+	 * Joining states over the state budget depends on the order of states.
+	 */
+	@Test
+	public void testStateBudgetStaysSequential() throws Exception {
+		reconstruct("loop.exe");
+		Options.stateBudget.setValue(2);
+		try {
+			Set<AbstractState> sequential = run(1, false, new BasedConstantPropagation());
+			assertEquals(sequential, run(4, false, new BasedConstantPropagation()));
+		} finally {
+			Options.stateBudget.setValue(0);
+		}
+	}
+
+}
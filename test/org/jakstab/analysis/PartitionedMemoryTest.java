@@ -19,10 +19,17 @@ package org.jakstab.analysis;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
 import org.jakstab.Options;
 import org.jakstab.analysis.explicit.NumberElement;
 import org.jakstab.analysis.explicit.NumberElementFactory;
+import org.jakstab.rtl.RTLInputStream;
+import org.jakstab.rtl.RTLOutputStream;
 import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLNumber;
 import org.jakstab.util.Logger;
 import org.junit.After;
 import org.junit.Before;
@@ -209,4 +216,42 @@ public class PartitionedMemoryTest {
 		assertEquals(dComb, store.get(MemoryRegion.STACK, 16, 32));
 	}
 
+	@Test
+	public void testWriteRead() throws IOException {
+		ValueCodec<NumberElement> codec = new ValueCodec<NumberElement>() {
+			@Override
+			public void writeValue(NumberElement value, RTLOutputStream out) throws IOException {
+				out.writeInt(value.getBitWidth());
+				out.writeBoolean(value.isTop());
+				if (!value.isTop())
+					out.writeExpression(value.getNumber());
+			}
+
+			@Override
+			public NumberElement readValue(RTLInputStream in) throws IOException {
+				int bitWidth = in.readInt();
+				if (in.readBoolean())
+					return NumberElement.getTop(bitWidth);
+				return new NumberElement((RTLNumber)in.readExpression());
+			}
+		};
+		PartitionedMemory<NumberElement> store = new PartitionedMemory<NumberElement>(
+				valueFactory);
+		store.set(MemoryRegion.STACK, 16, 32, n32);
+		// Partially overwrites the cell at offset 16
+		store.set(MemoryRegion.STACK, 17, 8, new NumberElement(ExpressionFactory.createNumber(7, 8)));
+		store.set(alloc1, 2, 16, n16);
+		store.setTop(MemoryRegion.GLOBAL);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		RTLOutputStream out = new RTLOutputStream(bytes);
+		store.write(out, codec);
+		out.close();
+		PartitionedMemory<NumberElement> read = PartitionedMemory.read(
+				new RTLInputStream(new ByteArrayInputStream(bytes.toByteArray())), valueFactory, codec);
+		assertEquals(store, read);
+		assertEquals(store.get(MemoryRegion.STACK, 18, 16), read.get(MemoryRegion.STACK, 18, 16));
+		assertTrue(read.get(MemoryRegion.GLOBAL, 0, 32).isTop());
+	}
+
 }
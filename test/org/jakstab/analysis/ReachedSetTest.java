@@ -0,0 +1,134 @@
+/*
+ * ReachedSetTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.jakstab.analysis.composite.CompositeProgramAnalysis;
+import org.jakstab.analysis.composite.CompositeState;
+import org.jakstab.analysis.location.LocationAnalysis;
+import org.jakstab.analysis.location.LocationState;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.RTLLabel;
+import org.jakstab.util.FastSet;
+import org.jakstab.util.SpillStore;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReachedSetTest {
+
+	private LocationState l1, l2;
+	private CompositeState a1, b1, a2;
+
+	@Before
+	public void setUp() throws Exception {
+		l1 = new LocationState(new RTLLabel(new AbsoluteAddress(0x401000), 0));
+		l2 = new LocationState(new RTLLabel(new AbsoluteAddress(0x401000), 1));
+		LocationState x = new LocationState(new RTLLabel(new AbsoluteAddress(0x1)));
+		LocationState y = new LocationState(new RTLLabel(new AbsoluteAddress(0x2)));
+		a1 = new CompositeState(new AbstractState[] {l1, x});
+		b1 = new CompositeState(new AbstractState[] {l1, y});
+		a2 = new CompositeState(new AbstractState[] {l2, x});
+	}
+
+	@Test
+	public void testAddRemove() {
+		ReachedSet reached = new ReachedSet();
+		assertTrue(reached.add(a1));
+		assertFalse(reached.add(a1));
+		assertTrue(reached.add(b1));
+		assertTrue(reached.add(a2));
+		assertEquals(3, reached.size());
+		assertTrue(reached.contains(b1));
+		assertTrue(reached.remove(b1));
+		assertFalse(reached.remove(b1));
+		assertFalse(reached.contains(b1));
+		assertEquals(2, reached.size());
+	}
+
+	@Test
+	public void testViews() {
+		ReachedSet reached = new ReachedSet();
+		ReachedSet atL2 = reached.where(0, l2);
+		assertTrue(atL2.isEmpty());
+		reached.add(a1);
+		reached.add(b1);
+		reached.add(a2);
+		// Views created before the first state at a location see later additions
+		assertEquals(1, atL2.size());
+		assertEquals(2, reached.where(0, l1).size());
+		assertEquals(2, reached.getStatesAt(l1).length);
+		assertTrue(reached.select(1).where(0, l1).contains(b1.getComponent(1)));
+		assertFalse(reached.where(0, l2).contains(a1));
+		assertEquals(3, reached.select(0).size());
+	}
+
+	@Test
+	public void testStateArrays() {
+		ReachedSet reached = new ReachedSet();
+		reached.add(a1);
+		CompositeState[] states = reached.getStatesAt(l1);
+		assertArrayEquals(new CompositeState[] {a1}, states);
+		// The array is kept while the location is unchanged
+		reached.add(a2);
+		assertSame(states, reached.getStatesAt(l1));
+		// Changes at the location create a new array and leave the old one intact
+		reached.add(b1);
+		reached.remove(a1);
+		assertArrayEquals(new CompositeState[] {a1}, states);
+		assertArrayEquals(new CompositeState[] {b1}, reached.getStatesAt(l1));
+		assertEquals(0, reached.getStatesAt(new LocationState(new RTLLabel(new AbsoluteAddress(0x402000)))).length);
+	}
+
+	@Test
+	public void testSpillAndRelease() throws Exception {
+		File file = File.createTempFile("reached", ".spill");
+		ReachedSet reached = new ReachedSet();
+		reached.setSpillStore(new SpillStore(file), 
+				new CompositeProgramAnalysis(new LocationAnalysis(), new LocationAnalysis()).getStateCodec());
+		reached.add(a1);
+		reached.add(b1);
+		reached.add(a2);
+		// Access l2 last so l1 is the coldest location
+		reached.getStatesAt(l2);
+		assertEquals(2, reached.spillColdLocations(1, new FastSet<AbstractState>()));
+		assertEquals(1, reached.getResidentSize());
+		assertEquals(3, reached.size());
+
+		// Iteration decodes copies and leaves the states spilled
+		assertEquals(new HashSet<AbstractState>(Arrays.asList(a1, b1, a2)), new HashSet<AbstractState>(reached));
+		assertEquals(1, reached.getResidentSize());
+		assertEquals(0, reached.getFaultCount());
+
+		// Accessing the location moves its states back to the heap
+		assertTrue(Arrays.asList(reached.getStatesAt(l1)).contains(b1));
+		assertEquals(3, reached.getResidentSize());
+		assertEquals(1, reached.getFaultCount());
+
+		// Releasing drops spilled states without moving them back
+		assertEquals(3, reached.spillColdLocations(0, new FastSet<AbstractState>()));
+		reached.release();
+		assertEquals(1, reached.getFaultCount());
+		assertTrue(reached.isEmpty());
+		assertFalse(file.exists());
+	}
+
+}
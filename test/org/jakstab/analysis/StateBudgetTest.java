@@ -0,0 +1,137 @@
+/*
+ * StateBudgetTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.jakstab.analysis.callstack.CallStackAnalysis;
+import org.jakstab.analysis.callstack.CallStackState;
+import org.jakstab.analysis.composite.CompositePrecision;
+import org.jakstab.analysis.composite.CompositeProgramAnalysis;
+import org.jakstab.analysis.composite.CompositeState;
+import org.jakstab.analysis.explicit.ExplicitPrecision;
+import org.jakstab.analysis.location.LocationAnalysis;
+import org.jakstab.analysis.location.LocationState;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.Location;
+import org.jakstab.cfa.RTLLabel;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StateBudgetTest {
+
+	private ConfigurableProgramAnalysis cpa;
+	private RTLLabel l;
+	private LocationState ls;
+	private ExplicitPrecision explicitPrecision;
+	private Map<Location, Precision> precisionMap;
+	private ReachedSet reached;
+
+	@Before
+	public void setUp() throws Exception {
+		cpa = new CompositeProgramAnalysis(new LocationAnalysis(), new CallStackAnalysis());
+		l = new RTLLabel(new AbsoluteAddress(0x401000), 0);
+		ls = new LocationState(l);
+		explicitPrecision = new ExplicitPrecision(8);
+		precisionMap = new HashMap<Location, Precision>();
+		precisionMap.put(l, new CompositePrecision(new Precision[] {null, explicitPrecision}));
+		reached = new ReachedSet();
+	}
+
+	private CompositeState stateInContext(int callSite) {
+		Deque<RTLLabel> callStack = new LinkedList<RTLLabel>();
+		callStack.push(new RTLLabel(new AbsoluteAddress(0x402000 + callSite)));
+		return new CompositeState(new AbstractState[] {ls, new CallStackState(callStack)});
+	}
+
+	private void add(StateBudget budget, int callSite) {
+		assertTrue(reached.add(stateInContext(callSite)));
+		budget.countAdded(l);
+	}
+
+	@Test
+	public void testJoinBelowBudget() {
+		StateBudget budget = new StateBudget(2);
+		CompositeProgramAnalysis.ignoreCallingContext.setValue(true);
+		try {
+			add(budget, 1);
+			add(budget, 2);
+			assertTrue(budget.enforce(l, ls, cpa, precisionMap, reached, new LinkedList<AbstractState>()).isEmpty());
+			add(budget, 3);
+			List<AbstractState> removed = new LinkedList<AbstractState>();
+			List<AbstractState> added = budget.enforce(l, ls, cpa, precisionMap, reached, removed);
+			assertEquals(1, added.size());
+			assertEquals(3, removed.size());
+			assertEquals(1, reached.getStatesAt(ls).length);
+			assertEquals(1, budget.getCount(l));
+			assertTrue(((CompositePrecision)precisionMap.get(l)).isJoinMerge());
+			assertEquals(1, budget.getInterventionCount());
+		} finally {
+			CompositeProgramAnalysis.ignoreCallingContext.setValue(false);
+		}
+	}
+
+	@Test
+	public void testLimitDoubling() {
+		StateBudget budget = new StateBudget(2);
+		// Different calling contexts are never joined
+		for (int i = 1; i <= 3; i++)
+			add(budget, i);
+		List<AbstractState> removed = new LinkedList<AbstractState>();
+		assertTrue(budget.enforce(l, ls, cpa, precisionMap, reached, removed).isEmpty());
+		assertTrue(removed.isEmpty());
+		assertEquals(3, reached.getStatesAt(ls).length);
+		assertEquals(1, budget.getInterventionCount());
+
+		// The next attempt waits until the number of states has doubled
+		for (int i = 4; i <= 6; i++) {
+			add(budget, i);
+			budget.enforce(l, ls, cpa, precisionMap, reached, removed);
+			assertEquals(1, budget.getInterventionCount());
+		}
+		add(budget, 7);
+		budget.enforce(l, ls, cpa, precisionMap, reached, removed);
+		assertEquals(2, budget.getInterventionCount());
+		assertEquals(7, budget.getCount(l));
+	}
+
+	@Test
+	public void testPrecisionIsolation() {
+		// Another location sharing the precision
+		RTLLabel other = new RTLLabel(new AbsoluteAddress(0x401000), 1);
+		Precision shared = precisionMap.get(l);
+		precisionMap.put(other, shared);
+		int threshold = explicitPrecision.getThreshold(ExpressionFactory.createVariable("%eax", 32));
+
+		StateBudget budget = new StateBudget(2);
+		for (int i = 1; i <= 3; i++)
+			add(budget, i);
+		budget.enforce(l, ls, cpa, precisionMap, reached, new LinkedList<AbstractState>());
+
+		CompositePrecision coarsened = (CompositePrecision)precisionMap.get(l);
+		assertNotSame(shared, coarsened);
+		assertNotSame(explicitPrecision, coarsened.getComponent(1));
+		assertEquals(threshold / 2, ((ExplicitPrecision)coarsened.getComponent(1)).getThreshold(
+				ExpressionFactory.createVariable("%eax", 32)));
+		assertSame(shared, precisionMap.get(other));
+		assertEquals(threshold, explicitPrecision.getThreshold(ExpressionFactory.createVariable("%eax", 32)));
+	}
+
+}
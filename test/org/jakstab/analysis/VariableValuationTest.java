@@ -19,6 +19,8 @@ package org.jakstab.analysis;
 
 import static org.junit.Assert.*;
 
+import java.util.*;
+
 import org.jakstab.analysis.explicit.*;
 import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLVariable;
@@ -152,4 +154,22 @@ public class VariableValuationTest {
 		assertEquals(aVarVal1, aVarVal2);
 	}
 
+	@Test
+	public void testIterationOrder() {
+		VariableValuation<NumberElement> aVarVal = 
+			new VariableValuation<NumberElement>(new NumberElementFactory());
+		TreeMap<RTLVariable, NumberElement> expected = new TreeMap<RTLVariable, NumberElement>();
+		aVarVal.set(y16, n16);
+		expected.put(y16, n16);
+		aVarVal.set(eax, n32);
+		expected.put(eax, n32);
+		aVarVal.set(x32, n32b);
+		expected.put(x32, n32b);
+		List<RTLVariable> vars = new LinkedList<RTLVariable>();
+		for (Map.Entry<RTLVariable, NumberElement> entry : aVarVal)
+			vars.add(entry.getKey());
+		assertEquals(new LinkedList<RTLVariable>(expected.keySet()), vars);
+		assertEquals(expected.toString(), aVarVal.toString());
+	}
+
 }
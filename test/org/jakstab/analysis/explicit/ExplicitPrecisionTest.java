@@ -0,0 +1,159 @@
+/*
+ * ExplicitPrecisionTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis.explicit;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.jakstab.analysis.MemoryRegion;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.util.MapMap.EntryIterator;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+public class ExplicitPrecisionTest {
+
+	private static final MemoryRegion[] regions = {MemoryRegion.GLOBAL, MemoryRegion.STACK};
+	// Registers from the SSL, so the test does not use up additional variables
+	private static final String[] varNames = {"%eax", "%ecx", "%edx", "%ebx", 
+		"%esp", "%ebp", "%esi", "%edi", "%cr0", "%cr2", "%cr3", "%cr4"};
+
+	private RTLVariable[] vars;
+	private Random random;
+
+	@Before
+	public void setUp() throws Exception {
+		vars = new RTLVariable[varNames.length];
+		for (int i = 0; i < vars.length; i++)
+			vars[i] = ExpressionFactory.createVariable(varNames[i], 32);
+		random = new Random(42);
+	}
+
+	private BasedNumberElement randomValue() {
+		return new BasedNumberElement(ExpressionFactory.createNumber(random.nextInt(6), 32));
+	}
+
+	/**
+	 * Derives a new state from a random earlier one, so consecutive states
+	 * collected by the precision are not always related.
+	 */
+	private BasedNumberValuation successor(List<BasedNumberValuation> states) {
+		BasedNumberValuation parent = states.get(random.nextInt(states.size()));
+		if (random.nextInt(8) == 0)
+			return parent.join(states.get(random.nextInt(states.size())));
+		BasedNumberValuation s = new BasedNumberValuation(parent);
+		for (int i = random.nextInt(3); i >= 0; i--)
+			s.setValue(vars[random.nextInt(vars.length)], randomValue());
+		for (int i = random.nextInt(3); i > 0; i--)
+			s.getStore().set(regions[random.nextInt(regions.length)],
+					4 * random.nextInt(10), 32, randomValue());
+		return s;
+	}
+
+	/**
+	 * Checks the values and threshold sets of the precision against those
+	 * computed from scratch from all the given states.
+	 */
+	private static void assertCollected(ExplicitPrecision p, List<BasedNumberValuation> states) {
+		SetMultimap<RTLVariable, BasedNumberElement> varMap = HashMultimap.create();
+		Map<MemoryRegion, SetMultimap<Long, BasedNumberElement>> regionMaps =
+				new HashMap<MemoryRegion, SetMultimap<Long,BasedNumberElement>>();
+		for (BasedNumberValuation s : states) {
+			for (Map.Entry<RTLVariable, BasedNumberElement> entry : s.getVariableValuation())
+				varMap.put(entry.getKey(), entry.getValue());
+			for (EntryIterator<MemoryRegion, Long, BasedNumberElement> entryIt = s.getStore().entryIterator();
+					entryIt.hasEntry(); entryIt.next()) {
+				SetMultimap<Long, BasedNumberElement> memoryMap = regionMaps.get(entryIt.getLeftKey());
+				if (memoryMap == null) {
+					memoryMap = HashMultimap.create();
+					regionMaps.put(entryIt.getLeftKey(), memoryMap);
+				}
+				memoryMap.put(entryIt.getRightKey(), entryIt.getValue());
+			}
+		}
+		Set<RTLVariable> varsOverThreshold = new HashSet<RTLVariable>();
+		for (RTLVariable v : varMap.keySet())
+			if (varMap.get(v).size() > p.getThreshold(v))
+				varsOverThreshold.add(v);
+		SetMultimap<MemoryRegion, Long> cellsOverThreshold = HashMultimap.create();
+		for (Map.Entry<MemoryRegion, SetMultimap<Long, BasedNumberElement>> entry : regionMaps.entrySet())
+			for (Long offset : entry.getValue().keySet())
+				if (entry.getValue().get(offset).size() > p.getStoreThreshold(entry.getKey(), offset))
+					cellsOverThreshold.put(entry.getKey(), offset);
+
+		assertEquals(varMap, p.varMap);
+		assertEquals(regionMaps, p.regionMaps);
+		assertEquals(varsOverThreshold, p.varsOverThreshold);
+		assertEquals(cellsOverThreshold, p.cellsOverThreshold);
+		assertFalse(varsOverThreshold.isEmpty());
+		assertFalse(cellsOverThreshold.isEmpty());
+	}
+
+	@Test
+	public void testIncrementalCollectionMatchesFullRecomputation() {
+		ExplicitPrecision p = new ExplicitPrecision(4);
+		List<BasedNumberValuation> states = new ArrayList<BasedNumberValuation>();
+		BasedNumberValuation initial = BasedNumberValuation.createInitialState();
+		for (RTLVariable v : vars)
+			initial.setValue(v, randomValue());
+		states.add(initial);
+		p.collectValues(initial);
+		for (int i = 0; i < 500; i++) {
+			BasedNumberValuation s = successor(states);
+			states.add(s);
+			p.collectValues(s);
+		}
+		assertCollected(p, states);
+
+		// Thresholds lowered later must flag the same locations
+		assertTrue(p.coarsen());
+		assertCollected(p, states);
+		for (int i = 0; i < 100; i++) {
+			BasedNumberValuation s = successor(states);
+			states.add(s);
+			p.collectValues(s);
+		}
+		assertCollected(p, states);
+	}
+
+	@Test
+	public void testCopyContinuesIndependently() {
+		ExplicitPrecision p = new ExplicitPrecision(4);
+		List<BasedNumberValuation> states = new ArrayList<BasedNumberValuation>();
+		states.add(BasedNumberValuation.createInitialState());
+		for (int i = 0; i < 200; i++) {
+			BasedNumberValuation s = successor(states);
+			states.add(s);
+			p.collectValues(s);
+		}
+		ExplicitPrecision copy = p.copy();
+		List<BasedNumberValuation> copyStates = new ArrayList<BasedNumberValuation>(states);
+		for (int i = 0; i < 200; i++) {
+			BasedNumberValuation s = successor(copyStates);
+			copyStates.add(s);
+			copy.collectValues(s);
+		}
+		assertCollected(copy, copyStates.subList(1, copyStates.size()));
+		assertCollected(p, states.subList(1, states.size()));
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * ControlFlowGraphTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jakstab.Program;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.rtl.statements.RTLSkip;
+import org.jakstab.ssl.Architecture;
+import org.junit.Test;
+
+public class ControlFlowGraphTest {
+
+	private static CFAEdge edge(RTLLabel from, RTLLabel to) {
+		RTLSkip skip = new RTLSkip();
+		skip.setLabel(from);
+		skip.setNextLabel(to);
+		return new CFAEdge(from, to, skip);
+	}
+
+	@Test
+	public void testFrozenGraph() throws Exception {
+		Program.createProgram(new Architecture("ssl/pentium.ssl"));
+		RTLLabel[] l = new RTLLabel[6];
+		for (int i = 0; i < l.length; i++)
+			l[i] = new RTLLabel(new AbsoluteAddress(0x401000 + i));
+
+		// Diamond between l1 and l4, with a duplicate edge from l0 to l1
+		Set<CFAEdge> edges = new HashSet<CFAEdge>();
+		CFAEdge e34 = edge(l[3], l[4]);
+		edges.add(edge(l[0], l[1]));
+		edges.add(edge(l[0], l[1]));
+		edges.add(edge(l[1], l[3]));
+		edges.add(edge(l[1], l[2]));
+		edges.add(edge(l[2], l[4]));
+		edges.add(e34);
+		edges.add(edge(l[4], l[5]));
+
+		ControlFlowGraph cfg = new ControlFlowGraph(edges);
+		assertEquals(6, cfg.numEdges());
+		assertEquals(6, cfg.getLocationCount());
+		assertEquals(l[0], cfg.getEntryPoint());
+		for (int i = 0; i < l.length; i++)
+			assertEquals(i, cfg.getLocationId(l[i]));
+		assertEquals(-1, cfg.getLocationId(new RTLLabel(new AbsoluteAddress(0x402000))));
+
+		// Out-edges are ordered by target
+		assertEquals(2, cfg.getOutDegree(1));
+		assertEquals(l[2], cfg.getOutEdge(1, 0).getTarget());
+		assertEquals(l[3], cfg.getOutEdge(1, 1).getTarget());
+		assertEquals(2, cfg.getInDegree(4));
+		assertSame(e34, cfg.getInEdge(4, 1));
+		assertTrue(cfg.getEdges().contains(e34));
+		assertTrue(cfg.getInEdges(l[4]).contains(e34));
+		assertFalse(cfg.getOutEdges(l[4]).contains(e34));
+		assertSame(e34, cfg.getEdgeBetween(l[3], l[4]));
+
+		// Blocks start at the entry, the branch targets, and the join
+		assertEquals(4, cfg.getBasicBlocks().size());
+		assertEquals(2, cfg.getBasicBlock(l[0]).size());
+		assertEquals(1, cfg.getBasicBlock(l[4]).size());
+		assertEquals(4, cfg.getBasicBlockEdges().size());
+		assertEquals(2, cfg.getBasicBlockOutEdges(l[0]).size());
+		assertEquals(0, cfg.getBasicBlockOutEdges(l[4]).size());
+	}
+
+}
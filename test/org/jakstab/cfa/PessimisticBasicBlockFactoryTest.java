@@ -0,0 +1,78 @@
+/*
+ * PessimisticBasicBlockFactoryTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import static org.junit.Assert.*;
+
+import java.util.Set;
+
+import org.jakstab.Program;
+import org.jakstab.analysis.location.LocationState;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.statements.BasicBlock;
+import org.jakstab.rtl.statements.RTLHalt;
+import org.jakstab.rtl.statements.RTLSkip;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.rtl.statements.RTLVariableAssignment;
+import org.jakstab.ssl.Architecture;
+import org.junit.Test;
+
+public class PessimisticBasicBlockFactoryTest {
+
+	@Test
+	public void testCachedBlocksGetFreshEdges() throws Exception {
+		Program program = Program.createProgram(new Architecture("ssl/pentium.ssl"));
+		RTLLabel l0 = new RTLLabel(new AbsoluteAddress(0x401000), 0);
+		RTLLabel l1 = new RTLLabel(new AbsoluteAddress(0x401000), 1);
+		RTLLabel l2 = new RTLLabel(new AbsoluteAddress(0x401000), 2);
+		RTLStatement assignment = new RTLVariableAssignment(ExpressionFactory.createVariable("%eax", 32), 
+				ExpressionFactory.createNumber(1, 32));
+		assignment.setLabel(l0);
+		assignment.setNextLabel(l1);
+		program.putStatement(assignment);
+		RTLStatement skip = new RTLSkip();
+		skip.setLabel(l1);
+		skip.setNextLabel(l2);
+		program.putStatement(skip);
+		RTLStatement halt = new RTLHalt();
+		halt.setLabel(l2);
+		program.putStatement(halt);
+
+		PessimisticBasicBlockFactory factory = new PessimisticBasicBlockFactory();
+		LocationState state = new LocationState(l0);
+		Set<CFAEdge> first = factory.getTransformers(state);
+		assertEquals(1, first.size());
+		CFAEdge edge = first.iterator().next();
+		BasicBlock block = (BasicBlock)edge.getTransformer();
+		assertEquals(2, block.size());
+		assertEquals(l2, edge.getTarget());
+
+		// Later passes modify the edges of the CFA
+		edge.setTransformer(skip);
+		edge.setTarget(l1);
+		edge.setKind(CFAEdge.Kind.MUST);
+
+		CFAEdge again = factory.getTransformers(state).iterator().next();
+		assertNotSame(edge, again);
+		assertSame(block, again.getTransformer());
+		assertEquals(l0, again.getSource());
+		assertEquals(l2, again.getTarget());
+		assertEquals(CFAEdge.Kind.MAY, again.getKind());
+	}
+
+}
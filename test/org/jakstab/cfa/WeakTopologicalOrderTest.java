@@ -0,0 +1,89 @@
+/*
+ * WeakTopologicalOrderTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.rtl.statements.RTLSkip;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WeakTopologicalOrderTest {
+
+	private RTLLabel[] l;
+	private List<CFAEdge> edges;
+
+	private void edge(int from, int to) {
+		edges.add(new CFAEdge(l[from], l[to], new RTLSkip()));
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		l = new RTLLabel[8];
+		for (int i = 0; i < l.length; i++)
+			l[i] = new RTLLabel(new AbsoluteAddress(0x401000 + i));
+		edges = new LinkedList<CFAEdge>();
+		// WTO: 0 1 (2 (3 4 (5 6) 7))
+		edge(0, 1);
+		edge(1, 2);
+		edge(2, 3);
+		edge(3, 4);
+		edge(4, 5);
+		edge(5, 6);
+		edge(6, 5);
+		edge(6, 7);
+		edge(7, 3);
+		edge(7, 2);
+		edge(2, 1);
+		edge(1, 0);
+	}
+
+	@Test
+	public void testNestedLoops() {
+		// Remove the back edges to 0 and 1
+		edges.remove(edges.size() - 1);
+		edges.remove(edges.size() - 1);
+		WeakTopologicalOrder wto = new WeakTopologicalOrder(l[0], edges, false);
+		assertEquals(Arrays.asList(l[0], l[1], l[2], l[3], l[4], l[5], l[6], l[7]), wto.getLocations());
+		assertEquals(0, wto.getLoopDepth(l[1]));
+		assertTrue(wto.isComponentHead(l[2]));
+		assertEquals(1, wto.getLoopDepth(l[2]));
+		assertTrue(wto.isComponentHead(l[3]));
+		assertEquals(2, wto.getLoopDepth(l[4]));
+		assertTrue(wto.isComponentHead(l[5]));
+		assertEquals(3, wto.getLoopDepth(l[6]));
+		assertEquals(2, wto.getLoopDepth(l[7]));
+		assertEquals(3, wto.getMaxLoopDepth());
+		assertEquals(0, wto.getReversePostorderNumber(l[0]));
+		assertTrue(wto.getReversePostorderNumber(l[4]) < wto.getReversePostorderNumber(l[6]));
+	}
+
+	@Test
+	public void testReverse() {
+		WeakTopologicalOrder wto = new WeakTopologicalOrder(l[7], edges, true);
+		assertEquals(l[7], wto.getLocations().get(0));
+		assertFalse(wto.contains(new RTLLabel(new AbsoluteAddress(0x1))));
+		assertEquals(-1, wto.getWTOPosition(new RTLLabel(new AbsoluteAddress(0x1))));
+		assertEquals(l.length, wto.size());
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * ParallelDisassemblerTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.disasm;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Map;
+
+import org.jakstab.Options;
+import org.jakstab.Program;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.asm.DummySymbolFinder;
+import org.jakstab.asm.SymbolFinder;
+import org.jakstab.asm.Instruction;
+import org.jakstab.loader.ExecutableImage;
+import org.jakstab.ssl.Architecture;
+import org.junit.Test;
+
+public class ParallelDisassemblerTest {
+
+	@Test
+	public void testSameAsSequential() throws Exception {
+		Program program = Program.createProgram(new Architecture("ssl/pentium.ssl"));
+		ExecutableImage module = program.loadMainModule(new File(Options.jakstabHome + "/input/bin/helloworld.exe"));
+		Map<AbsoluteAddress, Instruction> index = new ParallelDisassembler(module).run(4);
+		assertFalse(index.isEmpty());
+
+		SymbolFinder symFinder = DummySymbolFinder.getInstance();
+		for (Map.Entry<AbsoluteAddress, Instruction> entry : index.entrySet()) {
+			long a = entry.getKey().getValue();
+			Instruction instr = module.getDisassembler().decodeInstruction(module.getFilePointer(entry.getKey()));
+			assertNotNull(instr);
+			assertEquals(instr.getSize(), entry.getValue().getSize());
+			assertEquals(instr.toString(a, symFinder), entry.getValue().toString(a, symFinder));
+		}
+	}
+
+}
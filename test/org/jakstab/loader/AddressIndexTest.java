@@ -0,0 +1,53 @@
+/*
+ * AddressIndexTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.loader;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.jakstab.Options;
+import org.jakstab.Program;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.ssl.Architecture;
+import org.junit.Test;
+
+public class AddressIndexTest {
+
+	@Test
+	public void testSameAsModule() throws Exception {
+		Program program = Program.createProgram(new Architecture("ssl/pentium.ssl"));
+		ExecutableImage module = program.loadMainModule(new File(Options.jakstabHome + "/input/bin/helloworld.exe"));
+		AddressIndex index = program.getAddressIndex();
+		assertTrue(index.size() > 0);
+
+		long min = module.getMinAddress().getValue() - 0x100;
+		long max = module.getMaxAddress().getValue() + 0x100;
+		for (long a = min; a < max; a++) {
+			AbsoluteAddress va = new AbsoluteAddress(a);
+			long fp = module.getFilePointer(va);
+			assertEquals(fp, index.getFilePointer(a));
+			if (fp >= 0) {
+				assertSame(module, index.getModule(a));
+				assertEquals(module.isCodeArea(va), index.isCodeArea(a));
+			} else {
+				assertNull(index.getModule(a));
+			}
+		}
+	}
+
+}
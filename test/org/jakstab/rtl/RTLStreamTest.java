@@ -0,0 +1,79 @@
+/*
+ * RTLStreamTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.rtl;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.RTLLabel;
+import org.jakstab.rtl.expressions.*;
+import org.jakstab.rtl.statements.*;
+import org.junit.Test;
+
+public class RTLStreamTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		RTLVariable eax = ExpressionFactory.createVariable("eax", 32);
+		RTLExpression address = ExpressionFactory.createPlus(eax, ExpressionFactory.createNumber(0x1000, 32));
+		RTLMemoryLocation m = ExpressionFactory.createMemoryLocation(address, 32);
+		RTLExpression cond = ExpressionFactory.createConditionalExpression(
+				ExpressionFactory.createLessThan(eax, ExpressionFactory.createNumber(-5, 32)),
+				ExpressionFactory.createBitRange(m, ExpressionFactory.createNumber(0, 8), ExpressionFactory.createNumber(15, 8)),
+				ExpressionFactory.createVariable("bx", 16));
+
+		RTLStatement assign = new RTLMemoryAssignment(m, cond);
+		assign.setLabel(new RTLLabel(new AbsoluteAddress(0x401000), 0));
+		assign.setNextLabel(new RTLLabel(new AbsoluteAddress(0x401000), 1));
+		RTLGoto jump = new RTLGoto(ExpressionFactory.createNumber(0x401010, 32), 
+				ExpressionFactory.createEqual(eax, m), RTLGoto.Type.JUMP);
+		jump.setLabel(new RTLLabel(new AbsoluteAddress(0x401000), 1));
+		RTLAssume assume = new RTLAssume(ExpressionFactory.createNot(jump.getCondition()), jump);
+		assume.setLabel(jump.getLabel());
+		assume.setNextLabel(new RTLLabel(new AbsoluteAddress(0x401006)));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		RTLOutputStream out = new RTLOutputStream(bytes);
+		out.writeStatement(assign);
+		out.writeStatement(assume);
+		out.writeStatement(jump);
+		out.writeLabel(null);
+		out.close();
+
+		RTLInputStream in = new RTLInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		RTLStatement assign2 = in.readStatement();
+		RTLAssume assume2 = (RTLAssume)in.readStatement();
+		RTLStatement jump2 = in.readStatement();
+		assertNull(in.readLabel());
+		in.close();
+
+		assertEquals(assign, assign2);
+		assertEquals(assign.getLabel(), assign2.getLabel());
+		assertEquals(assign.getNextLabel(), assign2.getNextLabel());
+		assertEquals(assume, assume2);
+		assertEquals(assume.getNextLabel(), assume2.getNextLabel());
+		// Statements written before are read as the same instance
+		assertSame(assume2.getSource(), jump2);
+		assertEquals(jump, jump2);
+		assertSame(eax, ((RTLGoto)jump2).getCondition().getUsedVariables().iterator().next());
+	}
+
+}
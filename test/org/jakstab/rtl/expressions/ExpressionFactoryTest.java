@@ -0,0 +1,45 @@
+/*
+ * ExpressionFactoryTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.rtl.expressions;
+
+import static org.junit.Assert.*;
+
+import org.jakstab.Options;
+import org.junit.Test;
+
+public class ExpressionFactoryTest {
+
+	@Test
+	public void hashConsing() {
+		RTLVariable eax = ExpressionFactory.createVariable("eax", 32);
+		Options.hashCons.setValue(true);
+		try {
+			RTLExpression e1 = ExpressionFactory.createPlus(eax, ExpressionFactory.createNumber(4, 32));
+			RTLExpression e2 = ExpressionFactory.createPlus(eax, ExpressionFactory.createNumber(4, 32));
+			assertSame(e1, e2);
+			assertSame(ExpressionFactory.createMemoryLocation(e1, 32), ExpressionFactory.createMemoryLocation(e2, 32));
+		} finally {
+			Options.hashCons.setValue(false);
+		}
+		RTLExpression e3 = ExpressionFactory.createPlus(eax, ExpressionFactory.createNumber(4, 32));
+		RTLExpression e4 = ExpressionFactory.createPlus(eax, ExpressionFactory.createNumber(4, 32));
+		assertNotSame(e3, e4);
+		assertEquals(e3, e4);
+		assertEquals(e3.hashCode(), e4.hashCode());
+	}
+
+}
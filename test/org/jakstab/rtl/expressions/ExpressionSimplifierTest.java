@@ -95,6 +95,21 @@ public class ExpressionSimplifierTest {
 		assertEquals(ExpressionFactory.createLessThan(fiftyEight, eax), result);
 	}
 	
+	@Test
+	public void cachedResult() {
+		RTLExpression num0 = ExpressionFactory.createNumber(0, 32); 
+		RTLExpression e = ExpressionFactory.createLessThan(ExpressionFactory.createMinus(eax, ebx), num0);
+		RTLExpression result = simplifier.simplify(e);
+		assertEquals(ExpressionFactory.createLessThan(eax, ebx), result);
+		// An equal expression yields the same result, which is its own simplification
+		RTLExpression e2 = ExpressionFactory.createLessThan(ExpressionFactory.createMinus(eax, ebx), num0);
+		assertSame(result, simplifier.simplify(e2));
+		assertSame(result, simplifier.simplify(result));
+		// An equal instance of a simplified expression is not replaced by the cached one
+		RTLExpression result2 = ExpressionFactory.createLessThan(eax, ebx);
+		assertSame(result2, simplifier.simplify(result2));
+	}
+	
 	@Test
 	public void bitwidths() {
 		RTLExpression e = ExpressionFactory.createOr(ExpressionFactory.createLessThan(eax, five),
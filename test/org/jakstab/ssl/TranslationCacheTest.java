@@ -0,0 +1,105 @@
+/*
+ * TranslationCacheTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.ssl;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+
+import org.jakstab.Options;
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.asm.Instruction;
+import org.jakstab.disasm.x86.X86Disassembler;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.rtl.statements.StatementSequence;
+import org.jakstab.util.BinaryFileInputBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TranslationCacheTest {
+
+	private Architecture arch;
+
+	@Before
+	public void setUp() throws Exception {
+		arch = new Architecture("ssl/pentium.ssl");
+	}
+
+	private static Instruction decode(int... bytes) throws Exception {
+		byte[] code = new byte[bytes.length];
+		for (int i = 0; i < bytes.length; i++)
+			code[i] = (byte)bytes[i];
+		return new X86Disassembler(new BinaryFileInputBuffer(new ByteArrayInputStream(code))).decodeInstruction(0);
+	}
+
+	private StatementSequence translateDirectly(AbsoluteAddress address, Instruction instr) {
+		Options.noRtlCache.setValue(true);
+		try {
+			return arch.getRTLEquivalent(address, instr);
+		} finally {
+			Options.noRtlCache.setValue(false);
+		}
+	}
+
+	private void assertSameAsDirect(AbsoluteAddress address, Instruction instr) {
+		StatementSequence cached = arch.getRTLEquivalent(address, instr);
+		StatementSequence direct = translateDirectly(address, instr);
+		assertEquals(direct.getLength(), cached.getLength());
+		Iterator<RTLStatement> it = direct.iterator();
+		for (RTLStatement stmt : cached) {
+			RTLStatement other = it.next();
+			assertEquals(other.getLabel(), stmt.getLabel());
+			assertEquals(other.getNextLabel(), stmt.getNextLabel());
+			assertEquals(other.toString(), stmt.toString());
+		}
+	}
+
+	@Test
+	public void testSameAsDirectTranslation() throws Exception {
+		int[] values = {2, 0x7f, 0x80, 0x1234, 0x7fffffff, 0x80000000, 0xfffffffe};
+		for (int i = 0; i < 3 * values.length; i++) {
+			int v = values[i % values.length];
+			// add eax, v
+			Instruction instr = decode(0x05, v & 0xff, (v >>> 8) & 0xff, (v >>> 16) & 0xff, v >>> 24);
+			assertSameAsDirect(new AbsoluteAddress(0x401000 + 16 * i), instr);
+		}
+		assertTrue(arch.getTranslationCacheHits() > 0);
+	}
+
+	@Test
+	public void testValueDependentShapeNotCached() throws Exception {
+		// shl eax, n leaves the flags unchanged if n is a multiple of 32
+		int[] counts = {2, 5, 31, 32, 33, 64};
+		for (int i = 0; i < counts.length; i++) {
+			Instruction instr = decode(0xc1, 0xe0, counts[i]);
+			assertSameAsDirect(new AbsoluteAddress(0x401000 + 4 * i), instr);
+		}
+		assertEquals(0, arch.getTranslationCacheHits());
+	}
+
+	@Test
+	public void testRelativeJumps() throws Exception {
+		for (int i = 0; i < 2 * Architecture.VERIFIED_INSTANCES; i++) {
+			// jz rel8
+			Instruction instr = decode(0x74, (i * 13 + 2) & 0x7f);
+			assertSameAsDirect(new AbsoluteAddress(0x401000 + 8 * i), instr);
+		}
+		assertTrue(arch.getTranslationCacheHits() >= Architecture.VERIFIED_INSTANCES);
+	}
+
+}
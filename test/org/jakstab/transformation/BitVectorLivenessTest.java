@@ -0,0 +1,89 @@
+/*
+ * BitVectorLivenessTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.transformation;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.RTLLabel;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.expressions.SetOfVariables;
+import org.jakstab.rtl.statements.RTLSkip;
+import org.jakstab.rtl.statements.RTLVariableAssignment;
+import org.junit.Test;
+
+public class BitVectorLivenessTest {
+
+	@Test
+	public void testRemoveEdge() {
+		RTLVariable a = ExpressionFactory.createVariable("live_a", 32);
+		RTLVariable b = ExpressionFactory.createVariable("live_b", 32);
+		RTLVariable c = ExpressionFactory.createVariable("live_c", 32);
+		RTLLabel[] l = new RTLLabel[4];
+		for (int i = 0; i < l.length; i++)
+			l[i] = new RTLLabel(new AbsoluteAddress(0x401000 + i));
+
+		// a := b; c := a; skip
+		List<CFAEdge> cfa = new ArrayList<CFAEdge>();
+		cfa.add(new CFAEdge(l[0], l[1], new RTLVariableAssignment(32, a, b)));
+		cfa.add(new CFAEdge(l[1], l[2], new RTLVariableAssignment(32, c, a)));
+		cfa.add(new CFAEdge(l[2], l[3], new RTLSkip()));
+
+		BitVectorLiveness liveness = new BitVectorLiveness(cfa, new SetOfVariables(), new SetOfVariables());
+		assertEquals(4, liveness.solve());
+		assertTrue(liveness.isLiveAtTarget(0, a));
+		assertFalse(liveness.isLiveAtTarget(0, b));
+		assertFalse(liveness.isLiveAtTarget(1, c));
+
+		// Removing the dead assignment to c makes the assignment to a dead
+		liveness.removeEdge(1);
+		assertNull(liveness.getEdge(1));
+		assertEquals(l[2], cfa.get(0).getTarget());
+		assertEquals(1, liveness.resolve());
+		assertFalse(liveness.isLiveAtTarget(0, a));
+	}
+
+	@Test
+	public void testRemoveSelfLoop() {
+		RTLVariable a = ExpressionFactory.createVariable("live_a", 32);
+		RTLVariable b = ExpressionFactory.createVariable("live_b", 32);
+		RTLLabel[] l = new RTLLabel[2];
+		for (int i = 0; i < l.length; i++)
+			l[i] = new RTLLabel(new AbsoluteAddress(0x402000 + i));
+
+		// a := b; l1: skip; goto l1
+		List<CFAEdge> cfa = new ArrayList<CFAEdge>();
+		cfa.add(new CFAEdge(l[0], l[1], new RTLVariableAssignment(32, a, b)));
+		cfa.add(new CFAEdge(l[1], l[1], new RTLSkip()));
+
+		BitVectorLiveness liveness = new BitVectorLiveness(cfa, new SetOfVariables(), new SetOfVariables());
+		liveness.solve();
+
+		liveness.removeEdge(1);
+		assertNull(liveness.getEdge(1));
+		// The edge into the loop location keeps its target
+		assertEquals(l[1], cfa.get(0).getTarget());
+		liveness.resolve();
+		assertFalse(liveness.isLiveAtTarget(0, a));
+	}
+
+}
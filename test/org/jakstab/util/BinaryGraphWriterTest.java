@@ -0,0 +1,77 @@
+/*
+ * BinaryGraphWriterTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class BinaryGraphWriterTest {
+
+	/**
+	 * Records the calls it receives as strings.
+	 */
+	private static class RecordingWriter implements GraphWriter {
+		final List<String> calls = new ArrayList<String>();
+
+		public void close() {}
+		public void writeNode(String id, String body) { writeNode(id, body, null); }
+		public void writeNode(String id, String body, Map<String, String> properties) {
+			calls.add("node " + id + " " + body + " " + properties);
+		}
+		public void writeEdge(String id1, String id2) { writeEdge(id1, id2, null, null, false); }
+		public void writeEdge(String id1, String id2, Color color) { writeEdge(id1, id2, null, color, false); }
+		public void writeEdge(String id1, String id2, String label) { writeEdge(id1, id2, label, null, false); }
+		public void writeEdge(String id1, String id2, String label, Color color) { writeEdge(id1, id2, label, color, false); }
+		public void writeEdge(String id1, String id2, String label, Color color, boolean weakEdge) {
+			calls.add("edge " + id1 + " " + id2 + " " + label + " " + color + " " + weakEdge);
+		}
+		public String getFilename() { return null; }
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File file = File.createTempFile("graph", "");
+		file.delete();
+		BinaryGraphWriter writer = new BinaryGraphWriter(file.getPath());
+		RecordingWriter expected = new RecordingWriter();
+		StringBuilder longBody = new StringBuilder();
+		for (int i = 0; i < 10000; i++)
+			longBody.append("movl %eax, %ebx\\l");
+		for (GraphWriter w : new GraphWriter[] {writer, expected}) {
+			w.writeNode("0x00401000_0", "start\n\u00e4", Collections.singletonMap("color", "green"));
+			w.writeNode("0x00401005_0", longBody.toString());
+			w.writeEdge("0x00401000_0", "0x00401005_0", "edi := 4198435", Color.GREEN);
+			w.writeEdge("0x00401005_0", "0x00401000_0", null, null, true);
+		}
+		writer.close();
+
+		RecordingWriter actual = new RecordingWriter();
+		BinaryGraphReader.read(writer.getFilename(), actual);
+		new File(writer.getFilename()).delete();
+		assertEquals(expected.calls, actual.calls);
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * IntervalMapTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class IntervalMapTest {
+
+	@Test
+	public void testPutGet() {
+		IntervalMap<String> map = new IntervalMap<String>();
+		map.put(8, 12, "A");
+		map.put(0, 4, "B");
+		map.put(4, 8, "C");
+		assertEquals(3, map.size());
+		assertEquals("B", map.get(0));
+		assertEquals("B", map.get(3));
+		assertEquals("C", map.get(4));
+		assertEquals("A", map.get(11));
+		assertNull(map.get(12));
+		assertNull(map.get(-1));
+		assertFalse(map.containsKey(12));
+	}
+
+	@Test
+	public void testOverlappingPut() {
+		IntervalMap<String> map = new IntervalMap<String>();
+		map.put(0, 8, "A");
+		map.put(2, 4, "B");
+		// A is cut into two parts around B
+		assertEquals(3, map.size());
+		assertEquals("A", map.get(1));
+		assertEquals("B", map.get(2));
+		assertEquals("A", map.get(4));
+		assertEquals(4, map.getStart(2));
+		map.put(1, 6, "C");
+		assertEquals(3, map.size());
+		assertEquals("A", map.get(0));
+		assertEquals("C", map.get(5));
+		assertEquals("A", map.get(6));
+	}
+
+	@Test
+	public void testRemove() {
+		IntervalMap<String> map = new IntervalMap<String>();
+		map.put(-8, -4, "A");
+		map.put(-4, 0, "B");
+		assertFalse(map.remove(0, 4));
+		assertTrue(map.remove(Long.MIN_VALUE, -6));
+		assertNull(map.get(-7));
+		assertEquals("A", map.get(-6));
+		assertEquals(-6, map.getStart(0));
+		assertTrue(map.remove(-6, 0));
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void testCopyOnWrite() {
+		IntervalMap<String> map = new IntervalMap<String>();
+		map.put(0, 4, "A");
+		IntervalMap<String> copy = new IntervalMap<String>(map);
+		assertEquals(map, copy);
+		assertEquals(map.hashCode(), copy.hashCode());
+		copy.put(4, 8, "B");
+		map.put(0, 2, "C");
+		assertEquals(2, map.size());
+		assertEquals("C", map.get(0));
+		assertNull(map.get(4));
+		assertEquals("A", copy.get(0));
+		assertEquals("B", copy.get(4));
+		assertFalse(map.equals(copy));
+	}
+
+	@Test
+	public void testLargeMap() {
+		IntervalMap<Integer> map = new IntervalMap<Integer>();
+		for (int i = 999; i >= 0; i--)
+			map.put(4 * i, 4 * i + 4, i);
+		assertEquals(1000, map.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(4 * i, map.getStart(i));
+			assertEquals(Integer.valueOf(i), map.get(4 * i + 3));
+		}
+		assertTrue(map.remove(2, 3998));
+		assertEquals(2, map.size());
+		assertEquals(Integer.valueOf(0), map.get(1));
+		assertEquals(Integer.valueOf(999), map.get(3998));
+		assertEquals(3998, map.getStart(1));
+	}
+
+	@Test
+	public void testNextUnshared() {
+		IntervalMap<Integer> map = new IntervalMap<Integer>();
+		for (int i = 0; i < 1000; i++)
+			map.put(4 * i, 4 * i + 4, i);
+		IntervalMap<Integer> copy = new IntervalMap<Integer>(map);
+		assertEquals(1000, copy.nextUnshared(0, map));
+		copy.put(2000, 2004, -1);
+		assertEquals(map, new IntervalMap<Integer>(map));
+		assertFalse(map.equals(copy));
+		// Only the intervals in the modified block are unshared
+		int first = copy.nextUnshared(0, map);
+		assertTrue(first <= 500);
+		assertTrue(first > 400);
+		int next = first;
+		while (next < copy.size() && copy.nextUnshared(next, map) == next)
+			next++;
+		assertTrue(next > 500);
+		assertTrue(next - first <= 32);
+		assertEquals(copy.size(), copy.nextUnshared(next, map));
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * MappedFileInputBufferTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import org.junit.Test;
+
+public class MappedFileInputBufferTest {
+
+	@Test
+	public void testSameAsFileBuffer() throws Exception {
+		File file = File.createTempFile("jakstab", ".bin");
+		file.deleteOnExit();
+		byte[] bytes = new byte[5000];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte)(i * 37 + 11);
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(bytes);
+		out.close();
+
+		BinaryInputBuffer mapped = new MappedFileInputBuffer(file);
+		BinaryInputBuffer buffered = new BinaryFileInputBuffer(new FileInputStream(file));
+		assertEquals(buffered.getSize(), mapped.getSize());
+		for (int fp = 0; fp < bytes.length - 8; fp += 3) {
+			for (int n = 1; n <= 8; n++)
+				assertEquals(buffered.getValueAt(fp, n), mapped.getValueAt(fp, n));
+		}
+
+		mapped.seek(4094);
+		buffered.seek(4094);
+		assertEquals(buffered.readDWORD(), mapped.readDWORD());
+	}
+
+	@Test
+	public void testPatch() throws Exception {
+		File file = File.createTempFile("jakstab", ".bin");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[8192]);
+		out.close();
+
+		WritableInputBuffer mapped = new MappedFileInputBuffer(file);
+		// Patch across a page boundary
+		mapped.putByteAt(4095, (byte)0x78);
+		mapped.putByteAt(4096, (byte)0x56);
+		assertEquals(0x5678, mapped.getShortAt(4095));
+		assertEquals(0x567800, mapped.getIntAt(4094));
+		assertEquals(0, mapped.getIntAt(0));
+		assertEquals(0, mapped.getLongAt(8184));
+		
+		// The file itself is not modified
+		assertEquals(0, new MappedFileInputBuffer(file).getShortAt(4095));
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * MemoryGovernorTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+
+import org.junit.Test;
+
+public class MemoryGovernorTest {
+
+	@Test
+	public void testShutdownRestoresThresholds() {
+		Map<String, Long> before = getThresholds();
+		MemoryGovernor governor = new MemoryGovernor(0.5);
+		governor.shutdown();
+		assertEquals(before, getThresholds());
+	}
+
+	@Test
+	public void testConcurrentGovernors() {
+		Map<String, Long> before = getThresholds();
+		MemoryGovernor first = new MemoryGovernor(0.8);
+		Map<String, Long> high = getThresholds();
+		MemoryGovernor second = new MemoryGovernor(0.5);
+		Map<String, Long> low = getThresholds();
+		for (String pool : low.keySet())
+			assertTrue(low.get(pool) <= high.get(pool));
+		second.shutdown();
+		assertEquals(high, getThresholds());
+		MemoryGovernor third = new MemoryGovernor(0.5);
+		first.shutdown();
+		assertEquals(low, getThresholds());
+		third.shutdown();
+		assertEquals(before, getThresholds());
+	}
+
+	private static Map<String, Long> getThresholds() {
+		Map<String, Long> thresholds = new HashMap<String, Long>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+				thresholds.put(pool.getName(), pool.getCollectionUsageThreshold());
+		return thresholds;
+	}
+
+}
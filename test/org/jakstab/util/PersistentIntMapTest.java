@@ -0,0 +1,99 @@
+/*
+ * PersistentIntMapTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class PersistentIntMapTest {
+
+	private static PersistentIntMap<Integer, String> create(int... indices) {
+		PersistentIntMap<Integer, String> map = PersistentIntMap.empty();
+		for (int i : indices)
+			map = map.put(i, i, "v" + i);
+		return map;
+	}
+
+	@Test
+	public void testPutGetRemove() {
+		PersistentIntMap<Integer, String> map = create(3, 40, 1500, 7);
+		assertEquals(4, map.size());
+		assertEquals("v1500", map.get(1500));
+		assertEquals("v3", map.get(3));
+		assertNull(map.get(4));
+		assertNull(map.get(100000));
+		PersistentIntMap<Integer, String> smaller = map.remove(1500);
+		assertEquals(3, smaller.size());
+		assertNull(smaller.get(1500));
+		// The original is unchanged
+		assertEquals("v1500", map.get(1500));
+		assertSame(smaller, smaller.remove(1500));
+		assertTrue(map.remove(3).remove(40).remove(1500).remove(7).isEmpty());
+	}
+
+	@Test
+	public void testCanonicalShape() {
+		PersistentIntMap<Integer, String> a = create(1, 2, 3);
+		PersistentIntMap<Integer, String> b = create(3, 2000, 1, 2).remove(2000);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		Map<Integer, String> reference = new HashMap<Integer, String>();
+		for (int i = 1; i <= 3; i++) reference.put(i, "v" + i);
+		assertEquals(reference.hashCode(), a.hashCode());
+		assertFalse(a.equals(create(1, 2)));
+	}
+
+	@Test
+	public void testIterationOrder() {
+		PersistentIntMap<Integer, String> map = create(5, 1000, 0, 33, 32);
+		List<Integer> keys = new LinkedList<Integer>();
+		for (Map.Entry<Integer, String> entry : map)
+			keys.add(entry.getKey());
+		assertEquals(Arrays.asList(0, 5, 32, 33, 1000), keys);
+		assertEquals("{0=v0, 5=v5, 32=v32, 33=v33, 1000=v1000}", map.toString());
+		keys.clear();
+		for (Iterator<Map.Entry<Integer, String>> it = map.descendingIterator(); it.hasNext();)
+			keys.add(it.next().getKey());
+		assertEquals(Arrays.asList(1000, 33, 32, 5, 0), keys);
+	}
+
+	@Test
+	public void testVisitUnshared() {
+		PersistentIntMap<Integer, String> base = create(1, 2, 3, 100, 200);
+		PersistentIntMap<Integer, String> changed = base.put(2, 2, "x").put(5000, 5000, "y");
+		final List<Integer> visited = new LinkedList<Integer>();
+		PersistentIntMap.EntryVisitor<Integer, String> visitor = new PersistentIntMap.EntryVisitor<Integer, String>() {
+			@Override
+			public boolean visit(Integer key, String value) {
+				visited.add(key);
+				return true;
+			}
+		};
+		assertTrue(changed.visitUnshared(base, visitor));
+		assertEquals(Arrays.asList(2, 5000), visited);
+		visited.clear();
+		base.visitUnshared(changed, visitor);
+		assertEquals(Arrays.asList(2), visited);
+		visited.clear();
+		base.visitUnshared(base, visitor);
+		assertTrue(visited.isEmpty());
+	}
+
+}
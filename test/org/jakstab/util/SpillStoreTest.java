@@ -0,0 +1,55 @@
+/*
+ * SpillStoreTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SpillStoreTest {
+
+	@Test
+	public void testPutGetFree() throws Exception {
+		SpillStore store = SpillStore.createTemporary();
+		try {
+			long a = store.put(new byte[] {1, 2, 3});
+			long b = store.put(new byte[0]);
+			assertArrayEquals(new byte[] {1, 2, 3}, store.get(a));
+			assertEquals(0, store.get(b).length);
+			assertEquals(11, store.getLiveBytes());
+
+			store.free(a);
+			store.free(b);
+			assertEquals(0, store.getLiveBytes());
+			// Space of the empty segment is reused
+			long c = store.put(new byte[] {4});
+			assertEquals(a, c);
+			assertArrayEquals(new byte[] {4}, store.get(c));
+
+			// Records larger than a segment get a segment of their own
+			long mapped = store.getMappedSize();
+			byte[] large = new byte[(int)mapped];
+			large[large.length - 1] = 5;
+			long d = store.put(large);
+			assertArrayEquals(large, store.get(d));
+			assertArrayEquals(new byte[] {4}, store.get(c));
+		} finally {
+			store.close();
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * WeakInternerTest.java - This file is part of the Jakstab project.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class WeakInternerTest {
+
+	@Test
+	public void testIntern() {
+		WeakInterner<String> interner = new WeakInterner<String>();
+		String a = new String("abc");
+		String b = new String("abc");
+		assertSame(a, interner.intern(a));
+		assertSame(a, interner.intern(b));
+		assertNotSame(a, interner.intern(new String("abd")));
+		assertEquals(2, interner.size());
+	}
+
+}